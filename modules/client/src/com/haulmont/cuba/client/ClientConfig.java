@@ -444,4 +444,12 @@ public interface ClientConfig extends Config {
     @Property("cuba.gui.defaultExcelExportFormat")
     @Default("XLSX")
     String getDefaultExcelExportFormat();
-}
\ No newline at end of file
+
+    /**
+     * @return true if RowsCount loads the next page of a sorted loader by keyset pagination, i.e. by the sort key
+     * of the last displayed entity instead of the offset
+     */
+    @Property("cuba.gui.keysetPagingEnabled")
+    @DefaultBoolean(false)
+    boolean getKeysetPagingEnabled();
+}
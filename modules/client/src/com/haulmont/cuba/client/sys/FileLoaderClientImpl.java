@@ -24,7 +24,10 @@ import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.remoting.LocalFileExchangeService;
 import com.haulmont.cuba.core.sys.remoting.discovery.ServerSelector;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
@@ -102,6 +105,18 @@ public class FileLoaderClientImpl implements FileLoader {
         }
     }
 
+    @Override
+    public InputStream openStream(FileDescriptor fd, long offset, long length) throws FileStorageException {
+        checkNotNullArgument(fd);
+
+        String useLocalInvocation = AppContext.getProperty("cuba.useLocalServiceInvocation");
+        if (Boolean.parseBoolean(useLocalInvocation)) {
+            return openStreamLocally(fd, offset, length);
+        } else {
+            return openStreamWithServlet(fd, new ByteRange(offset, length));
+        }
+    }
+
     @Override
     public void removeFile(FileDescriptor fd) throws FileStorageException {
         checkNotNullArgument(fd);
@@ -192,7 +207,21 @@ public class FileLoaderClientImpl implements FileLoader {
         return localFileExchangeService.downloadFile(fd);
     }
 
+    protected InputStream openStreamLocally(FileDescriptor fd, long offset, long length) throws FileStorageException {
+        // cannot be injected since there is no implementation for Desktop
+        LocalFileExchangeService localFileExchangeService = AppBeans.get(LocalFileExchangeService.NAME);
+        return localFileExchangeService.downloadFile(fd, offset, length);
+    }
+
     protected InputStream openStreamWithServlet(FileDescriptor fd) throws FileStorageException {
+        return openStreamWithServlet(fd, null);
+    }
+
+    /**
+     * Downloads the file or its range. If the middleware ignores the {@code Range} header, the range is extracted
+     * from the whole file stream.
+     */
+    protected InputStream openStreamWithServlet(FileDescriptor fd, @Nullable ByteRange range) throws FileStorageException {
         ClientConfig clientConfig = configuration.getConfig(ClientConfig.class);
         String fileDownloadContext = clientConfig.getFileDownloadContext();
 
@@ -212,14 +241,22 @@ public class FileLoaderClientImpl implements FileLoader {
                     .build();
 
             HttpGet httpGet = new HttpGet(url);
+            if (range != null && range.getLength() > 0) {
+                httpGet.setHeader(HttpHeaders.RANGE, range.toRangeHeader());
+            }
 
             try {
                 HttpResponse httpResponse = httpClient.execute(httpGet);
                 int httpStatus = httpResponse.getStatusLine().getStatusCode();
-                if (httpStatus == HttpStatus.SC_OK) {
+                if (httpStatus == HttpStatus.SC_OK || httpStatus == HttpStatus.SC_PARTIAL_CONTENT) {
                     HttpEntity httpEntity = httpResponse.getEntity();
                     if (httpEntity != null) {
-                        return httpEntity.getContent();
+                        InputStream content = httpEntity.getContent();
+                        if (range != null && httpStatus == HttpStatus.SC_OK) {
+                            IOUtils.skipFully(content, range.getOffset());
+                            return new BoundedInputStream(content, range.getLength());
+                        }
+                        return content;
                     } else {
                         log.debug("Unable to download file from {}\nHttpEntity is null", url);
                         selectedUrl = failAndGetNextUrl(context);
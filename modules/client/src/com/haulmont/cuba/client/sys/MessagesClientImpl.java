@@ -68,6 +68,11 @@ public class MessagesClientImpl extends AbstractMessages {
                 messageTools.getDefaultLocale();
     }
 
+    @Override
+    protected boolean isRemoteSearchEnabled() {
+        return remoteSearch && AppContext.isStarted();
+    }
+
     @Override
     @Nullable
     protected String searchRemotely(String pack, String key, Locale locale) {
@@ -16,6 +16,7 @@
 
 package com.haulmont.cuba.client.sys.cache;
 
+import com.haulmont.cuba.core.app.ConfigStorageChanges;
 import com.haulmont.cuba.core.app.ConfigStorageService;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.SecurityContext;
@@ -34,6 +35,8 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Caching strategy for config values stored with {@link com.haulmont.cuba.core.config.SourceType#DATABASE}.
+ * <p>
+ * After the first load, only the properties changed since the cached version are requested from the middleware.
  */
 @Component(ConfigCacheStrategy.NAME)
 public class ConfigCacheStrategy implements CachingStrategy {
@@ -42,6 +45,8 @@ public class ConfigCacheStrategy implements CachingStrategy {
     private static final Logger log = LoggerFactory.getLogger(ConfigCacheStrategy.class);
 
     protected volatile Map<String, String> cachedProperties = null;
+    protected volatile String storageId;
+    protected volatile long version;
 
     @Inject
     @Named(ConfigStorageService.NAME)
@@ -70,13 +75,13 @@ public class ConfigCacheStrategy implements CachingStrategy {
     @Override
     public Object loadObject() {
         if (cachedProperties == null || updateSynchronously) {
-            Map<String, String> cachedPropertiesFromServer = Collections.unmodifiableMap(configStorageService.getDbProperties());
+            ConfigStorageChanges changes = loadChanges();
 
-            cachedProperties = cachedPropertiesFromServer;
+            cachedProperties = changes.applyTo(cachedProperties != null ? cachedProperties : Collections.emptyMap());
+            storageId = changes.getStorageId();
+            version = changes.getVersion();
             lastUsedTs = System.currentTimeMillis();
             cacheCleared = false;
-
-            cachedProperties = cachedPropertiesFromServer;
         } else {
             if (!backgroundUpdateTriggered) {
                 clientCacheManager.getExecutorService().submit(this::updateCacheInBackground);
@@ -98,12 +103,17 @@ public class ConfigCacheStrategy implements CachingStrategy {
         try {
             AppContext.setSecurityContext(new SecurityContext(userSession));
 
-            Map<String, String> cachedPropertiesFromServer =
-                    Collections.unmodifiableMap(configStorageService.getDbProperties());
+            ConfigStorageChanges changes = loadChanges();
 
             readWriteLock.writeLock().lock();
             try {
-                cachedProperties = cachedPropertiesFromServer;
+                if (cachedProperties == null && !changes.isFull()) {
+                    // the cache is cleared while loading changes
+                    return;
+                }
+                cachedProperties = changes.applyTo(cachedProperties != null ? cachedProperties : Collections.emptyMap());
+                storageId = changes.getStorageId();
+                version = changes.getVersion();
                 lastUsedTs = System.currentTimeMillis();
                 cacheCleared = false;
             } finally {
@@ -120,6 +130,11 @@ public class ConfigCacheStrategy implements CachingStrategy {
         }
     }
 
+    protected ConfigStorageChanges loadChanges() {
+        String currentStorageId = cachedProperties != null ? storageId : null;
+        return configStorageService.getDbPropertiesChanges(currentStorageId, version);
+    }
+
     @Override
     public ReadWriteLock lock() {
         return readWriteLock;
@@ -152,6 +167,7 @@ public class ConfigCacheStrategy implements CachingStrategy {
         try {
             cacheCleared = true;
             cachedProperties = null;
+            storageId = null;
         } catch (Exception e) {
             log.error("Unable to clear config storage cache", e);
         } finally {
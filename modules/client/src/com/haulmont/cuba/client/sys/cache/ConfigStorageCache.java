@@ -16,6 +16,7 @@
 
 package com.haulmont.cuba.client.sys.cache;
 
+import com.haulmont.cuba.core.app.ConfigStorageChanges;
 import com.haulmont.cuba.core.app.ConfigStorageService;
 import com.haulmont.cuba.core.config.AppPropertyEntity;
 import com.haulmont.cuba.core.global.BeanLocator;
@@ -67,4 +68,9 @@ public class ConfigStorageCache implements ConfigStorageService {
     public List<AppPropertyEntity> getAppProperties() {
         return getService().getAppProperties();
     }
+
+    @Override
+    public ConfigStorageChanges getDbPropertiesChanges(@Nullable String storageId, long sinceVersion) {
+        return getService().getDbPropertiesChanges(storageId, sinceVersion);
+    }
 }
\ No newline at end of file
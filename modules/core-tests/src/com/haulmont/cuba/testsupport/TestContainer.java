@@ -29,6 +29,7 @@ import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.*;
 import com.haulmont.cuba.core.sys.events.AppContextInitializedEvent;
+import com.haulmont.cuba.core.sys.jdbc.ProxyDataSource;
 import com.haulmont.cuba.core.sys.persistence.EclipseLinkCustomizer;
 import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.lang3.StringUtils;
@@ -375,7 +376,7 @@ public class TestContainer extends ExternalResource implements BeforeAllCallback
                 TestContext.getInstance().bind(jndiName, ds);
             }
 
-            TestDataSourceProvider.registerDataSource(Stores.MAIN, ds);
+            TestDataSourceProvider.registerDataSource(Stores.MAIN, new ProxyDataSource(ds));
         } catch (ClassNotFoundException | NamingException e) {
             throw new RuntimeException("Error initializing dataSource", e);
         }
@@ -22,8 +22,10 @@ import junit.framework.Assert;
 import org.springframework.mail.MailException;
 import org.springframework.mail.MailSendException;
 
+import javax.mail.*;
 import javax.mail.internet.MimeMessage;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -32,7 +34,7 @@ import java.util.List;
  *
  */
 public class TestMailSender extends CubaMailSender {
-    private List<MimeMessage> myMessages = new ArrayList<>();
+    private List<MimeMessage> myMessages = Collections.synchronizedList(new ArrayList<>());
 
     private boolean mustFail;
 
@@ -57,6 +59,14 @@ public class TestMailSender extends CubaMailSender {
         myMessages.add(mimeMessage);
     }
 
+    /**
+     * Pooled sending goes through the real connection pool, the connections add messages to the buffer.
+     */
+    @Override
+    protected Transport connectTransport() {
+        return new TestTransport(getSession());
+    }
+
     public boolean isEmpty() {
         return myMessages.isEmpty();
     }
@@ -68,4 +78,20 @@ public class TestMailSender extends CubaMailSender {
     public void workNormallyPlease() {
         this.mustFail = false;
     }
+
+    protected class TestTransport extends Transport {
+
+        public TestTransport(Session session) {
+            super(session, new URLName("smtp", getHost(), getPort(), null, null, null));
+            setConnected(true);
+        }
+
+        @Override
+        public void sendMessage(Message message, Address[] addresses) throws MessagingException {
+            if (mustFail) {
+                throw new MessagingException("Smtp server not available");
+            }
+            myMessages.add((MimeMessage) message);
+        }
+    }
 }
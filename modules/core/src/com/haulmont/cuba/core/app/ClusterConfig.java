@@ -66,4 +66,33 @@ public interface ClusterConfig extends Config {
     @Property("cuba.cluster.messageSendingQueueCapacity")
     @DefaultInt(Integer.MAX_VALUE)
     int getClusterMessageSendingQueueCapacity();
+
+    /**
+     * @return whether asynchronous cluster messages are collected into batches and sent in a single frame
+     */
+    @Property("cuba.cluster.messageBatchingEnabled")
+    @DefaultBoolean(false)
+    boolean getMessageBatchingEnabled();
+
+    /**
+     * @return time window in milliseconds during which asynchronous messages are collected into a batch
+     */
+    @Property("cuba.cluster.messageBatchingWindowMs")
+    @DefaultInt(20)
+    int getMessageBatchingWindowMs();
+
+    /**
+     * @return maximum number of messages in a batch. When reached, the batch is sent before the window expires
+     */
+    @Property("cuba.cluster.messageBatchMaxSize")
+    @DefaultInt(500)
+    int getMessageBatchMaxSize();
+
+    /**
+     * @return whether messages are encoded by codecs registered with
+     * {@link ClusterManagerAPI#registerCodec(Class, ClusterMessageCodec)}. Must have the same value on all nodes.
+     */
+    @Property("cuba.cluster.messageCodecsEnabled")
+    @DefaultBoolean(false)
+    boolean getMessageCodecsEnabled();
 }
@@ -38,14 +38,18 @@ import org.springframework.context.event.EventListener;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.management.MBeanServer;
 import java.io.*;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.LongAdder;
 
@@ -65,6 +69,14 @@ public class ClusterManager implements ClusterManagerAPI {
 
     protected ThreadPoolExecutor executor;
 
+    protected ScheduledExecutorService batchFlushExecutor;
+
+    protected final Object batchLock = new Object();
+
+    protected Map<Object, Serializable> pendingBatch = new LinkedHashMap<>();
+
+    protected LongAdder sentBatches = new LongAdder();
+
     @Inject
     protected Resources resources;
 
@@ -77,8 +89,13 @@ public class ClusterManager implements ClusterManagerAPI {
 
     protected Map<String, MessageStat> messagesStat = new ConcurrentHashMap<>();
 
+    protected Map<String, ClusterMessageCodec> codecs = new ConcurrentHashMap<>();
+
     protected static final String STATE_MAGIC = "CUBA_STATE";
 
+    protected static final byte FORMAT_SERIALIZED = 0;
+    protected static final byte FORMAT_CODEC = 1;
+
     public JChannel getChannel() {
         return channel;
     }
@@ -90,9 +107,17 @@ public class ClusterManager implements ClusterManagerAPI {
                 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(clusterConfig.getClusterMessageSendingQueueCapacity()),
                 new ThreadFactoryBuilder().setNameFormat("ClusterManagerMessageSender-%d").build(),
                 (r, executor) -> {
+                    String cause = executor.isShutdown() ? "Sender is shut down" : "Queue capacity is exceeded";
+                    if (r instanceof SendBatchRunnable) {
+                        log.info("{}. Batch of {} messages", cause, ((SendBatchRunnable) r).messages.size());
+                        return;
+                    }
                     SendMessageRunnable sendMessageRunnable = (SendMessageRunnable) r;
-                    log.info("Queue capacity is exceeded. Message: {}: {}", sendMessageRunnable.message.getClass(), sendMessageRunnable.message);
+                    log.info("{}. Message: {}: {}", cause, sendMessageRunnable.message.getClass(), sendMessageRunnable.message);
                 });
+        batchFlushExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("ClusterManagerBatchFlusher-%d").setDaemon(true).build());
+        registerCodec(MessageBatch.class, new MessageBatchCodec());
     }
 
     @EventListener(AppContextInitializedEvent.class)
@@ -105,7 +130,12 @@ public class ClusterManager implements ClusterManagerAPI {
 
     @EventListener(AppContextStoppedEvent.class)
     protected void applicationStopped() {
+        batchFlushExecutor.shutdown();
         executor.shutdown();
+        // the scheduled flush is cancelled with the executor, pending messages are sent in this thread
+        if (channel != null) {
+            flushBatch();
+        }
         stop();
     }
 
@@ -117,6 +147,9 @@ public class ClusterManager implements ClusterManagerAPI {
         Boolean sync = forceSyncSending.get();
         if (sync != null && sync) {
             internalSend(message, true);
+        } else if (clusterConfig.getMessageBatchingEnabled()) {
+            log.trace("Adding message: {}: {} to the batch", message.getClass(), message);
+            addToBatch(message);
         } else {
             log.trace("Submitting message: {}: {} to send asynchronously", message.getClass(), message);
             executor.execute(new SendMessageRunnable(message));
@@ -131,16 +164,111 @@ public class ClusterManager implements ClusterManagerAPI {
         internalSend(message, true);
     }
 
-    protected void internalSend(Serializable message, boolean sync) {
-        StopWatch sw = new Slf4JStopWatch(String.format("sendClusterMessage(%s)", message.getClass().getSimpleName()));
+    protected void addToBatch(Serializable message) {
+        Object key = message instanceof CoalescingClusterMessage
+                ? new CoalescingKey(message.getClass().getName(), ((CoalescingClusterMessage) message).getCoalescingKey())
+                : new Object();
+        boolean flushNow;
+        boolean scheduleFlush;
+        synchronized (batchLock) {
+            scheduleFlush = pendingBatch.isEmpty();
+            // re-insert the superseding message to keep the order in which messages are sent
+            if (pendingBatch.remove(key) != null) {
+                log.trace("Message {}: {} supersedes a message in the batch", message.getClass(), message);
+                MessageStat stat = messagesStat.get(message.getClass().getName());
+                if (stat != null) {
+                    stat.updateCoalesced();
+                }
+            }
+            pendingBatch.put(key, message);
+            flushNow = pendingBatch.size() >= clusterConfig.getMessageBatchMaxSize();
+        }
+        if (flushNow) {
+            flushBatch();
+        } else if (scheduleFlush) {
+            try {
+                batchFlushExecutor.schedule(this::flushBatch, clusterConfig.getMessageBatchingWindowMs(), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flushBatch();
+            }
+        }
+    }
+
+    protected void flushBatch() {
+        List<Serializable> messages;
+        synchronized (batchLock) {
+            if (pendingBatch.isEmpty()) {
+                return;
+            }
+            messages = new ArrayList<>(pendingBatch.values());
+            pendingBatch = new LinkedHashMap<>();
+        }
+        Runnable sending = messages.size() == 1
+                ? new SendMessageRunnable(messages.get(0))
+                : new SendBatchRunnable(messages);
+        if (executor.isShutdown()) {
+            log.debug("Sending {} pending messages synchronously on shutdown", messages.size());
+            sending.run();
+        } else {
+            executor.execute(sending);
+        }
+    }
+
+    protected void internalSendBatch(List<Serializable> messages) {
+        StopWatch sw = new Slf4JStopWatch("sendClusterMessageBatch");
         try {
-            byte[] bytes;
+            List<byte[]> serializedMessages = new ArrayList<>(messages.size());
+            for (Serializable message : messages) {
+                byte[] bytes = serializeMessage(message);
+                log.debug("Sending message in batch: {}: {} ({} bytes)", message.getClass(), message, bytes.length);
+                MessageStat stat = messagesStat.get(message.getClass().getName());
+                if (stat != null) {
+                    stat.updateSentInBatch(bytes.length);
+                }
+                serializedMessages.add(bytes);
+            }
+            byte[] bytes = serializeMessage(new MessageBatch(serializedMessages));
+            log.debug("Sending batch of {} messages ({} bytes)", serializedMessages.size(), bytes.length);
+            sentBatches.increment();
             try {
-                bytes = SerializationSupport.serialize(message);
+                channel.send(new Message().setBuffer(bytes));
             } catch (Exception e) {
-                log.error("Cluster message serialization error", e);
-                throw new RuntimeException("Cluster message serialization error", e);
+                log.error("Error sending message batch", e);
             }
+        } finally {
+            sw.stop();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected byte[] serializeMessage(Serializable message) {
+        try {
+            if (!clusterConfig.getMessageCodecsEnabled()) {
+                return SerializationSupport.serialize(message);
+            }
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bos);
+            ClusterMessageCodec codec = codecs.get(message.getClass().getName());
+            if (codec != null) {
+                out.writeByte(FORMAT_CODEC);
+                out.writeUTF(message.getClass().getName());
+                codec.encode(message, out);
+            } else {
+                out.writeByte(FORMAT_SERIALIZED);
+                SerializationSupport.serialize(message, out);
+            }
+            out.flush();
+            return bos.toByteArray();
+        } catch (Exception e) {
+            log.error("Cluster message serialization error", e);
+            throw new RuntimeException("Cluster message serialization error", e);
+        }
+    }
+
+    protected void internalSend(Serializable message, boolean sync) {
+        StopWatch sw = new Slf4JStopWatch(String.format("sendClusterMessage(%s)", message.getClass().getSimpleName()));
+        try {
+            byte[] bytes = serializeMessage(message);
             log.debug("Sending message: {}: {} ({} bytes)", message.getClass(), message, bytes.length);
             MessageStat stat = messagesStat.get(message.getClass().getName());
             if (stat != null) {
@@ -182,6 +310,13 @@ public class ClusterManager implements ClusterManagerAPI {
         messagesStat.put(className, new MessageStat());
     }
 
+    @Override
+    public <T extends Serializable> void registerCodec(Class<T> messageClass, ClusterMessageCodec<T> codec) {
+        Preconditions.checkNotNullArgument(messageClass, "Message class is null");
+        Preconditions.checkNotNullArgument(codec, "Codec is null");
+        codecs.put(messageClass.getName(), codec);
+    }
+
     @Override
     public synchronized void removeListener(Class messageClass, ClusterListener listener) {
         String className = messageClass.getName();
@@ -275,7 +410,11 @@ public class ClusterManager implements ClusterManagerAPI {
 
     @Override
     public int getMessagesCount() {
-        return executor.getQueue().size();
+        int batched;
+        synchronized (batchLock) {
+            batched = pendingBatch.size();
+        }
+        return executor.getQueue().size() + batched;
     }
 
     @Override
@@ -341,12 +480,17 @@ public class ClusterManager implements ClusterManagerAPI {
         for (Map.Entry<String, MessageStat> entry : messagesStat.entrySet()) {
             MessageStat stat = entry.getValue();
             if (stat != null) {
+                long sent = stat.getSentMessages();
                 messagesStats
-                        .append(String.format("Class: %s; received: %s, %s bytes; sent: %s, %s bytes\n",
+                        .append(String.format("Class: %s; received: %s, %s bytes; sent: %s, %s bytes; " +
+                                        "sent in batches: %s (%.1f%%); coalesced: %s\n",
                                 entry.getKey(), stat.getReceivedMessages(), stat.getReceivedBytes(),
-                                stat.getSentMessages(), stat.getSentBytes()));
+                                sent, stat.getSentBytes(),
+                                stat.getBatchedMessages(), sent == 0 ? 0.0 : stat.getBatchedMessages() * 100.0 / sent,
+                                stat.getCoalescedMessages()));
             }
         }
+        messagesStats.append(String.format("Batches sent: %s\n", sentBatches.longValue()));
         return messagesStats.toString();
     }
 
@@ -370,6 +514,26 @@ public class ClusterManager implements ClusterManagerAPI {
         return 0;
     }
 
+    @Override
+    public long getBatchedMessages(String className) {
+        Preconditions.checkNotNullArgument(className, "Message class is null");
+        MessageStat stat = messagesStat.get(className);
+        if (stat != null) {
+            return stat.getBatchedMessages();
+        }
+        return 0;
+    }
+
+    @Override
+    public long getCoalescedMessages(String className) {
+        Preconditions.checkNotNullArgument(className, "Message class is null");
+        MessageStat stat = messagesStat.get(className);
+        if (stat != null) {
+            return stat.getCoalescedMessages();
+        }
+        return 0;
+    }
+
     @Override
     public long getReceivedMessages(String className) {
         Preconditions.checkNotNullArgument(className, "Message class is null");
@@ -399,22 +563,63 @@ public class ClusterManager implements ClusterManagerAPI {
                 log.debug("Null buffer received");
                 return;
             }
+            Serializable data = deserializeMessage(bytes);
+            if (data == null) {
+                log.debug("Message skipped by codec ({} bytes)", bytes.length);
+                return;
+            }
+            if (data instanceof MessageBatch) {
+                List<byte[]> messages = ((MessageBatch) data).getMessages();
+                log.debug("Received batch of {} messages ({} bytes)", messages.size(), bytes.length);
+                for (byte[] messageBytes : messages) {
+                    try {
+                        Serializable message = deserializeMessage(messageBytes);
+                        if (message != null) {
+                            receiveMessage(message, messageBytes.length);
+                        }
+                    } catch (RuntimeException e) {
+                        log.error("Error processing cluster message from batch", e);
+                    }
+                }
+            } else {
+                receiveMessage(data, bytes.length);
+            }
+        }
+
+        @Nullable
+        protected Serializable deserializeMessage(byte[] bytes) {
+            try {
+                if (!clusterConfig.getMessageCodecsEnabled()) {
+                    return (Serializable) SerializationSupport.deserialize(bytes);
+                }
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+                byte format = in.readByte();
+                if (format == FORMAT_CODEC) {
+                    String className = in.readUTF();
+                    ClusterMessageCodec codec = codecs.get(className);
+                    if (codec == null) {
+                        throw new IllegalStateException("Codec is not registered for message class " + className);
+                    }
+                    return codec.decode(in);
+                } else {
+                    return (Serializable) SerializationSupport.deserialize(in);
+                }
+            } catch (Exception e) {
+                log.error("Cluster message deserialization error", e);
+                throw new RuntimeException("Cluster message deserialization error", e);
+            }
+        }
+
+        protected void receiveMessage(Serializable data, int size) {
             StopWatch sw = new Slf4JStopWatch();
             String simpleClassName = null;
             try {
-                Serializable data;
-                try {
-                    data = (Serializable) SerializationSupport.deserialize(bytes);
-                } catch (Exception e) {
-                    log.error("Cluster message deserialization error", e);
-                    throw new RuntimeException("Cluster message deserialization error", e);
-                }
                 String className = data.getClass().getName();
                 simpleClassName = data.getClass().getSimpleName();
-                log.debug("Received message: {}: {} ({} bytes)", data.getClass(), data, bytes.length);
+                log.debug("Received message: {}: {} ({} bytes)", data.getClass(), data, size);
                 MessageStat stat = messagesStat.get(className);
                 if (stat != null) {
-                    stat.updateReceived(bytes.length);
+                    stat.updateReceived(size);
                 }
                 @SuppressWarnings("unchecked")
                 ClusterListener<Serializable> listener = listeners.get(className);
@@ -532,11 +737,90 @@ public class ClusterManager implements ClusterManagerAPI {
         }
     }
 
+    protected class SendBatchRunnable implements Runnable {
+        protected List<Serializable> messages;
+
+        public SendBatchRunnable(List<Serializable> messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public void run() {
+            internalSendBatch(messages);
+        }
+    }
+
+    /**
+     * Frame containing several serialized messages sent to the cluster at once.
+     */
+    protected static class MessageBatch implements Serializable {
+        private static final long serialVersionUID = 3474381256212947340L;
+
+        protected final List<byte[]> messages;
+
+        public MessageBatch(List<byte[]> messages) {
+            this.messages = messages;
+        }
+
+        public List<byte[]> getMessages() {
+            return messages;
+        }
+    }
+
+    protected static class MessageBatchCodec implements ClusterMessageCodec<MessageBatch> {
+
+        @Override
+        public void encode(MessageBatch batch, DataOutput out) throws IOException {
+            out.writeInt(batch.getMessages().size());
+            for (byte[] bytes : batch.getMessages()) {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        @Override
+        public MessageBatch decode(DataInput in) throws IOException {
+            int count = in.readInt();
+            List<byte[]> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                messages.add(bytes);
+            }
+            return new MessageBatch(messages);
+        }
+    }
+
+    protected static class CoalescingKey {
+        protected final String className;
+        protected final Object key;
+
+        public CoalescingKey(String className, Object key) {
+            this.className = className;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CoalescingKey that = (CoalescingKey) o;
+            return className.equals(that.className) && Objects.equals(key, that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * className.hashCode() + Objects.hashCode(key);
+        }
+    }
+
     protected static class MessageStat {
         protected LongAdder sentBytes = new LongAdder();
         protected LongAdder receivedBytes = new LongAdder();
         protected LongAdder receivedMessages = new LongAdder();
         protected LongAdder sentMessages = new LongAdder();
+        protected LongAdder batchedMessages = new LongAdder();
+        protected LongAdder coalescedMessages = new LongAdder();
 
         public void updateReceived(int bytes) {
             receivedMessages.increment();
@@ -548,6 +832,23 @@ public class ClusterManager implements ClusterManagerAPI {
             sentBytes.add(bytes);
         }
 
+        public void updateSentInBatch(int bytes) {
+            updateSent(bytes);
+            batchedMessages.increment();
+        }
+
+        public void updateCoalesced() {
+            coalescedMessages.increment();
+        }
+
+        public long getBatchedMessages() {
+            return batchedMessages.longValue();
+        }
+
+        public long getCoalescedMessages() {
+            return coalescedMessages.longValue();
+        }
+
         public long getSentBytes() {
             return sentBytes.longValue();
         }
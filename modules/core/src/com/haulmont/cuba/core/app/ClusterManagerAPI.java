@@ -61,6 +61,15 @@ public interface ClusterManagerAPI {
      */
     void addListener(Class messageClass, ClusterListener listener);
 
+    /**
+     * Register a compact binary codec for messages of the specified class. The codec is used instead of the
+     * standard serialization if {@link ClusterConfig#getMessageCodecsEnabled()} is true.
+     *
+     * @param messageClass the class of messages
+     * @param codec        codec instance
+     */
+    <T extends Serializable> void registerCodec(Class<T> messageClass, ClusterMessageCodec<T> codec);
+
     /**
      * Unsubscribe from messages from other cluster nodes.
      *
@@ -151,4 +160,20 @@ public interface ClusterManagerAPI {
      * @return size in bytes
      */
     long getReceivedBytes(String className);
-}
\ No newline at end of file
+
+    /**
+     * Get count of messages of the specified {@code className} that were sent as a part of a batch
+     *
+     * @return messages count
+     */
+    long getBatchedMessages(String className);
+
+    /**
+     * Get count of messages of the specified {@code className} that were not sent because a newer message
+     * superseded them in a batch
+     *
+     * @return messages count
+     * @see CoalescingClusterMessage
+     */
+    long getCoalescedMessages(String className);
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Compact binary encoder of cluster messages of a particular class. Used instead of the standard serialization
+ * when {@link ClusterConfig#getMessageCodecsEnabled()} is true.
+ * <p>
+ * Codecs are registered by {@link ClusterManagerAPI#registerCodec(Class, ClusterMessageCodec)} and must be
+ * registered on all nodes of the cluster.
+ *
+ * @param <T> type of message this codec encodes
+ */
+public interface ClusterMessageCodec<T extends Serializable> {
+
+    /**
+     * Write the message to the output.
+     *
+     * @param message message instance
+     * @param out     output
+     */
+    void encode(T message, DataOutput out) throws IOException;
+
+    /**
+     * Read the message from the input.
+     *
+     * @param in input
+     * @return message instance or null if the message is not relevant for this node and should be skipped
+     */
+    @Nullable
+    T decode(DataInput in) throws IOException;
+}
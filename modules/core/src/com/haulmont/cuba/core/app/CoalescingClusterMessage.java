@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import java.io.Serializable;
+
+/**
+ * Cluster message that supersedes previously sent messages of the same class with the same coalescing key.
+ * <p>
+ * When message batching is enabled (see {@link ClusterConfig#getMessageBatchingEnabled()}), only the latest of
+ * such messages waiting in the current batch is sent to the cluster.
+ */
+public interface CoalescingClusterMessage extends Serializable {
+
+    /**
+     * @return key identifying messages that supersede each other, must implement {@code equals()} and {@code hashCode()}
+     */
+    Object getCoalescingKey();
+}
@@ -25,43 +25,116 @@ import com.haulmont.cuba.core.global.AppBeans;
 import com.haulmont.cuba.core.global.Metadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Nullable;
 import javax.inject.Inject;
-import java.io.Serializable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.*;
 
 /**
  * Supports configuration parameters framework functionality.
- *
+ * <p>
+ * Properties are kept in an immutable snapshot which is replaced on each change, so reading does not require locks.
+ * A change made on this node is applied to the snapshot after the transaction commit and sent to other nodes of
+ * the cluster as a delta stamped by a Lamport clock. Changes of a property made on one node are applied in the order
+ * of their stamps. The stamps cannot tell which of the concurrent changes made on different nodes was committed last,
+ * so when a property is changed on another node than its last applied change, the value is read from the database
+ * and all nodes come to the committed one. Each applied change increments the snapshot
+ * version and is kept in a bounded log, which allows clients to request changes since the version they have.
+ * {@link #clearCache()} discards the snapshot on all nodes, it is loaded from the database on next access.
  */
 @Component(ConfigStorageAPI.NAME)
 public class ConfigStorage implements ConfigStorageAPI {
 
+    /**
+     * Maximum number of changes kept for {@link #getDbPropertiesChanges(String, long)}.
+     */
+    protected static final int CHANGES_LOG_SIZE = 1000;
+
     @Inject
     protected Persistence persistence;
 
     protected ClusterManagerAPI clusterManager;
 
-    protected Map<String, String> cache;
+    protected final String nodeId = UUID.randomUUID().toString();
+
+    protected volatile Snapshot snapshot;
 
-    protected ReadWriteLock lock = new ReentrantReadWriteLock();
-    protected Lock readLock = lock.readLock();
-    protected Lock writeLock = lock.writeLock();
+    // guarded by this
+    protected long clock;
+    protected final Deque<Change> changesLog = new ArrayDeque<>();
+    // version of the last change removed from the log
+    protected long truncatedVersion;
+    protected final Map<String, Change> lastChanges = new HashMap<>();
 
     private static final Logger log = LoggerFactory.getLogger(ConfigStorage.class);
 
-    private static class InvalidateCacheMsg implements Serializable {
+    protected static class Snapshot {
+
+        protected final String id;
+        protected final long version;
+        protected final Map<String, String> properties;
+
+        protected Snapshot(String id, long version, Map<String, String> properties) {
+            this.id = id;
+            this.version = version;
+            this.properties = properties;
+        }
+    }
+
+    protected static class Change {
+
+        protected final long version;
+        protected final ConfigChangeMsg message;
+
+        protected Change(long version, ConfigChangeMsg message) {
+            this.version = version;
+            this.message = message;
+        }
+    }
+
+    private static class InvalidateCacheMsg implements CoalescingClusterMessage {
         private static final long serialVersionUID = -3116358584797500962L;
+
+        @Override
+        public Object getCoalescingKey() {
+            return InvalidateCacheMsg.class.getName();
+        }
     }
-    
+
+    protected static class ConfigChangeMsg implements CoalescingClusterMessage {
+        private static final long serialVersionUID = 6419807613532367314L;
+
+        protected final String nodeId;
+        protected final long stamp;
+        protected final String name;
+        protected final String value;
+
+        protected ConfigChangeMsg(String nodeId, long stamp, String name, @Nullable String value) {
+            this.nodeId = nodeId;
+            this.stamp = stamp;
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public Object getCoalescingKey() {
+            // only the last change of a property matters
+            return ConfigChangeMsg.class.getName() + ":" + name;
+        }
+
+        protected boolean isAfter(ConfigChangeMsg other) {
+            return stamp > other.stamp || (stamp == other.stamp && nodeId.compareTo(other.nodeId) > 0);
+        }
+    }
+
     @Inject
     public void setClusterManager(ClusterManagerAPI clusterManager) {
         this.clusterManager = clusterManager;
@@ -71,75 +144,196 @@ public class ConfigStorage implements ConfigStorageAPI {
                 internalClearCache();
             }
         });
+        clusterManager.registerCodec(InvalidateCacheMsg.class, new ClusterMessageCodec<InvalidateCacheMsg>() {
+            @Override
+            public void encode(InvalidateCacheMsg message, DataOutput out) {
+            }
+
+            @Override
+            public InvalidateCacheMsg decode(DataInput in) {
+                return new InvalidateCacheMsg();
+            }
+        });
+        clusterManager.addListener(ConfigChangeMsg.class, new ClusterListenerAdapter<ConfigChangeMsg>() {
+            @Override
+            public void receive(ConfigChangeMsg message) {
+                applyChange(message);
+            }
+        });
+        clusterManager.registerCodec(ConfigChangeMsg.class, new ClusterMessageCodec<ConfigChangeMsg>() {
+            @Override
+            public void encode(ConfigChangeMsg message, DataOutput out) throws IOException {
+                out.writeUTF(message.nodeId);
+                out.writeLong(message.stamp);
+                out.writeUTF(message.name);
+                out.writeBoolean(message.value != null);
+                if (message.value != null) {
+                    out.writeUTF(message.value);
+                }
+            }
+
+            @Override
+            public ConfigChangeMsg decode(DataInput in) throws IOException {
+                String nodeId = in.readUTF();
+                long stamp = in.readLong();
+                String name = in.readUTF();
+                String value = in.readBoolean() ? in.readUTF() : null;
+                return new ConfigChangeMsg(nodeId, stamp, name, value);
+            }
+        });
     }
-    
+
     @Override
     public void clearCache() {
         internalClearCache();
         clusterManager.send(new InvalidateCacheMsg());
     }
 
-    private void internalClearCache() {
-        writeLock.lock();
-        try {
-            cache = null;
-        } finally {
-            writeLock.unlock();
-        }
+    private synchronized void internalClearCache() {
+        snapshot = null;
+        changesLog.clear();
+        truncatedVersion = 0;
+        lastChanges.clear();
     }
 
     @Override
     public Map<String, String> getDbProperties() {
-        readLock.lock();
-        try {
-            loadCache();
-            return new HashMap<>(cache);
-        } finally {
-            readLock.unlock();
-        }
+        return new HashMap<>(getSnapshot().properties);
     }
 
     @Override
     public String getDbProperty(String name) {
-        readLock.lock();
-        try {
-            loadCache();
-            return cache.get(name);
-        } finally {
-            readLock.unlock();
-        }
-    }
-
-    protected void loadCache() {
-        if (cache == null) {
-            lock.readLock().unlock();
-            lock.writeLock().lock();
-            try {
-                if (cache == null) {
-                    log.info("Loading DB-stored app properties cache");
-                    // Don't use transactions here because of loop possibility from EntityLog
-                    QueryRunner queryRunner = new QueryRunner(persistence.getDataSource());
-                    try {
-                        cache = queryRunner.query("select NAME, VALUE_ from SYS_CONFIG",
-                                new ResultSetHandler<Map<String, String>>() {
-                                    @Override
-                                    public Map<String, String> handle(ResultSet rs) throws SQLException {
-                                        HashMap<String, String> map = new HashMap<>();
-                                        while (rs.next()) {
-                                            map.put(rs.getString(1), rs.getString(2));
-                                        }
-                                        return map;
-                                    }
-                                });
-                    } catch (SQLException e) {
-                        throw new RuntimeException("Error loading DB-stored app properties cache", e);
-                    }
+        return getSnapshot().properties.get(name);
+    }
+
+    @Override
+    public synchronized ConfigStorageChanges getDbPropertiesChanges(@Nullable String storageId, long sinceVersion) {
+        Snapshot current = getSnapshot();
+
+        if (!current.id.equals(storageId) || sinceVersion > current.version || sinceVersion < truncatedVersion) {
+            return new ConfigStorageChanges(current.id, current.version, true,
+                    current.properties, Collections.emptySet());
+        }
+
+        Map<String, String> values = new HashMap<>();
+        Set<String> removed = new HashSet<>();
+        for (Change change : changesLog) {
+            if (change.version > sinceVersion) {
+                if (change.message.value != null) {
+                    values.put(change.message.name, change.message.value);
+                    removed.remove(change.message.name);
+                } else {
+                    values.remove(change.message.name);
+                    removed.add(change.message.name);
                 }
-            } finally {
-                lock.readLock().lock();
-                lock.writeLock().unlock();
             }
         }
+        return new ConfigStorageChanges(current.id, current.version, false, values, removed);
+    }
+
+    protected Snapshot getSnapshot() {
+        Snapshot result = snapshot;
+        if (result == null) {
+            synchronized (this) {
+                result = snapshot;
+                if (result == null) {
+                    result = new Snapshot(UUID.randomUUID().toString(), ++clock, loadProperties());
+                    snapshot = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    protected Map<String, String> loadProperties() {
+        log.info("Loading DB-stored app properties cache");
+        // Don't use transactions here because of loop possibility from EntityLog
+        QueryRunner queryRunner = new QueryRunner(persistence.getDataSource());
+        try {
+            return queryRunner.query("select NAME, VALUE_ from SYS_CONFIG",
+                    new ResultSetHandler<Map<String, String>>() {
+                        @Override
+                        public Map<String, String> handle(ResultSet rs) throws SQLException {
+                            HashMap<String, String> map = new HashMap<>();
+                            while (rs.next()) {
+                                map.put(rs.getString(1), rs.getString(2));
+                            }
+                            return Collections.unmodifiableMap(map);
+                        }
+                    });
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading DB-stored app properties cache", e);
+        }
+    }
+
+    @Nullable
+    protected String loadProperty(String name) {
+        QueryRunner queryRunner = new QueryRunner(persistence.getDataSource());
+        try {
+            return queryRunner.query("select VALUE_ from SYS_CONFIG where NAME = ?", name,
+                    new ResultSetHandler<String>() {
+                        @Override
+                        public String handle(ResultSet rs) throws SQLException {
+                            return rs.next() ? rs.getString(1) : null;
+                        }
+                    });
+        } catch (SQLException e) {
+            throw new RuntimeException("Error loading DB-stored app property " + name, e);
+        }
+    }
+
+    /**
+     * Applies the change made on this node and sends it to the cluster.
+     */
+    protected void publishChange(String name, @Nullable String value) {
+        ConfigChangeMsg message;
+        synchronized (this) {
+            message = new ConfigChangeMsg(nodeId, clock + 1, name, value);
+            applyChange(message);
+        }
+        clusterManager.send(message);
+    }
+
+    /**
+     * Applies the change to the snapshot. An outdated change made on the same node as the last applied change of
+     * the property is skipped. A change made on another node is replaced by the value read from the database.
+     */
+    protected synchronized void applyChange(ConfigChangeMsg message) {
+        clock = Math.max(clock, message.stamp);
+
+        Snapshot current = snapshot;
+        if (current == null) {
+            // the snapshot will be loaded from the database including the change
+            return;
+        }
+
+        Change last = lastChanges.get(message.name);
+        if (last != null) {
+            if (!last.message.nodeId.equals(message.nodeId)) {
+                log.debug("Change of {} from another node, reading the committed value", message.name);
+                message = new ConfigChangeMsg(message.nodeId, Math.max(message.stamp, last.message.stamp),
+                        message.name, loadProperty(message.name));
+            } else if (!message.isAfter(last.message)) {
+                log.debug("Skipping outdated change of {}", message.name);
+                return;
+            }
+        }
+
+        Map<String, String> properties = new HashMap<>(current.properties);
+        if (message.value != null) {
+            properties.put(message.name, message.value);
+        } else {
+            properties.remove(message.name);
+        }
+
+        Change change = new Change(++clock, message);
+        lastChanges.put(message.name, change);
+        changesLog.addLast(change);
+        if (changesLog.size() > CHANGES_LOG_SIZE) {
+            truncatedVersion = changesLog.removeFirst().version;
+        }
+
+        snapshot = new Snapshot(current.id, change.version, Collections.unmodifiableMap(properties));
     }
 
     @Override
@@ -149,6 +343,8 @@ public class ConfigStorage implements ConfigStorageAPI {
         try {
             EntityManager em = persistence.getEntityManager();
             Config instance = getConfigInstance(name);
+            String propertyName;
+            String propertyValue;
             if (value != null) {
                 if (instance == null) {
                     Metadata metadata = AppBeans.get(Metadata.NAME);
@@ -160,15 +356,26 @@ public class ConfigStorage implements ConfigStorageAPI {
                 } else {
                     instance.setValue(value);
                 }
+                propertyName = instance.getName();
+                propertyValue = instance.getValue();
             } else {
                 if (instance != null)
                     em.remove(instance);
+                propertyName = name;
+                propertyValue = null;
             }
+
+            // the change becomes visible when the transaction which can be an outer one is committed
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    publishChange(propertyName, propertyValue);
+                }
+            });
             tx.commit();
         } finally {
             tx.end();
         }
-        clearCache();
     }
 
     private Config getConfigInstance(String name) {
@@ -55,6 +55,15 @@ public interface ConfigStorageAPI {
      */
     void setDbProperty(String name, @Nullable String value);
 
+    /**
+     * Returns properties changed since the given version of the properties snapshot.
+     *
+     * @param storageId    snapshot identifier returned by the previous call or null to get all properties
+     * @param sinceVersion snapshot version returned by the previous call
+     * @return changed properties or all properties if the changes since the version are not available
+     */
+    ConfigStorageChanges getDbPropertiesChanges(@Nullable String storageId, long sinceVersion);
+
     /**
      * Clear properties cache. Invoke this method if you changed the properties directly in the database.
      */
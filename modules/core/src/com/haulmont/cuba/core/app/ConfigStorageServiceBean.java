@@ -54,4 +54,9 @@ public class ConfigStorageServiceBean implements ConfigStorageService {
     public List<AppPropertyEntity> getAppProperties() {
         return appPropertiesLocator.getAppProperties();
     }
+
+    @Override
+    public ConfigStorageChanges getDbPropertiesChanges(@Nullable String storageId, long sinceVersion) {
+        return api.getDbPropertiesChanges(storageId, sinceVersion);
+    }
 }
\ No newline at end of file
@@ -265,6 +265,7 @@ public class DataManagerBean implements DataManager {
         newCtx.setDiscardCommitted(context.isDiscardCommitted());
         newCtx.setAuthorizationRequired(context.isAuthorizationRequired());
         newCtx.setJoinTransaction(context.isJoinTransaction());
+        newCtx.setBulk(context.isBulk());
         newCtx.setValidationMode(context.getValidationMode());
         newCtx.setValidationGroups(context.getValidationGroups());
         return newCtx;
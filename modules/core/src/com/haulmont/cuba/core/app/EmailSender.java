@@ -56,6 +56,9 @@ public class EmailSender implements EmailSenderAPI {
     @Inject
     protected GlobalConfig globalConfig;
 
+    @Inject
+    protected EmailerConfig emailerConfig;
+
     @Resource(name = CubaMailSender.NAME)
     public void setMailSender(JavaMailSender mailSender) {
         this.mailSender = mailSender;
@@ -66,7 +69,11 @@ public class EmailSender implements EmailSenderAPI {
         MimeMessage msg = createMimeMessage(sendingMessage);
 
         StopWatch sw = new Slf4JStopWatch("EmailSender.send");
-        mailSender.send(msg);
+        if (emailerConfig.getPipelinedSendingEnabled() && mailSender instanceof CubaMailSender) {
+            ((CubaMailSender) mailSender).sendPooled(msg, emailerConfig.getSmtpMaxConnections());
+        } else {
+            mailSender.send(msg);
+        }
         sw.stop();
 
         log.info("Email '{}' to '{}' has been sent successfully", msg.getSubject(), sendingMessage.getAddress());
@@ -44,6 +44,7 @@ import javax.mail.internet.AddressException;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -61,6 +62,11 @@ public class Emailer implements EmailerAPI {
     @Resource(name = "mailSendTaskExecutor")
     protected TaskExecutor mailSendTaskExecutor;
 
+    @Resource(name = "mailPrefetchTaskExecutor")
+    protected TaskExecutor mailPrefetchTaskExecutor;
+
+    protected AtomicInteger messagesInFlight = new AtomicInteger(0);
+
     @Inject
     protected UserSessionSource userSessionSource;
 
@@ -311,6 +317,10 @@ public class Emailer implements EmailerAPI {
     }
 
     protected String sendQueuedEmails() {
+        if (config.getPipelinedSendingEnabled()) {
+            return sendQueuedEmailsPipelined();
+        }
+
         List<SendingMessage> messagesToSend = loadEmailsToSend();
 
         for (SendingMessage msg : messagesToSend) {
@@ -324,6 +334,51 @@ public class Emailer implements EmailerAPI {
         return String.format("Processed %d emails", messagesToSend.size());
     }
 
+    /**
+     * Takes from the queue only as many messages as there is room for in the pipeline, so messages are never
+     * rejected by the executors and returned to the queue. Bodies and attachments of the messages are loaded
+     * concurrently by {@code mailPrefetchTaskExecutor}, and each message is passed to {@code mailSendTaskExecutor}
+     * as soon as its content is loaded.
+     */
+    protected String sendQueuedEmailsPipelined() {
+        int capacity = Math.min(config.getMessageQueueCapacity(), config.getMaxMessagesInFlight() - messagesInFlight.get());
+        if (capacity <= 0) {
+            log.debug("Pipeline is full: {} messages in flight", messagesInFlight.get());
+            return "";
+        }
+
+        List<SendingMessage> messagesToSend = selectEmailsToSend(capacity);
+        for (SendingMessage msg : messagesToSend) {
+            submitPipelinedTask(msg);
+        }
+
+        if (messagesToSend.isEmpty()) {
+            return "";
+        }
+
+        return String.format("Processed %d emails", messagesToSend.size());
+    }
+
+    protected void submitPipelinedTask(SendingMessage msg) {
+        messagesInFlight.incrementAndGet();
+        try {
+            CompletableFuture
+                    .runAsync(() -> loadBodyAndAttachments(msg), mailPrefetchTaskExecutor)
+                    .thenRunAsync(new EmailSendTask(msg), mailSendTaskExecutor)
+                    .whenComplete((result, throwable) -> {
+                        messagesInFlight.decrementAndGet();
+                        if (throwable != null) {
+                            log.error("Exception while sending email: ", throwable);
+                            returnToQueue(msg);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            messagesInFlight.decrementAndGet();
+            log.error("Exception while sending email: ", e);
+            returnToQueue(msg);
+        }
+    }
+
     protected boolean shouldMarkNotSent(SendingMessage sendingMessage) {
         Date deadline = sendingMessage.getDeadline();
         if (deadline != null && deadline.before(timeSource.currentTimestamp())) {
@@ -355,6 +410,19 @@ public class Emailer implements EmailerAPI {
     }
 
     protected List<SendingMessage> loadEmailsToSend() {
+        List<SendingMessage> emailsToSend = selectEmailsToSend(config.getMessageQueueCapacity());
+
+        for (SendingMessage message : emailsToSend) {
+            loadBodyAndAttachments(message);
+        }
+        return emailsToSend;
+    }
+
+    /**
+     * Loads messages to be sent and marks them as being sent. Bodies and attachments stored in file storage
+     * are not loaded.
+     */
+    protected List<SendingMessage> selectEmailsToSend(int maxResults) {
         Date sendTimeoutTime = DateUtils.addSeconds(timeSource.currentTimestamp(), -config.getSendingTimeoutSec());
 
         List<SendingMessage> emailsToSend = new ArrayList<>();
@@ -375,7 +443,7 @@ public class Emailer implements EmailerAPI {
             view.setLoadPartialEntities(true); // because SendingAttachment.content has FetchType.LAZY
             query.setView(view);
 
-            query.setMaxResults(config.getMessageQueueCapacity());
+            query.setMaxResults(maxResults);
 
             List<SendingMessage> resList = query.getResultList();
 
@@ -389,10 +457,6 @@ public class Emailer implements EmailerAPI {
             }
             tx.commit();
         }
-
-        for (SendingMessage message : emailsToSend) {
-            loadBodyAndAttachments(message);
-        }
         return emailsToSend;
     }
 
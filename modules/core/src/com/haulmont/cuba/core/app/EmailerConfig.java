@@ -199,4 +199,34 @@ public interface EmailerConfig extends Config {
     @Property("cuba.emailerUserLogin")
     @Default("admin")
     String getEmailerUserLogin();
-}
\ No newline at end of file
+
+    /**
+     * If set to true, queued emails are sent by a pipeline: bodies and attachments are loaded from file storage
+     * concurrently, messages are sent through pooled SMTP connections, and the number of messages taken from the
+     * queue is limited by {@link #getMaxMessagesInFlight()}.
+     */
+    @Property("cuba.email.pipelinedSendingEnabled")
+    @DefaultBoolean(false)
+    boolean getPipelinedSendingEnabled();
+
+    void setPipelinedSendingEnabled(boolean enabled);
+
+    /**
+     * Maximum number of simultaneous connections to an SMTP server when pipelined sending is enabled.
+     */
+    @Property("cuba.email.smtpMaxConnections")
+    @DefaultInt(4)
+    int getSmtpMaxConnections();
+
+    void setSmtpMaxConnections(int smtpMaxConnections);
+
+    /**
+     * Maximum number of messages that are being loaded or sent at the same time when pipelined sending is enabled.
+     * New messages are taken from the queue only when there is room for them.
+     */
+    @Property("cuba.email.maxMessagesInFlight")
+    @DefaultInt(100)
+    int getMaxMessagesInFlight();
+
+    void setMaxMessagesInFlight(int maxMessagesInFlight);
+}
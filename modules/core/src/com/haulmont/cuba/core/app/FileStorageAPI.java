@@ -18,8 +18,13 @@ package com.haulmont.cuba.core.app;
 
 import com.haulmont.cuba.core.entity.FileDescriptor;
 import com.haulmont.cuba.core.global.FileStorageException;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Interface to store and load files defined by {@link FileDescriptor}s.
@@ -63,6 +68,48 @@ public interface FileStorageAPI {
      */
     InputStream openStream(FileDescriptor fileDescr) throws FileStorageException;
 
+    /**
+     * Return an input stream to load a range of a file contents.
+     * @param fileDescr             file descriptor
+     * @param offset                position of the first byte to load
+     * @param length                maximum number of bytes to load
+     * @return                      input stream, must be closed after use
+     * @throws IllegalArgumentException if arguments are incorrect
+     * @throws FileStorageException     if something goes wrong
+     */
+    default InputStream openStream(FileDescriptor fileDescr, long offset, long length) throws FileStorageException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range: offset=" + offset + ", length=" + length);
+        }
+        InputStream inputStream = openStream(fileDescr);
+        try {
+            IOUtils.skipFully(inputStream, offset);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(inputStream);
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, fileDescr.getId().toString(), e);
+        }
+        return new BoundedInputStream(inputStream, length);
+    }
+
+    /**
+     * Write a range of a file contents to the given channel. Implementations may use zero-copy transfer.
+     * @param fileDescr             file descriptor
+     * @param offset                position of the first byte to write
+     * @param length                maximum number of bytes to write
+     * @param target                channel, is not closed by this method
+     * @return                      number of bytes written
+     * @throws IllegalArgumentException if arguments are incorrect
+     * @throws FileStorageException     if something goes wrong
+     */
+    default long transferTo(FileDescriptor fileDescr, long offset, long length, WritableByteChannel target)
+            throws FileStorageException {
+        try (InputStream inputStream = openStream(fileDescr, offset, length)) {
+            return IOUtils.copyLarge(inputStream, Channels.newOutputStream(target));
+        } catch (IOException e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, fileDescr.getId().toString(), e);
+        }
+    }
+
     /**
      * Load a file contents into byte array.
      * @param fileDescr             file descriptor
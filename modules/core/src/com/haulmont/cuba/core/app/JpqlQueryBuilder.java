@@ -35,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -48,6 +49,8 @@ public class JpqlQueryBuilder {
 
     public static final String NAME = "cuba_JpqlQueryBuilder";
 
+    protected static final String AFTER_SORT_KEY_PARAM = "cuba_afterSortKey";
+
     private static final Logger log = LoggerFactory.getLogger(JpqlQueryBuilder.class);
 
     protected Object id;
@@ -58,6 +61,8 @@ public class JpqlQueryBuilder {
     protected String[] noConversionParams;
     protected Condition condition;
     protected Sort sort;
+    protected List<Object> afterSortKey;
+    protected boolean keysetApplied;
 
     protected String entityName;
     protected List<String> valueProperties;
@@ -136,6 +141,11 @@ public class JpqlQueryBuilder {
         return this;
     }
 
+    public JpqlQueryBuilder setAfterSortKey(@Nullable List<Object> afterSortKey) {
+        this.afterSortKey = afterSortKey;
+        return this;
+    }
+
     public JpqlQueryBuilder setPreviousResults(UUID sessionId, int queryKey) {
         this.previousResults = true;
         this.sessionId = sessionId;
@@ -211,6 +221,7 @@ public class JpqlQueryBuilder {
         }
         applyFiltering();
         applySorting();
+        applyKeyset();
         restrictByPreviousResults();
     }
 
@@ -220,6 +231,40 @@ public class JpqlQueryBuilder {
         }
     }
 
+    protected void applyKeyset() {
+        keysetApplied = false;
+        if (afterSortKey == null || afterSortKey.isEmpty()) {
+            return;
+        }
+        if (afterSortKey.contains(null)) {
+            log.debug("Sort key contains null values, the offset is used instead: {}", afterSortKey);
+            return;
+        }
+        QueryTransformer transformer = queryTransformerFactory.transformer(resultQuery);
+        if (!transformer.addKeysetCondition(AFTER_SORT_KEY_PARAM, afterSortKey.size())) {
+            log.debug("Keyset condition is not supported for the query, the offset is used instead: {}", resultQuery);
+            return;
+        }
+        resultQuery = transformer.getResult();
+
+        resultParameters = new HashMap<>(resultParameters);
+        for (int i = 0; i < afterSortKey.size(); i++) {
+            resultParameters.put(AFTER_SORT_KEY_PARAM + i, afterSortKey.get(i));
+        }
+        keysetApplied = true;
+    }
+
+    /**
+     * @return true if the results are restricted by the sort key set by {@link #setAfterSortKey(List)}, false if
+     * the key is not set or cannot be applied and the offset must be used for paging
+     */
+    public boolean isKeysetApplied() {
+        if (resultQuery == null) {
+            buildResultQuery();
+        }
+        return keysetApplied;
+    }
+
     protected void applyFiltering() {
         if (condition != null) {
             Set<String> nonNullParamNames = queryParameters.entrySet().stream()
@@ -16,6 +16,7 @@
  */
 package com.haulmont.cuba.core.app;
 
+import com.google.common.util.concurrent.Striped;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.cuba.core.EntityManager;
@@ -25,6 +26,8 @@ import com.haulmont.cuba.core.TypedQuery;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.entity.LockDescriptor;
 import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.TimingWheel;
+import com.haulmont.cuba.security.entity.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,17 +36,24 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Standard implementation of {@link LockManagerAPI}.
+ * <p>
+ * Modifications of a lock are serialized by a stripe lock chosen by the lock key, bulk operations take the stripes
+ * of all their keys in a fixed order. Expiration deadlines are tracked in a {@link TimingWheel}, so
+ * {@link #expireLocks()} touches only the locks which are due. Changes are replicated to other cluster members,
+ * a bulk operation is sent as a single message.
+ */
 @Component(LockManagerAPI.NAME)
 public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
 
-    private static class LockKey {
-        
+    protected static class LockKey {
+
         private final String name;
         private final String id;
 
@@ -73,12 +83,38 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
         }
     }
 
+    /**
+     * Locks acquired or released by a bulk operation.
+     */
+    protected static class LockInfoBatch implements Serializable {
+
+        private static final long serialVersionUID = -6263424406624617457L;
+
+        protected final List<LockInfo> locks;
+
+        protected LockInfoBatch(List<LockInfo> locks) {
+            this.locks = locks;
+        }
+    }
+
     private static final Logger log = LoggerFactory.getLogger(LockManager.class);
 
+    private static final int STRIPES_COUNT = 64;
+
     private volatile Map<String, LockDescriptor> config;
 
     private Map<LockKey, LockInfo> locks = new ConcurrentHashMap<>();
 
+    private final Striped<Lock> stripes = Striped.lock(STRIPES_COUNT);
+
+    // guarded by itself, always taken after the stripe locks
+    private final TimingWheel<LockKey> expirationWheel = new TimingWheel<>(1000, 64, 3, System.currentTimeMillis());
+
+    // locks received from the cluster, scheduled for expiration by the next expireLocks()
+    private final Queue<LockKey> unscheduled = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean rescheduleRequired;
+
     @Inject
     private Persistence persistence;
 
@@ -88,12 +124,25 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
     @Inject
     private UserSessionSource userSessionSource;
 
+    @Inject
+    private TimeSource timeSource;
+
     private ClusterManagerAPI clusterManager;
 
     @Inject
     public void setClusterManager(ClusterManagerAPI clusterManager) {
         this.clusterManager = clusterManager;
         this.clusterManager.addListener(LockInfo.class, this);
+        this.clusterManager.registerCodec(LockInfo.class, new LockInfoCodec());
+        this.clusterManager.addListener(LockInfoBatch.class, new ClusterListenerAdapter<LockInfoBatch>() {
+            @Override
+            public void receive(LockInfoBatch message) {
+                for (LockInfo lockInfo : message.locks) {
+                    LockManager.this.receive(lockInfo);
+                }
+            }
+        });
+        this.clusterManager.registerCodec(LockInfoBatch.class, new LockInfoBatchCodec(new LockInfoCodec()));
     }
 
     private Map<String, LockDescriptor> getConfig() {
@@ -137,8 +186,20 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
             return new LockNotSupported();
         }
 
-        lockInfo = new LockInfo(userSessionSource.getUserSession().getCurrentOrSubstitutedUser(), name, id);
-        locks.put(key, lockInfo);
+        Lock stripe = stripes.get(key);
+        stripe.lock();
+        try {
+            lockInfo = locks.get(key);
+            if (lockInfo != null) {
+                log.debug("Already locked: " + lockInfo);
+                return lockInfo;
+            }
+            lockInfo = new LockInfo(userSessionSource.getUserSession().getCurrentOrSubstitutedUser(), name, id);
+            locks.put(key, lockInfo);
+            scheduleExpiration(key, lockInfo, ld);
+        } finally {
+            stripe.unlock();
+        }
         log.debug("Locked " + name + "/" + id);
 
         clusterManager.send(lockInfo);
@@ -151,15 +212,73 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
     public LockInfo lock(Entity entity) {
         Preconditions.checkNotNullArgument(entity, "entity is null");
 
-        MetaClass metaClass = metadata.getClassNN(entity.getClass());
-        MetaClass originalMetaClass = metadata.getExtendedEntities().getOriginalOrThisMetaClass(metaClass);
+        LockKey key = getLockKey(entity);
+        return lock(key.name, key.id);
+    }
 
-        return lock(originalMetaClass.getName(), entity.getId().toString());
+    @Nullable
+    @Override
+    public LockInfo lock(Collection<? extends Entity> entities) {
+        Preconditions.checkNotNullArgument(entities, "entities is null");
+
+        Map<LockKey, LockDescriptor> descriptors = new LinkedHashMap<>();
+        for (Entity entity : entities) {
+            LockKey key = getLockKey(entity);
+            LockInfo lockInfo = locks.get(key);
+            if (lockInfo != null) {
+                log.debug("Already locked: " + lockInfo);
+                return lockInfo;
+            }
+            LockDescriptor ld = getConfig().get(key.name);
+            if (ld == null) {
+                return new LockNotSupported();
+            }
+            descriptors.put(key, ld);
+        }
+        if (descriptors.isEmpty()) {
+            return null;
+        }
+
+        User user = userSessionSource.getUserSession().getCurrentOrSubstitutedUser();
+        List<LockInfo> acquired = new ArrayList<>(descriptors.size());
+        List<Lock> bulkStripes = lockStripes(descriptors.keySet());
+        try {
+            for (LockKey key : descriptors.keySet()) {
+                LockInfo lockInfo = locks.get(key);
+                if (lockInfo != null) {
+                    log.debug("Already locked: " + lockInfo);
+                    return lockInfo;
+                }
+            }
+            for (Map.Entry<LockKey, LockDescriptor> entry : descriptors.entrySet()) {
+                LockKey key = entry.getKey();
+                LockInfo lockInfo = new LockInfo(user, key.name, key.id);
+                locks.put(key, lockInfo);
+                scheduleExpiration(key, lockInfo, entry.getValue());
+                acquired.add(lockInfo);
+            }
+        } finally {
+            unlockStripes(bulkStripes);
+        }
+        log.debug("Locked " + acquired.size() + " objects");
+
+        clusterManager.send(new LockInfoBatch(acquired));
+
+        return null;
     }
 
     @Override
     public void unlock(String name, String id) {
-        LockInfo lockInfo = locks.remove(new LockKey(name, id));
+        LockKey key = new LockKey(name, id);
+        LockInfo lockInfo;
+        Lock stripe = stripes.get(key);
+        stripe.lock();
+        try {
+            lockInfo = locks.remove(key);
+            cancelExpiration(key);
+        } finally {
+            stripe.unlock();
+        }
         if (lockInfo != null) {
             log.debug("Unlocked " + name + "/" + id);
 
@@ -171,10 +290,87 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
     public void unlock(Entity entity) {
         Preconditions.checkNotNullArgument(entity, "entity is null");
 
+        LockKey key = getLockKey(entity);
+        unlock(key.name, key.id);
+    }
+
+    @Override
+    public void unlock(Collection<? extends Entity> entities) {
+        Preconditions.checkNotNullArgument(entities, "entities is null");
+
+        Set<LockKey> keys = new LinkedHashSet<>();
+        for (Entity entity : entities) {
+            keys.add(getLockKey(entity));
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        List<LockInfo> released = new ArrayList<>();
+        List<Lock> bulkStripes = lockStripes(keys);
+        try {
+            for (LockKey key : keys) {
+                if (locks.remove(key) != null) {
+                    released.add(new LockInfo(null, key.name, key.id));
+                }
+                cancelExpiration(key);
+            }
+        } finally {
+            unlockStripes(bulkStripes);
+        }
+        if (!released.isEmpty()) {
+            log.debug("Unlocked " + released.size() + " objects");
+
+            clusterManager.send(new LockInfoBatch(released));
+        }
+    }
+
+    protected LockKey getLockKey(Entity entity) {
         MetaClass metaClass = metadata.getClassNN(entity.getClass());
         MetaClass originalMetaClass = metadata.getExtendedEntities().getOriginalOrThisMetaClass(metaClass);
 
-        unlock(originalMetaClass.getName(), entity.getId().toString());
+        return new LockKey(originalMetaClass.getName(), entity.getId().toString());
+    }
+
+    /**
+     * Takes the stripe locks of the given keys. Stripes are returned by {@link Striped#bulkGet(Iterable)} in
+     * a fixed order, so concurrent bulk operations cannot deadlock.
+     */
+    protected List<Lock> lockStripes(Iterable<LockKey> keys) {
+        List<Lock> acquired = new ArrayList<>();
+        try {
+            for (Lock stripe : stripes.bulkGet(keys)) {
+                stripe.lock();
+                acquired.add(stripe);
+            }
+        } catch (RuntimeException e) {
+            unlockStripes(acquired);
+            throw e;
+        }
+        return acquired;
+    }
+
+    protected void unlockStripes(List<Lock> acquired) {
+        for (int i = acquired.size() - 1; i >= 0; i--) {
+            acquired.get(i).unlock();
+        }
+    }
+
+    protected void scheduleExpiration(LockKey key, LockInfo lockInfo, LockDescriptor ld) {
+        Integer timeoutSec = ld.getTimeoutSec();
+        synchronized (expirationWheel) {
+            if (timeoutSec != null && timeoutSec > 0) {
+                expirationWheel.schedule(key, lockInfo.getSince().getTime() + timeoutSec * 1000L);
+            } else {
+                expirationWheel.cancel(key);
+            }
+        }
+    }
+
+    protected void cancelExpiration(LockKey key) {
+        synchronized (expirationWheel) {
+            expirationWheel.cancel(key);
+        }
     }
 
     @Override
@@ -195,43 +391,95 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
     @Override
     public void expireLocks() {
         log.debug("Expiring locks");
-        ArrayList<LockKey> list = new ArrayList<>(locks.keySet());
-        for (LockKey key : list) {
+        Map<String, LockDescriptor> config = getConfig();
+
+        if (rescheduleRequired) {
+            // timeouts could change, schedule all locks anew
+            rescheduleRequired = false;
+            unscheduled.clear();
+            synchronized (expirationWheel) {
+                expirationWheel.clear();
+            }
+            for (LockKey key : new ArrayList<>(locks.keySet())) {
+                checkExpiration(key, config, Long.MIN_VALUE);
+            }
+        } else {
+            LockKey key;
+            while ((key = unscheduled.poll()) != null) {
+                checkExpiration(key, config, Long.MIN_VALUE);
+            }
+        }
+
+        long now = timeSource.currentTimestamp().getTime();
+        List<LockKey> expired;
+        synchronized (expirationWheel) {
+            expired = expirationWheel.advance(now);
+        }
+        for (LockKey key : expired) {
+            checkExpiration(key, config, now);
+        }
+    }
+
+    /**
+     * Removes the lock if its configuration is not found or it has expired by the given time,
+     * otherwise schedules its expiration.
+     */
+    protected void checkExpiration(LockKey key, Map<String, LockDescriptor> config, long now) {
+        Lock stripe = stripes.get(key);
+        stripe.lock();
+        try {
             LockInfo lockInfo = locks.get(key);
-            if (lockInfo != null) {
-                LockDescriptor ld = getConfig().get(key.name);
-                if (ld == null) {
-                    log.debug("Lock " + key.name + "/" + key.id + " configuration not found, remove it");
-                    locks.remove(key);
-                } else {
-                    Integer timeoutSec = ld.getTimeoutSec();
-                    if (timeoutSec != null && timeoutSec > 0) {
-                        Date since = lockInfo.getSince();
-                        if (since.getTime() + timeoutSec * 1000 < AppBeans.get(TimeSource.class).currentTimestamp().getTime()) {
-                            log.debug("Lock " + key.name + "/" + key.id + " expired");
-                            locks.remove(key);
-                        }
-                    }
-                }
+            if (lockInfo == null) {
+                cancelExpiration(key);
+                return;
             }
+            LockDescriptor ld = config.get(key.name);
+            if (ld == null) {
+                log.debug("Lock " + key.name + "/" + key.id + " configuration not found, remove it");
+                locks.remove(key);
+                cancelExpiration(key);
+                return;
+            }
+            Integer timeoutSec = ld.getTimeoutSec();
+            if (timeoutSec != null && timeoutSec > 0
+                    && lockInfo.getSince().getTime() + timeoutSec * 1000L < now) {
+                log.debug("Lock " + key.name + "/" + key.id + " expired");
+                locks.remove(key);
+                cancelExpiration(key);
+                return;
+            }
+            // the lock could be replaced by a newer one, so the deadline is taken from the current lock
+            scheduleExpiration(key, lockInfo, ld);
+        } finally {
+            stripe.unlock();
         }
     }
 
     @Override
     public void reloadConfiguration() {
         config = null;
+        rescheduleRequired = true;
     }
 
     @Override
     public void receive(LockInfo message) {
         LockKey key = new LockKey(message.getEntityName(), message.getEntityId());
-        if (message.getUser() != null) {
-            LockInfo lockInfo = locks.get(key);
-            if (lockInfo == null || lockInfo.getSince().before(message.getSince())) {
-                locks.put(key, message);
+        Lock stripe = stripes.get(key);
+        stripe.lock();
+        try {
+            if (message.getUser() != null) {
+                LockInfo lockInfo = locks.get(key);
+                if (lockInfo == null || lockInfo.getSince().before(message.getSince())) {
+                    locks.put(key, message);
+                    // descriptors can require loading from the database, so don't do it in the cluster thread
+                    unscheduled.add(key);
+                }
+            } else {
+                locks.remove(key);
+                cancelExpiration(key);
             }
-        } else {
-            locks.remove(key);
+        } finally {
+            stripe.unlock();
         }
     }
 
@@ -269,4 +517,97 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
             receive(lockInfo);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Encodes the lock together with the id, login and name of the user holding it instead of the whole user graph.
+     */
+    protected class LockInfoCodec implements ClusterMessageCodec<LockInfo> {
+
+        @Override
+        public void encode(LockInfo lockInfo, DataOutput out) throws IOException {
+            writeId(lockInfo.getId(), out);
+            out.writeUTF(lockInfo.getEntityName());
+            writeNullableString(lockInfo.getEntityId(), out);
+            out.writeLong(lockInfo.getSince().getTime());
+            User user = lockInfo.getUser();
+            out.writeBoolean(user != null);
+            if (user != null) {
+                writeId(user.getId(), out);
+                writeNullableString(user.getLogin(), out);
+                writeNullableString(user.getLoginLowerCase(), out);
+                writeNullableString(user.getName(), out);
+            }
+        }
+
+        @Override
+        public LockInfo decode(DataInput in) throws IOException {
+            UUID id = readId(in);
+            String entityName = in.readUTF();
+            String entityId = readNullableString(in);
+            Date since = new Date(in.readLong());
+            User user = null;
+            if (in.readBoolean()) {
+                user = createUser();
+                user.setId(readId(in));
+                user.setLogin(readNullableString(in));
+                user.setLoginLowerCase(readNullableString(in));
+                user.setName(readNullableString(in));
+            }
+            LockInfo lockInfo = new LockInfo(user, entityName, entityId, since);
+            lockInfo.setId(id);
+            return lockInfo;
+        }
+
+        protected User createUser() {
+            return metadata.create(User.class);
+        }
+
+        protected void writeId(UUID id, DataOutput out) throws IOException {
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+        }
+
+        protected UUID readId(DataInput in) throws IOException {
+            return new UUID(in.readLong(), in.readLong());
+        }
+
+        protected void writeNullableString(@Nullable String value, DataOutput out) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+
+        @Nullable
+        protected String readNullableString(DataInput in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+
+    protected class LockInfoBatchCodec implements ClusterMessageCodec<LockInfoBatch> {
+
+        protected final LockInfoCodec lockInfoCodec;
+
+        public LockInfoBatchCodec(LockInfoCodec lockInfoCodec) {
+            this.lockInfoCodec = lockInfoCodec;
+        }
+
+        @Override
+        public void encode(LockInfoBatch batch, DataOutput out) throws IOException {
+            out.writeInt(batch.locks.size());
+            for (LockInfo lockInfo : batch.locks) {
+                lockInfoCodec.encode(lockInfo, out);
+            }
+        }
+
+        @Override
+        public LockInfoBatch decode(DataInput in) throws IOException {
+            int size = in.readInt();
+            List<LockInfo> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(lockInfoCodec.decode(in));
+            }
+            return new LockInfoBatch(list);
+        }
+    }
+}
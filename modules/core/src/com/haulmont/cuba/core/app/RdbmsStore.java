@@ -31,6 +31,7 @@ import com.haulmont.cuba.core.entity.contracts.Id;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.EntityFetcher;
 import com.haulmont.cuba.core.sys.EntityReferencesNormalizer;
+import com.haulmont.cuba.core.sys.jdbc.ProxyConnection;
 import com.haulmont.cuba.core.sys.persistence.DbmsSpecificFactory;
 import com.haulmont.cuba.core.sys.persistence.EntityChangedEventInfo;
 import com.haulmont.cuba.core.sys.persistence.EntityChangedEventManager;
@@ -48,6 +49,8 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.persistence.NoResultException;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.*;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -417,6 +420,7 @@ public class RdbmsStore implements DataStore {
         EntityManager em = null;
         boolean softDeletionBefore;
         SavedEntitiesHolder savedEntitiesHolder;
+        ProxyConnection batchConnection = null;
 
         try (Transaction tx = getSaveTransaction(storeName, context.isJoinTransaction())) {
             em = persistence.getEntityManager(storeName);
@@ -425,10 +429,16 @@ public class RdbmsStore implements DataStore {
             softDeletionBefore = em.isSoftDeletion();
             em.setSoftDeletion(context.isSoftDeletion());
 
+            Collection<Entity> commitInstances = context.getCommitInstances();
+            if (context.isBulk()) {
+                commitInstances = groupByMetaClass(commitInstances);
+                batchConnection = beginJdbcBatch(em);
+            }
+
             List<BaseGenericIdEntity> entitiesToStoreDynamicAttributes = new ArrayList<>();
 
             // persist new
-            for (Entity entity : context.getCommitInstances()) {
+            for (Entity entity : commitInstances) {
                 if (entityStates.isNew(entity)) {
                     if (isAuthorizationRequired(context)) {
                         attributeSecurity.beforePersist(entity);
@@ -457,7 +467,7 @@ public class RdbmsStore implements DataStore {
             }
 
             // merge the rest - instances can be detached or not
-            for (Entity entity : context.getCommitInstances()) {
+            for (Entity entity : commitInstances) {
                 if (!entityStates.isNew(entity)) {
                     if (isAuthorizationRequired(context)) {
                         security.assertToken(entity);
@@ -470,8 +480,10 @@ public class RdbmsStore implements DataStore {
                     Entity merged = em.merge(entity);
                     saved.add(merged);
 
-                    entityFetcher.fetch(merged, getViewFromContext(context, entity));
-                    attributeSecurity.afterMerge(merged);
+                    if (!context.isBulk() || !context.isDiscardCommitted()) {
+                        entityFetcher.fetch(merged, getViewFromContext(context, entity));
+                        attributeSecurity.afterMerge(merged);
+                    }
 
                     if (isAuthorizationRequired(context))
                         checkOperationPermitted(merged, EntityOp.UPDATE);
@@ -539,11 +551,15 @@ public class RdbmsStore implements DataStore {
 
             savedEntitiesHolder = SavedEntitiesHolder.setEntities(saved);
 
-            if (context.isJoinTransaction()) {
+            if (context.isJoinTransaction() || context.isBulk()) {
                 List<EntityChangedEventInfo> eventsInfo = entityChangedEventManager.collect(saved);
 
                 persistenceSupport.processFlush(em, false);
                 em.getDelegate().flush();
+                if (batchConnection != null) {
+                    endJdbcBatch(batchConnection);
+                    batchConnection = null;
+                }
 
                 List<EntityChangedEvent> events = new ArrayList<>(eventsInfo.size());
                 for (EntityChangedEventInfo info : eventsInfo) {
@@ -555,13 +571,21 @@ public class RdbmsStore implements DataStore {
                     detachEntity(em, entity, getViewFromContext(context, entity));
                 }
 
-                entityChangedEventManager.publish(events);
+                if (context.isBulk()) {
+                    entityChangedEventManager.publishBulk(events);
+                } else {
+                    entityChangedEventManager.publish(events);
+                }
             }
 
             tx.commit();
             if (em != null) {
                 em.setSoftDeletion(softDeletionBefore);
             }
+        } finally {
+            if (batchConnection != null) {
+                cancelJdbcBatch(batchConnection);
+            }
         }
 
         if (!attributeValuesToRemove.isEmpty()) {
@@ -607,6 +631,59 @@ public class RdbmsStore implements DataStore {
         return context.isDiscardCommitted() ? Collections.emptySet() : resultEntities;
     }
 
+    /**
+     * Returns instances reordered so that instances of the same meta-class follow each other. This lets
+     * consecutive INSERT and UPDATE statements of one table to be sent in a single JDBC batch.
+     */
+    protected Collection<Entity> groupByMetaClass(Collection<Entity> entities) {
+        Map<MetaClass, List<Entity>> groups = new LinkedHashMap<>();
+        for (Entity entity : entities) {
+            groups.computeIfAbsent(entity.getMetaClass(), metaClass -> new ArrayList<>()).add(entity);
+        }
+        List<Entity> result = new ArrayList<>(entities.size());
+        for (List<Entity> group : groups.values()) {
+            result.addAll(group);
+        }
+        return result;
+    }
+
+    /**
+     * Switches the connection of the current transaction to the JDBC batch mode.
+     *
+     * @return the connection or null if the data source does not provide {@link ProxyConnection}s
+     */
+    @Nullable
+    protected ProxyConnection beginJdbcBatch(EntityManager em) {
+        Connection connection = em.getConnection();
+        if (!(connection instanceof ProxyConnection)) {
+            log.debug("JDBC batching is not available for {}, the connection is not a ProxyConnection", storeName);
+            return null;
+        }
+        ProxyConnection proxyConnection = (ProxyConnection) connection;
+        if (proxyConnection.isBatching()) {
+            // already started by an enclosing bulk commit
+            return null;
+        }
+        proxyConnection.beginBatch(serverConfig.getBulkCommitJdbcBatchSize());
+        return proxyConnection;
+    }
+
+    protected void endJdbcBatch(ProxyConnection connection) {
+        try {
+            connection.endBatch();
+        } catch (SQLException e) {
+            throw new javax.persistence.PersistenceException("Error executing JDBC batch", e);
+        }
+    }
+
+    protected void cancelJdbcBatch(ProxyConnection connection) {
+        try {
+            connection.cancelBatch();
+        } catch (SQLException e) {
+            log.warn("Error discarding JDBC batch", e);
+        }
+    }
+
     protected void reloadIfUnfetched(Set<Entity> resultEntities, CommitContext context) {
         if (context.getViews().isEmpty())
             return;
@@ -761,7 +838,8 @@ public class RdbmsStore implements DataStore {
                     .setQueryParameters(contextQuery.getParameters())
                     .setNoConversionParams(contextQuery.getNoConversionParams());
             if (!countQuery) {
-                queryBuilder.setSort(contextQuery.getSort());
+                queryBuilder.setSort(contextQuery.getSort())
+                        .setAfterSortKey(contextQuery.getAfterSortKey());
             }
         }
 
@@ -773,8 +851,10 @@ public class RdbmsStore implements DataStore {
         Query query = queryBuilder.getQuery(em);
 
         if (contextQuery != null) {
-            if (contextQuery.getFirstResult() != 0)
-                query.setFirstResult(contextQuery.getFirstResult());
+            // the sort key replaces the offset
+            int firstResult = queryBuilder.isKeysetApplied() ? 0 : contextQuery.getFirstResult();
+            if (firstResult != 0)
+                query.setFirstResult(firstResult);
             if (contextQuery.getMaxResults() != 0)
                 query.setMaxResults(contextQuery.getMaxResults());
             if (contextQuery.isCacheable()) {
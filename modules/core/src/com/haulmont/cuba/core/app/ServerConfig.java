@@ -140,6 +140,23 @@ public interface ServerConfig extends Config {
     @DefaultBoolean(true)
     boolean getImmutableFileStorage();
 
+    /**
+     * Content-addressed file storage splits saved files into chunks identified by SHA-256 of their contents and
+     * stores each distinct chunk once. Files saved in the regular mode remain readable in this mode.
+     *
+     * @return whether file storage saves files as content-addressed chunks.
+     */
+    @Property("cuba.fileStorage.contentAddressed")
+    @DefaultBoolean(false)
+    boolean getFileStorageContentAddressed();
+
+    /**
+     * @return size in bytes of chunks created by the content-addressed file storage.
+     */
+    @Property("cuba.fileStorage.chunkSize")
+    @DefaultInt(1048576)
+    int getFileStorageChunkSize();
+
     /**
      * @return Scheduled tasks execution control.
      */
@@ -169,6 +186,46 @@ public interface ServerConfig extends Config {
 
     void setSchedulingThreadPoolSize(int value);
 
+    /**
+     * @return whether scheduled tasks are run in virtual threads instead of the thread pool. Each task gets its own
+     * thread, {@link #getSchedulingThreadPoolSize()} limits the number of concurrently running tasks.
+     * If the JVM doesn't support virtual threads, an unbounded pool of platform threads is used.
+     */
+    @Property("cuba.schedulingVirtualThreads")
+    @DefaultBoolean(false)
+    boolean getSchedulingVirtualThreads();
+
+    /**
+     * @return whether scheduled tasks are started by the event-driven engine. The engine keeps active tasks in a queue
+     * ordered by the next fire time and sleeps until the earliest one instead of checking all tasks every
+     * {@link #getSchedulingInterval()}. Singleton tasks are coordinated by leases, execution history is written in
+     * batches.
+     */
+    @Property("cuba.schedulingEventDriven")
+    @DefaultBoolean(false)
+    boolean getSchedulingEventDriven();
+
+    /**
+     * @return interval in milliseconds of reloading task definitions from the database in the event-driven mode
+     */
+    @Property("cuba.schedulingTasksRefreshInterval")
+    @DefaultLong(60000)
+    long getSchedulingTasksRefreshInterval();
+
+    /**
+     * @return interval in milliseconds of writing the scheduled task execution history in the event-driven mode
+     */
+    @Property("cuba.schedulingExecutionLogFlushInterval")
+    @DefaultLong(1000)
+    long getSchedulingExecutionLogFlushInterval();
+
+    /**
+     * @return number of pending execution history records which causes immediate writing in the event-driven mode
+     */
+    @Property("cuba.schedulingExecutionLogBatchSize")
+    @DefaultInt(100)
+    int getSchedulingExecutionLogBatchSize();
+
     /**
      * @return Tells DataService to ensure distinct results by processing them in memory, instead of issue
      * 'select distinct' to the database.
@@ -400,4 +457,81 @@ public interface ServerConfig extends Config {
     @Property("cuba.security.rolesPolicyVersion")
     @DefaultInt(2)
     int getRolesPolicyVersion();
-}
\ No newline at end of file
+
+    /**
+     * Maximum number of statements sent to the database in one JDBC batch when entities are saved in the bulk
+     * commit mode, see {@link com.haulmont.cuba.core.global.CommitContext#setBulk(boolean)}.
+     */
+    @Property("cuba.bulkCommitJdbcBatchSize")
+    @DefaultInt(500)
+    int getBulkCommitJdbcBatchSize();
+
+    /**
+     * Maximum number of fetch groups calculated for combinations of a query and a view which are cached by
+     * {@link com.haulmont.cuba.core.sys.FetchGroupManager}. 0 disables the cache.
+     */
+    @Property("cuba.fetchGroupCacheSize")
+    @DefaultInt(1000)
+    int getFetchGroupCacheSize();
+
+    /**
+     * Maximum number of entities whose dynamic attribute values are loaded by one query. Keep it below the limit
+     * of parameters in the SQL {@code IN} clause of the database (e.g. 1000 for Oracle).
+     */
+    @Property("cuba.dynamicAttributesLoadBatchSize")
+    @DefaultInt(1000)
+    int getDynamicAttributesLoadBatchSize();
+
+    /**
+     * Port of the binary remoting transport, see {@link com.haulmont.cuba.core.sys.remoting.binary.BinaryRemotingServer}.
+     * 0 means the transport is disabled and clients use HTTP invoker only.
+     */
+    @Property("cuba.binaryRemotingPort")
+    @DefaultInt(0)
+    int getBinaryRemotingPort();
+
+    /**
+     * Address the binary remoting transport listens on. If not set, all local addresses are used.
+     */
+    @Property("cuba.binaryRemotingBindAddress")
+    String getBinaryRemotingBindAddress();
+
+    /**
+     * Maximum number of threads executing invocations received by the binary remoting transport.
+     */
+    @Property("cuba.binaryRemotingThreads")
+    @DefaultInt(100)
+    int getBinaryRemotingThreads();
+
+    /**
+     * Maximum number of invocations received by the binary remoting transport that wait for a free thread. Further
+     * invocations are rejected.
+     */
+    @Property("cuba.binaryRemotingQueueSize")
+    @DefaultInt(1000)
+    int getBinaryRemotingQueueSize();
+
+    /**
+     * Maximum number of clients connected to the binary remoting transport. Further clients are disconnected and
+     * use HTTP invoker.
+     */
+    @Property("cuba.binaryRemotingMaxConnections")
+    @DefaultInt(100)
+    int getBinaryRemotingMaxConnections();
+
+    /**
+     * Maximum size in bytes of a part of a result streamed by the binary remoting transport.
+     */
+    @Property("cuba.binaryRemotingChunkSize")
+    @DefaultInt(65536)
+    int getBinaryRemotingChunkSize();
+
+    /**
+     * Whether the binary remoting transport uses TLS. The key store is taken from the standard
+     * {@code javax.net.ssl.keyStore} system properties. Must be enabled if clients connect to the middleware by
+     * HTTPS, otherwise they use HTTP invoker.
+     */
+    @Property("cuba.binaryRemotingSsl")
+    @DefaultBoolean(false)
+    boolean getBinaryRemotingSsl();
+}
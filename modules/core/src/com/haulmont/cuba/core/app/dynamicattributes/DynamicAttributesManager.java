@@ -17,16 +17,19 @@
 
 package com.haulmont.cuba.core.app.dynamicattributes;
 
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.Query;
 import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.TypedQuery;
 import com.haulmont.cuba.core.app.ClusterListenerAdapter;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.entity.*;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.security.entity.EntityOp;
@@ -40,6 +43,8 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.*;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
@@ -48,8 +53,21 @@ import static java.lang.String.format;
 
 @Component(DynamicAttributesManagerAPI.NAME)
 public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
+    /**
+     * @deprecated the number of entities per query is defined by {@link ServerConfig#getDynamicAttributesLoadBatchSize()}
+     */
+    @Deprecated
     public static final int MAX_ENTITIES_FOR_ATTRIBUTE_VALUES_BATCH = 100;
 
+    protected static final String ATTRIBUTE_VALUES_SELECT = "select cav.id, cav.version, " +
+            "cav.createTs, cav.createdBy, cav.updateTs, cav.updatedBy, cav.categoryAttribute.id, cav.code, " +
+            "cav.stringValue, cav.intValue, cav.doubleValue, cav.decimalValue, cav.booleanValue, " +
+            "cav.dateValue, cav.dateWithoutTimeValue, " +
+            "cav.entity.entityId, cav.entity.stringEntityId, cav.entity.intEntityId, cav.entity.longEntityId, " +
+            "cav.entityValue.entityId, cav.entityValue.stringEntityId, cav.entityValue.intEntityId, cav.entityValue.longEntityId " +
+            "from sys$CategoryAttributeValue cav " +
+            "where cav.entity.%s in :ids and cav.parent is null and cav.deleteTs is null";
+
     private static final Logger log = LoggerFactory.getLogger(DynamicAttributesManager.class);
 
     @Inject
@@ -73,6 +91,9 @@ public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
     @Inject
     protected Security security;
 
+    @Inject
+    protected ServerConfig serverConfig;
+
     protected ClusterManagerAPI clusterManager;
 
     protected ReentrantLock loadCacheLock = new ReentrantLock();
@@ -360,30 +381,24 @@ public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
 
         List<Object> ids = entities.stream()
                 .map(e -> referenceToEntitySupport.getReferenceId(e))
+                .distinct()
                 .collect(Collectors.toList());
 
-        Multimap<Object, CategoryAttributeValue> allAttributeValues = HashMultimap.create();
+        Multimap<Object, CategoryAttributeValue> allAttributeValues = ArrayListMultimap.create();
 
-        List<Object> currentIds = new ArrayList<>();
-        for (Object id : ids) {
-            currentIds.add(id);
-            if (currentIds.size() >= MAX_ENTITIES_FOR_ATTRIBUTE_VALUES_BATCH) {
-                handleAttributeValuesForIds(metaClass, currentIds, allAttributeValues);
-                currentIds = new ArrayList<>();
-            }
+        int batchSize = Math.max(serverConfig.getDynamicAttributesLoadBatchSize(), 1);
+        for (int i = 0; i < ids.size(); i += batchSize) {
+            handleAttributeValuesForIds(metaClass, new ArrayList<>(ids.subList(i, Math.min(i + batchSize, ids.size()))), allAttributeValues);
         }
-        handleAttributeValuesForIds(metaClass, currentIds, allAttributeValues);
 
         for (BaseGenericIdEntity entity : entities) {
             Collection<CategoryAttributeValue> entityAttributeValues = allAttributeValues.get(referenceToEntitySupport.getReferenceId(entity));
-            Map<String, CategoryAttributeValue> map = new HashMap<>();
+            Map<String, CategoryAttributeValue> map = new DynamicAttributesMap(entityAttributeValues.size());
             entity.setDynamicAttributes(map);
-            if (CollectionUtils.isNotEmpty(entityAttributeValues)) {
-                for (CategoryAttributeValue categoryAttributeValue : entityAttributeValues) {
-                    CategoryAttribute attribute = categoryAttributeValue.getCategoryAttribute();
-                    if (attribute != null) {
-                        map.put(attribute.getCode(), categoryAttributeValue);
-                    }
+            for (CategoryAttributeValue categoryAttributeValue : entityAttributeValues) {
+                CategoryAttribute attribute = categoryAttributeValue.getCategoryAttribute();
+                if (attribute != null) {
+                    map.put(attribute.getCode(), categoryAttributeValue);
                 }
             }
         }
@@ -397,31 +412,38 @@ public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
         }
     }
 
+    /**
+     * Loads values of dynamic attributes for the given entities by a single query without joins.
+     * {@code CategoryAttribute} instances are taken from the dynamic attributes cache, values of attributes which
+     * are absent in the cache are skipped.
+     */
     protected List<CategoryAttributeValue> loadAttributeValues(MetaClass metaClass, List<Object> entityIds) {
+        Map<UUID, CategoryAttribute> attributesById = new HashMap<>();
+        Collection<CategoryAttribute> categoryAttributes = getAttributesForMetaClass(metaClass);
+        if (categoryAttributes != null) {
+            for (CategoryAttribute attribute : categoryAttributes) {
+                attributesById.put(attribute.getId(), attribute);
+            }
+        }
+
         List<CategoryAttributeValue> attributeValues = new ArrayList<>();
         try (Transaction tx = persistence.getTransaction()) {
             EntityManager em = persistence.getEntityManager();
 
-            View view = new View(viewRepository.getView(CategoryAttributeValue.class, View.LOCAL), null, false)
-                    .addProperty("categoryAttribute", new View(viewRepository.getView(CategoryAttribute.class, View.LOCAL), null, false)
-                            .addProperty("category")
-                            .addProperty("defaultEntity", viewRepository.getView(ReferenceToEntity.class, View.LOCAL)));
+            Query query = em.createQuery(format(ATTRIBUTE_VALUES_SELECT,
+                    referenceToEntitySupport.getReferenceIdPropertyName(metaClass)));
+            query.setParameter("ids", entityIds);
+
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = query.getResultList();
 
-            TypedQuery<CategoryAttributeValue> query;
-            if (HasUuid.class.isAssignableFrom(metaClass.getJavaClass())) {
-                query = em.createQuery(format("select cav from sys$CategoryAttributeValue cav where cav.entity.%s in :ids and cav.parent is null",
-                        referenceToEntitySupport.getReferenceIdPropertyName(metaClass)),
-                        CategoryAttributeValue.class);
-            } else {
-                query = em.createQuery(format("select cav from sys$CategoryAttributeValue cav where cav.entity.%s in :ids " +
-                                "and cav.categoryAttribute.categoryEntityType = :entityType and cav.parent is null",
-                        referenceToEntitySupport.getReferenceIdPropertyName(metaClass)),
-                        CategoryAttributeValue.class);
-                query.setParameter("entityType", metaClass.getName());
+            List<CategoryAttributeValue> resultList = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                CategoryAttribute attribute = attributesById.get((UUID) row[6]);
+                if (attribute != null) {
+                    resultList.add(createAttributeValue(row, attribute));
+                }
             }
-            query.setParameter("ids", entityIds);
-            query.setView(view);
-            List<CategoryAttributeValue> resultList = query.getResultList();
 
             List<CategoryAttributeValue> cavsOfEntityType = resultList.stream()
                     .filter(cav -> cav.getObjectEntityValueId() != null)
@@ -470,6 +492,45 @@ public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
         return attributeValues;
     }
 
+    /**
+     * Creates a detached {@code CategoryAttributeValue} from a row selected by {@link #ATTRIBUTE_VALUES_SELECT}.
+     * All persistent attributes except the parent are set, so the instance can be merged back as is.
+     */
+    protected CategoryAttributeValue createAttributeValue(Object[] row, CategoryAttribute attribute) {
+        CategoryAttributeValue cav = metadata.create(CategoryAttributeValue.class);
+        cav.setId((UUID) row[0]);
+        cav.setVersion((Integer) row[1]);
+        cav.setCreateTs((Date) row[2]);
+        cav.setCreatedBy((String) row[3]);
+        cav.setUpdateTs((Date) row[4]);
+        cav.setUpdatedBy((String) row[5]);
+        cav.setCategoryAttribute(attribute);
+        cav.setCode((String) row[7]);
+        cav.setStringValue((String) row[8]);
+        cav.setIntValue((Integer) row[9]);
+        cav.setDoubleValue((Double) row[10]);
+        cav.setDecimalValue((BigDecimal) row[11]);
+        cav.setBooleanValue((Boolean) row[12]);
+        cav.setDateValue((Date) row[13]);
+        cav.setDateWithoutTimeValue((LocalDate) row[14]);
+
+        ReferenceToEntity entity = cav.getEntity();
+        entity.setEntityId((UUID) row[15]);
+        entity.setStringEntityId((String) row[16]);
+        entity.setIntEntityId((Integer) row[17]);
+        entity.setLongEntityId((Long) row[18]);
+
+        ReferenceToEntity entityValue = cav.getEntityValue();
+        entityValue.setEntityId((UUID) row[19]);
+        entityValue.setStringEntityId((String) row[20]);
+        entityValue.setIntEntityId((Integer) row[21]);
+        entityValue.setLongEntityId((Long) row[22]);
+
+        BaseEntityInternalAccess.setNew(cav, false);
+        BaseEntityInternalAccess.setDetached(cav, true);
+        return cav;
+    }
+
     /**
      * Method loads entity values for CategoryAttributeValues of entity type and sets entity values to the corresponding
      * property of the {@code CategoryAttributeValue} entity.
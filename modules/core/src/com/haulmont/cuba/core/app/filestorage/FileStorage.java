@@ -24,8 +24,10 @@ import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.SecurityContext;
 import com.haulmont.cuba.security.global.UserSession;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,11 +37,18 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -59,8 +68,24 @@ public class FileStorage implements FileStorageAPI {
     @Inject
     protected Configuration configuration;
 
+    /**
+     * Suffix of the manifest file listing chunks of a file saved in the content-addressed mode.
+     */
+    public static final String MANIFEST_SUFFIX = ".chunks";
+
+    /**
+     * Name of the directory inside a storage root which contains content-addressed chunks.
+     */
+    public static final String CHUNKS_DIR = "chunks";
+
+    protected static final String MANIFEST_HEADER = "CUBA-CHUNKS 1";
+
     protected boolean isImmutableFileStorage;
 
+    protected boolean contentAddressed;
+
+    protected int chunkSize;
+
     protected ExecutorService writeExecutor = Executors.newFixedThreadPool(5,
             new ThreadFactoryBuilder().setNameFormat("FileStorageWriter-%d").build());
 
@@ -68,7 +93,10 @@ public class FileStorage implements FileStorageAPI {
 
     @PostConstruct
     public void init() {
-        this.isImmutableFileStorage = configuration.getConfig(ServerConfig.class).getImmutableFileStorage();
+        ServerConfig serverConfig = configuration.getConfig(ServerConfig.class);
+        this.isImmutableFileStorage = serverConfig.getImmutableFileStorage();
+        this.contentAddressed = serverConfig.getFileStorageContentAddressed();
+        this.chunkSize = serverConfig.getFileStorageChunkSize();
     }
 
     /**
@@ -116,6 +144,10 @@ public class FileStorage implements FileStorageAPI {
         final File file = new File(dir, getFileName(fileDescr));
         checkFileExists(file);
 
+        if (contentAddressed) {
+            return saveChunkedStream(roots, dir, fileDescr, inputStream);
+        }
+
         long size = 0;
         OutputStream os = null;
         try {
@@ -163,6 +195,137 @@ public class FileStorage implements FileStorageAPI {
         return size;
     }
 
+    /**
+     * Saves the stream as a manifest listing content-addressed chunks. Chunks which already exist in the storage
+     * are not written again.
+     */
+    protected long saveChunkedStream(File[] roots, File dir, FileDescriptor fileDescr, InputStream inputStream)
+            throws FileStorageException {
+        final File manifest = new File(dir, getFileName(fileDescr) + MANIFEST_SUFFIX);
+        checkFileExists(manifest);
+
+        List<Chunk> chunks = new ArrayList<>();
+        long size = 0;
+        byte[] buffer = new byte[Math.max(1, chunkSize)];
+        try {
+            MessageDigest digest = createDigest();
+            int read;
+            while ((read = IOUtils.read(inputStream, buffer)) > 0) {
+                digest.update(buffer, 0, read);
+                Chunk chunk = new Chunk(Hex.encodeHexString(digest.digest()), read);
+                writeChunk(roots[0], chunk, buffer);
+                chunks.add(chunk);
+                size += read;
+                if (read < buffer.length) {
+                    break;
+                }
+            }
+            writeManifest(manifest, chunks);
+            writeLog(manifest, false);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(manifest);
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, manifest.getAbsolutePath(), e);
+        }
+
+        // Copy missing chunks and the manifest to secondary storages asynchronously
+
+        final SecurityContext securityContext = AppContext.getSecurityContext();
+        for (int i = 1; i < roots.length; i++) {
+            final File root = roots[i];
+            if (!root.exists()) {
+                log.error("Error saving {} into {} : directory doesn't exist", fileDescr, root);
+                continue;
+            }
+
+            final File manifestCopy = new File(getStorageDir(root, fileDescr), manifest.getName());
+
+            writeExecutor.submit(() -> {
+                try {
+                    AppContext.setSecurityContext(securityContext);
+                    for (Chunk chunk : chunks) {
+                        File chunkCopy = getChunkFile(root, chunk.hash);
+                        if (!chunkCopy.exists()) {
+                            FileUtils.copyFile(getChunkFile(roots[0], chunk.hash), chunkCopy, true);
+                        }
+                    }
+                    FileUtils.copyFile(manifest, manifestCopy, true);
+                    writeLog(manifestCopy, false);
+                } catch (Exception e) {
+                    log.error("Error saving {} into {} : {}", fileDescr, manifestCopy.getAbsolutePath(), e.getMessage());
+                } finally {
+                    AppContext.setSecurityContext(null);
+                }
+            });
+        }
+
+        return size;
+    }
+
+    protected MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    protected void writeChunk(File root, Chunk chunk, byte[] data) throws IOException {
+        File file = getChunkFile(root, chunk.hash);
+        if (file.exists() && file.length() == chunk.length) {
+            // protect the existing chunk from removal by removeUnusedChunks()
+            file.setLastModified(System.currentTimeMillis());
+            return;
+        }
+        File chunkDir = file.getParentFile();
+        if (!chunkDir.exists() && !chunkDir.mkdirs() && !chunkDir.exists()) {
+            throw new IOException("Unable to create directory " + chunkDir);
+        }
+        File tmp = new File(chunkDir, chunk.hash + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (OutputStream os = new FileOutputStream(tmp)) {
+                os.write(data, 0, (int) chunk.length);
+            }
+            // a chunk written concurrently has the same content, and a chunk of a different length is incomplete
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            FileUtils.deleteQuietly(tmp);
+        }
+    }
+
+    protected void writeManifest(File manifest, List<Chunk> chunks) throws IOException {
+        StringBuilder sb = new StringBuilder(MANIFEST_HEADER).append("\n");
+        for (Chunk chunk : chunks) {
+            sb.append(chunk.hash).append(" ").append(chunk.length).append("\n");
+        }
+        FileUtils.writeStringToFile(manifest, sb.toString(), StandardCharsets.UTF_8);
+    }
+
+    protected List<Chunk> readManifest(File manifest) throws IOException {
+        List<String> lines = FileUtils.readLines(manifest, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !MANIFEST_HEADER.equals(lines.get(0))) {
+            throw new IOException("Invalid manifest " + manifest);
+        }
+        List<Chunk> chunks = new ArrayList<>(lines.size() - 1);
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            if (space < 0) {
+                throw new IOException("Invalid manifest " + manifest);
+            }
+            chunks.add(new Chunk(line.substring(0, space), Long.parseLong(line.substring(space + 1))));
+        }
+        return chunks;
+    }
+
+    /**
+     * INTERNAL. Don't use in application code.
+     */
+    public File getChunkFile(File rootDir, String hash) {
+        return new File(rootDir, CHUNKS_DIR + "/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash);
+    }
+
     protected void checkFileExists(File file) throws FileStorageException {
         if (file.exists() && isImmutableFileStorage)
             throw new FileStorageException(FileStorageException.Type.FILE_ALREADY_EXISTS, file.getAbsolutePath());
@@ -237,12 +400,14 @@ public class FileStorage implements FileStorageAPI {
 
         for (File root : roots) {
             File dir = getStorageDir(root, fileDescr);
-            File file = new File(dir, getFileName(fileDescr));
-            if (file.exists()) {
-                if (!file.delete()) {
-                    throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Unable to delete file " + file.getAbsolutePath());
-                } else {
-                    writeLog(file, true);
+            // chunks of a content-addressed file can be shared, they are removed by removeUnusedChunks()
+            for (File file : new File[]{new File(dir, getFileName(fileDescr)), getManifestFile(dir, fileDescr)}) {
+                if (file.exists()) {
+                    if (!file.delete()) {
+                        throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Unable to delete file " + file.getAbsolutePath());
+                    } else {
+                        writeLog(file, true);
+                    }
                 }
             }
         }
@@ -256,7 +421,13 @@ public class FileStorage implements FileStorageAPI {
 
     @Override
     public InputStream openStream(FileDescriptor fileDescr) throws FileStorageException {
+        return openStream(fileDescr, 0, Long.MAX_VALUE);
+    }
+
+    @Override
+    public InputStream openStream(FileDescriptor fileDescr, long offset, long length) throws FileStorageException {
         checkFileDescriptor(fileDescr);
+        checkRange(offset, length);
 
         File[] roots = getStorageRoots();
         if (roots.length == 0) {
@@ -268,6 +439,17 @@ public class FileStorage implements FileStorageAPI {
         for (File root : roots) {
             File dir = getStorageDir(root, fileDescr);
 
+            File manifest = getManifestFile(dir, fileDescr);
+            if (manifest.exists()) {
+                try {
+                    inputStream = new ChunkInputStream(getChunkFiles(root, readManifest(manifest)), offset, length);
+                    break;
+                } catch (IOException e) {
+                    log.error("Error opening input stream for " + manifest, e);
+                    continue;
+                }
+            }
+
             File file = new File(dir, getFileName(fileDescr));
             if (!file.exists()) {
                 log.error("File " + file + " not found");
@@ -275,7 +457,13 @@ public class FileStorage implements FileStorageAPI {
             }
 
             try {
-                inputStream = FileUtils.openInputStream(file);
+                if (offset == 0 && length == Long.MAX_VALUE) {
+                    inputStream = FileUtils.openInputStream(file);
+                } else {
+                    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                    channel.position(offset);
+                    inputStream = new BoundedInputStream(Channels.newInputStream(channel), length);
+                }
                 break;
             } catch (IOException e) {
                 log.error("Error opening input stream for " + file, e);
@@ -287,6 +475,89 @@ public class FileStorage implements FileStorageAPI {
             throw new FileStorageException(FileStorageException.Type.FILE_NOT_FOUND, fileDescr.getId().toString());
     }
 
+    @Override
+    public long transferTo(FileDescriptor fileDescr, long offset, long length, WritableByteChannel target)
+            throws FileStorageException {
+        checkFileDescriptor(fileDescr);
+        checkRange(offset, length);
+
+        for (File root : getStorageRoots()) {
+            File dir = getStorageDir(root, fileDescr);
+            List<File> files;
+            File manifest = getManifestFile(dir, fileDescr);
+            try {
+                if (manifest.exists()) {
+                    files = getChunkFiles(root, readManifest(manifest));
+                } else {
+                    File file = new File(dir, getFileName(fileDescr));
+                    if (!file.exists()) {
+                        log.error("File " + file + " not found");
+                        continue;
+                    }
+                    files = Collections.singletonList(file);
+                }
+            } catch (IOException e) {
+                log.error("Error reading " + manifest, e);
+                continue;
+            }
+
+            try {
+                return transferFiles(files, offset, length, target);
+            } catch (IOException e) {
+                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, fileDescr.getId().toString(), e);
+            }
+        }
+        throw new FileStorageException(FileStorageException.Type.FILE_NOT_FOUND, fileDescr.getId().toString());
+    }
+
+    /**
+     * Writes the range of the concatenated contents of the files to the channel using {@link FileChannel#transferTo}.
+     */
+    protected long transferFiles(List<File> files, long offset, long length, WritableByteChannel target) throws IOException {
+        long position = offset;
+        long remaining = length;
+        long transferred = 0;
+        for (File file : files) {
+            if (remaining <= 0) {
+                break;
+            }
+            long fileLength = file.length();
+            if (position >= fileLength) {
+                position -= fileLength;
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long count = Math.min(fileLength - position, remaining);
+                while (count > 0) {
+                    long n = channel.transferTo(position, count, target);
+                    if (n <= 0) {
+                        break;
+                    }
+                    position += n;
+                    count -= n;
+                    remaining -= n;
+                    transferred += n;
+                }
+            }
+            position = 0;
+        }
+        return transferred;
+    }
+
+    protected void checkRange(long offset, long length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range: offset=" + offset + ", length=" + length);
+        }
+    }
+
+    protected List<File> getChunkFiles(File root, List<Chunk> chunks) {
+        List<File> files = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            files.add(getChunkFile(root, chunk.hash));
+        }
+        return files;
+    }
+
     @Override
     public byte[] loadFile(FileDescriptor fileDescr) throws FileStorageException {
         InputStream inputStream = openStream(fileDescr);
@@ -307,13 +578,55 @@ public class FileStorage implements FileStorageAPI {
         for (File root : roots) {
             File dir = getStorageDir(root, fileDescr);
             File file = new File(dir, getFileName(fileDescr));
-            if (file.exists()) {
+            if (file.exists() || getManifestFile(dir, fileDescr).exists()) {
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * Deletes chunks which are not referenced by any manifest in the storage.
+     *
+     * @param minAge minimal age of a chunk file in milliseconds, protects chunks of files being saved concurrently
+     * @return number of deleted chunks
+     */
+    public int removeUnusedChunks(long minAge) {
+        int removed = 0;
+        long threshold = System.currentTimeMillis() - minAge;
+        for (File root : getStorageRoots()) {
+            File chunksDir = new File(root, CHUNKS_DIR);
+            if (!chunksDir.exists()) {
+                continue;
+            }
+            Set<String> used = new HashSet<>();
+            for (File manifest : FileUtils.listFiles(root, new String[]{MANIFEST_SUFFIX.substring(1)}, true)) {
+                try {
+                    for (Chunk chunk : readManifest(manifest)) {
+                        used.add(chunk.hash);
+                    }
+                } catch (IOException e) {
+                    log.error("Unable to read manifest {}, skip removing unused chunks in {}", manifest, root, e);
+                    used = null;
+                    break;
+                }
+            }
+            if (used == null) {
+                continue;
+            }
+            for (File chunk : FileUtils.listFiles(chunksDir, null, true)) {
+                if (!used.contains(chunk.getName()) && chunk.lastModified() < threshold) {
+                    if (chunk.delete()) {
+                        removed++;
+                    } else {
+                        log.warn("Unable to delete chunk {}", chunk);
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
     /**
      * INTERNAL. Don't use in application code.
      */
@@ -336,8 +649,102 @@ public class FileStorage implements FileStorageAPI {
         return fileDescriptor.getId().toString() + "." + fileDescriptor.getExtension();
     }
 
+    /**
+     * INTERNAL. Don't use in application code.
+     */
+    public File getManifestFile(File storageDir, FileDescriptor fileDescriptor) {
+        return new File(storageDir, getFileName(fileDescriptor) + MANIFEST_SUFFIX);
+    }
+
     @PreDestroy
     protected void stopWriteExecutor() {
         writeExecutor.shutdown();
     }
-}
\ No newline at end of file
+
+    protected static class Chunk {
+        protected final String hash;
+        protected final long length;
+
+        protected Chunk(String hash, long length) {
+            this.hash = hash;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Reads a range of the concatenated contents of chunk files. Chunks preceding the range are not opened.
+     */
+    protected static class ChunkInputStream extends InputStream {
+
+        protected final Iterator<File> files;
+        protected long position;
+        protected long remaining;
+        protected FileChannel channel;
+
+        public ChunkInputStream(List<File> files, long offset, long length) throws IOException {
+            this.files = files.iterator();
+            this.position = offset;
+            this.remaining = length;
+            for (File file : files) {
+                if (!file.exists()) {
+                    throw new FileNotFoundException(file.getAbsolutePath());
+                }
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (remaining > 0) {
+                if (channel == null && !openNext()) {
+                    return -1;
+                }
+                int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)));
+                if (n < 0) {
+                    closeChannel();
+                    continue;
+                }
+                remaining -= n;
+                return n;
+            }
+            return -1;
+        }
+
+        protected boolean openNext() throws IOException {
+            while (files.hasNext()) {
+                File file = files.next();
+                long fileLength = file.length();
+                if (position >= fileLength) {
+                    position -= fileLength;
+                    continue;
+                }
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                channel.position(position);
+                position = 0;
+                return true;
+            }
+            return false;
+        }
+
+        protected void closeChannel() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeChannel();
+        }
+    }
+}
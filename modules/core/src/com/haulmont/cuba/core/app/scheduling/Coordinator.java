@@ -43,4 +43,58 @@ public interface Coordinator {
     boolean isLastExecutionFinished(ScheduledTask task, long now);
 
     long getLastFinished(ScheduledTask task);
+
+    /**
+     * Loads active tasks without locking them. Used by the event-driven scheduling to refresh task definitions.
+     */
+    default List<ScheduledTask> loadTasks() {
+        Context context = begin();
+        end(context);
+        return context.getTasks();
+    }
+
+    /**
+     * Tries to obtain the exclusive right to start the singleton task in the cluster at the given time. Used by the
+     * event-driven scheduling instead of locking all tasks on each run.
+     * <p>
+     * The lease is granted if the task was not started by any server after {@code previousStartBefore}. In this case
+     * the last start time and server of the task are updated both in the storage and in the passed instance.
+     * Otherwise the passed instance receives the current last start time and server.
+     * <p>
+     * The default implementation locks the active tasks by {@link #begin()} and updates the locked instance, so
+     * the change is saved by {@link #end(Context)} as in the regular scheduling.
+     *
+     * @param task                singleton task
+     * @param startTime           start time of the current run
+     * @param previousStartBefore the lease is not granted if the task was started at this time or later
+     * @param serverId            current server
+     * @return true if the current server can start the task
+     */
+    default boolean acquireLease(ScheduledTask task, long startTime, long previousStartBefore, String serverId) {
+        Context context;
+        try {
+            context = begin();
+        } catch (SchedulingLockException e) {
+            return false;
+        }
+        try {
+            for (ScheduledTask locked : context.getTasks()) {
+                if (locked.getId().equals(task.getId())) {
+                    Date lastStartTime = locked.getLastStartTime();
+                    boolean granted = lastStartTime == null || lastStartTime.getTime() < previousStartBefore;
+                    if (granted) {
+                        locked.setLastStartTime(new Date(startTime));
+                        locked.setLastStartServer(serverId);
+                    }
+                    task.setLastStartTime(locked.getLastStartTime());
+                    task.setLastStartServer(locked.getLastStartServer());
+                    return granted;
+                }
+            }
+            // the task is not active anymore
+            return false;
+        } finally {
+            end(context);
+        }
+    }
 }
@@ -122,6 +122,48 @@ public class DbBasedCoordinator implements Coordinator {
         return date == null ? 0 : date.getTime();
     }
 
+    @Override
+    public List<ScheduledTask> loadTasks() {
+        try (Transaction tx = persistence.createTransaction()) {
+            List<ScheduledTask> tasks = persistence.getEntityManager()
+                    .createQuery("select t from sys$ScheduledTask t where t.active = true", ScheduledTask.class)
+                    .getResultList();
+            tx.commit();
+            return tasks;
+        }
+    }
+
+    @Override
+    public boolean acquireLease(ScheduledTask task, long startTime, long previousStartBefore, String serverId) {
+        try (Transaction tx = persistence.createTransaction()) {
+            EntityManager em = persistence.getEntityManager();
+            int updated = em.createQuery("update sys$ScheduledTask t set t.lastStartTime = :startTime, " +
+                    "t.lastStartServer = :server " +
+                    "where t.id = :id and (t.lastStartTime is null or t.lastStartTime < :previousStartBefore)")
+                    .setParameter("startTime", new Date(startTime))
+                    .setParameter("server", serverId)
+                    .setParameter("id", task.getId())
+                    .setParameter("previousStartBefore", new Date(previousStartBefore))
+                    .executeUpdate();
+            if (updated > 0) {
+                task.setLastStartTime(new Date(startTime));
+                task.setLastStartServer(serverId);
+            } else {
+                Object[] row = (Object[]) em.createQuery(
+                        "select t.lastStartTime, t.lastStartServer from sys$ScheduledTask t where t.id = :id")
+                        .setParameter("id", task.getId())
+                        .getFirstResult();
+                if (row != null) {
+                    task.setLastStartTime((Date) row[0]);
+                    task.setLastStartServer((String) row[1]);
+                }
+            }
+            tx.commit();
+            log.trace("{}: lease for {} {}", task, new Date(startTime), updated > 0 ? "acquired" : "rejected");
+            return updated > 0;
+        }
+    }
+
     protected synchronized List<ScheduledTask> getTasks() {
         log.trace("Read all active tasks from DB and lock them");
         EntityManager em = persistence.getEntityManager();
@@ -31,6 +31,8 @@ import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.SecurityContext;
 import com.haulmont.cuba.core.sys.events.AppContextStoppedEvent;
+import com.haulmont.cuba.core.sys.executors.AdmissionControlExecutor;
+import com.haulmont.cuba.core.sys.executors.VirtualThreadExecutors;
 import com.haulmont.cuba.security.app.UserSessionsAPI;
 import com.haulmont.cuba.security.auth.AuthenticationManager;
 import com.haulmont.cuba.security.auth.SystemUserCredentials;
@@ -92,20 +94,30 @@ public class RunnerBean implements Runner {
     @Inject
     protected Configuration configuration;
 
+    @Inject
+    protected ScheduledExecutionWriter executionWriter;
+
     protected Map<String, UUID> userSessionIds = new ConcurrentHashMap<>();
 
     @PostConstruct
     public void init() {
-        int nThreads = configuration.getConfig(ServerConfig.class).getSchedulingThreadPoolSize();
-        executorService = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
-            private final AtomicInteger threadNumber = new AtomicInteger(1);
-            @Override
-            public Thread newThread(@Nonnull Runnable r) {
-                Thread thread = new Thread(r, "ScheduledRunnerThread-" + threadNumber.getAndIncrement());
-                thread.setDaemon(true);
-                return thread;
-            }
-        });
+        ServerConfig serverConfig = configuration.getConfig(ServerConfig.class);
+        int nThreads = serverConfig.getSchedulingThreadPoolSize();
+        if (serverConfig.getSchedulingVirtualThreads()) {
+            // the pool size limits the number of concurrently running tasks
+            executorService = new AdmissionControlExecutor(
+                    VirtualThreadExecutors.newExecutor("ScheduledRunnerThread-"), nThreads, Integer.MAX_VALUE);
+        } else {
+            executorService = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger(1);
+                @Override
+                public Thread newThread(@Nonnull Runnable r) {
+                    Thread thread = new Thread(r, "ScheduledRunnerThread-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
     }
 
     @Override
@@ -176,6 +188,16 @@ public class RunnerBean implements Runner {
 
         log.trace("{}: registering execution start", task);
 
+        if (isExecutionLogBatched()) {
+            ScheduledExecution execution = metadata.create(ScheduledExecution.class);
+            execution.setTask(task);
+            execution.setStartTime(new Date(now));
+            execution.setServer(serverInfo.getServerId());
+            // the writer saves the execution in its own thread, so it receives a copy which is not changed later
+            executionWriter.registerStart(metadata.getTools().copy(execution), task);
+            return execution;
+        }
+
         Transaction tx = persistence.createTransaction();
         try {
             EntityManager em = persistence.getEntityManager();
@@ -200,21 +222,20 @@ public class RunnerBean implements Runner {
             return;
 
         log.trace("{}: registering execution finish", task);
+
+        if (isExecutionLogBatched()) {
+            execution.setFinishTime(timeSource.currentTimestamp());
+            execution.setResult(formatResult(result, manually));
+            executionWriter.registerFinish(metadata.getTools().copy(execution));
+            return;
+        }
+
         Transaction tx = persistence.createTransaction();
         try {
             EntityManager em = persistence.getEntityManager();
             execution = em.merge(execution);
             execution.setFinishTime(timeSource.currentTimestamp());
-
-            StringBuilder sb = new StringBuilder();
-            if (result != null) {
-                sb.append(result.toString());
-            }
-
-            if (manually) {
-                sb.append("\n{Executed manually}");
-            }
-            execution.setResult(sb.toString());
+            execution.setResult(formatResult(result, manually));
 
             tx.commit();
         } finally {
@@ -222,6 +243,22 @@ public class RunnerBean implements Runner {
         }
     }
 
+    protected String formatResult(Object result, boolean manually) {
+        StringBuilder sb = new StringBuilder();
+        if (result != null) {
+            sb.append(result.toString());
+        }
+
+        if (manually) {
+            sb.append("\n{Executed manually}");
+        }
+        return sb.toString();
+    }
+
+    protected boolean isExecutionLogBatched() {
+        return configuration.getConfig(ServerConfig.class).getSchedulingEventDriven();
+    }
+
     protected Object executeTask(ScheduledTask task) {
         switch (task.getDefinedBy()) {
             case BEAN: {
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app.scheduling;
+
+import com.haulmont.cuba.core.EntityManager;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.app.ServerConfig;
+import com.haulmont.cuba.core.entity.ScheduledExecution;
+import com.haulmont.cuba.core.entity.ScheduledTask;
+import com.haulmont.cuba.core.global.Configuration;
+import com.haulmont.cuba.core.sys.events.AppContextStoppedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.inject.Inject;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes {@link ScheduledExecution} records in batches, used by {@link RunnerBean} in the event-driven scheduling mode.
+ * <p>
+ * Registered starts and finishes are kept in memory and saved in one transaction every
+ * {@link ServerConfig#getSchedulingExecutionLogFlushInterval()} milliseconds or when
+ * {@link ServerConfig#getSchedulingExecutionLogBatchSize()} records are pending. If a task finishes before its start
+ * is saved, the execution is inserted once with both times. If a batch fails, its records are saved one by one and
+ * only the failing ones are dropped. If none of them can be saved, the batch is returned to the pending records and
+ * saved by the next flush, up to {@link #MAX_SAVE_ATTEMPTS} times.
+ * <p>
+ * The registered instances are saved in the flush thread, so the caller must not change them after registration.
+ * <p>
+ * Saved executions are remembered until they finish, or for {@link #STARTED_EXPIRATION_MS} if a task hangs. A finish
+ * registered after the execution has been forgotten is saved by merging the execution.
+ */
+@Component(ScheduledExecutionWriter.NAME)
+public class ScheduledExecutionWriter {
+
+    public static final String NAME = "cuba_ScheduledExecutionWriter";
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduledExecutionWriter.class);
+
+    protected static final int MAX_SAVE_ATTEMPTS = 10;
+
+    protected static final long STARTED_EXPIRATION_MS = TimeUnit.HOURS.toMillis(1);
+
+    @Inject
+    protected Persistence persistence;
+
+    @Inject
+    protected Configuration configuration;
+
+    protected static class PendingExecution {
+        protected final ScheduledExecution execution;
+        protected final UUID taskId;
+        protected final boolean saved;
+        protected final int attempts;
+
+        protected PendingExecution(ScheduledExecution execution, UUID taskId, boolean saved) {
+            this(execution, taskId, saved, 0);
+        }
+
+        protected PendingExecution(ScheduledExecution execution, UUID taskId, boolean saved, int attempts) {
+            this.execution = execution;
+            this.taskId = taskId;
+            this.saved = saved;
+            this.attempts = attempts;
+        }
+    }
+
+    protected final Map<UUID, PendingExecution> pending = new LinkedHashMap<>();
+    // executions which are saved but not finished yet
+    protected final Map<UUID, PendingExecution> started = new HashMap<>();
+
+    protected final Object flushLock = new Object();
+
+    protected volatile ScheduledExecutorService executor;
+
+    /**
+     * Registers the start of the execution. The execution must not be saved yet and must not be changed after the call.
+     */
+    public void registerStart(ScheduledExecution execution, ScheduledTask task) {
+        int size;
+        synchronized (this) {
+            pending.put(execution.getId(), new PendingExecution(execution, task.getId(), false));
+            size = pending.size();
+        }
+        afterRegister(size);
+    }
+
+    /**
+     * Registers the finish of the execution registered by {@link #registerStart(ScheduledExecution, ScheduledTask)}.
+     * The finish time and result must be already set, the execution must not be changed after the call.
+     */
+    public void registerFinish(ScheduledExecution execution) {
+        int size;
+        synchronized (this) {
+            PendingExecution registered = pending.get(execution.getId());
+            if (registered != null) {
+                pending.put(execution.getId(),
+                        new PendingExecution(execution, registered.taskId, registered.saved, registered.attempts));
+            } else {
+                PendingExecution savedExecution = started.remove(execution.getId());
+                if (savedExecution != null) {
+                    pending.put(execution.getId(), new PendingExecution(execution, savedExecution.taskId, true));
+                } else if (execution.getTask() != null) {
+                    // the start has been saved and expired
+                    pending.put(execution.getId(), new PendingExecution(execution, execution.getTask().getId(), true));
+                } else {
+                    log.warn("Start of {} is not registered", execution);
+                    return;
+                }
+            }
+            size = pending.size();
+        }
+        afterRegister(size);
+    }
+
+    /**
+     * Saves all pending records.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<PendingExecution> batch;
+            synchronized (this) {
+                expireStarted();
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+                for (PendingExecution item : batch) {
+                    if (item.execution.getFinishTime() == null) {
+                        // the finish will be merged by one of the next flushes
+                        started.put(item.execution.getId(), new PendingExecution(item.execution, item.taskId, true));
+                    }
+                }
+            }
+
+            log.trace("Saving {} scheduled executions", batch.size());
+            try {
+                save(batch);
+            } catch (RuntimeException e) {
+                if (batch.size() == 1) {
+                    log.error("Unable to save {}, it will be saved by the next flush", batch.get(0).execution, e);
+                    requeue(batch);
+                    return;
+                }
+                log.warn("Unable to save {} scheduled executions in one transaction, saving them one by one",
+                        batch.size(), e);
+                saveSeparately(batch);
+            }
+        }
+    }
+
+    protected void save(List<PendingExecution> items) {
+        try (Transaction tx = persistence.createTransaction()) {
+            EntityManager em = persistence.getEntityManager();
+            for (PendingExecution item : items) {
+                if (item.saved) {
+                    em.merge(item.execution);
+                } else {
+                    item.execution.setTask(em.getReference(ScheduledTask.class, item.taskId));
+                    em.persist(item.execution);
+                }
+            }
+            tx.commit();
+        }
+    }
+
+    /**
+     * Saves records of a failed batch each in its own transaction and drops the failing ones. If no record can be
+     * saved, the database is considered unavailable and the whole batch is returned to the pending records.
+     */
+    protected void saveSeparately(List<PendingExecution> batch) {
+        Map<PendingExecution, RuntimeException> failed = new LinkedHashMap<>();
+        for (PendingExecution item : batch) {
+            try {
+                save(Collections.singletonList(item));
+            } catch (RuntimeException e) {
+                failed.put(item, e);
+            }
+        }
+        if (failed.size() == batch.size()) {
+            log.error("Unable to save {} scheduled executions, they will be saved by the next flush",
+                    batch.size(), failed.values().iterator().next());
+            requeue(batch);
+            return;
+        }
+        synchronized (this) {
+            for (Map.Entry<PendingExecution, RuntimeException> entry : failed.entrySet()) {
+                log.error("Unable to save {}, the record is dropped", entry.getKey().execution, entry.getValue());
+                started.remove(entry.getKey().execution.getId());
+            }
+        }
+    }
+
+    /**
+     * Returns records of a failed batch to the pending ones, keeping finishes registered during the flush.
+     */
+    protected synchronized void requeue(List<PendingExecution> batch) {
+        for (PendingExecution item : batch) {
+            UUID id = item.execution.getId();
+            started.remove(id);
+            if (item.attempts + 1 >= MAX_SAVE_ATTEMPTS) {
+                log.error("Unable to save {} after {} attempts, the record is dropped", item.execution, MAX_SAVE_ATTEMPTS);
+                pending.remove(id);
+                continue;
+            }
+            // the finish registered after the batch was taken replaces the start
+            PendingExecution newer = pending.get(id);
+            ScheduledExecution execution = newer != null ? newer.execution : item.execution;
+            pending.put(id, new PendingExecution(execution, item.taskId, item.saved, item.attempts + 1));
+        }
+    }
+
+    @GuardedBy("this")
+    protected void expireStarted() {
+        long expirationTs = System.currentTimeMillis() - STARTED_EXPIRATION_MS;
+        for (Iterator<PendingExecution> it = started.values().iterator(); it.hasNext(); ) {
+            ScheduledExecution execution = it.next().execution;
+            if (execution.getStartTime() != null && execution.getStartTime().getTime() < expirationTs) {
+                log.debug("{} is not finished for a long time, forgetting it", execution);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return number of records waiting to be saved
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    @EventListener(AppContextStoppedEvent.class)
+    protected void applicationStopped() {
+        ScheduledExecutorService executor = this.executor;
+        if (executor != null) {
+            executor.shutdown();
+        }
+        flush();
+    }
+
+    protected void afterRegister(int pendingSize) {
+        ScheduledExecutorService executor = getExecutor();
+        if (pendingSize >= configuration.getConfig(ServerConfig.class).getSchedulingExecutionLogBatchSize()) {
+            try {
+                executor.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flush();
+            }
+        }
+    }
+
+    protected ScheduledExecutorService getExecutor() {
+        ScheduledExecutorService result = executor;
+        if (result == null) {
+            synchronized (this) {
+                result = executor;
+                if (result == null) {
+                    result = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "ScheduledExecutionWriter");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    long interval = configuration.getConfig(ServerConfig.class).getSchedulingExecutionLogFlushInterval();
+                    result.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+                    executor = result;
+                }
+            }
+        }
+        return result;
+    }
+}
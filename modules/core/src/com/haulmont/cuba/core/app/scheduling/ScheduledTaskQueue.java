@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app.scheduling;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Queue of scheduled tasks ordered by the next fire time, used by {@link Scheduling} in the event-driven mode.
+ * <p>
+ * Each task has at most one pending fire time. The dispatcher thread sleeps in {@link #awaitDue(long)} until the
+ * earliest fire time comes or the queue head is changed.
+ */
+public class ScheduledTaskQueue {
+
+    /**
+     * Pending fire of a task.
+     */
+    public static class Entry implements Comparable<Entry> {
+
+        protected final UUID taskId;
+        protected final long fireTime;
+        protected final long seq;
+
+        protected Entry(UUID taskId, long fireTime, long seq) {
+            this.taskId = taskId;
+            this.fireTime = fireTime;
+            this.seq = seq;
+        }
+
+        public UUID getTaskId() {
+            return taskId;
+        }
+
+        /**
+         * @return time when the task should start, can be in the past if the task is late
+         */
+        public long getFireTime() {
+            return fireTime;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            int result = Long.compare(fireTime, o.fireTime);
+            return result != 0 ? result : Long.compare(seq, o.seq);
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{taskId=" + taskId + ", fireTime=" + new Date(fireTime) + '}';
+        }
+    }
+
+    protected final LongSupplier clock;
+
+    protected final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    // current entry of each task, entries of the queue which are not here are stale and skipped
+    protected final Map<UUID, Entry> entries = new HashMap<>();
+
+    protected final ReentrantLock lock = new ReentrantLock();
+    protected final Condition changed = lock.newCondition();
+
+    protected long seq;
+
+    /**
+     * @param clock source of the current time in milliseconds
+     */
+    public ScheduledTaskQueue(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Sets the next fire time of the task replacing the previous one.
+     */
+    public void schedule(UUID taskId, long fireTime) {
+        lock.lock();
+        try {
+            Entry entry = new Entry(taskId, fireTime, seq++);
+            entries.put(taskId, entry);
+            queue.add(entry);
+            if (queue.peek() == entry) {
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the pending fire of the task.
+     */
+    public void remove(UUID taskId) {
+        lock.lock();
+        try {
+            entries.remove(taskId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all pending fires.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            queue.clear();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return next fire time of the task or null if the task is not scheduled
+     */
+    @Nullable
+    public Long getFireTime(UUID taskId) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(taskId);
+            return entry != null ? entry.fireTime : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of scheduled tasks
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the earliest fire time comes and removes the due entries from the queue.
+     *
+     * @param maxWait maximum time to wait in milliseconds
+     * @return entries which are due, ordered by fire time, or an empty list if the waiting time elapsed
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public List<Entry> awaitDue(long maxWait) throws InterruptedException {
+        lock.lock();
+        try {
+            long deadline = clock.getAsLong() + maxWait;
+            while (true) {
+                long now = clock.getAsLong();
+                List<Entry> due = pollDue(now);
+                if (!due.isEmpty()) {
+                    return due;
+                }
+                if (now >= deadline) {
+                    return Collections.emptyList();
+                }
+                Entry head = peekCurrent();
+                long wakeUpTime = head != null ? Math.min(head.fireTime, deadline) : deadline;
+                changed.await(wakeUpTime - now, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected List<Entry> pollDue(long now) {
+        List<Entry> due = null;
+        Entry head;
+        while ((head = peekCurrent()) != null && head.fireTime <= now) {
+            queue.poll();
+            entries.remove(head.taskId);
+            if (due == null) {
+                due = new ArrayList<>();
+            }
+            due.add(head);
+        }
+        return due != null ? due : Collections.emptyList();
+    }
+
+    @Nullable
+    protected Entry peekCurrent() {
+        Entry head;
+        while ((head = queue.peek()) != null && entries.get(head.taskId) != head) {
+            queue.poll();
+        }
+        return head;
+    }
+}
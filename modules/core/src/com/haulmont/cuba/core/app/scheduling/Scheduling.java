@@ -18,6 +18,8 @@
 package com.haulmont.cuba.core.app.scheduling;
 
 import com.google.common.collect.ImmutableList;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
 import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.app.ServerInfoAPI;
@@ -28,6 +30,7 @@ import com.haulmont.cuba.core.global.Configuration;
 import com.haulmont.cuba.core.global.RunTaskOnceException;
 import com.haulmont.cuba.core.global.TimeSource;
 import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.events.AppContextStoppedEvent;
 import com.haulmont.cuba.security.app.Authentication;
 import com.haulmont.cuba.security.app.UserSessionsAPI;
 import com.haulmont.cuba.security.global.LoginException;
@@ -38,6 +41,7 @@ import org.perf4j.StopWatch;
 import org.perf4j.slf4j.Slf4JStopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.support.CronSequenceGenerator;
 import org.springframework.stereotype.Component;
 
@@ -49,6 +53,13 @@ import java.util.concurrent.ConcurrentMap;
 
 /**
  * Class that manages {@link ScheduledTask}s in distributed environment.
+ * <p>
+ * By default all active tasks are checked on each {@link #processScheduledTasks()} call. If
+ * {@link ServerConfig#getSchedulingEventDriven()} is set, tasks are kept in a {@link ScheduledTaskQueue} ordered by
+ * the next fire time and started by a dispatcher thread which sleeps until the earliest one. In this mode
+ * {@link #processScheduledTasks()} only reloads task definitions every
+ * {@link ServerConfig#getSchedulingTasksRefreshInterval()} milliseconds, and singleton tasks are coordinated by
+ * {@link Coordinator#acquireLease(ScheduledTask, long, long, String)} instead of locking all tasks.
  */
 @Component(SchedulingAPI.NAME)
 public class Scheduling implements SchedulingAPI {
@@ -82,6 +93,9 @@ public class Scheduling implements SchedulingAPI {
     @Inject
     protected ServerInfoService serverInfoService;
 
+    @Inject
+    protected Persistence persistence;
+
     protected ConcurrentMap<ScheduledTask, Long> runningTasks = new ConcurrentHashMap<>();
 
     protected Map<ScheduledTask, Long> lastStartCache = new ConcurrentHashMap<>();
@@ -90,6 +104,15 @@ public class Scheduling implements SchedulingAPI {
 
     protected volatile long schedulingStartTime;
 
+    protected final ScheduledTaskQueue taskQueue = new ScheduledTaskQueue(() -> timeSource.currentTimeMillis());
+
+    // tasks of the event-driven mode by id
+    protected final Map<UUID, ScheduledTask> queuedTasks = new ConcurrentHashMap<>();
+
+    protected volatile Thread dispatcherThread;
+
+    protected volatile long lastTasksRefreshTime;
+
     @Override
     public void processScheduledTasks() {
         if (AppContext.isStarted()) {
@@ -99,13 +122,27 @@ public class Scheduling implements SchedulingAPI {
 
     @Override
     public void processScheduledTasks(boolean onlyIfActive) {
-        if (onlyIfActive && !isActive())
+        boolean eventDriven = isEventDriven();
+        if (!eventDriven && dispatcherThread != null) {
+            stopDispatcher();
+        }
+
+        if (onlyIfActive && !isActive()) {
+            if (dispatcherThread != null) {
+                stopDispatcher();
+            }
             return;
+        }
 
         log.debug("Processing scheduled tasks");
         if (schedulingStartTime == 0)
             schedulingStartTime = timeSource.currentTimeMillis();
 
+        if (eventDriven) {
+            processEventDriven(!onlyIfActive);
+            return;
+        }
+
         authentication.begin();
         try {
             StopWatch sw = new Slf4JStopWatch("Scheduling.processTasks");
@@ -146,7 +183,15 @@ public class Scheduling implements SchedulingAPI {
 
     @Override
     public void setFinished(ScheduledTask task) {
-        lastFinishCache.put(task, timeSource.currentTimeMillis());
+        long now = timeSource.currentTimeMillis();
+        lastFinishCache.put(task, now);
+
+        if (SchedulingType.FIXED_DELAY == task.getSchedulingType() && dispatcherThread != null) {
+            ScheduledTask queuedTask = queuedTasks.get(task.getId());
+            if (queuedTask != null) {
+                scheduleNext(queuedTask, now);
+            }
+        }
     }
 
     @Override
@@ -184,6 +229,273 @@ public class Scheduling implements SchedulingAPI {
         return configuration.getConfig(ServerConfig.class).getSchedulingInterval();
     }
 
+    protected boolean isEventDriven() {
+        return configuration.getConfig(ServerConfig.class).getSchedulingEventDriven();
+    }
+
+    protected long getTasksRefreshInterval() {
+        return configuration.getConfig(ServerConfig.class).getSchedulingTasksRefreshInterval();
+    }
+
+    protected void processEventDriven(boolean forceRefresh) {
+        long now = timeSource.currentTimeMillis();
+        if (forceRefresh || dispatcherThread == null || now - lastTasksRefreshTime >= getTasksRefreshInterval()) {
+            lastTasksRefreshTime = now;
+            refreshTasks(now);
+        }
+        startDispatcher();
+    }
+
+    /**
+     * Reloads active tasks and updates the queue: new and modified tasks are scheduled, removed and deactivated
+     * tasks are dropped.
+     */
+    protected void refreshTasks(long now) {
+        authentication.begin();
+        try {
+            StopWatch sw = new Slf4JStopWatch("Scheduling.refreshTasks");
+            List<ScheduledTask> tasks = coordinator.loadTasks();
+
+            Set<UUID> ids = new HashSet<>();
+            for (ScheduledTask task : tasks) {
+                ids.add(task.getId());
+                ScheduledTask queuedTask = queuedTasks.get(task.getId());
+                if (queuedTask == null || !Objects.equals(queuedTask.getUpdateTs(), task.getUpdateTs())) {
+                    log.trace("{}: scheduling", task);
+                    queuedTasks.put(task.getId(), task);
+                    if (!isRunning(task)) {
+                        scheduleNext(task, now);
+                    }
+                } else if (task.getLastStart() > queuedTask.getLastStart()) {
+                    queuedTask.setLastStartTime(task.getLastStartTime());
+                    queuedTask.setLastStartServer(task.getLastStartServer());
+                }
+            }
+            for (UUID id : new ArrayList<>(queuedTasks.keySet())) {
+                if (!ids.contains(id)) {
+                    queuedTasks.remove(id);
+                    taskQueue.remove(id);
+                }
+            }
+            sw.stop();
+        } finally {
+            authentication.end();
+        }
+    }
+
+    protected void scheduleNext(ScheduledTask task, long now) {
+        scheduleNext(task, now, 0);
+    }
+
+    /**
+     * @param skippedStart start time of the run which was processed but not necessarily started by this server,
+     *                     the next start is calculated after it
+     */
+    protected void scheduleNext(ScheduledTask task, long now, long skippedStart) {
+        long lastStart;
+        long lastFinish = lastFinishCache.getOrDefault(task, 0L);
+        if (BooleanUtils.isTrue(task.getSingleton())) {
+            lastStart = task.getLastStart();
+        } else {
+            lastStart = lastStartCache.getOrDefault(task, 0L);
+        }
+        lastStart = Math.max(lastStart, skippedStart);
+
+        long startTime = calculateNextStartTime(task, lastStart, lastFinish, now);
+        if (startTime == Long.MAX_VALUE) {
+            log.warn("{}: unable to calculate the next start time, check the task settings", task);
+            taskQueue.remove(task.getId());
+            return;
+        }
+        // servers with lower priority try to start singleton tasks later to give a chance to the preferred ones
+        long fireTime = startTime + getPriorityDelay(task, getServerPriority(task, serverInfo.getServerId()));
+        log.trace("{}: next start at {}", task, new Date(startTime));
+        taskQueue.schedule(task.getId(), fireTime);
+    }
+
+    /**
+     * Calculates when the task should start next time. The result can be in the past if the task is late but still
+     * in its time frame.
+     *
+     * @return start time in milliseconds or {@code Long.MAX_VALUE} if the task cannot be scheduled
+     */
+    protected long calculateNextStartTime(ScheduledTask task, long lastStart, long lastFinish, long now) {
+        long period = task.getPeriod() != null ? task.getPeriod() * 1000 : 0;
+        long frame = getTimeFrame(task, period);
+
+        long notBefore = now;
+        if (task.getStartDelay() != null) {
+            notBefore = Math.max(notBefore, schedulingStartTime + task.getStartDelay() * 1000);
+        }
+        if (task.getStartDate() != null) {
+            notBefore = Math.max(notBefore, task.getStartDate().getTime());
+        }
+
+        if (SchedulingType.CRON == task.getSchedulingType()) {
+            if (StringUtils.isBlank(task.getCron())) {
+                return Long.MAX_VALUE;
+            }
+            long currentStart = calculateNextCronDate(task, lastStart, notBefore, frame);
+            if (currentStart > notBefore || needToStartInTimeFrame(notBefore, frame, lastStart, currentStart)) {
+                return currentStart;
+            }
+            CronSequenceGenerator cronSequenceGenerator = new CronSequenceGenerator(task.getCron(), getCurrentTimeZone());
+            return cronSequenceGenerator.next(new Date(notBefore)).getTime();
+        }
+
+        if (period <= 0) {
+            return Long.MAX_VALUE;
+        }
+
+        if (SchedulingType.FIXED_DELAY == task.getSchedulingType()) {
+            long start;
+            if (lastFinish > 0 && lastFinish >= lastStart) {
+                start = lastFinish + period;
+            } else if (lastStart > 0) {
+                // the task was started by another server, its finish time is unknown
+                start = lastStart + period;
+            } else {
+                start = notBefore;
+            }
+            return Math.max(start, notBefore);
+        }
+
+        if (task.getStartDate() != null) {
+            long currentStart = calculateNextPeriodDate(task, lastStart, notBefore, frame, period);
+            if (needToStartInTimeFrame(notBefore, frame, lastStart, currentStart)) {
+                return currentStart;
+            }
+            return currentStart + period;
+        }
+        return lastStart > 0 ? Math.max(lastStart + period, notBefore) : notBefore;
+    }
+
+    protected long getTimeFrame(ScheduledTask task, long period) {
+        long frame = task.getTimeFrame() != null ? task.getTimeFrame() * 1000 : period / 2;
+        if (frame == 0) {//for cron tasks, where period is null we set default frame as scheduling interval
+            frame = getSchedulingInterval();
+        }
+        return frame;
+    }
+
+    protected long getPriorityDelay(ScheduledTask task, @Nullable Integer serverPriority) {
+        if (!BooleanUtils.isTrue(task.getSingleton()) || serverPriority == null || serverPriority <= 1) {
+            return 0;
+        }
+        return (serverPriority - 1) * getSchedulingInterval();
+    }
+
+    /**
+     * Minimal distance between starts of the task on different servers, used to reject the lease for a run which
+     * was already started by another server.
+     */
+    protected long getLeaseGap(ScheduledTask task) {
+        long period = task.getPeriod() != null ? task.getPeriod() * 1000 : 0;
+        return Math.max(getTimeFrame(task, period) / 2, 1);
+    }
+
+    protected synchronized void startDispatcher() {
+        if (dispatcherThread != null) {
+            return;
+        }
+        Thread thread = new Thread(this::dispatchTasks, "ScheduledTasksDispatcher");
+        thread.setDaemon(true);
+        dispatcherThread = thread;
+        thread.start();
+        log.info("Started event-driven scheduling of {} tasks", queuedTasks.size());
+    }
+
+    protected synchronized void stopDispatcher() {
+        Thread thread = dispatcherThread;
+        if (thread != null) {
+            dispatcherThread = null;
+            thread.interrupt();
+            log.info("Stopped event-driven scheduling");
+        }
+        taskQueue.clear();
+        queuedTasks.clear();
+        lastTasksRefreshTime = 0;
+    }
+
+    @EventListener(AppContextStoppedEvent.class)
+    protected void applicationStopped() {
+        stopDispatcher();
+    }
+
+    protected void dispatchTasks() {
+        Thread currentThread = Thread.currentThread();
+        while (dispatcherThread == currentThread) {
+            try {
+                List<ScheduledTaskQueue.Entry> dueEntries = taskQueue.awaitDue(getTasksRefreshInterval());
+                for (ScheduledTaskQueue.Entry entry : dueEntries) {
+                    if (dispatcherThread != currentThread) {
+                        break;
+                    }
+                    ScheduledTask task = queuedTasks.get(entry.getTaskId());
+                    if (task != null) {
+                        fireTask(task, entry.getFireTime());
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Throwable throwable) {
+                log.error("Error dispatching scheduled tasks", throwable);
+            }
+        }
+    }
+
+    protected void fireTask(ScheduledTask task, long fireTime) {
+        long now = timeSource.currentTimeMillis();
+        long startTime = fireTime;
+        boolean scheduleNext = true;
+        authentication.begin();
+        try {
+            String me = serverInfo.getServerId();
+            Integer serverPriority = getServerPriority(task, me);
+            startTime = fireTime - getPriorityDelay(task, serverPriority);
+            if (serverPriority == null) {
+                log.trace("{}: not in permitted hosts or not a master", task);
+            } else if (isRunning(task)) {
+                log.trace("{} is running", task);
+                if (SchedulingType.FIXED_DELAY == task.getSchedulingType()) {
+                    // rescheduled when finished, the queued time is used only if the task hangs
+                    long period = task.getPeriod() != null ? task.getPeriod() * 1000 : 0;
+                    taskQueue.schedule(task.getId(), now + Math.max(getTimeFrame(task, period), 1));
+                    scheduleNext = false;
+                }
+            } else if (BooleanUtils.isTrue(task.getSingleton())) {
+                if (acquireLease(task, startTime, now, me)) {
+                    runner.runTask(task, now, getUserSession(task));
+                    scheduleNext = SchedulingType.FIXED_DELAY != task.getSchedulingType();
+                }
+            } else {
+                runTask(task, now);
+                scheduleNext = SchedulingType.FIXED_DELAY != task.getSchedulingType();
+            }
+        } catch (Throwable throwable) {
+            log.error("Unable to process " + task, throwable);
+        } finally {
+            authentication.end();
+        }
+
+        if (scheduleNext && queuedTasks.containsKey(task.getId())) {
+            scheduleNext(task, Math.max(now, fireTime), startTime);
+        }
+    }
+
+    protected boolean acquireLease(ScheduledTask task, long startTime, long now, String me) {
+        try (Transaction tx = persistence.createTransaction()) {
+            if (task.getLastStart() > 0 && lastServerWasNotMe(task, me)
+                    && !coordinator.isLastExecutionFinished(task, now)) {
+                log.trace("{}\n not finished", task);
+                tx.commit();
+                return false;
+            }
+            tx.commit();
+        }
+        return coordinator.acquireLease(task, now, startTime - getLeaseGap(task), me);
+    }
+
     protected void processTask(ScheduledTask task) {
         if (isRunning(task)) {
             log.trace("{} is running", task);
@@ -200,10 +512,7 @@ public class Scheduling implements SchedulingAPI {
                 return;
 
             long period = task.getPeriod() != null ? task.getPeriod() * 1000 : 0;
-            long frame = task.getTimeFrame() != null ? task.getTimeFrame() * 1000 : period / 2;
-            if (frame == 0) {//for cron tasks, where period is null we set default frame as scheduling interval
-                frame = getSchedulingInterval();
-            }
+            long frame = getTimeFrame(task, period);
 
             if (BooleanUtils.isTrue(task.getSingleton())) {
                 if (task.getStartDate() != null || SchedulingType.CRON == task.getSchedulingType()) {
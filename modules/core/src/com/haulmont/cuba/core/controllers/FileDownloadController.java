@@ -20,6 +20,7 @@ import com.haulmont.bali.util.URLEncodeUtils;
 import com.haulmont.cuba.core.app.DataService;
 import com.haulmont.cuba.core.app.FileStorageAPI;
 import com.haulmont.cuba.core.entity.FileDescriptor;
+import com.haulmont.cuba.core.global.ByteRange;
 import com.haulmont.cuba.core.global.FileStorageException;
 import com.haulmont.cuba.core.global.FileTypesHelper;
 import com.haulmont.cuba.core.global.LoadContext;
@@ -42,6 +43,7 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.util.UUID;
 
 /**
@@ -85,6 +87,15 @@ public class FileDownloadController {
             response.setIntHeader("Expires", -1);
             response.setHeader("Content-Type", FileTypesHelper.DEFAULT_MIME_TYPE);
 
+            if (fd != null && fd.getSize() != null) {
+                response.setHeader("Accept-Ranges", "bytes");
+                String rangeHeader = request.getHeader("Range");
+                if (rangeHeader != null) {
+                    downloadRange(fd, rangeHeader, response);
+                    return;
+                }
+            }
+
             InputStream is = null;
             ServletOutputStream os = null;
             try {
@@ -107,6 +118,42 @@ public class FileDownloadController {
         }
     }
 
+    protected void downloadRange(FileDescriptor fd, String rangeHeader, HttpServletResponse response) throws IOException {
+        long size = fd.getSize();
+        ByteRange range;
+        try {
+            range = ByteRange.parse(rangeHeader, size);
+        } catch (IllegalArgumentException e) {
+            response.setHeader("Content-Range", ByteRange.unsatisfiedContentRangeHeader(size));
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        if (range == null) {
+            range = new ByteRange(0, size);
+        } else {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", range.toContentRangeHeader(size));
+        }
+        response.setHeader("Content-Length", String.valueOf(range.getLength()));
+
+        ServletOutputStream os = null;
+        try {
+            os = response.getOutputStream();
+            fileStorage.transferTo(fd, range.getOffset(), range.getLength(), Channels.newChannel(os));
+            os.flush();
+        } catch (FileStorageException e) {
+            log.error("Unable to download file", e);
+            if (!response.isCommitted())
+                response.sendError(e.getType().getHttpStatus());
+        } catch (Exception ex) {
+            log.error("Unable to download file", ex);
+            if (!response.isCommitted())
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } finally {
+            IOUtils.closeQuietly(os);
+        }
+    }
+
     protected UserSession getSession(HttpServletRequest request, HttpServletResponse response) throws IOException {
         UUID sessionId;
         try {
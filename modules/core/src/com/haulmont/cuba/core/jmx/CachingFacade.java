@@ -16,6 +16,7 @@
  */
 package com.haulmont.cuba.core.jmx;
 
+import com.google.common.cache.CacheStats;
 import com.haulmont.cuba.core.app.ConfigStorageAPI;
 import com.haulmont.cuba.core.app.dynamicattributes.DynamicAttributesManagerAPI;
 import com.haulmont.cuba.core.global.Messages;
@@ -23,6 +24,7 @@ import com.haulmont.cuba.core.global.Scripting;
 import com.haulmont.cuba.core.global.ViewRepository;
 import com.haulmont.cuba.core.sys.AbstractViewRepository;
 import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.FetchGroupManager;
 import com.haulmont.cuba.security.app.EntityLogAPI;
 
 import org.springframework.stereotype.Component;
@@ -49,6 +51,9 @@ public class CachingFacade implements CachingFacadeMBean {
     @Inject
     protected DynamicAttributesManagerAPI dynamicAttributesManagerAPI;
 
+    @Inject
+    protected FetchGroupManager fetchGroupManager;
+
     @Override
     public int getMessagesCacheSize() {
         return messages.getCacheSize();
@@ -88,4 +93,26 @@ public class CachingFacade implements CachingFacadeMBean {
     public void clearViewRepositoryCache() {
         ((AbstractViewRepository) viewRepository).reset();
     }
-}
\ No newline at end of file
+
+    @Override
+    public long getFetchGroupCacheSize() {
+        return fetchGroupManager.getCacheSize();
+    }
+
+    @Override
+    public long getFetchGroupCacheHitCount() {
+        CacheStats stats = fetchGroupManager.getCacheStats();
+        return stats == null ? 0 : stats.hitCount();
+    }
+
+    @Override
+    public long getFetchGroupCacheMissCount() {
+        CacheStats stats = fetchGroupManager.getCacheStats();
+        return stats == null ? 0 : stats.missCount();
+    }
+
+    @Override
+    public void clearFetchGroupCache() {
+        fetchGroupManager.clearCache();
+    }
+}
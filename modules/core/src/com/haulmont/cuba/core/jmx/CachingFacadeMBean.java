@@ -33,4 +33,12 @@ public interface CachingFacadeMBean {
     void clearDynamicAttributesCache();
 
     void clearSystemPropertiesCache();
+
+    long getFetchGroupCacheSize();
+
+    long getFetchGroupCacheHitCount();
+
+    long getFetchGroupCacheMissCount();
+
+    void clearFetchGroupCache();
 }
\ No newline at end of file
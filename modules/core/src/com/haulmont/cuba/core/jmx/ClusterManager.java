@@ -111,4 +111,14 @@ public class ClusterManager implements ClusterManagerMBean {
     public long getReceivedBytes(String className) {
         return className == null ? -1 : clusterManager.getReceivedBytes(className);
     }
+
+    @Override
+    public long getBatchedMessages(String className) {
+        return className == null ? -1 : clusterManager.getBatchedMessages(className);
+    }
+
+    @Override
+    public long getCoalescedMessages(String className) {
+        return className == null ? -1 : clusterManager.getCoalescedMessages(className);
+    }
 }
@@ -78,4 +78,10 @@ public interface ClusterManagerMBean {
 
     @ManagedOperation(description = "Get received bytes for specified class")
     long getReceivedBytes(String className);
+
+    @ManagedOperation(description = "Get count of messages of specified class sent in batches")
+    long getBatchedMessages(String className);
+
+    @ManagedOperation(description = "Get count of messages of specified class superseded by newer messages in batches")
+    long getCoalescedMessages(String className);
 }
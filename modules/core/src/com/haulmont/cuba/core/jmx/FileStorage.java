@@ -27,6 +27,7 @@ import com.haulmont.cuba.core.entity.FileDescriptor;
 import com.haulmont.cuba.core.global.AppBeans;
 import com.haulmont.cuba.core.global.FileStorageException;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.springframework.stereotype.Component;
 
@@ -36,6 +37,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Component("cuba_FileStorageMBean")
 public class FileStorage implements FileStorageMBean {
@@ -76,7 +78,7 @@ public class FileStorage implements FileStorageMBean {
             for (FileDescriptor fileDescriptor : fileDescriptors) {
                 File dir = fileStorage.getStorageDir(roots[0], fileDescriptor);
                 File file = new File(dir, com.haulmont.cuba.core.app.filestorage.FileStorage.getFileName(fileDescriptor));
-                if (!file.exists()) {
+                if (!file.exists() && !fileStorage.getManifestFile(dir, fileDescriptor).exists()) {
                     sb.append(fileDescriptor.getId())
                             .append(", ")
                             .append(fileDescriptor.getName())
@@ -116,6 +118,9 @@ public class FileStorage implements FileStorageMBean {
         Collection<File> filesInRootFolder = FileUtils.listFiles(storageFolder, null, false);
         //remove files of root storage folder (e.g. storage.log) from files collection
         systemFiles.removeAll(filesInRootFolder);
+        //remove chunks of the content-addressed storage, they are checked by removeUnusedChunks()
+        File chunksFolder = new File(storageFolder, com.haulmont.cuba.core.app.filestorage.FileStorage.CHUNKS_DIR);
+        systemFiles.removeIf(file -> file.toPath().startsWith(chunksFolder.toPath()));
 
         List<FileDescriptor> fileDescriptors;
         Transaction tx = persistence.createTransaction();
@@ -136,7 +141,9 @@ public class FileStorage implements FileStorageMBean {
         }
 
         for (File file : systemFiles) {
-            if (!descriptorsFileNames.contains(file.getName()))
+            String fileName = StringUtils.removeEnd(file.getName(),
+                    com.haulmont.cuba.core.app.filestorage.FileStorage.MANIFEST_SUFFIX);
+            if (!descriptorsFileNames.contains(fileName))
                 //Encode file path if it contains non-ASCII characters
                 if (!file.getPath().matches("\\p{ASCII}+")) {
                     String encodedFilePath = URLEncodeUtils.encodeUtf8(file.getPath());
@@ -148,4 +155,19 @@ public class FileStorage implements FileStorageMBean {
 
         return sb.toString();
     }
-}
\ No newline at end of file
+
+    @Override
+    public String removeUnusedChunks() {
+        FileStorageAPI fileStorageAPI = AppBeans.get(FileStorageAPI.class);
+        if (!(fileStorageAPI instanceof com.haulmont.cuba.core.app.filestorage.FileStorage)) {
+            return "<not supported>";
+        }
+        try {
+            int removed = ((com.haulmont.cuba.core.app.filestorage.FileStorage) fileStorageAPI)
+                    .removeUnusedChunks(TimeUnit.HOURS.toMillis(1));
+            return "Removed " + removed + " chunks";
+        } catch (Exception e) {
+            return ExceptionUtils.getStackTrace(e);
+        }
+    }
+}
@@ -38,4 +38,12 @@ public interface FileStorageMBean {
      * @return the list of files in the storage which have no corresponding descriptors in the database
      */
     String findOrphanFiles();
+
+    /**
+     * Removes chunks of the content-addressed storage which are not referenced by any file.
+     * Chunks created during the last hour are not removed.
+     *
+     * @return number of removed chunks
+     */
+    String removeUnusedChunks();
 }
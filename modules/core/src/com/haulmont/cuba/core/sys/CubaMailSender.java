@@ -24,10 +24,14 @@ import org.springframework.mail.javamail.JavaMailSenderImpl;
 
 import org.springframework.stereotype.Component;
 import javax.inject.Inject;
+import javax.mail.MessagingException;
 import javax.mail.Session;
-import java.util.HashSet;
-import java.util.Properties;
-import java.util.Set;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
 
 @Component(CubaMailSender.NAME)
 public class CubaMailSender extends JavaMailSenderImpl {
@@ -38,6 +42,8 @@ public class CubaMailSender extends JavaMailSenderImpl {
 
     private boolean propertiesInitialized;
 
+    protected final Map<String, TransportPool> transportPools = new ConcurrentHashMap<>();
+
     @Inject
     public void setConfiguration(Configuration configuration) {
         config = configuration.getConfig(EmailerConfig.class);
@@ -97,6 +103,126 @@ public class CubaMailSender extends JavaMailSenderImpl {
 
     public synchronized void updateSession(){
         propertiesInitialized = false;
+        closePooledTransports();
+    }
+
+    /**
+     * Sends the message through a connection taken from the pool of the current SMTP server. At most
+     * {@code maxConnections} messages are sent to the server concurrently, other callers wait for a free connection.
+     * Connections are kept open and reused by subsequent calls until {@link #updateSession()} is invoked or
+     * the maximum number of connections is changed.
+     *
+     * @param mimeMessage    message to send
+     * @param maxConnections maximum number of connections to the SMTP server
+     * @throws MessagingException if the message cannot be sent
+     */
+    public void sendPooled(MimeMessage mimeMessage, int maxConnections) throws MessagingException {
+        String key = getProtocol() + "://" + getHost() + ":" + getPort();
+        int size = Math.max(1, maxConnections);
+        TransportPool pool = transportPools.compute(key, (k, existing) -> {
+            if (existing != null && existing.getMaxConnections() == size) {
+                return existing;
+            }
+            if (existing != null) {
+                existing.close();
+            }
+            return new TransportPool(size);
+        });
+        pool.send(mimeMessage);
+    }
+
+    protected void closePooledTransports() {
+        for (Iterator<TransportPool> it = transportPools.values().iterator(); it.hasNext(); ) {
+            TransportPool pool = it.next();
+            it.remove();
+            pool.close();
+        }
+    }
+
+    /**
+     * Connections to one SMTP server. The semaphore limits the number of concurrent sends, idle connections are
+     * reused in LIFO order to keep the number of open connections low.
+     */
+    protected class TransportPool {
+
+        protected final int maxConnections;
+        protected final Semaphore permits;
+        protected final Deque<Transport> idle = new ConcurrentLinkedDeque<>();
+        protected volatile boolean closed;
+
+        public TransportPool(int maxConnections) {
+            this.maxConnections = maxConnections;
+            permits = new Semaphore(maxConnections, true);
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void send(MimeMessage mimeMessage) throws MessagingException {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MessagingException("Interrupted while waiting for SMTP connection", e);
+            }
+            try {
+                Transport transport = idle.pollFirst();
+                if (transport != null && !transport.isConnected()) {
+                    closeQuietly(transport);
+                    transport = null;
+                }
+                if (transport == null) {
+                    transport = connectTransport();
+                }
+                try {
+                    prepareMessage(mimeMessage);
+                    transport.sendMessage(mimeMessage, mimeMessage.getAllRecipients());
+                } catch (MessagingException | RuntimeException e) {
+                    closeQuietly(transport);
+                    throw e;
+                }
+                if (closed) {
+                    closeQuietly(transport);
+                } else {
+                    idle.offerFirst(transport);
+                }
+            } finally {
+                permits.release();
+            }
+        }
+
+        /**
+         * Updates the message headers before sending as {@link JavaMailSenderImpl#send(MimeMessage)} does, since
+         * {@link Transport#sendMessage} does not do it.
+         */
+        protected void prepareMessage(MimeMessage mimeMessage) throws MessagingException {
+            if (mimeMessage.getSentDate() == null) {
+                mimeMessage.setSentDate(new Date());
+            }
+            String messageId = mimeMessage.getMessageID();
+            mimeMessage.saveChanges();
+            if (messageId != null) {
+                // preserve the explicitly specified message id, saveChanges() regenerates it
+                mimeMessage.setHeader("Message-ID", messageId);
+            }
+        }
+
+        public void close() {
+            closed = true;
+            Transport transport;
+            while ((transport = idle.pollFirst()) != null) {
+                closeQuietly(transport);
+            }
+        }
+
+        protected void closeQuietly(Transport transport) {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                // connection is discarded anyway
+            }
+        }
     }
 
     protected Properties createJavaMailProperties() {
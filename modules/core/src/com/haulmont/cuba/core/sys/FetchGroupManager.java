@@ -17,6 +17,9 @@
 
 package com.haulmont.cuba.core.sys;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetaProperty;
@@ -25,6 +28,7 @@ import com.haulmont.chile.core.model.Range;
 import com.haulmont.cuba.core.entity.BaseUuidEntity;
 import com.haulmont.cuba.core.entity.EmbeddableEntity;
 import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.entity.SoftDelete;
 import com.haulmont.cuba.core.global.*;
 import org.apache.commons.lang3.StringUtils;
@@ -39,6 +43,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.ClassUtils;
 
 import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.lang.reflect.Method;
 import java.util.*;
@@ -60,6 +65,22 @@ public class FetchGroupManager {
     @Inject
     private ViewRepository viewRepository;
 
+    @Inject
+    private ServerConfig serverConfig;
+
+    private volatile Cache<String, FetchGroupDescription> cache;
+
+    @PostConstruct
+    protected void init() {
+        int size = serverConfig.getFetchGroupCacheSize();
+        if (size > 0) {
+            cache = CacheBuilder.newBuilder()
+                    .maximumSize(size)
+                    .recordStats()
+                    .build();
+        }
+    }
+
     public void setView(JpaQuery query, String queryString, @Nullable View view, boolean singleResultExpected) {
         Preconditions.checkNotNullArgument(query, "query is null");
         if (view != null) {
@@ -128,10 +149,89 @@ public class FetchGroupManager {
         }
     }
 
+    /**
+     * Returns the fetch group, fetch hints and batch mode for loading entities by the query with the given view.
+     * <p>
+     * Results are cached by the query string, structure of the view and flags, so the returned object must not be
+     * modified. The cache is cleared by {@link #clearCache()} when the view repository is reset.
+     */
     public FetchGroupDescription calculateFetchGroup(String queryString,
                                                      View view,
                                                      boolean singleResultExpected,
                                                      boolean useFetchGroup) {
+        Cache<String, FetchGroupDescription> cache = this.cache;
+        if (cache == null) {
+            return doCalculateFetchGroup(queryString, view, singleResultExpected, useFetchGroup);
+        }
+
+        String key = createCacheKey(queryString, view, singleResultExpected, useFetchGroup);
+        FetchGroupDescription description = cache.getIfPresent(key);
+        if (description == null) {
+            description = doCalculateFetchGroup(queryString, view, singleResultExpected, useFetchGroup);
+            cache.put(key, description);
+        }
+        return description;
+    }
+
+    /**
+     * Removes all cached fetch groups.
+     */
+    public void clearCache() {
+        Cache<String, FetchGroupDescription> cache = this.cache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * @return number of cached fetch groups
+     */
+    public long getCacheSize() {
+        Cache<String, FetchGroupDescription> cache = this.cache;
+        return cache == null ? 0 : cache.size();
+    }
+
+    /**
+     * @return hit and miss statistics or null if the cache is disabled
+     */
+    @Nullable
+    public CacheStats getCacheStats() {
+        Cache<String, FetchGroupDescription> cache = this.cache;
+        return cache == null ? null : cache.stats();
+    }
+
+    /**
+     * Views are compared by structure rather than by {@link View#equals(Object)}, because views with the same name
+     * can have different properties and the repository returns a new copy of a view on each request.
+     */
+    private String createCacheKey(String queryString, View view, boolean singleResultExpected, boolean useFetchGroup) {
+        StringBuilder sb = new StringBuilder(queryString.length() + 256);
+        sb.append(singleResultExpected ? 'S' : 'M').append(useFetchGroup ? 'F' : 'L').append('|');
+        sb.append(queryString.trim()).append('|');
+        appendViewKey(sb, view);
+        return sb.toString();
+    }
+
+    private void appendViewKey(StringBuilder sb, View view) {
+        sb.append(view.getEntityClass().getName());
+        if (view.loadPartialEntities()) {
+            sb.append('!');
+        }
+        sb.append('{');
+        for (ViewProperty property : view.getProperties()) {
+            sb.append(property.getName()).append(':').append(property.getFetchMode().ordinal());
+            if (property.getView() != null) {
+                appendViewKey(sb, property.getView());
+            }
+            sb.append(',');
+        }
+        sb.append('}');
+    }
+
+    private FetchGroupDescription doCalculateFetchGroup(String queryString,
+                                                        View view,
+                                                        boolean singleResultExpected,
+                                                        boolean useFetchGroup) {
         Set<FetchGroupField> fetchGroupFields = new LinkedHashSet<>();
         processView(view, null, fetchGroupFields, useFetchGroup);
 
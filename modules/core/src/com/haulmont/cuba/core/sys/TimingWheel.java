@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.google.common.base.Preconditions;
+
+import java.util.*;
+
+/**
+ * Hierarchical timing wheel tracking deadlines of items.
+ * <p>
+ * Level {@code i} of the wheel consists of {@code wheelSize} slots, each covering {@code tickMs * wheelSize^i}
+ * milliseconds. An item is put into the lowest level whose rotation contains its deadline and moves to lower levels
+ * as the time advances, items with deadlines beyond the highest level wait in the overflow list. Scheduling and
+ * cancelling take constant time, {@link #advance(long)} touches only the slots passed since the previous call.
+ * <p>
+ * The class is not thread-safe.
+ *
+ * @param <T> type of items, must have proper {@code equals()} and {@code hashCode()}
+ */
+public class TimingWheel<T> {
+
+    protected static class Entry<T> {
+
+        protected final T item;
+        protected final long deadlineTick;
+        protected Set<Entry<T>> slot;
+
+        protected Entry(T item, long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    protected final long tickMs;
+    protected final int wheelSize;
+    protected final int levels;
+
+    // slots[level][index]
+    protected final Set<Entry<T>>[][] slots;
+    protected final Set<Entry<T>> overflow = new HashSet<>();
+    // items scheduled with passed deadlines
+    protected final Set<Entry<T>> due = new HashSet<>();
+    protected final Map<T, Entry<T>> entries = new HashMap<>();
+
+    protected long currentTick;
+
+    /**
+     * @param tickMs    duration of a slot of the lowest level in milliseconds
+     * @param wheelSize number of slots in a level
+     * @param levels    number of levels
+     * @param startMs   current time in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMs, int wheelSize, int levels, long startMs) {
+        Preconditions.checkArgument(tickMs > 0, "tickMs must be positive");
+        Preconditions.checkArgument(wheelSize > 1, "wheelSize must be greater than 1");
+        Preconditions.checkArgument(levels > 0, "levels must be positive");
+
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.levels = levels;
+        this.currentTick = startMs / tickMs;
+
+        slots = new Set[levels][wheelSize];
+        for (int level = 0; level < levels; level++) {
+            for (int index = 0; index < wheelSize; index++) {
+                slots[level][index] = new HashSet<>();
+            }
+        }
+    }
+
+    /**
+     * Schedules the item replacing its previous deadline. The deadline is rounded up to the tick.
+     */
+    public void schedule(T item, long deadlineMs) {
+        cancel(item);
+
+        Entry<T> entry = new Entry<>(item, (deadlineMs + tickMs - 1) / tickMs);
+        entries.put(item, entry);
+        if (entry.deadlineTick <= currentTick) {
+            // already expired, returned by the next advance
+            entry.slot = due;
+            due.add(entry);
+        } else {
+            insert(entry);
+        }
+    }
+
+    /**
+     * Removes the item from the wheel.
+     *
+     * @return true if the item was scheduled
+     */
+    public boolean cancel(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry != null) {
+            entry.slot.remove(entry);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all items.
+     */
+    public void clear() {
+        for (Entry<T> entry : entries.values()) {
+            entry.slot.remove(entry);
+        }
+        entries.clear();
+    }
+
+    /**
+     * @return number of scheduled items
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Advances the wheel to the given time.
+     *
+     * @return items whose deadlines have passed, they are removed from the wheel
+     */
+    public List<T> advance(long nowMs) {
+        long targetTick = nowMs / tickMs;
+        if (entries.isEmpty()) {
+            currentTick = Math.max(currentTick, targetTick);
+            return Collections.emptyList();
+        }
+
+        List<T> expired = new ArrayList<>();
+        reinsert(due, expired);
+        while (currentTick < targetTick) {
+            currentTick++;
+
+            // move items of the slots starting now to lower levels, from the highest level down
+            long span = 1;
+            for (int level = 1; level < levels; level++) {
+                span *= wheelSize;
+            }
+            if (currentTick % (span * wheelSize) == 0) {
+                reinsert(overflow, expired);
+            }
+            for (int level = levels - 1; level > 0; level--) {
+                if (currentTick % span == 0) {
+                    reinsert(slots[level][(int) ((currentTick / span) % wheelSize)], expired);
+                }
+                span /= wheelSize;
+            }
+
+            Set<Entry<T>> slot = slots[0][(int) (currentTick % wheelSize)];
+            for (Iterator<Entry<T>> iterator = slot.iterator(); iterator.hasNext(); ) {
+                Entry<T> entry = iterator.next();
+                if (entry.deadlineTick <= currentTick) {
+                    iterator.remove();
+                    entries.remove(entry.item);
+                    expired.add(entry.item);
+                }
+            }
+
+            if (entries.isEmpty()) {
+                currentTick = targetTick;
+            }
+        }
+        return expired;
+    }
+
+    protected void reinsert(Set<Entry<T>> slot, List<T> expired) {
+        if (slot.isEmpty())
+            return;
+
+        List<Entry<T>> moved = new ArrayList<>(slot);
+        slot.clear();
+        for (Entry<T> entry : moved) {
+            if (entry.deadlineTick <= currentTick) {
+                entries.remove(entry.item);
+                expired.add(entry.item);
+            } else {
+                insert(entry);
+            }
+        }
+    }
+
+    protected void insert(Entry<T> entry) {
+        long span = 1;
+        for (int level = 0; level < levels; level++) {
+            long deadlineBucket = entry.deadlineTick / span;
+            if (deadlineBucket - currentTick / span < wheelSize) {
+                place(entry, level, (int) (deadlineBucket % wheelSize));
+                return;
+            }
+            span *= wheelSize;
+        }
+        entry.slot = overflow;
+        overflow.add(entry);
+    }
+
+    protected void place(Entry<T> entry, int level, int index) {
+        entry.slot = slots[level][index];
+        entry.slot.add(entry);
+    }
+}
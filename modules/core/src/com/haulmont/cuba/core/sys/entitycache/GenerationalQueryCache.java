@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.entitycache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free implementation of {@link QueryCache}.
+ * <p>
+ * Instead of keeping a list of query keys per entity type, the cache maintains a generation counter for each
+ * entity type and a global generation counter. Each cached entry remembers the generations of its related types
+ * at the moment it was put. Invalidation of a type just increments its counter, so it takes constant time
+ * regardless of the number of cached queries, and stale entries are discarded lazily when they are read.
+ * <p>
+ * The implementation is not registered by default. To use it, override the {@code cuba_QueryCache} bean
+ * in the {@code spring.xml} of the core module:
+ * <pre>
+ *     &lt;bean id="cuba_QueryCache" class="com.haulmont.cuba.core.sys.entitycache.GenerationalQueryCache"/&gt;
+ * </pre>
+ */
+public class GenerationalQueryCache implements QueryCache {
+
+    protected Cache<QueryKey, Entry> data;
+    protected ConcurrentMap<String, AtomicLong> typeGenerations = new ConcurrentHashMap<>();
+    protected AtomicLong globalGeneration = new AtomicLong();
+
+    @Inject
+    protected QueryCacheConfig queryCacheConfig;
+
+    protected static final Logger log = LoggerFactory.getLogger(QueryCache.class);
+
+    @PostConstruct
+    protected void init() {
+        data = CacheBuilder.newBuilder().maximumSize(getMaxSize()).build();
+    }
+
+    @Override
+    public QueryResult get(QueryKey queryKey) {
+        Entry entry = data.getIfPresent(queryKey);
+        if (entry == null) {
+            return null;
+        }
+        if (isStale(entry)) {
+            data.asMap().remove(queryKey, entry);
+            return null;
+        }
+        return entry.queryResult;
+    }
+
+    @Override
+    public void put(QueryKey queryKey, QueryResult queryResult) {
+        data.put(queryKey, createEntry(queryResult));
+    }
+
+    @Override
+    public QueryKey findQueryKeyById(UUID queryId) {
+        for (QueryKey key : data.asMap().keySet()) {
+            if (Objects.equals(queryId, key.getId())) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public QueryKey invalidate(UUID queryId) {
+        QueryKey queryKey = findQueryKeyById(queryId);
+        if (queryKey != null) {
+            log.debug("Invalidate query by identifier {}", queryId);
+            data.invalidate(queryKey);
+        }
+        return queryKey;
+    }
+
+    @Override
+    public void invalidate(QueryKey queryKey) {
+        log.debug("Invalidate query by key {}", queryKey.printDescription());
+        data.invalidate(queryKey);
+    }
+
+    @Override
+    public void invalidate(String typeName) {
+        log.debug("Invalidate cache for type {}", typeName);
+        getTypeGeneration(typeName).incrementAndGet();
+    }
+
+    @Override
+    public void invalidate(Set<String> typeNames) {
+        for (String typeName : typeNames) {
+            invalidate(typeName);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        log.debug("Invalidate all cache");
+        globalGeneration.incrementAndGet();
+        data.invalidateAll();
+    }
+
+    /**
+     * Returns number of entries in this cache. The number may include stale entries that
+     * have not been read since their types were invalidated.
+     */
+    @Override
+    public long size() {
+        return data.size();
+    }
+
+    @Override
+    public long getMaxSize() {
+        return queryCacheConfig.getQueryCacheMaxSize();
+    }
+
+    @Override
+    public Map<QueryKey, QueryResult> asMap() {
+        Map<QueryKey, QueryResult> result = new HashMap<>();
+        for (Map.Entry<QueryKey, Entry> mapEntry : data.asMap().entrySet()) {
+            if (!isStale(mapEntry.getValue())) {
+                result.put(mapEntry.getKey(), mapEntry.getValue().queryResult);
+            }
+        }
+        return result;
+    }
+
+    protected Entry createEntry(QueryResult queryResult) {
+        // generations must be read before the entry becomes visible, so an invalidation
+        // that happens concurrently with put makes the entry stale rather than lost
+        long global = globalGeneration.get();
+        Set<String> relatedTypes = queryResult.getRelatedTypes();
+        if (relatedTypes == null || relatedTypes.isEmpty()) {
+            return new Entry(queryResult, global, new AtomicLong[0], new long[0]);
+        }
+        AtomicLong[] counters = new AtomicLong[relatedTypes.size()];
+        long[] generations = new long[counters.length];
+        int i = 0;
+        for (String type : relatedTypes) {
+            AtomicLong counter = getTypeGeneration(type);
+            counters[i] = counter;
+            generations[i] = counter.get();
+            i++;
+        }
+        return new Entry(queryResult, global, counters, generations);
+    }
+
+    protected boolean isStale(Entry entry) {
+        if (entry.globalGeneration != globalGeneration.get()) {
+            return true;
+        }
+        for (int i = 0; i < entry.typeCounters.length; i++) {
+            if (entry.typeCounters[i].get() != entry.typeGenerations[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected AtomicLong getTypeGeneration(String typeName) {
+        AtomicLong generation = typeGenerations.get(typeName);
+        if (generation == null) {
+            generation = typeGenerations.computeIfAbsent(typeName, k -> new AtomicLong());
+        }
+        return generation;
+    }
+
+    protected static class Entry {
+        protected final QueryResult queryResult;
+        protected final long globalGeneration;
+        protected final AtomicLong[] typeCounters;
+        protected final long[] typeGenerations;
+
+        protected Entry(QueryResult queryResult, long globalGeneration, AtomicLong[] typeCounters, long[] typeGenerations) {
+            this.queryResult = queryResult;
+            this.globalGeneration = globalGeneration;
+            this.typeCounters = typeCounters;
+            this.typeGenerations = typeGenerations;
+        }
+    }
+}
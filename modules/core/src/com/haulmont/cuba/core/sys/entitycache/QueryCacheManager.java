@@ -24,9 +24,11 @@ import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Persistence;
 import com.haulmont.cuba.core.app.ClusterListenerAdapter;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ClusterMessageCodec;
 import com.haulmont.cuba.core.entity.BaseGenericIdEntity;
 import com.haulmont.cuba.core.global.Metadata;
 import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.core.sys.serialization.SerializationSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -35,7 +37,7 @@ import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.persistence.MappedSuperclass;
 import javax.persistence.TypedQuery;
-import java.io.Serializable;
+import java.io.*;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -71,6 +73,7 @@ public class QueryCacheManager {
                 }
             }
         });
+        clusterManager.registerCodec(InvalidateQueryCacheMsg.class, new InvalidateQueryCacheMsgCodec());
     }
 
     /**
@@ -273,6 +276,50 @@ public class QueryCacheManager {
         return newRelatedTypes;
     }
 
+    protected static class InvalidateQueryCacheMsgCodec implements ClusterMessageCodec<InvalidateQueryCacheMsg> {
+
+        protected static final byte ALL = 0;
+        protected static final byte QUERY = 1;
+        protected static final byte TYPES = 2;
+
+        @Override
+        public void encode(InvalidateQueryCacheMsg message, DataOutput out) throws IOException {
+            if (message.invalidateAll) {
+                out.writeByte(ALL);
+            } else if (message.queryKey != null) {
+                out.writeByte(QUERY);
+                byte[] bytes = SerializationSupport.serialize(message.queryKey);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } else {
+                out.writeByte(TYPES);
+                out.writeInt(message.typeNames.size());
+                for (String typeName : message.typeNames) {
+                    out.writeUTF(typeName);
+                }
+            }
+        }
+
+        @Override
+        public InvalidateQueryCacheMsg decode(DataInput in) throws IOException {
+            byte kind = in.readByte();
+            if (kind == ALL) {
+                return new InvalidateQueryCacheMsg(true);
+            } else if (kind == QUERY) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new InvalidateQueryCacheMsg((QueryKey) SerializationSupport.deserialize(bytes));
+            } else {
+                int size = in.readInt();
+                Set<String> typeNames = new HashSet<>(size);
+                for (int i = 0; i < size; i++) {
+                    typeNames.add(in.readUTF());
+                }
+                return new InvalidateQueryCacheMsg(typeNames);
+            }
+        }
+    }
+
     protected static class InvalidateQueryCacheMsg implements Serializable {
         private static final long serialVersionUID = -9099037380378341477L;
 
@@ -16,30 +16,48 @@
 
 package com.haulmont.cuba.core.sys.jdbc;
 
+import javax.persistence.OptimisticLockException;
 import java.sql.*;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
 
 public class ProxyConnection implements Connection {
+
+    protected static final Pattern VERSION_CHECK_PATTERN =
+            Pattern.compile("\\bWHERE\\b.*\\bVERSION\\s*=\\s*\\?", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     protected Connection connection;
 
+    protected int batchSize;
+    protected String batchSql;
+    protected ProxyPreparedStatement<PreparedStatement> batchStatement;
+    protected int batchedRows;
+
     public ProxyConnection(Connection connection) {
         this.connection = connection;
     }
 
     @Override
     public Statement createStatement() throws SQLException {
+        flushBatch();
         return new ProxyStatement<>(connection.createStatement(), this);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql) throws SQLException {
+        if (batchSize > 0 && isBatchableStatement(sql)) {
+            return prepareBatchedStatement(sql);
+        }
+        flushBatch();
         return new ProxyPreparedStatement<>(connection.prepareStatement(sql), this);
     }
 
     @Override
     public CallableStatement prepareCall(String sql) throws SQLException {
+        flushBatch();
         return new ProxyCallableStatement(connection.prepareCall(sql), this);
     }
 
@@ -60,16 +78,19 @@ public class ProxyConnection implements Connection {
 
     @Override
     public void commit() throws SQLException {
+        flushBatch();
         connection.commit();
     }
 
     @Override
     public void rollback() throws SQLException {
+        discardBatch();
         connection.rollback();
     }
 
     @Override
     public void close() throws SQLException {
+        cancelBatch();
         connection.close();
     }
 
@@ -125,16 +146,19 @@ public class ProxyConnection implements Connection {
 
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        flushBatch();
         return new ProxyStatement<>(connection.createStatement(resultSetType, resultSetConcurrency), this);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        flushBatch();
         return new ProxyPreparedStatement<>(connection.prepareStatement(sql, resultSetType, resultSetConcurrency), this);
     }
 
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        flushBatch();
         return new ProxyCallableStatement(connection.prepareCall(sql, resultSetType, resultSetConcurrency), this);
     }
 
@@ -170,6 +194,7 @@ public class ProxyConnection implements Connection {
 
     @Override
     public void rollback(Savepoint savepoint) throws SQLException {
+        discardBatch();
         connection.rollback(savepoint);
     }
 
@@ -180,31 +205,37 @@ public class ProxyConnection implements Connection {
 
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        flushBatch();
         return new ProxyStatement<>(connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability), this);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        flushBatch();
         return new ProxyPreparedStatement<>(connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), this);
     }
 
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        flushBatch();
         return new ProxyCallableStatement(connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability), this);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        flushBatch();
         return new ProxyPreparedStatement<>(connection.prepareStatement(sql, autoGeneratedKeys), this);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        flushBatch();
         return new ProxyPreparedStatement<>(connection.prepareStatement(sql, columnIndexes), this);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        flushBatch();
         return new ProxyPreparedStatement<>(connection.prepareStatement(sql, columnNames), this);
     }
 
@@ -297,4 +328,176 @@ public class ProxyConnection implements Connection {
     public boolean isWrapperFor(Class<?> iface) throws SQLException {
         return connection.isWrapperFor(iface);
     }
+
+    /**
+     * Starts accumulating INSERT, UPDATE and DELETE statements executed through {@link #prepareStatement(String)}
+     * into JDBC batches. Consecutive executions of the same SQL are sent to the database by a single
+     * {@link PreparedStatement#executeBatch()} call when the batch reaches the given size, when another statement
+     * is prepared, or when the transaction is committed.
+     * <p>
+     * While batching is active, {@code executeUpdate()} of a batched statement returns 1 without accessing
+     * the database. If a versioned UPDATE or DELETE affects no rows, an {@link OptimisticLockException} is thrown
+     * when the batch is executed. Other statements may affect no rows.
+     *
+     * @param batchSize maximum number of statements in a batch
+     */
+    public void beginBatch(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Executes accumulated statements and stops batching.
+     */
+    public void endBatch() throws SQLException {
+        try {
+            flushBatch();
+        } finally {
+            batchSize = 0;
+        }
+    }
+
+    /**
+     * Discards accumulated statements and stops batching.
+     */
+    public void cancelBatch() throws SQLException {
+        try {
+            discardBatch();
+        } finally {
+            batchSize = 0;
+        }
+    }
+
+    /**
+     * @return true if statements are accumulated into batches, see {@link #beginBatch(int)}
+     */
+    public boolean isBatching() {
+        return batchSize > 0;
+    }
+
+    /**
+     * Executes accumulated statements if any.
+     */
+    public void flushBatch() throws SQLException {
+        if (batchStatement == null) {
+            return;
+        }
+        ProxyPreparedStatement<PreparedStatement> statement = batchStatement;
+        String sql = batchSql;
+        batchStatement = null;
+        batchSql = null;
+        try {
+            executeBatch(statement, sql);
+        } finally {
+            batchedRows = 0;
+            statement.close();
+        }
+    }
+
+    protected void discardBatch() throws SQLException {
+        if (batchStatement != null) {
+            ProxyPreparedStatement<PreparedStatement> statement = batchStatement;
+            batchStatement = null;
+            batchSql = null;
+            batchedRows = 0;
+            statement.close();
+        }
+    }
+
+    protected boolean isBatchableStatement(String sql) {
+        String start = sql.trim();
+        if (start.length() > 6) {
+            start = start.substring(0, 6);
+        }
+        start = start.toUpperCase(Locale.ROOT);
+        return start.startsWith("INSERT") || start.startsWith("UPDATE") || start.startsWith("DELETE");
+    }
+
+    protected PreparedStatement prepareBatchedStatement(String sql) throws SQLException {
+        if (batchStatement != null && !sql.equals(batchSql)) {
+            flushBatch();
+        }
+        if (batchStatement == null) {
+            batchStatement = new ProxyPreparedStatement<>(connection.prepareStatement(sql), this);
+            batchSql = sql;
+        }
+        return new BatchedPreparedStatement(batchStatement.statement, this);
+    }
+
+    protected void addToBatch() throws SQLException {
+        batchStatement.addBatch();
+        batchedRows++;
+        if (batchedRows >= batchSize) {
+            batchedRows = 0;
+            executeBatch(batchStatement, batchSql);
+        }
+    }
+
+    protected void executeBatch(PreparedStatement statement, String sql) throws SQLException {
+        int[] counts = statement.executeBatch();
+        if (isVersionCheckStatement(sql)) {
+            for (int count : counts) {
+                if (count == 0) {
+                    throw new OptimisticLockException("Batched statement has not affected any rows: " + sql);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the statement is an UPDATE or DELETE restricted by the version of an entity, so affecting
+     * no rows means the entity has been changed or deleted concurrently
+     */
+    protected boolean isVersionCheckStatement(String sql) {
+        String start = sql.trim().toUpperCase(Locale.ROOT);
+        return (start.startsWith("UPDATE") || start.startsWith("DELETE"))
+                && VERSION_CHECK_PATTERN.matcher(sql).find();
+    }
+
+    /**
+     * Statement returned by {@link #prepareStatement(String)} while batching is active. Adds its parameters to the
+     * batch instead of executing and leaves the underlying statement open until the batch is executed.
+     */
+    protected static class BatchedPreparedStatement extends ProxyPreparedStatement<PreparedStatement> {
+
+        protected final ProxyConnection batchConnection;
+
+        public BatchedPreparedStatement(PreparedStatement statement, ProxyConnection connection) {
+            super(statement, connection);
+            this.batchConnection = connection;
+        }
+
+        /**
+         * Adds the statement to the batch. The statement is not executed yet, so the number of affected rows is
+         * unknown: returns 1 as the statement is expected to affect a single row. The real counts of versioned
+         * statements are checked when the batch is executed, and such a statement that has affected no rows causes
+         * an {@link OptimisticLockException} thrown from {@link ProxyConnection#flushBatch()} or the commit.
+         */
+        @Override
+        public int executeUpdate() throws SQLException {
+            batchConnection.addToBatch();
+            return 1;
+        }
+
+        @Override
+        public boolean execute() throws SQLException {
+            batchConnection.addToBatch();
+            return false;
+        }
+
+        /**
+         * Returns 1 for the same reason as {@link #executeUpdate()}.
+         */
+        @Override
+        public int getUpdateCount() throws SQLException {
+            return 1;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            // closed by the connection after the batch is executed
+        }
+    }
 }
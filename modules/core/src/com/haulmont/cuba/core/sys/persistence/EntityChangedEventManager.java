@@ -20,6 +20,7 @@ import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.cuba.core.app.dynamicattributes.DynamicAttributesUtils;
 import com.haulmont.cuba.core.app.events.AttributeChanges;
+import com.haulmont.cuba.core.app.events.BulkEntityChangedEvent;
 import com.haulmont.cuba.core.app.events.EntityChangedEvent;
 import com.haulmont.cuba.core.entity.*;
 import com.haulmont.cuba.core.entity.annotation.PublishEntityChangedEvents;
@@ -117,14 +118,21 @@ public class EntityChangedEventManager {
         List<EntityChangedEventInfo> list1 = collection1 != null ? new ArrayList<>(collection1) : new ArrayList<>();
         Collection<EntityChangedEventInfo> list2 = collection2 != null ? collection2 : Collections.emptyList();
 
+        if (list2.isEmpty()) {
+            return list1;
+        }
+
+        Map<Entity, EntityChangedEventInfo> index = new IdentityHashMap<>(list1.size());
+        for (EntityChangedEventInfo info1 : list1) {
+            index.putIfAbsent(info1.getEntity(), info1);
+        }
         for (EntityChangedEventInfo info2 : list2) {
-            Optional<EntityChangedEventInfo> opt = list1.stream()
-                    .filter(info1 -> info1.getEntity() == info2.getEntity())
-                    .findAny();
-            if (opt.isPresent()) {
-                opt.get().mergeWith(info2);
+            EntityChangedEventInfo info1 = index.get(info2.getEntity());
+            if (info1 != null) {
+                info1.mergeWith(info2);
             } else {
                 list1.add(info2);
+                index.put(info2.getEntity(), info2);
             }
         }
         log.trace("merged {}", list1);
@@ -200,6 +208,21 @@ public class EntityChangedEventManager {
         }
     }
 
+    /**
+     * Publishes events grouped by entity class, one {@link BulkEntityChangedEvent} per class.
+     */
+    @SuppressWarnings("unchecked")
+    public void publishBulk(Collection<EntityChangedEvent> events) {
+        log.trace("publishBulk {}", events);
+        Map<Class, List<EntityChangedEvent>> eventsByClass = new LinkedHashMap<>();
+        for (EntityChangedEvent event : events) {
+            eventsByClass.computeIfAbsent(event.getEntityId().getEntityClass(), aClass -> new ArrayList<>()).add(event);
+        }
+        for (Map.Entry<Class, List<EntityChangedEvent>> entry : eventsByClass.entrySet()) {
+            eventPublisher.publish(new BulkEntityChangedEvent(this, entry.getKey(), entry.getValue()));
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private AttributeChanges getEntityAttributeChanges(@Nullable Entity entity, ObjectChangeSet changeSet) {
         if (changeSet == null)
@@ -105,6 +105,13 @@ public class HttpServiceExporter extends HttpInvokerServiceExporter implements B
         }
     }
 
+    /**
+     * Invokes the service in the current thread, used by the binary remoting transport.
+     */
+    public RemoteInvocationResult invoke(RemoteInvocation invocation) {
+        return invokeAndCreateResult(invocation, getProxy());
+    }
+
     @Override
     protected void doWriteRemoteInvocationResult(RemoteInvocationResult result, ObjectOutputStream oos) throws IOException {
         SerializationSupport.serialize(result, oos);
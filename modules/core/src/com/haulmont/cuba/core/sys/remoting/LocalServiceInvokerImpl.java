@@ -25,12 +25,17 @@ import org.apache.commons.lang3.ClassUtils;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class LocalServiceInvokerImpl implements LocalServiceInvoker {
 
     private Object target;
 
+    private final Map<MethodKey, Method> methods = new ConcurrentHashMap<>();
+
     public LocalServiceInvokerImpl(Object target) {
         if (target == null) {
             throw new IllegalArgumentException("Target object is null");
@@ -51,12 +56,7 @@ public class LocalServiceInvokerImpl implements LocalServiceInvoker {
             ClassLoader classLoader = target.getClass().getClassLoader();
             Thread.currentThread().setContextClassLoader(classLoader);
 
-            String[] parameterTypeNames = invocation.getParameterTypeNames();
-            Class[] parameterTypes = new Class[parameterTypeNames.length];
-            for (int i = 0; i < parameterTypeNames.length; i++) {
-                Class<?> paramClass = ClassUtils.getClass(classLoader, parameterTypeNames[i]);
-                parameterTypes[i] = paramClass;
-            }
+            Method method = getMethod(classLoader, invocation.getMethodName(), invocation.getParameterTypeNames());
 
             byte[][] argumentsData = invocation.getArgumentsData();
             Object[] notSerializableArguments = invocation.getNotSerializableArguments();
@@ -78,19 +78,8 @@ public class LocalServiceInvokerImpl implements LocalServiceInvoker {
                 }
             }
 
-            SecurityContext targetSecurityContext = null;
-            if (invocation.getSessionId() != null) {
-                targetSecurityContext = new SecurityContext(invocation.getSessionId());
-            }
-            AppContext.setSecurityContext(targetSecurityContext);
-
-            if (invocation.getLocale() != null) {
-                Locale locale = Locale.forLanguageTag(invocation.getLocale());
-                UserInvocationContext.setRequestScopeInfo(invocation.getSessionId(), locale, invocation.getTimeZone(),
-                        invocation.getAddress(), invocation.getClientInfo());
-            }
+            setInvocationContext(invocation);
 
-            Method method = target.getClass().getMethod(invocation.getMethodName(), parameterTypes);
             Object data = method.invoke(target, arguments);
 
             if (invocation.canResultBypassSerialization()) {
@@ -110,4 +99,92 @@ public class LocalServiceInvokerImpl implements LocalServiceInvoker {
             UserInvocationContext.clearRequestScopeInfo();
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean isDirectInvocationSupported(Class<?> serviceInterface) {
+        return serviceInterface.isInstance(target);
+    }
+
+    @Override
+    public LocalServiceInvocationResult invokeDirect(LocalServiceInvocation invocation, Method method) {
+        if (invocation == null) {
+            throw new IllegalArgumentException("Invocation is null");
+        }
+
+        LocalServiceInvocationResult result = new LocalServiceInvocationResult();
+        ClassLoader clientClassLoader = Thread.currentThread().getContextClassLoader();
+        // the client can share AppContext with middleware, so its security context is restored afterwards
+        SecurityContext clientSecurityContext = AppContext.getSecurityContext();
+        try {
+            Thread.currentThread().setContextClassLoader(target.getClass().getClassLoader());
+
+            setInvocationContext(invocation);
+
+            result.setNotSerializableData(method.invoke(target, invocation.getNotSerializableArguments()));
+        } catch (Throwable t) {
+            if (t instanceof InvocationTargetException)
+                t = ((InvocationTargetException) t).getTargetException();
+            result.setNotSerializableException(t);
+        } finally {
+            Thread.currentThread().setContextClassLoader(clientClassLoader);
+            AppContext.setSecurityContext(clientSecurityContext);
+            UserInvocationContext.clearRequestScopeInfo();
+        }
+        return result;
+    }
+
+    protected Method getMethod(ClassLoader classLoader, String methodName, String[] parameterTypeNames)
+            throws ClassNotFoundException, NoSuchMethodException {
+        MethodKey key = new MethodKey(methodName, parameterTypeNames);
+        Method method = methods.get(key);
+        if (method == null) {
+            Class[] parameterTypes = new Class[parameterTypeNames.length];
+            for (int i = 0; i < parameterTypeNames.length; i++) {
+                parameterTypes[i] = ClassUtils.getClass(classLoader, parameterTypeNames[i]);
+            }
+            method = target.getClass().getMethod(methodName, parameterTypes);
+            methods.put(key, method);
+        }
+        return method;
+    }
+
+    protected void setInvocationContext(LocalServiceInvocation invocation) {
+        SecurityContext targetSecurityContext = null;
+        if (invocation.getSessionId() != null) {
+            targetSecurityContext = new SecurityContext(invocation.getSessionId());
+        }
+        AppContext.setSecurityContext(targetSecurityContext);
+
+        if (invocation.getLocale() != null) {
+            Locale locale = Locale.forLanguageTag(invocation.getLocale());
+            UserInvocationContext.setRequestScopeInfo(invocation.getSessionId(), locale, invocation.getTimeZone(),
+                    invocation.getAddress(), invocation.getClientInfo());
+        }
+    }
+
+    private static final class MethodKey {
+
+        private final String methodName;
+        private final String[] parameterTypeNames;
+        private final int hashCode;
+
+        private MethodKey(String methodName, String[] parameterTypeNames) {
+            this.methodName = methodName;
+            this.parameterTypeNames = parameterTypeNames;
+            this.hashCode = 31 * methodName.hashCode() + Arrays.hashCode(parameterTypeNames);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MethodKey)) return false;
+            MethodKey that = (MethodKey) o;
+            return methodName.equals(that.methodName) && Arrays.equals(parameterTypeNames, that.parameterTypeNames);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.remoting.binary;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.haulmont.cuba.core.app.ServerConfig;
+import com.haulmont.cuba.core.sys.RemotingContextHolder;
+import com.haulmont.cuba.core.sys.events.AppContextStartedEvent;
+import com.haulmont.cuba.core.sys.events.AppContextStoppedEvent;
+import com.haulmont.cuba.core.sys.remoting.HttpServiceExporter;
+import com.haulmont.cuba.core.sys.remoting.RemoteClientInfo;
+import com.haulmont.cuba.core.sys.remoting.ServiceExportHelper;
+import com.haulmont.cuba.core.sys.remoting.binary.BinaryRemotingProtocol.Frame;
+import com.haulmont.cuba.core.sys.serialization.Serialization;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.net.ssl.SSLServerSocketFactory;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Middleware side of the binary remoting transport, see {@link BinaryRemotingProtocol}.
+ * <p>
+ * Listens on {@link ServerConfig#getBinaryRemotingPort()} and executes invocations of the services exported by
+ * {@link HttpServiceExporter}s, so the services, interceptors and security checks are the same as for HTTP invoker.
+ * Each client keeps one connection and sends requests concurrently. Results are streamed in parts of
+ * {@link ServerConfig#getBinaryRemotingChunkSize()} bytes.
+ * <p>
+ * The number of connections, each of them read by its own thread, is limited by
+ * {@link ServerConfig#getBinaryRemotingMaxConnections()}, and the number of invocations waiting for a free thread
+ * by {@link ServerConfig#getBinaryRemotingQueueSize()}.
+ * <p>
+ * A client is authenticated by {@link ServerConfig#getTrustedClientPassword()} before any invocation is read, and
+ * the connection uses TLS if {@link ServerConfig#getBinaryRemotingSsl()} is set.
+ */
+@Component(BinaryRemotingServer.NAME)
+public class BinaryRemotingServer {
+
+    public static final String NAME = "cuba_BinaryRemotingServer";
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryRemotingServer.class);
+
+    // time for a client to complete the handshake
+    protected static final int HANDSHAKE_TIMEOUT = 10_000;
+
+    protected final SecureRandom random = new SecureRandom();
+
+    @Inject
+    protected ServerConfig serverConfig;
+
+    protected volatile ServerSocket serverSocket;
+
+    protected ThreadPoolExecutor executor;
+
+    protected final Set<ServerConnection> connections = ConcurrentHashMap.newKeySet();
+
+    protected final Map<String, HttpServiceExporter> exporters = new ConcurrentHashMap<>();
+
+    @EventListener(AppContextStartedEvent.class)
+    protected void applicationStarted() {
+        int port = serverConfig.getBinaryRemotingPort();
+        if (port > 0 && ServiceExportHelper.exposeServices()) {
+            try {
+                start(port);
+            } catch (IOException e) {
+                log.error("Unable to start binary remoting on port {}", port, e);
+            }
+        }
+    }
+
+    @EventListener(AppContextStoppedEvent.class)
+    protected void applicationStopped() {
+        stop();
+    }
+
+    /**
+     * Starts listening on the given port.
+     */
+    public synchronized void start(int port) throws IOException {
+        if (serverSocket != null)
+            return;
+
+        String bindAddress = serverConfig.getBinaryRemotingBindAddress();
+        ServerSocket socket = serverConfig.getBinaryRemotingSsl() ?
+                SSLServerSocketFactory.getDefault().createServerSocket() : new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(StringUtils.isBlank(bindAddress) ?
+                new InetSocketAddress(port) :
+                new InetSocketAddress(InetAddress.getByName(bindAddress), port));
+
+        int threads = serverConfig.getBinaryRemotingThreads();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(serverConfig.getBinaryRemotingQueueSize(), 1)),
+                new ThreadFactoryBuilder().setNameFormat("BinaryRemoting-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+
+        serverSocket = socket;
+
+        Thread acceptor = new Thread(this::acceptConnections, "BinaryRemotingAcceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        log.info("Binary remoting is listening on {}", socket.getLocalSocketAddress());
+    }
+
+    /**
+     * Closes the listening socket and all connections.
+     */
+    public synchronized void stop() {
+        ServerSocket socket = serverSocket;
+        if (socket == null)
+            return;
+
+        serverSocket = null;
+        IOUtils.closeQuietly(socket);
+        for (ServerConnection connection : connections) {
+            connection.close();
+        }
+        executor.shutdownNow();
+        exporters.clear();
+        log.info("Binary remoting is stopped");
+    }
+
+    /**
+     * @return port the server listens on or -1 if the server is not started
+     */
+    public int getLocalPort() {
+        ServerSocket socket = serverSocket;
+        return socket != null ? socket.getLocalPort() : -1;
+    }
+
+    /**
+     * @return number of connected clients
+     */
+    public int getConnectionsCount() {
+        return connections.size();
+    }
+
+    protected void acceptConnections() {
+        ServerSocket socket;
+        while ((socket = serverSocket) != null) {
+            try {
+                Socket clientSocket = socket.accept();
+                if (connections.size() >= serverConfig.getBinaryRemotingMaxConnections()) {
+                    log.warn("Connection {} is rejected: too many connections", clientSocket.getRemoteSocketAddress());
+                    IOUtils.closeQuietly(clientSocket);
+                    continue;
+                }
+                ServerConnection connection = new ServerConnection(clientSocket);
+                connections.add(connection);
+
+                Thread reader = new Thread(connection::readFrames, "BinaryRemotingConnection-"
+                        + clientSocket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (serverSocket != null) {
+                    log.warn("Unable to accept connection: {}", e.toString());
+                }
+            }
+        }
+    }
+
+    @Nullable
+    protected HttpServiceExporter getExporter(String serviceName) {
+        HttpServiceExporter exporter = exporters.get(serviceName);
+        if (exporter == null) {
+            ApplicationContext remotingContext = RemotingContextHolder.getRemotingApplicationContext();
+            String beanName = "/" + serviceName;
+            if (remotingContext != null && remotingContext.containsBean(beanName)) {
+                Object bean = remotingContext.getBean(beanName);
+                if (bean instanceof HttpServiceExporter) {
+                    exporter = (HttpServiceExporter) bean;
+                    exporters.put(serviceName, exporter);
+                }
+            }
+        }
+        return exporter;
+    }
+
+    /**
+     * Connection of a client.
+     */
+    protected class ServerConnection {
+
+        protected final Socket socket;
+        protected final DataInputStream in;
+        protected final DataOutputStream out;
+        protected final Object writeLock = new Object();
+
+        // requests being executed, cancelled requests are removed
+        protected final Map<Long, Future<?>> requests = new ConcurrentHashMap<>();
+
+        protected volatile boolean closed;
+
+        protected ServerConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        protected void readFrames() {
+            try {
+                if (!authenticate())
+                    return;
+
+                while (!closed) {
+                    Frame frame = BinaryRemotingProtocol.readFrame(in);
+                    if (frame.getType() == BinaryRemotingProtocol.INVOKE) {
+                        FutureTask<Void> task = new FutureTask<>(() -> execute(frame), null);
+                        requests.put(frame.getRequestId(), task);
+                        try {
+                            executor.execute(task);
+                        } catch (RejectedExecutionException e) {
+                            requests.remove(frame.getRequestId());
+                            writeError(frame.getRequestId(), executor.isShutdown()
+                                    ? "Server is stopping" : "Server is busy, too many requests are waiting");
+                        }
+                    } else if (frame.getType() == BinaryRemotingProtocol.CANCEL) {
+                        Future<?> future = requests.remove(frame.getRequestId());
+                        if (future != null) {
+                            log.debug("Cancelling request {} of {}", frame.getRequestId(), socket.getRemoteSocketAddress());
+                            future.cancel(true);
+                        }
+                    } else {
+                        throw new IOException("Unexpected frame type: " + frame.getType());
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    log.debug("Connection {} is closed: {}", socket.getRemoteSocketAddress(), e.toString());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        protected boolean authenticate() throws IOException {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+
+            byte[] challenge = new byte[32];
+            random.nextBytes(challenge);
+            write(0, BinaryRemotingProtocol.CHALLENGE, challenge);
+
+            Frame hello = BinaryRemotingProtocol.readFrame(in, BinaryRemotingProtocol.MAX_HANDSHAKE_PAYLOAD_SIZE);
+            String password = serverConfig.getTrustedClientPassword();
+            if (hello.getType() != BinaryRemotingProtocol.HELLO || StringUtils.isEmpty(password)
+                    || !BinaryRemotingProtocol.checkHelloPayload(hello.getPayload(), password, challenge)) {
+                log.warn("Connection {} is rejected: invalid trusted client password", socket.getRemoteSocketAddress());
+                return false;
+            }
+            write(0, BinaryRemotingProtocol.ACCEPTED, new byte[0]);
+
+            socket.setSoTimeout(0);
+            return true;
+        }
+
+        protected void execute(Frame frame) {
+            long requestId = frame.getRequestId();
+
+            RemoteClientInfo clientInfo = new RemoteClientInfo();
+            clientInfo.setAddress(socket.getInetAddress().getHostAddress());
+            clientInfo.setHost(socket.getInetAddress().getHostName());
+            clientInfo.setPort(socket.getPort());
+            RemoteClientInfo.set(clientInfo);
+
+            String serviceName = null;
+            RemoteInvocation invocation = null;
+            try {
+                RemoteInvocationResult result;
+                try {
+                    serviceName = BinaryRemotingProtocol.getServiceName(frame.getPayload());
+                    HttpServiceExporter exporter = getExporter(serviceName);
+                    if (exporter == null) {
+                        result = new RemoteInvocationResult(
+                                new RemoteAccessException("Service " + serviceName + " is not exported"));
+                    } else {
+                        invocation = (RemoteInvocation) BinaryRemotingProtocol.getInvocation(frame.getPayload());
+                        result = exporter.invoke(invocation);
+                    }
+                } catch (Throwable e) {
+                    log.error("Failed to execute remote invocation request of service [{}]", serviceName, e);
+                    writeError(requestId, "Failed to execute remote invocation request: " + e);
+                    return;
+                }
+
+                if (!requests.containsKey(requestId)) {
+                    // cancelled by the client
+                    return;
+                }
+
+                ResultOutputStream resultStream = new ResultOutputStream(requestId);
+                try {
+                    resultStream.writeResult(result);
+                } catch (Throwable e) {
+                    if (resultStream.failure != null)
+                        throw resultStream.failure;
+                    if (resultStream.cancelled)
+                        return;
+
+                    String methodName = invocation != null ? invocation.getMethodName() : null;
+                    log.error("Failed to write result for service [{}.{}]", serviceName, methodName, e);
+                    writeError(requestId,
+                            String.format("Failed to write result for service [%s.%s]", serviceName, methodName));
+                }
+            } catch (IOException e) {
+                log.debug("Unable to send result of request {}: {}", requestId, e.toString());
+                close();
+            } finally {
+                requests.remove(requestId);
+                RemoteClientInfo.clear();
+            }
+        }
+
+        /**
+         * Replaces the result of the request by a {@link RemoteAccessException} with the given message.
+         */
+        protected void writeError(long requestId, String message) throws IOException {
+            Serialization serialization = BinaryRemotingProtocol.getSerialization();
+            write(requestId, BinaryRemotingProtocol.ERROR,
+                    serialization.serialize(new RemoteInvocationResult(new RemoteAccessException(message))));
+        }
+
+        protected void write(long requestId, byte type, byte[] payload) throws IOException {
+            synchronized (writeLock) {
+                BinaryRemotingProtocol.writeFrame(out, requestId, type, payload);
+            }
+        }
+
+        /**
+         * Serializes a result directly into {@link BinaryRemotingProtocol#RESULT_CHUNK} frames, so only one part of
+         * the serialized result is kept in memory. Stops when the request is cancelled by the client.
+         */
+        protected class ResultOutputStream extends OutputStream {
+
+            protected final long requestId;
+            protected final byte[] buffer = new byte[Math.max(serverConfig.getBinaryRemotingChunkSize(), 1024)];
+            protected int count;
+
+            // failure of the connection, the serialization wraps it
+            protected IOException failure;
+            protected boolean cancelled;
+
+            protected ResultOutputStream(long requestId) {
+                this.requestId = requestId;
+            }
+
+            protected void writeResult(RemoteInvocationResult result) throws IOException {
+                BinaryRemotingProtocol.getSerialization().serialize(result, this);
+                writeFrame(BinaryRemotingProtocol.RESULT);
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                if (count == buffer.length) {
+                    writeFrame(BinaryRemotingProtocol.RESULT_CHUNK);
+                }
+                buffer[count++] = (byte) b;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    if (count == buffer.length) {
+                        writeFrame(BinaryRemotingProtocol.RESULT_CHUNK);
+                    }
+                    int n = Math.min(len, buffer.length - count);
+                    System.arraycopy(b, off, buffer, count, n);
+                    count += n;
+                    off += n;
+                    len -= n;
+                }
+            }
+
+            protected void writeFrame(byte type) throws IOException {
+                if (!requests.containsKey(requestId)) {
+                    cancelled = true;
+                    throw new InterruptedIOException("Request " + requestId + " is cancelled");
+                }
+                try {
+                    ServerConnection.this.write(requestId, type, Arrays.copyOf(buffer, count));
+                } catch (IOException e) {
+                    failure = e;
+                    throw e;
+                }
+                count = 0;
+            }
+        }
+
+        protected void close() {
+            if (closed)
+                return;
+            closed = true;
+            IOUtils.closeQuietly(socket);
+            for (Future<?> future : requests.values()) {
+                future.cancel(true);
+            }
+            requests.clear();
+            connections.remove(this);
+        }
+    }
+}
@@ -79,6 +79,8 @@ public class EntityLog implements EntityLogAPI {
     protected DataManager dataManager;
     @Inject
     protected ServerConfig serverConfig;
+    @Inject
+    protected EntityLogWriter entityLogWriter;
 
     protected volatile boolean loaded;
     protected EntityLogConfig config;
@@ -113,6 +115,7 @@ public class EntityLog implements EntityLogAPI {
         if (items == null || items.isEmpty())
             return;
 
+        boolean async = config.getAsync() && entityLogWriter.isSupported();
         Set<EntityLogItem> saved = new LinkedHashSet<>();
         for (EntityLogItem item : items) {
             List<EntityLogItem> sameEntityList = items.stream()
@@ -124,9 +127,50 @@ public class EntityLog implements EntityLogAPI {
             if (!saved.contains(itemToSave)) {
                 computeChanges(itemToSave, sameEntityList);
                 saved.add(itemToSave);
-                saveItem(itemToSave);
+                if (!async) {
+                    saveItem(itemToSave);
+                }
             }
         }
+        if (async) {
+            enqueueAfterCommit(new ArrayList<>(saved));
+        }
+    }
+
+    /**
+     * Journals items by {@link EntityLogWriter} before the current transaction is committed and passes them to the
+     * writer when the transaction is committed. Items of entities with database-generated ids are journaled before
+     * the commit as well, the ids are known after the commit and are saved with the commit marker of the journal.
+     */
+    protected void enqueueAfterCommit(List<EntityLogItem> items) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            private List<EntityLogWriter.Record> journaled = Collections.emptyList();
+
+            @Override
+            public void beforeCompletion() {
+                journaled = entityLogWriter.journal(items);
+            }
+
+            @Override
+            public void afterCommit() {
+                for (int i = 0; i < journaled.size(); i++) {
+                    EntityLogItem item = items.get(i);
+                    if (item.getDbGeneratedIdEntity() != null) {
+                        item.setObjectEntityId(item.getDbGeneratedIdEntity().getId().getNN());
+                        journaled.get(i).setEntityRef(item.getEntityRef());
+                    }
+                }
+                entityLogWriter.commitJournaled(journaled);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    entityLogWriter.discardJournaled(journaled);
+                }
+            }
+        });
     }
 
     protected void computeChanges(EntityLogItem itemToSave, List<EntityLogItem> sameEntityList) {
@@ -21,6 +21,7 @@ import com.haulmont.cuba.core.config.Property;
 import com.haulmont.cuba.core.config.Source;
 import com.haulmont.cuba.core.config.SourceType;
 import com.haulmont.cuba.core.config.defaults.DefaultBoolean;
+import com.haulmont.cuba.core.config.defaults.DefaultInt;
 
 /**
  * {@link com.haulmont.cuba.security.app.EntityLog} configuration parameters
@@ -35,4 +36,30 @@ public interface EntityLogConfig extends Config {
     @DefaultBoolean(true)
     boolean getEnabled();
     void setEnabled(boolean value);
-}
\ No newline at end of file
+
+    /**
+     * @return Whether entity log items are written to the database asynchronously after the transaction commit
+     * by {@link EntityLogWriter}
+     */
+    @Property("cuba.entityLog.async")
+    @DefaultBoolean(false)
+    boolean getAsync();
+    void setAsync(boolean value);
+
+    /**
+     * @return Maximum number of entity log items waiting in memory for the asynchronous writer. When the buffer is
+     * full, items are written by the committing thread. The value is read once on the first asynchronous write.
+     */
+    @Property("cuba.entityLog.asyncBufferCapacity")
+    @DefaultInt(10000)
+    int getAsyncBufferCapacity();
+    void setAsyncBufferCapacity(int value);
+
+    /**
+     * @return Maximum number of entity log items inserted by one JDBC batch of the asynchronous writer
+     */
+    @Property("cuba.entityLog.asyncBatchSize")
+    @DefaultInt(100)
+    int getAsyncBatchSize();
+    void setAsyncBatchSize(int value);
+}
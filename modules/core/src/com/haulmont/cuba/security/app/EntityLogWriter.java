@@ -0,0 +1,944 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.security.app;
+
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.MetaProperty;
+import com.haulmont.chile.core.model.MetaPropertyPath;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.entity.ReferenceToEntity;
+import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.AuditInfoProvider;
+import com.haulmont.cuba.core.sys.persistence.DbTypeConverter;
+import com.haulmont.cuba.security.entity.EntityLogItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.inject.Inject;
+import javax.persistence.AttributeOverride;
+import javax.persistence.AttributeOverrides;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Background writer of entity log items used when {@link EntityLogConfig#getAsync()} is true.
+ * <p>
+ * Items of a transaction are appended to a local journal in the {@code entitylog} subdirectory of
+ * {@link GlobalConfig#getDataDir()} and forced to disk before the transaction is committed, see
+ * {@link #journal(Collection)}. After the commit a commit marker of the transaction is appended to the journal and
+ * the items are put into a bounded in-memory buffer, see {@link #commitJournaled(List)}. A background thread takes
+ * items from the buffer and inserts them into the table of the entity log item entity by JDBC batches. A batch
+ * which fails to be written is retried with a growing delay.
+ * <p>
+ * A journal segment is deleted when its items and the items of the transactions committed by its markers are
+ * written, so segments left after a crash or a failure of the database are written on the next start. Only items of
+ * transactions having a commit marker are written from the journal, items of a transaction rolled back or
+ * interrupted by a crash before the marker is written are dropped. If the buffer is full, items are written by the
+ * calling thread.
+ * <p>
+ * Table and column names are taken from the metadata of the effective entity log item entity. If the entity is
+ * extended by additional persistent attributes, the writer is not used, see {@link #isSupported()}.
+ */
+@Component(EntityLogWriter.NAME)
+public class EntityLogWriter implements AppContext.Listener {
+
+    public static final String NAME = "cuba_EntityLogWriter";
+
+    private static final Logger log = LoggerFactory.getLogger(EntityLogWriter.class);
+
+    protected static final String JOURNAL_DIR = "entitylog";
+    protected static final String SEGMENT_PREFIX = "segment-";
+    protected static final String SEGMENT_SUFFIX = ".journal";
+    protected static final int SEGMENT_MAX_RECORDS = 10_000;
+
+    protected static final byte JOURNAL_RECORD = 0;
+    protected static final byte JOURNAL_COMMIT = 1;
+
+    protected static final long RETRY_MIN_DELAY_MS = 1000;
+    protected static final long RETRY_MAX_DELAY_MS = 60_000;
+
+    /**
+     * Properties of the entity log item written by the writer, in the order of {@link Record#toParams}.
+     */
+    protected static final List<String> COLUMN_PROPERTIES = Collections.unmodifiableList(Arrays.asList(
+            "id", "createTs", "createdBy", "sysTenantId", "eventTs", "user", "type", "entity", "entityInstanceName",
+            "entityRef.entityId", "entityRef.stringEntityId", "entityRef.intEntityId", "entityRef.longEntityId",
+            "changes"));
+
+    @Inject
+    protected Persistence persistence;
+    @Inject
+    protected TimeSource timeSource;
+    @Inject
+    protected AuditInfoProvider auditInfoProvider;
+    @Inject
+    protected Metadata metadata;
+    @Inject
+    protected MetadataTools metadataTools;
+
+    protected EntityLogConfig config;
+    protected GlobalConfig globalConfig;
+
+    protected volatile BlockingQueue<Record> buffer;
+    protected volatile Thread writerThread;
+    protected volatile boolean stopped;
+
+    protected volatile String insertSql;
+    protected volatile Boolean supported;
+
+    /**
+     * Held while a batch is taken from the buffer and written, so {@link #flush()} waits for the batch being
+     * written by the background thread.
+     */
+    protected final ReentrantLock writeLock = new ReentrantLock(true);
+    protected final Queue<Record> failedRecords = new ConcurrentLinkedQueue<>();
+
+    protected final Object journalLock = new Object();
+    @GuardedBy("journalLock")
+    protected FileOutputStream journalFile;
+    @GuardedBy("journalLock")
+    protected DataOutputStream journalOut;
+    @GuardedBy("journalLock")
+    protected long currentSegment;
+    @GuardedBy("journalLock")
+    protected int currentSegmentRecords;
+    protected final Map<Long, AtomicInteger> pendingBySegment = new ConcurrentHashMap<>();
+
+    protected final AtomicLong writtenCount = new AtomicLong();
+    protected final AtomicLong failedBatchCount = new AtomicLong();
+    protected volatile long lastWriteTs;
+
+    public EntityLogWriter() {
+        AppContext.addListener(this);
+    }
+
+    @Inject
+    public void setConfiguration(Configuration configuration) {
+        config = configuration.getConfig(EntityLogConfig.class);
+        globalConfig = configuration.getConfig(GlobalConfig.class);
+    }
+
+    @Override
+    public void applicationStarted() {
+        replayJournal();
+    }
+
+    @Override
+    public void applicationStopped() {
+        stopped = true;
+        Thread thread = writerThread;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        synchronized (journalLock) {
+            closeSegment();
+        }
+    }
+
+    /**
+     * @return true if the effective entity log item entity has no persistent attributes except the ones written
+     * by the writer, otherwise items must be saved by JPA
+     */
+    public boolean isSupported() {
+        Boolean result = supported;
+        if (result == null) {
+            result = true;
+            MetaClass metaClass = metadata.getExtendedEntities().getEffectiveMetaClass(EntityLogItem.class);
+            for (MetaProperty property : metaClass.getProperties()) {
+                if (metadataTools.isPersistent(property)
+                        && !"entityRef".equals(property.getName())
+                        && !COLUMN_PROPERTIES.contains(property.getName())) {
+                    log.info("Entity log item entity {} has additional attribute {}, asynchronous writing is not used",
+                            metaClass.getName(), property.getName());
+                    result = false;
+                    break;
+                }
+            }
+            supported = result;
+        }
+        return result;
+    }
+
+    /**
+     * Appends the items to the journal and forces it to disk. Called before the transaction is committed, the
+     * returned records are in the order of the items and must be passed to {@link #commitJournaled(List)} after
+     * the commit or to {@link #discardJournaled(List)} after a rollback.
+     */
+    public List<Record> journal(Collection<EntityLogItem> items) {
+        if (items.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Record> records = new ArrayList<>(items.size());
+        UUID txId = UuidProvider.createUuid();
+        String login = auditInfoProvider.getCurrentUserLogin();
+        long now = timeSource.currentTimeMillis();
+        for (EntityLogItem item : items) {
+            Record record = Record.of(item, login, now);
+            record.txId = txId;
+            records.add(record);
+        }
+        appendToJournal(records);
+        return records;
+    }
+
+    /**
+     * Journals the items of a committed transaction and schedules them for writing to the database.
+     */
+    public void enqueue(Collection<EntityLogItem> items) {
+        commitJournaled(journal(items));
+    }
+
+    /**
+     * Appends the commit marker of the journaled records of a committed transaction to the journal and schedules
+     * the records for writing to the database. References to the logged entities set by
+     * {@link Record#setEntityRef(ReferenceToEntity)} after journaling are saved in the marker.
+     */
+    public void commitJournaled(List<Record> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        appendCommitMarker(records);
+        BlockingQueue<Record> buffer = getBuffer();
+        List<Record> overflow = null;
+        for (Record record : records) {
+            if (!buffer.offer(record)) {
+                if (overflow == null) {
+                    overflow = new ArrayList<>();
+                }
+                overflow.add(record);
+            }
+        }
+        if (overflow != null) {
+            log.debug("Entity log buffer is full, writing {} items synchronously", overflow.size());
+            writeLock.lock();
+            try {
+                writeAndAcknowledge(overflow);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes all waiting items to the database in the calling thread. The batch being written by the background
+     * thread is completed before, so all items of the transactions committed before the call are written when
+     * the method returns, unless the database fails.
+     */
+    public void flush() {
+        BlockingQueue<Record> buffer = this.buffer;
+        if (buffer == null) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            List<Record> batch = new ArrayList<>();
+            while (takeBatch(buffer, batch) > 0) {
+                if (!writeAndAcknowledge(batch)) {
+                    break;
+                }
+                batch.clear();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of items waiting to be written, including the items of failed batches
+     */
+    public int getQueueDepth() {
+        BlockingQueue<Record> buffer = this.buffer;
+        return failedRecords.size() + (buffer == null ? 0 : buffer.size());
+    }
+
+    /**
+     * @return time in milliseconds since the oldest waiting item was committed, or 0 if there are no waiting items
+     */
+    public long getLagMs() {
+        BlockingQueue<Record> buffer = this.buffer;
+        Record oldest = failedRecords.peek();
+        if (oldest == null && buffer != null) {
+            oldest = buffer.peek();
+        }
+        return oldest == null ? 0 : Math.max(0, timeSource.currentTimeMillis() - oldest.createTs);
+    }
+
+    /**
+     * @return number of items written since the application start
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * @return number of batches which failed to be written since the application start
+     */
+    public long getFailedBatchCount() {
+        return failedBatchCount.get();
+    }
+
+    @Nullable
+    public Date getLastWriteTs() {
+        long ts = lastWriteTs;
+        return ts == 0 ? null : new Date(ts);
+    }
+
+    protected int getBatchSize() {
+        return Math.max(1, config.getAsyncBatchSize());
+    }
+
+    protected BlockingQueue<Record> getBuffer() {
+        BlockingQueue<Record> result = buffer;
+        if (result == null) {
+            synchronized (this) {
+                result = buffer;
+                if (result == null) {
+                    result = new ArrayBlockingQueue<>(Math.max(1, config.getAsyncBufferCapacity()));
+                    buffer = result;
+                    startWriterThread();
+                }
+            }
+        }
+        return result;
+    }
+
+    protected void startWriterThread() {
+        Thread thread = new Thread(this::runWriter, "EntityLogWriter");
+        thread.setDaemon(true);
+        writerThread = thread;
+        thread.start();
+    }
+
+    protected void runWriter() {
+        List<Record> batch = new ArrayList<>();
+        long retryDelay = 0;
+        while (!stopped) {
+            try {
+                if (retryDelay > 0) {
+                    Thread.sleep(retryDelay);
+                }
+                writeLock.lockInterruptibly();
+                try {
+                    if (takeBatch(buffer, batch) == 0) {
+                        Record first = buffer.poll(1, TimeUnit.SECONDS);
+                        if (first == null) {
+                            rotateIdleSegment();
+                            continue;
+                        }
+                        batch.add(first);
+                        takeBatch(buffer, batch);
+                    }
+                    retryDelay = writeAndAcknowledge(batch) ? 0
+                            : Math.min(Math.max(retryDelay * 2, RETRY_MIN_DELAY_MS), RETRY_MAX_DELAY_MS);
+                } finally {
+                    writeLock.unlock();
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                log.error("Error in entity log writer", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Adds the records of failed batches and then the buffered records to the batch up to the batch size.
+     *
+     * @return size of the batch
+     */
+    @GuardedBy("writeLock")
+    protected int takeBatch(BlockingQueue<Record> buffer, List<Record> batch) {
+        int batchSize = getBatchSize();
+        Record record;
+        while (batch.size() < batchSize && (record = failedRecords.poll()) != null) {
+            batch.add(record);
+        }
+        if (batch.size() < batchSize) {
+            buffer.drainTo(batch, batchSize - batch.size());
+        }
+        return batch.size();
+    }
+
+    /**
+     * Writes the records and releases their journal segments. If the batch fails, the records are kept for
+     * the next attempt and their segments are not deleted.
+     *
+     * @return true if the records are written
+     */
+    @GuardedBy("writeLock")
+    protected boolean writeAndAcknowledge(List<Record> records) {
+        try {
+            writeBatch(records);
+        } catch (SQLException | RuntimeException e) {
+            failedBatchCount.incrementAndGet();
+            failedRecords.addAll(records);
+            log.error("Unable to write {} entity log items, they will be retried", records.size(), e);
+            return false;
+        }
+        writtenCount.addAndGet(records.size());
+        lastWriteTs = timeSource.currentTimeMillis();
+        acknowledge(records);
+        return true;
+    }
+
+    /**
+     * Releases the journaled records of a rolled back transaction. The records have no commit marker, so they are
+     * not written on restart.
+     */
+    public void discardJournaled(List<Record> records) {
+        acknowledge(records);
+    }
+
+    protected void writeBatch(List<Record> records) throws SQLException {
+        DbTypeConverter types = persistence.getDbTypeConverter();
+        int uuidType = types.getSqlType(UUID.class);
+        int dateType = types.getSqlType(Date.class);
+        int[] paramTypes = {uuidType, dateType, Types.VARCHAR, Types.VARCHAR, dateType, uuidType, Types.CHAR,
+                Types.VARCHAR, Types.VARCHAR, uuidType, Types.VARCHAR, Types.INTEGER, Types.BIGINT, Types.CLOB};
+
+        try (Connection connection = persistence.getDataSource().getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                try (PreparedStatement statement = connection.prepareStatement(getInsertSql())) {
+                    for (Record record : records) {
+                        setParams(statement, record.toParams(types), paramTypes);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    protected void setParams(PreparedStatement statement, Object[] params, int[] paramTypes) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            Object value = params[i];
+            if (value == null) {
+                // VARCHAR works with many drivers regardless of the actual column type
+                statement.setNull(i + 1, paramTypes[i] == Types.CLOB ? Types.VARCHAR : paramTypes[i]);
+            } else if (paramTypes[i] == Types.CLOB) {
+                String text = (String) value;
+                statement.setCharacterStream(i + 1, new StringReader(text), text.length());
+            } else {
+                statement.setObject(i + 1, value, paramTypes[i]);
+            }
+        }
+    }
+
+    protected String getInsertSql() {
+        String sql = insertSql;
+        if (sql == null) {
+            sql = buildInsertSql();
+            insertSql = sql;
+        }
+        return sql;
+    }
+
+    /**
+     * Builds the insert statement using table and column names of the effective entity log item entity.
+     */
+    protected String buildInsertSql() {
+        MetaClass metaClass = metadata.getExtendedEntities().getEffectiveMetaClass(EntityLogItem.class);
+        String table = metadataTools.getDatabaseTable(metaClass);
+        if (table == null) {
+            throw new IllegalStateException("Unable to determine table of " + metaClass.getName());
+        }
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (String property : COLUMN_PROPERTIES) {
+            MetaPropertyPath path = metaClass.getPropertyPath(property);
+            String column = path == null ? null : getDatabaseColumn(path);
+            if (column == null) {
+                throw new IllegalStateException("Unable to determine column of " + metaClass.getName() + "." + property);
+            }
+            if (columns.length() > 0) {
+                columns.append(", ");
+                values.append(", ");
+            }
+            columns.append(column);
+            values.append("?");
+        }
+        return "insert into " + table + " (" + columns + ") values (" + values + ")";
+    }
+
+    @Nullable
+    protected String getDatabaseColumn(MetaPropertyPath path) {
+        MetaProperty[] properties = path.getMetaProperties();
+        if (properties.length == 2) {
+            // attribute of the embedded reference can be overridden by the owning entity
+            String name = properties[1].getName();
+            AttributeOverrides overrides = properties[0].getAnnotatedElement().getAnnotation(AttributeOverrides.class);
+            if (overrides != null) {
+                for (AttributeOverride override : overrides.value()) {
+                    if (name.equals(override.name())) {
+                        return override.column().name();
+                    }
+                }
+            }
+            AttributeOverride override = properties[0].getAnnotatedElement().getAnnotation(AttributeOverride.class);
+            if (override != null && name.equals(override.name())) {
+                return override.column().name();
+            }
+        }
+        return metadataTools.getDatabaseColumn(path.getMetaProperty());
+    }
+
+    protected File getJournalDir() {
+        return new File(globalConfig.getDataDir(), JOURNAL_DIR);
+    }
+
+    protected void appendToJournal(List<Record> records) {
+        synchronized (journalLock) {
+            try {
+                if (journalOut == null || currentSegmentRecords >= SEGMENT_MAX_RECORDS) {
+                    openSegment();
+                }
+                for (Record record : records) {
+                    journalOut.writeByte(JOURNAL_RECORD);
+                    Record.writeUuid(record.txId, journalOut);
+                    record.write(journalOut);
+                    record.segment = currentSegment;
+                }
+                syncJournal();
+                currentSegmentRecords += records.size();
+                pendingBySegment.computeIfAbsent(currentSegment, k -> new AtomicInteger()).addAndGet(records.size());
+            } catch (IOException e) {
+                log.error("Unable to write entity log journal", e);
+                for (Record record : records) {
+                    record.segment = -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the commit marker of the transaction of the records. The segment of the marker is kept until all the
+     * records are written, as they are not written on restart without it.
+     */
+    protected void appendCommitMarker(List<Record> records) {
+        List<Record> journaled = new ArrayList<>(records.size());
+        List<Record> resolved = new ArrayList<>();
+        for (Record record : records) {
+            if (record.segment >= 0) {
+                journaled.add(record);
+                if (record.entityRefResolved) {
+                    resolved.add(record);
+                }
+            }
+        }
+        if (journaled.isEmpty()) {
+            return;
+        }
+        synchronized (journalLock) {
+            try {
+                if (journalOut == null || currentSegmentRecords >= SEGMENT_MAX_RECORDS) {
+                    openSegment();
+                }
+                journalOut.writeByte(JOURNAL_COMMIT);
+                Record.writeUuid(journaled.get(0).txId, journalOut);
+                journalOut.writeInt(resolved.size());
+                for (Record record : resolved) {
+                    Record.writeUuid(record.id, journalOut);
+                    record.writeEntityRef(journalOut);
+                }
+                syncJournal();
+                pendingBySegment.computeIfAbsent(currentSegment, k -> new AtomicInteger()).addAndGet(journaled.size());
+                for (Record record : journaled) {
+                    record.commitSegment = currentSegment;
+                }
+            } catch (IOException e) {
+                log.error("Unable to write entity log journal", e);
+            }
+        }
+    }
+
+    @GuardedBy("journalLock")
+    protected void syncJournal() throws IOException {
+        journalOut.flush();
+        journalFile.getChannel().force(false);
+    }
+
+    @GuardedBy("journalLock")
+    protected void openSegment() throws IOException {
+        closeSegment();
+        File dir = getJournalDir();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        currentSegment = Math.max(currentSegment + 1, System.currentTimeMillis());
+        File file = new File(dir, SEGMENT_PREFIX + currentSegment + SEGMENT_SUFFIX);
+        journalFile = new FileOutputStream(file);
+        journalOut = new DataOutputStream(new BufferedOutputStream(journalFile));
+        currentSegmentRecords = 0;
+    }
+
+    @GuardedBy("journalLock")
+    protected void closeSegment() {
+        if (journalOut != null) {
+            try {
+                journalOut.close();
+            } catch (IOException e) {
+                log.warn("Unable to close entity log journal", e);
+            }
+            journalOut = null;
+            journalFile = null;
+            deleteSegmentIfWritten(currentSegment);
+        }
+    }
+
+    protected void rotateIdleSegment() {
+        synchronized (journalLock) {
+            if (journalOut != null && getQueueDepth() == 0) {
+                closeSegment();
+            }
+        }
+    }
+
+    protected void acknowledge(List<Record> records) {
+        Set<Long> segments = new HashSet<>();
+        for (Record record : records) {
+            release(record.segment, segments);
+            release(record.commitSegment, segments);
+        }
+        if (!segments.isEmpty()) {
+            synchronized (journalLock) {
+                for (Long segment : segments) {
+                    if (journalOut == null || segment != currentSegment) {
+                        deleteSegmentIfWritten(segment);
+                    }
+                }
+            }
+        }
+    }
+
+    protected void release(long segment, Set<Long> written) {
+        if (segment >= 0) {
+            AtomicInteger pending = pendingBySegment.get(segment);
+            if (pending != null && pending.decrementAndGet() == 0) {
+                written.add(segment);
+            }
+        }
+    }
+
+    @GuardedBy("journalLock")
+    protected void deleteSegmentIfWritten(long segment) {
+        AtomicInteger pending = pendingBySegment.get(segment);
+        if (pending == null || pending.get() <= 0) {
+            pendingBySegment.remove(segment);
+            File file = new File(getJournalDir(), SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+            if (file.exists() && !file.delete()) {
+                log.warn("Unable to delete entity log journal segment {}", file);
+            }
+        }
+    }
+
+    /**
+     * Writes items of committed transactions from journal segments left by the previous run to the database.
+     * The commit marker of a transaction can be written to a later segment than its items, so all segments are
+     * read before writing.
+     */
+    protected void replayJournal() {
+        File[] files = getJournalDir().listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null || files.length == 0) {
+            return;
+        }
+        Arrays.sort(files);
+        Map<UUID, List<Record>> recordsByTx = new LinkedHashMap<>();
+        Map<UUID, Map<UUID, Record>> committed = new HashMap<>();
+        for (File file : files) {
+            readSegment(file, recordsByTx, committed);
+        }
+        List<Record> records = new ArrayList<>();
+        int dropped = 0;
+        for (Map.Entry<UUID, List<Record>> entry : recordsByTx.entrySet()) {
+            Map<UUID, Record> resolved = committed.get(entry.getKey());
+            if (resolved == null) {
+                dropped += entry.getValue().size();
+                continue;
+            }
+            for (Record record : entry.getValue()) {
+                Record ref = resolved.get(record.id);
+                if (ref != null) {
+                    record.copyEntityRef(ref);
+                }
+                records.add(record);
+            }
+        }
+        if (dropped > 0) {
+            log.info("Dropped {} journaled entity log items of transactions which were not committed", dropped);
+        }
+        try {
+            int written = writeMissing(records);
+            log.info("Restored {} entity log items from {} journal segments", written, files.length);
+            for (File file : files) {
+                if (!file.delete()) {
+                    log.warn("Unable to delete entity log journal segment {}", file);
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Unable to restore entity log items from journal {}", getJournalDir(), e);
+        }
+    }
+
+    protected void readSegment(File file, Map<UUID, List<Record>> recordsByTx, Map<UUID, Map<UUID, Record>> committed) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte kind = in.readByte();
+                UUID txId = Record.readUuid(in);
+                if (kind == JOURNAL_COMMIT) {
+                    Map<UUID, Record> resolved = new HashMap<>();
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        UUID id = Record.readUuid(in);
+                        Record ref = new Record();
+                        ref.readEntityRef(in);
+                        resolved.put(id, ref);
+                    }
+                    committed.put(txId, resolved);
+                } else {
+                    Record record = Record.read(in);
+                    record.txId = txId;
+                    recordsByTx.computeIfAbsent(txId, k -> new ArrayList<>()).add(record);
+                }
+            }
+        } catch (EOFException e) {
+            // end of segment or the last record was not completely written
+        } catch (IOException e) {
+            log.error("Unable to read entity log journal {}", file, e);
+        }
+    }
+
+    protected int writeMissing(List<Record> records) throws SQLException {
+        QueryRunner runner = new QueryRunner(persistence.getDataSource());
+        DbTypeConverter types = persistence.getDbTypeConverter();
+        MetaClass metaClass = metadata.getExtendedEntities().getEffectiveMetaClass(EntityLogItem.class);
+        String countSql = "select count(*) from " + metadataTools.getDatabaseTable(metaClass)
+                + " where " + metadataTools.getDatabaseColumn(metaClass.getPropertyNN("id")) + " = ?";
+        List<Record> missing = new ArrayList<>();
+        for (Record record : records) {
+            Integer count = runner.query(countSql,
+                    new Object[]{types.getSqlObject(record.id)},
+                    rs -> rs.next() ? rs.getInt(1) : 0);
+            if (count == null || count == 0) {
+                missing.add(record);
+            }
+        }
+        for (int i = 0; i < missing.size(); i += getBatchSize()) {
+            writeBatch(missing.subList(i, Math.min(i + getBatchSize(), missing.size())));
+        }
+        return missing.size();
+    }
+
+    /**
+     * Column values of an entity log item.
+     */
+    public static class Record {
+
+        protected UUID id;
+        protected long createTs;
+        protected String createdBy;
+        protected String sysTenantId;
+        protected long eventTs;
+        protected UUID userId;
+        protected String type;
+        protected String entity;
+        protected String entityInstanceName;
+        protected UUID entityId;
+        protected String stringEntityId;
+        protected Integer intEntityId;
+        protected Long longEntityId;
+        protected String changes;
+
+        protected transient UUID txId;
+        protected transient long segment = -1;
+        protected transient long commitSegment = -1;
+        protected transient boolean entityRefResolved;
+
+        public static Record of(EntityLogItem item, String login, long now) {
+            Record record = new Record();
+            record.id = item.getId();
+            record.createTs = now;
+            record.createdBy = login;
+            record.sysTenantId = item.getSysTenantId();
+            record.eventTs = item.getEventTs() != null ? item.getEventTs().getTime() : now;
+            record.userId = item.getUser() != null ? item.getUser().getId() : null;
+            record.type = item.getType() != null ? item.getType().getId() : null;
+            record.entity = item.getEntity();
+            record.entityInstanceName = item.getEntityInstanceName();
+            ReferenceToEntity ref = item.getEntityRef();
+            if (ref != null) {
+                record.entityId = ref.getEntityId();
+                record.stringEntityId = ref.getStringEntityId();
+                record.intEntityId = ref.getIntEntityId();
+                record.longEntityId = ref.getLongEntityId();
+            }
+            record.changes = item.getChanges();
+            return record;
+        }
+
+        /**
+         * Sets the reference to the logged entity resolved after the record was journaled, e.g. the identifier
+         * generated by the database on commit.
+         */
+        public void setEntityRef(@Nullable ReferenceToEntity ref) {
+            entityId = ref == null ? null : ref.getEntityId();
+            stringEntityId = ref == null ? null : ref.getStringEntityId();
+            intEntityId = ref == null ? null : ref.getIntEntityId();
+            longEntityId = ref == null ? null : ref.getLongEntityId();
+            entityRefResolved = true;
+        }
+
+        protected void copyEntityRef(Record other) {
+            entityId = other.entityId;
+            stringEntityId = other.stringEntityId;
+            intEntityId = other.intEntityId;
+            longEntityId = other.longEntityId;
+        }
+
+        public Object[] toParams(DbTypeConverter types) {
+            return new Object[]{
+                    types.getSqlObject(id),
+                    types.getSqlObject(new Date(createTs)),
+                    createdBy,
+                    sysTenantId,
+                    types.getSqlObject(new Date(eventTs)),
+                    userId == null ? null : types.getSqlObject(userId),
+                    type,
+                    entity,
+                    entityInstanceName,
+                    entityId == null ? null : types.getSqlObject(entityId),
+                    stringEntityId,
+                    intEntityId,
+                    longEntityId,
+                    changes
+            };
+        }
+
+        public void write(DataOutput out) throws IOException {
+            writeUuid(id, out);
+            out.writeLong(createTs);
+            writeString(createdBy, out);
+            writeString(sysTenantId, out);
+            out.writeLong(eventTs);
+            writeUuid(userId, out);
+            writeString(type, out);
+            writeString(entity, out);
+            writeString(entityInstanceName, out);
+            writeEntityRef(out);
+            writeString(changes, out);
+        }
+
+        protected void writeEntityRef(DataOutput out) throws IOException {
+            writeUuid(entityId, out);
+            writeString(stringEntityId, out);
+            writeString(intEntityId == null ? null : intEntityId.toString(), out);
+            writeString(longEntityId == null ? null : longEntityId.toString(), out);
+        }
+
+        protected void readEntityRef(DataInput in) throws IOException {
+            entityId = readUuid(in);
+            stringEntityId = readString(in);
+            String intEntityId = readString(in);
+            this.intEntityId = intEntityId == null ? null : Integer.valueOf(intEntityId);
+            String longEntityId = readString(in);
+            this.longEntityId = longEntityId == null ? null : Long.valueOf(longEntityId);
+        }
+
+        public static Record read(DataInput in) throws IOException {
+            Record record = new Record();
+            record.id = readUuid(in);
+            record.createTs = in.readLong();
+            record.createdBy = readString(in);
+            record.sysTenantId = readString(in);
+            record.eventTs = in.readLong();
+            record.userId = readUuid(in);
+            record.type = readString(in);
+            record.entity = readString(in);
+            record.entityInstanceName = readString(in);
+            record.readEntityRef(in);
+            record.changes = readString(in);
+            return record;
+        }
+
+        protected static void writeUuid(@Nullable UUID uuid, DataOutput out) throws IOException {
+            out.writeBoolean(uuid != null);
+            if (uuid != null) {
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+            }
+        }
+
+        @Nullable
+        protected static UUID readUuid(DataInput in) throws IOException {
+            return in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+        }
+
+        protected static void writeString(@Nullable String value, DataOutput out) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        @Nullable
+        protected static String readString(DataInput in) throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.security.app;
+
+import com.haulmont.cuba.security.app.UserSessions.UserSessionInfo;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index of non-system user sessions ordered by the time of last usage.
+ * <p>
+ * Sessions are grouped into buckets of a fixed width. A touch moves a session to another bucket only when its last
+ * usage time crosses the bucket boundary, and {@link #pollExpired(long)} visits only the buckets which can contain
+ * expired sessions, so eviction does not depend on the total number of sessions.
+ * <p>
+ * Adding, moving and removing of sessions can be performed concurrently, polling is exclusive.
+ */
+public class UserSessionExpiryIndex {
+
+    protected final long bucketWidth;
+
+    protected final ConcurrentNavigableMap<Long, Set<UserSessionInfo>> buckets = new ConcurrentSkipListMap<>();
+
+    protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param bucketWidth width of a bucket in milliseconds
+     */
+    public UserSessionExpiryIndex(long bucketWidth) {
+        if (bucketWidth <= 0) {
+            throw new IllegalArgumentException("bucketWidth must be positive");
+        }
+        this.bucketWidth = bucketWidth;
+    }
+
+    /**
+     * Adds the session to the index according to its last usage time. System sessions are not indexed.
+     */
+    public void add(UserSessionInfo usi) {
+        if (usi.session.isSystem()) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            synchronized (usi) {
+                if (usi.indexBucket == UserSessionInfo.NOT_INDEXED) {
+                    long bucket = bucketOf(usi.lastUsedTs);
+                    bucketSet(bucket).add(usi);
+                    usi.indexBucket = bucket;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the session to the bucket of its current last usage time if the session is indexed.
+     */
+    public void touched(UserSessionInfo usi) {
+        long bucket = bucketOf(usi.lastUsedTs);
+        if (usi.indexBucket == bucket || usi.indexBucket == UserSessionInfo.NOT_INDEXED) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            synchronized (usi) {
+                long current = usi.indexBucket;
+                if (current != bucket && current != UserSessionInfo.NOT_INDEXED) {
+                    Set<UserSessionInfo> set = buckets.get(current);
+                    if (set != null) {
+                        set.remove(usi);
+                    }
+                    bucketSet(bucket).add(usi);
+                    usi.indexBucket = bucket;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the session from the index.
+     */
+    public void remove(UserSessionInfo usi) {
+        if (usi.indexBucket == UserSessionInfo.NOT_INDEXED) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            synchronized (usi) {
+                long current = usi.indexBucket;
+                if (current != UserSessionInfo.NOT_INDEXED) {
+                    Set<UserSessionInfo> set = buckets.get(current);
+                    if (set != null) {
+                        set.remove(usi);
+                    }
+                    usi.indexBucket = UserSessionInfo.NOT_INDEXED;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes from the index and returns sessions which were last used before the given time.
+     *
+     * @param threshold time in milliseconds
+     * @return expired sessions ordered by buckets
+     */
+    public List<UserSessionInfo> pollExpired(long threshold) {
+        List<UserSessionInfo> expired = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            Iterator<Map.Entry<Long, Set<UserSessionInfo>>> iterator =
+                    buckets.headMap(bucketOf(threshold), true).entrySet().iterator();
+            while (iterator.hasNext()) {
+                Set<UserSessionInfo> set = iterator.next().getValue();
+                for (Iterator<UserSessionInfo> it = set.iterator(); it.hasNext(); ) {
+                    UserSessionInfo usi = it.next();
+                    if (usi.lastUsedTs < threshold) {
+                        it.remove();
+                        usi.indexBucket = UserSessionInfo.NOT_INDEXED;
+                        expired.add(usi);
+                    }
+                }
+                if (set.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return expired;
+    }
+
+    /**
+     * @return number of indexed sessions
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            int size = 0;
+            for (Set<UserSessionInfo> set : buckets.values()) {
+                size += set.size();
+            }
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    protected Set<UserSessionInfo> bucketSet(long bucket) {
+        return buckets.computeIfAbsent(bucket, k -> ConcurrentHashMap.newKeySet());
+    }
+
+    protected long bucketOf(long ts) {
+        return ts / bucketWidth;
+    }
+}
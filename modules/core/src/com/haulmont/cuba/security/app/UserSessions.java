@@ -17,12 +17,16 @@ package com.haulmont.cuba.security.app;
 
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.cuba.core.app.ClusterListener;
+import com.haulmont.cuba.core.app.ClusterListenerAdapter;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ClusterMessageCodec;
+import com.haulmont.cuba.core.app.CoalescingClusterMessage;
 import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.global.Configuration;
 import com.haulmont.cuba.core.global.Metadata;
 import com.haulmont.cuba.core.global.TimeSource;
 import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.serialization.SerializationSupport;
 import com.haulmont.cuba.security.entity.SessionAction;
 import com.haulmont.cuba.security.entity.User;
 import com.haulmont.cuba.security.entity.UserSessionEntity;
@@ -37,6 +41,8 @@ import javax.inject.Inject;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -46,14 +52,32 @@ import java.util.stream.Stream;
 @Component(UserSessionsAPI.NAME)
 public class UserSessions implements UserSessionsAPI {
 
-    public static class UserSessionInfo implements Serializable {
+    public static class UserSessionInfo implements CoalescingClusterMessage {
         private static final long serialVersionUID = -4834267718111570841L;
 
+        protected static final long NOT_INDEXED = 0;
+
+        private static final AtomicLongFieldUpdater<UserSessionInfo> LAST_USED_TS_UPDATER =
+                AtomicLongFieldUpdater.newUpdater(UserSessionInfo.class, "lastUsedTs");
+        private static final AtomicLongFieldUpdater<UserSessionInfo> LAST_SENT_TS_UPDATER =
+                AtomicLongFieldUpdater.newUpdater(UserSessionInfo.class, "lastSentTs");
+        private static final AtomicIntegerFieldUpdater<UserSessionInfo> CONTENT_CHANGED_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(UserSessionInfo.class, "contentChanged");
+
         public final UserSession session;
         public final long since;
         public volatile long lastUsedTs; // set to 0 when propagating removal to cluster
         public volatile long lastSentTs;
 
+        // bucket of UserSessionExpiryIndex containing this session
+        protected transient volatile long indexBucket = NOT_INDEXED;
+
+        // 1 if the session has been changed since it was last sent to the cluster in full
+        protected transient volatile int contentChanged = 1;
+
+        // cluster view at the moment the session was last sent in full
+        protected transient volatile String fullSentView;
+
         public UserSessionInfo(UserSession session, long now) {
             this.session = session;
             this.since = now;
@@ -77,6 +101,45 @@ public class UserSessions implements UserSessionsAPI {
             return lastSentTs;
         }
 
+        /**
+         * Atomically sets the last usage time if it has not been changed by another thread.
+         *
+         * @return true if successful
+         */
+        public boolean compareAndSetLastUsedTs(long expect, long update) {
+            return LAST_USED_TS_UPDATER.compareAndSet(this, expect, update);
+        }
+
+        /**
+         * Atomically sets the last sending time if it has not been changed by another thread.
+         *
+         * @return true if successful
+         */
+        public boolean compareAndSetLastSentTs(long expect, long update) {
+            return LAST_SENT_TS_UPDATER.compareAndSet(this, expect, update);
+        }
+
+        /**
+         * Marks the session content as changed, so the next cluster message contains the whole session.
+         */
+        public void markContentChanged() {
+            contentChanged = 1;
+        }
+
+        /**
+         * Atomically clears the changed mark.
+         *
+         * @return true if the session content has been changed since the previous call
+         */
+        public boolean resetContentChanged() {
+            return CONTENT_CHANGED_UPDATER.getAndSet(this, 0) == 1;
+        }
+
+        @Override
+        public Object getCoalescingKey() {
+            return session.getId();
+        }
+
         @Override
         public String toString() {
             return String.format("%s, since: %s, lastUsed: %s",
@@ -84,10 +147,34 @@ public class UserSessions implements UserSessionsAPI {
         }
     }
 
+    /**
+     * Cluster message notifying other nodes about sessions removed by timeout.
+     */
+    public static class UserSessionsExpiredMessage implements Serializable {
+        private static final long serialVersionUID = 3170385373815622498L;
+
+        public final List<UUID> ids;
+
+        public UserSessionsExpiredMessage(List<UUID> ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public String toString() {
+            return "UserSessionsExpiredMessage{ids=" + ids.size() + "}";
+        }
+    }
+
     private static final Logger log = LoggerFactory.getLogger(UserSessions.class);
 
+    protected static final long EXPIRY_INDEX_BUCKET_MS = 10_000;
+
+    protected static final int EXPIRED_MESSAGE_BATCH_SIZE = 1000;
+
     protected Map<UUID, UserSessionInfo> cache = new ConcurrentHashMap<>();
 
+    protected UserSessionExpiryIndex expiryIndex = new UserSessionExpiryIndex(EXPIRY_INDEX_BUCKET_MS);
+
     protected volatile int expirationTimeout = 1800;
 
     protected volatile int sendTimeout = 10;
@@ -153,6 +240,25 @@ public class UserSessions implements UserSessionsAPI {
                     }
                 }
         );
+        this.clusterManager.registerCodec(UserSessionInfo.class, new UserSessionInfoCodec());
+
+        this.clusterManager.addListener(
+                UserSessionsExpiredMessage.class,
+                new ClusterListenerAdapter<UserSessionsExpiredMessage>() {
+                    @Override
+                    public void receive(UserSessionsExpiredMessage message) {
+                        receiveExpiredMessage(message);
+                    }
+                }
+        );
+        this.clusterManager.registerCodec(UserSessionsExpiredMessage.class, new UserSessionsExpiredMessageCodec());
+    }
+
+    protected void receiveExpiredMessage(UserSessionsExpiredMessage message) {
+        log.debug("Removing {} sessions expired on another node", message.ids.size());
+        for (UUID id : message.ids) {
+            removeSessionInfo(id);
+        }
     }
 
     protected void receiveClusterMessage(UserSessionInfo message) {
@@ -284,14 +390,14 @@ public class UserSessions implements UserSessionsAPI {
             if (touch) {
                 long now = timeSource.currentTimeMillis();
 
-                if (now > (usi.lastUsedTs + toMillis(touchTimeout))) {
-                    usi.lastUsedTs = now;
-                    putSessionInfo(id, usi);
+                long lastUsedTs = usi.lastUsedTs;
+                if (now > (lastUsedTs + toMillis(touchTimeout)) && usi.compareAndSetLastUsedTs(lastUsedTs, now)) {
+                    touchSessionInfo(id, usi);
                 }
 
                 if (propagate && !usi.session.isSystem()) {
-                    if (now > (usi.lastSentTs + toMillis(sendTimeout))) {
-                        usi.lastSentTs = now;
+                    long lastSentTs = usi.lastSentTs;
+                    if (now > (lastSentTs + toMillis(sendTimeout)) && usi.compareAndSetLastSentTs(lastSentTs, now)) {
                         clusterManager.send(usi);
                     }
                 }
@@ -308,6 +414,7 @@ public class UserSessions implements UserSessionsAPI {
             long now = timeSource.currentTimeMillis();
             usi.lastUsedTs = now;
             usi.lastSentTs = now;
+            usi.markContentChanged();
             putSessionInfo(id, usi);
             clusterManager.send(usi);
         }
@@ -398,18 +505,37 @@ public class UserSessions implements UserSessionsAPI {
         log.trace("Processing eviction");
         long now = timeSource.currentTimeMillis();
 
-        getSessionInfoStream()
-                .filter(info -> !info.session.isSystem() && now > (info.lastUsedTs + toMillis(expirationTimeout)))
-                .forEach(usi -> {
-                    log.debug("Removing session due to timeout: {}", usi);
-
-                    userSessionLog.updateSessionLogRecord(usi.getSession(), SessionAction.EXPIRATION);
-
-                    removeSessionInfo(usi.session.getId());
+        List<UserSessionInfo> expired = expiryIndex.pollExpired(now - toMillis(expirationTimeout));
+        List<UUID> expiredIds = new ArrayList<>(expired.size());
+        for (UserSessionInfo usi : expired) {
+            UUID id = usi.session.getId();
+            if (getSessionInfo(id) != usi) {
+                // already removed or replaced by a newer info
+                continue;
+            }
+            log.debug("Removing session due to timeout: {}", usi);
+            try {
+                userSessionLog.updateSessionLogRecord(usi.getSession(), SessionAction.EXPIRATION);
+
+                removeSessionInfo(id);
+                expiredIds.add(id);
+            } catch (RuntimeException e) {
+                log.error("Unable to remove expired session {}", usi, e);
+                if (getSessionInfo(id) == usi) {
+                    // the session has been polled from the index, return it to be processed by the next eviction
+                    expiryIndex.add(usi);
+                }
+            }
+        }
 
-                    usi.lastUsedTs = 0;
-                    clusterManager.send(usi);
-                });
+        for (int i = 0; i < expiredIds.size(); i += EXPIRED_MESSAGE_BATCH_SIZE) {
+            List<UUID> batch = expiredIds.subList(i, Math.min(i + EXPIRED_MESSAGE_BATCH_SIZE, expiredIds.size()));
+            try {
+                clusterManager.send(new UserSessionsExpiredMessage(new ArrayList<>(batch)));
+            } catch (RuntimeException e) {
+                log.error("Unable to send {} expired sessions to the cluster", batch.size(), e);
+            }
+        }
     }
 
     protected UserSessionInfo getSessionInfo(UUID id) {
@@ -417,12 +543,33 @@ public class UserSessions implements UserSessionsAPI {
     }
 
     protected void putSessionInfo(UUID id, UserSessionInfo info) {
-        cache.put(id, info);
+        UserSessionInfo previous = cache.put(id, info);
+        if (previous == info) {
+            expiryIndex.touched(info);
+        } else {
+            if (previous != null) {
+                expiryIndex.remove(previous);
+            }
+            expiryIndex.add(info);
+        }
+    }
+
+    /**
+     * Called after the last usage time of the session has been updated. The info object is already in the cache,
+     * so the default implementation only moves it in the expiration index. Implementations keeping sessions
+     * in an external store can override this method to write the info back.
+     */
+    protected void touchSessionInfo(UUID id, UserSessionInfo info) {
+        expiryIndex.touched(info);
     }
 
     @Nullable
     protected UserSessionInfo removeSessionInfo(UUID id) {
-        return cache.remove(id);
+        UserSessionInfo info = cache.remove(id);
+        if (info != null) {
+            expiryIndex.remove(info);
+        }
+        return info;
     }
 
     protected Stream<UserSessionInfo> getSessionInfoStream() {
@@ -432,4 +579,138 @@ public class UserSessions implements UserSessionsAPI {
     protected long toMillis(int seconds) {
         return seconds * 1000L;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return description of the current cluster members, changes when a node joins or leaves the cluster
+     */
+    protected String getClusterView() {
+        return clusterManager != null ? clusterManager.getCurrentView() : "";
+    }
+
+    /**
+     * Encodes the whole user session when it is sent to the cluster for the first time, after its content has been
+     * changed (see {@link #propagate(UUID)}) and after the cluster view has changed, as a joined node may not know
+     * the session. Other touch and removal messages contain just the session id and timestamps, and are applied
+     * to the session instance already known on the receiving node.
+     */
+    protected class UserSessionInfoCodec implements ClusterMessageCodec<UserSessionInfo> {
+
+        protected static final byte FULL = 0;
+        protected static final byte TOUCHED = 1;
+        protected static final byte REMOVED = 2;
+
+        @Override
+        public void encode(UserSessionInfo usi, DataOutput out) throws IOException {
+            long lastUsedTs = usi.lastUsedTs;
+            long lastSentTs = usi.lastSentTs;
+            UUID id = usi.session.getId();
+            if (lastUsedTs == 0) {
+                out.writeByte(REMOVED);
+                writeId(id, out);
+            } else if (isFullRequired(usi)) {
+                byte[] sessionBytes;
+                try {
+                    sessionBytes = SerializationSupport.serialize(usi.session);
+                } catch (RuntimeException e) {
+                    usi.markContentChanged();
+                    throw e;
+                }
+                out.writeByte(FULL);
+                writeTimestamps(usi.since, lastUsedTs, lastSentTs, out);
+                out.writeInt(sessionBytes.length);
+                out.write(sessionBytes);
+            } else {
+                out.writeByte(TOUCHED);
+                writeId(id, out);
+                writeTimestamps(usi.since, lastUsedTs, lastSentTs, out);
+            }
+        }
+
+        @Nullable
+        @Override
+        public UserSessionInfo decode(DataInput in) throws IOException {
+            byte kind = in.readByte();
+            if (kind == FULL) {
+                long since = in.readLong();
+                long lastUsedTs = in.readLong();
+                long lastSentTs = in.readLong();
+                byte[] sessionBytes = new byte[in.readInt()];
+                in.readFully(sessionBytes);
+                UserSession session = (UserSession) SerializationSupport.deserialize(sessionBytes);
+                return createInfo(session, since, lastUsedTs, lastSentTs);
+            }
+
+            UUID id = readId(in);
+            UserSessionInfo local = getSessionInfo(id);
+            if (kind == REMOVED) {
+                return local == null ? null : createInfo(local.session, local.since, 0, local.lastSentTs);
+            } else {
+                long since = in.readLong();
+                long lastUsedTs = in.readLong();
+                long lastSentTs = in.readLong();
+                if (local == null) {
+                    log.debug("Session {} is not found, skipping the touch message", id);
+                    return null;
+                }
+                return createInfo(local.session, since, lastUsedTs, lastSentTs);
+            }
+        }
+
+        protected boolean isFullRequired(UserSessionInfo usi) {
+            boolean changed = usi.resetContentChanged();
+            String view = getClusterView();
+            if (changed || !view.equals(usi.fullSentView)) {
+                usi.fullSentView = view;
+                return true;
+            }
+            return false;
+        }
+
+        protected UserSessionInfo createInfo(UserSession session, long since, long lastUsedTs, long lastSentTs) {
+            UserSessionInfo usi = new UserSessionInfo(session, since);
+            usi.lastUsedTs = lastUsedTs;
+            usi.lastSentTs = lastSentTs;
+            // the other nodes have received the same message
+            usi.resetContentChanged();
+            usi.fullSentView = getClusterView();
+            return usi;
+        }
+
+        protected void writeTimestamps(long since, long lastUsedTs, long lastSentTs, DataOutput out) throws IOException {
+            out.writeLong(since);
+            out.writeLong(lastUsedTs);
+            out.writeLong(lastSentTs);
+        }
+
+        protected void writeId(UUID id, DataOutput out) throws IOException {
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+        }
+
+        protected UUID readId(DataInput in) throws IOException {
+            return new UUID(in.readLong(), in.readLong());
+        }
+    }
+
+    protected static class UserSessionsExpiredMessageCodec implements ClusterMessageCodec<UserSessionsExpiredMessage> {
+
+        @Override
+        public void encode(UserSessionsExpiredMessage message, DataOutput out) throws IOException {
+            out.writeInt(message.ids.size());
+            for (UUID id : message.ids) {
+                out.writeLong(id.getMostSignificantBits());
+                out.writeLong(id.getLeastSignificantBits());
+            }
+        }
+
+        @Override
+        public UserSessionsExpiredMessage decode(DataInput in) throws IOException {
+            int size = in.readInt();
+            List<UUID> ids = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                ids.add(new UUID(in.readLong(), in.readLong()));
+            }
+            return new UserSessionsExpiredMessage(ids);
+        }
+    }
+}
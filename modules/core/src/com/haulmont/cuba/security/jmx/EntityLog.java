@@ -19,6 +19,7 @@ package com.haulmont.cuba.security.jmx;
 
 import com.haulmont.cuba.security.app.Authenticated;
 import com.haulmont.cuba.security.app.EntityLogAPI;
+import com.haulmont.cuba.security.app.EntityLogWriter;
 
 import org.springframework.stereotype.Component;
 import javax.inject.Inject;
@@ -28,6 +29,8 @@ public class EntityLog implements EntityLogMBean {
 
     @Inject
     protected EntityLogAPI entityLog;
+    @Inject
+    protected EntityLogWriter entityLogWriter;
 
     @Override
     public boolean isEnabled() {
@@ -44,4 +47,30 @@ public class EntityLog implements EntityLogMBean {
     public void invalidateCache() {
         entityLog.invalidateCache();
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getAsyncQueueDepth() {
+        return entityLogWriter.getQueueDepth();
+    }
+
+    @Override
+    public long getAsyncLagMs() {
+        return entityLogWriter.getLagMs();
+    }
+
+    @Override
+    public long getAsyncWrittenCount() {
+        return entityLogWriter.getWrittenCount();
+    }
+
+    @Override
+    public long getAsyncFailedBatchCount() {
+        return entityLogWriter.getFailedBatchCount();
+    }
+
+    @Authenticated
+    @Override
+    public void flushAsyncQueue() {
+        entityLogWriter.flush();
+    }
+}
@@ -36,4 +36,29 @@ public interface EntityLogMBean {
      * The configuration will be recreated from the database on next lifecycle event.
      */
     void invalidateCache();
+
+    /**
+     * Number of entity log items waiting for the asynchronous writer.
+     */
+    int getAsyncQueueDepth();
+
+    /**
+     * Time in milliseconds since the oldest item waiting for the asynchronous writer was committed.
+     */
+    long getAsyncLagMs();
+
+    /**
+     * Number of entity log items written by the asynchronous writer since the application start.
+     */
+    long getAsyncWrittenCount();
+
+    /**
+     * Number of failed batches of the asynchronous writer since the application start.
+     */
+    long getAsyncFailedBatchCount();
+
+    /**
+     * Writes all entity log items waiting for the asynchronous writer.
+     */
+    void flushAsyncQueue();
 }
@@ -16,6 +16,8 @@
  */
 package com.haulmont.cuba.core;
 
+import com.haulmont.cuba.core.app.ConfigStorageAPI;
+import com.haulmont.cuba.core.app.ConfigStorageChanges;
 import com.haulmont.cuba.core.config.TestBeanToInjectConfig;
 import com.haulmont.cuba.core.config.TestConfig;
 import com.haulmont.cuba.core.entity.Config;
@@ -32,10 +34,7 @@ import org.junit.jupiter.api.Test;
 import java.lang.reflect.Method;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
-import java.util.Date;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -177,6 +176,41 @@ public class ConfigProviderTest {
         assertEquals("test_value_1", dbProp);
     }
 
+    @Test
+    public void testDbPropertiesChanges() throws Exception {
+        ConfigStorageAPI configStorage = AppBeans.get(ConfigStorageAPI.class);
+
+        ConfigStorageChanges full = configStorage.getDbPropertiesChanges(null, 0);
+        assertTrue(full.isFull());
+
+        try {
+            configStorage.setDbProperty("cuba.test.changesProp1", "value1");
+            configStorage.setDbProperty("cuba.test.changesProp2", "value2");
+            configStorage.setDbProperty("cuba.test.changesProp2", null);
+
+            ConfigStorageChanges changes = configStorage.getDbPropertiesChanges(full.getStorageId(), full.getVersion());
+            assertFalse(changes.isFull());
+            assertTrue(changes.getVersion() > full.getVersion());
+            assertEquals(Collections.singletonMap("cuba.test.changesProp1", "value1"), changes.getValues());
+            assertEquals(Collections.singleton("cuba.test.changesProp2"), changes.getRemoved());
+
+            Map<String, String> properties = changes.applyTo(full.getValues());
+            assertEquals(configStorage.getDbProperties(), properties);
+
+            ConfigStorageChanges noChanges = configStorage.getDbPropertiesChanges(changes.getStorageId(), changes.getVersion());
+            assertFalse(noChanges.isFull());
+            assertTrue(noChanges.getValues().isEmpty());
+            assertTrue(noChanges.getRemoved().isEmpty());
+
+            configStorage.clearCache();
+            assertTrue(configStorage.getDbPropertiesChanges(changes.getStorageId(), changes.getVersion()).isFull());
+            assertEquals("value1", configStorage.getDbProperty("cuba.test.changesProp1"));
+        } finally {
+            configStorage.setDbProperty("cuba.test.changesProp1", null);
+        }
+        assertNull(configStorage.getDbProperty("cuba.test.changesProp1"));
+    }
+
     @Test
     public void testBooleanType() throws Exception {
         Method booleanMethod = TestConfig.class.getMethod("getBooleanProp");
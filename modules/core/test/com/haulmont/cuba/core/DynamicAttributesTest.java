@@ -37,6 +37,7 @@ import org.junit.jupiter.api.extension.RegisterExtension;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -370,6 +371,26 @@ public class DynamicAttributesTest {
         assertEquals("userName", loadedUser.getValue("+userAttribute"));
     }
 
+    @Test
+    public void testAttributeValuesResolvedFromCache() {
+        LoadContext<User> loadContext = LoadContext.create(User.class).setId(user.getId()).setLoadDynamicAttributes(true);
+        User loadedUser = dataManager.load(loadContext);
+
+        assertTrue(loadedUser.getDynamicAttributes() instanceof DynamicAttributesMap);
+        CategoryAttributeValue cav = loadedUser.getDynamicAttributes().get("userAttribute");
+        assertSame(dynamicAttributesManagerAPI.getAttributeForMetaClass(loadedUser.getMetaClass(), "userAttribute"),
+                cav.getCategoryAttribute());
+        Date createTs = cav.getCreateTs();
+        assertNotNull(createTs);
+
+        loadedUser.setValue("+userAttribute", "userName3");
+        dataManager.commit(loadedUser);
+
+        loadedUser = dataManager.load(loadContext);
+        assertEquals("userName3", loadedUser.getValue("+userAttribute"));
+        assertEquals(createTs, loadedUser.getDynamicAttributes().get("userAttribute").getCreateTs());
+    }
+
     @Test
     public void testDynamicAttributesWithLocalView() {
         User loadedUser = dataManager.load(LoadContext.create(User.class).setId(user.getId()).setLoadDynamicAttributes(true).setView(View.LOCAL));
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core;
+
+import com.google.common.cache.CacheStats;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.core.global.ViewRepository;
+import com.haulmont.cuba.core.sys.AbstractViewRepository;
+import com.haulmont.cuba.core.sys.FetchGroupDescription;
+import com.haulmont.cuba.core.sys.FetchGroupManager;
+import com.haulmont.cuba.security.entity.Group;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FetchGroupCacheTest {
+
+    @RegisterExtension
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private static final String QUERY = "select u from sec$User u where u.login = :login";
+
+    private FetchGroupManager fetchGroupManager;
+
+    @BeforeEach
+    public void setUp() {
+        fetchGroupManager = AppBeans.get(FetchGroupManager.NAME);
+        fetchGroupManager.clearCache();
+    }
+
+    @Test
+    public void testSameViewStructureHitsCache() {
+        CacheStats before = fetchGroupManager.getCacheStats();
+        assertNotNull(before);
+
+        FetchGroupDescription first = fetchGroupManager.calculateFetchGroup(QUERY, createView(), false, true);
+        FetchGroupDescription second = fetchGroupManager.calculateFetchGroup(QUERY, createView(), false, true);
+
+        assertSame(first, second);
+        assertTrue(first.getAttributes().contains("group"));
+        assertTrue(first.getAttributes().contains("group.name"));
+
+        CacheStats stats = fetchGroupManager.getCacheStats().minus(before);
+        assertEquals(1, stats.hitCount());
+        assertEquals(1, stats.missCount());
+        assertEquals(1, fetchGroupManager.getCacheSize());
+    }
+
+    @Test
+    public void testDifferentKeysAreCachedSeparately() {
+        FetchGroupDescription fetchGroup = fetchGroupManager.calculateFetchGroup(QUERY, createView(), false, true);
+        FetchGroupDescription loadGroup = fetchGroupManager.calculateFetchGroup(QUERY, createView(), false, false);
+        assertNotSame(fetchGroup, loadGroup);
+
+        View extended = createView().addProperty("name");
+        FetchGroupDescription extendedGroup = fetchGroupManager.calculateFetchGroup(QUERY, extended, false, true);
+        assertNotSame(fetchGroup, extendedGroup);
+        assertTrue(extendedGroup.getAttributes().contains("name"));
+        assertFalse(fetchGroup.getAttributes().contains("name"));
+
+        FetchGroupDescription otherQuery = fetchGroupManager.calculateFetchGroup(
+                "select u from sec$User u where u.name = :name", createView(), false, true);
+        assertNotSame(fetchGroup, otherQuery);
+
+        assertEquals(4, fetchGroupManager.getCacheSize());
+    }
+
+    @Test
+    public void testViewRepositoryResetClearsCache() {
+        fetchGroupManager.calculateFetchGroup(QUERY, createView(), false, true);
+        assertEquals(1, fetchGroupManager.getCacheSize());
+
+        ViewRepository viewRepository = AppBeans.get(ViewRepository.NAME);
+        ((AbstractViewRepository) viewRepository).reset();
+
+        assertEquals(0, fetchGroupManager.getCacheSize());
+    }
+
+    private View createView() {
+        return new View(User.class)
+                .addProperty("login")
+                .addProperty("group", new View(Group.class).addProperty("name"))
+                .setLoadPartialEntities(true);
+    }
+}
@@ -28,8 +28,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertNotNull;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class LockManagerTest {
 
@@ -73,5 +74,32 @@ public class LockManagerTest {
         lockInfo = lockManager.getLockInfo("sys$Server", entity.getId().toString());
         assertNull(lockInfo);
     }
-}
 
+    @Test
+    public void testBulkLock() throws Exception {
+        Server entity1 = new Server();
+        Server entity2 = new Server();
+        Server entity3 = new Server();
+
+        assertNull(lockManager.lock(entity2));
+
+        // entity2 is locked, so nothing is locked
+        LockInfo lockInfo = lockManager.lock(Arrays.asList(entity1, entity2, entity3));
+        assertNotNull(lockInfo);
+        assertEquals(entity2.getId().toString(), lockInfo.getEntityId());
+        assertNull(lockManager.getLockInfo("sys$Server", entity1.getId().toString()));
+        assertNull(lockManager.getLockInfo("sys$Server", entity3.getId().toString()));
+
+        lockManager.unlock(entity2);
+
+        lockInfo = lockManager.lock(Arrays.asList(entity1, entity2, entity3));
+        assertNull(lockInfo);
+        assertNotNull(lockManager.getLockInfo("sys$Server", entity1.getId().toString()));
+        assertNotNull(lockManager.getLockInfo("sys$Server", entity3.getId().toString()));
+
+        lockManager.unlock(Arrays.asList(entity1, entity2, entity3));
+        assertNull(lockManager.getLockInfo("sys$Server", entity1.getId().toString()));
+        assertNull(lockManager.getLockInfo("sys$Server", entity2.getId().toString()));
+        assertNull(lockManager.getLockInfo("sys$Server", entity3.getId().toString()));
+    }
+}
@@ -140,7 +140,7 @@ public class MessagesTest {
         String msg = messages.getMessage(MpTestNestedObj.class, "key0");
         assertEquals("Message0", msg);
 
-        assertEquals(4,
+        assertEquals(6,
                 Iterables.size(Iterables.filter(appender.getMessages(), new Predicate<String>() {
                     @Override
                     public boolean apply(@Nullable String input) {
@@ -148,7 +148,7 @@ public class MessagesTest {
                     }
                 }))
         );
-        assertEquals(4,
+        assertEquals(6,
                 Iterables.size(Iterables.filter(appender.getMessages(), new Predicate<String>() {
                     @Override
                     public boolean apply(@Nullable String input) {
@@ -165,6 +165,15 @@ public class MessagesTest {
         assertEquals(0,
                 getSearchMessagesCount()
         );
+
+        // the whole pack with its parents is resolved by the first lookup
+        msg = messages.getMessage(MpTestNestedObj.class, "key1");
+        assertEquals("Message1", msg);
+
+        msg = messages.getMessage(MpTestNestedObj.class, "includedMsg");
+        assertEquals("Included Message", msg);
+
+        assertEquals(0, getSearchMessagesCount());
     }
 
     @Test
@@ -175,18 +184,46 @@ public class MessagesTest {
 
         String msg = messages.getMessage(MpTestNestedObj.class, "key0", Locale.forLanguageTag("fr"));
         assertEquals("Message0 in French", msg);
-        assertEquals(6, getSearchMessagesCount());
+        assertEquals(12, getSearchMessagesCount());
 
         appender.getMessages().clear();
 
         msg = messages.getMessage(MpTestNestedObj.class, "key0", Locale.forLanguageTag("fr"));
         assertEquals("Message0 in French", msg);
+
+        msg = messages.getMessage(MpTestNestedObj.class, "includedMsg", Locale.forLanguageTag("fr"));
+        assertEquals("Message inclus", msg);
+
         assertEquals(0, getSearchMessagesCount());
     }
 
+    @Test
+    public void testParentPackSharing() {
+        Messages messages = prepareCachingTest();
+
+        String msg = messages.getMessage(MpTestNestedObj.class, "key0", Locale.forLanguageTag("en"));
+        assertEquals("Message0", msg);
+
+        int cacheSize = messages.getCacheSize();
+        appender.getMessages().clear();
+
+        // the parent pack with its includes is already loaded for the nested pack and is not copied
+        msg = messages.getMessage("com.haulmont.cuba.core.mp_test", "key1", Locale.forLanguageTag("en"));
+        assertEquals("Message1", msg);
+
+        msg = messages.getMessage("com.haulmont.cuba.core.mp_test.inc", "includedMsg", Locale.forLanguageTag("en"));
+        assertEquals("Included Message", msg);
+
+        assertEquals(0, getSearchMessagesCount());
+        assertEquals(cacheSize, messages.getCacheSize());
+    }
+
     private Messages prepareCachingTest() {
         Messages messages = AppBeans.get(Messages.class);
         messages.clearCache();
+        // the main message pack is looked up for overrides first, resolve it before counting the searches
+        messages.getMainMessage("trueString", Locale.forLanguageTag("en"));
+        messages.getMainMessage("trueString", Locale.forLanguageTag("fr"));
         return messages;
     }
 
@@ -198,7 +235,7 @@ public class MessagesTest {
 
         String msg = messages.getMessage("com.haulmont.cuba.core.mp_test.nested com.haulmont.cuba.core.mp_test", "key0");
         assertEquals("Message0", msg);
-        assertEquals(16, getSearchMessagesCount());
+        assertEquals(12, getSearchMessagesCount());
 
         appender.getMessages().clear();
 
@@ -216,7 +253,7 @@ public class MessagesTest {
         String msg = messages.getMessage("com.haulmont.cuba.core.mp_test.nested com.haulmont.cuba.core.mp_test", "key0",
                 Locale.forLanguageTag("fr"));
         assertEquals("Message0 in French", msg);
-        assertEquals(14, getSearchMessagesCount());
+        assertEquals(12, getSearchMessagesCount());
 
         appender.getMessages().clear();
 
@@ -340,6 +377,23 @@ public class MessagesTest {
         assertEquals("Language Message ja", msg);
     }
 
+    @Test
+    public void testCacheSize() {
+        Messages messages = AppBeans.get(Messages.class);
+
+        String msg = messages.getMessage("com.haulmont.cuba.core.mp_test", "key1", Locale.forLanguageTag("en"));
+        assertEquals("Message1", msg);
+
+        int cacheSize = messages.getCacheSize();
+        assertTrue(cacheSize > 0);
+
+        messages.clearCache();
+        assertEquals(0, messages.getCacheSize());
+
+        msg = messages.findMessage("com.haulmont.cuba.core.mp_test", "key1", Locale.forLanguageTag("en"));
+        assertEquals("Message1", msg);
+    }
+
     private int getSearchMessagesCount() {
         return Iterables.size(Iterables.filter(appender.getMessages(), new Predicate<String>() {
             @Override
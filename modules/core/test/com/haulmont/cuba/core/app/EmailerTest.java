@@ -207,6 +207,68 @@ public class EmailerTest {
         assertNull(sendingMsg.getContentText());             // null??
     }
 
+    @Test
+    public void testPipelined() throws Exception {
+        emailerConfig.setPipelinedSendingEnabled(true);
+        try {
+            doTestAsynchronous(true);
+            doTestTextAttachment(true);
+        } finally {
+            emailerConfig.setPipelinedSendingEnabled(false);
+        }
+    }
+
+    @Test
+    public void testPipelinedSynchronous() throws Exception {
+        emailerConfig.setPipelinedSendingEnabled(true);
+        try {
+            EmailInfo myInfo = EmailInfoBuilder.create()
+                    .setAddresses("testemail@example.com")
+                    .setCaption("Test Email")
+                    .setBody("Test Body")
+                    .build();
+            emailer.sendEmail(myInfo);
+
+            assertEquals(1, testMailSender.getBufferSize());
+            MimeMessage msg = testMailSender.fetchSentEmail();
+
+            assertEquals("Test Email", msg.getSubject());
+            // headers are updated before sending through a pooled connection
+            assertNotNull(msg.getMessageID());
+            assertNotNull(msg.getHeader("MIME-Version"));
+            assertNotNull(msg.getSentDate());
+        } finally {
+            emailerConfig.setPipelinedSendingEnabled(false);
+        }
+    }
+
+    @Test
+    public void testPipelinedBackpressure() throws Exception {
+        emailerConfig.setPipelinedSendingEnabled(true);
+        emailerConfig.setMaxMessagesInFlight(0);
+        try {
+            EmailInfo myInfo = EmailInfoBuilder.create()
+                    .setAddresses("recipient@example.com")
+                    .setCaption("Test")
+                    .setBody("Test Email Body")
+                    .build();
+            List<SendingMessage> messages = emailer.sendEmailAsync(myInfo);
+
+            // pipeline is full, the message stays in the queue
+            emailer.processQueuedEmails();
+            assertTrue(testMailSender.isEmpty());
+            assertEquals(SendingStatus.QUEUE, reload(messages.get(0)).getStatus());
+
+            emailerConfig.setMaxMessagesInFlight(100);
+            emailer.processQueuedEmails();
+            assertEquals(1, testMailSender.getBufferSize());
+            assertEquals(SendingStatus.SENT, reload(messages.get(0)).getStatus());
+        } finally {
+            emailerConfig.setPipelinedSendingEnabled(false);
+            emailerConfig.setMaxMessagesInFlight(100);
+        }
+    }
+
     private void doTestAsynchronous(boolean useFs) throws Exception {
         emailerConfig.setFileStorageUsed(useFs);
         testMailSender.clearBuffer();
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.cuba.core.global.LockInfo;
+import com.haulmont.cuba.security.entity.User;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LockInfoCodecTest {
+
+    private LockManager lockManager = new LockManager();
+
+    private LockManager.LockInfoCodec codec = lockManager.new LockInfoCodec() {
+        @Override
+        protected User createUser() {
+            return new User();
+        }
+    };
+
+    private LockManager.LockInfoBatchCodec batchCodec = lockManager.new LockInfoBatchCodec(codec);
+
+    @Test
+    public void testLockWithUser() throws Exception {
+        User user = new User();
+        user.setLogin("Admin");
+        user.setLoginLowerCase("admin");
+        user.setName("Administrator");
+        LockInfo lockInfo = new LockInfo(user, "sec$User", UUID.randomUUID().toString(), new Date(1000));
+
+        LockInfo decoded = roundTrip(codec, lockInfo);
+
+        assertLockEquals(lockInfo, decoded);
+        assertEquals(user.getId(), decoded.getUser().getId());
+        assertEquals("Admin", decoded.getUser().getLogin());
+        assertEquals("admin", decoded.getUser().getLoginLowerCase());
+        assertEquals("Administrator", decoded.getUser().getName());
+    }
+
+    @Test
+    public void testReleasedLock() throws Exception {
+        LockInfo lockInfo = new LockInfo(null, "sys$ScheduledTask", null, new Date(2000));
+
+        LockInfo decoded = roundTrip(codec, lockInfo);
+
+        assertLockEquals(lockInfo, decoded);
+        assertNull(decoded.getUser());
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        LockInfo first = new LockInfo(null, "sec$User", "1", new Date(1000));
+        LockInfo second = new LockInfo(null, "sec$Group", "2", new Date(2000));
+
+        LockManager.LockInfoBatch decoded = roundTrip(batchCodec,
+                new LockManager.LockInfoBatch(Arrays.asList(first, second)));
+
+        assertEquals(2, decoded.locks.size());
+        assertLockEquals(first, decoded.locks.get(0));
+        assertLockEquals(second, decoded.locks.get(1));
+    }
+
+    private void assertLockEquals(LockInfo expected, LockInfo actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getEntityName(), actual.getEntityName());
+        assertEquals(expected.getEntityId(), actual.getEntityId());
+        assertEquals(expected.getSince(), actual.getSince());
+    }
+
+    private <T extends Serializable> T roundTrip(ClusterMessageCodec<T> codec, T message) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        codec.encode(message, new DataOutputStream(bos));
+        return codec.decode(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+    }
+}
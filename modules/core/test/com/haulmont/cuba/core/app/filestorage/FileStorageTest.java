@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app.filestorage;
+
+import com.haulmont.cuba.core.app.FileStorageAPI;
+import com.haulmont.cuba.core.entity.FileDescriptor;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileStorageTest {
+
+    @RegisterExtension
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private static final String CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    private FileStorage fileStorage;
+    private List<FileDescriptor> descriptors = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        fileStorage = (FileStorage) AppBeans.get(FileStorageAPI.class);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        fileStorage.contentAddressed = false;
+        fileStorage.chunkSize = 1024 * 1024;
+        for (FileDescriptor fd : descriptors) {
+            fileStorage.removeFile(fd);
+        }
+        fileStorage.removeUnusedChunks(-1);
+    }
+
+    @Test
+    public void testContentAddressedDeduplication() throws Exception {
+        fileStorage.contentAddressed = true;
+        fileStorage.chunkSize = 10;
+
+        FileDescriptor fd1 = createDescriptor();
+        FileDescriptor fd2 = createDescriptor();
+        assertEquals(CONTENT.length(), fileStorage.saveStream(fd1, IOUtils.toInputStream(CONTENT, StandardCharsets.UTF_8)));
+        int chunks = countChunks();
+        fileStorage.saveFile(fd2, CONTENT.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(chunks, countChunks());
+        assertTrue(fileStorage.fileExists(fd2));
+        assertEquals(CONTENT, new String(fileStorage.loadFile(fd1), StandardCharsets.UTF_8));
+        assertEquals(CONTENT, new String(fileStorage.loadFile(fd2), StandardCharsets.UTF_8));
+
+        fileStorage.removeFile(fd1);
+        assertFalse(fileStorage.fileExists(fd1));
+        assertEquals(0, fileStorage.removeUnusedChunks(-1));
+        assertEquals(CONTENT, new String(fileStorage.loadFile(fd2), StandardCharsets.UTF_8));
+
+        fileStorage.removeFile(fd2);
+        assertEquals(chunks, fileStorage.removeUnusedChunks(-1));
+    }
+
+    @Test
+    public void testContentAddressedIncompleteChunkIsReplaced() throws Exception {
+        fileStorage.contentAddressed = true;
+        fileStorage.chunkSize = 10;
+
+        FileDescriptor fd1 = createDescriptor();
+        fileStorage.saveFile(fd1, CONTENT.getBytes(StandardCharsets.UTF_8));
+
+        File chunksDir = new File(fileStorage.getStorageRoots()[0], FileStorage.CHUNKS_DIR);
+        File chunk = FileUtils.listFiles(chunksDir, null, true).iterator().next();
+        FileUtils.writeStringToFile(chunk, "broken", StandardCharsets.UTF_8);
+
+        FileDescriptor fd2 = createDescriptor();
+        fileStorage.saveFile(fd2, CONTENT.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(CONTENT, new String(fileStorage.loadFile(fd1), StandardCharsets.UTF_8));
+        assertEquals(CONTENT, new String(fileStorage.loadFile(fd2), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testContentAddressedRangeRead() throws Exception {
+        fileStorage.contentAddressed = true;
+        fileStorage.chunkSize = 10;
+
+        FileDescriptor fd = createDescriptor();
+        fileStorage.saveFile(fd, CONTENT.getBytes(StandardCharsets.UTF_8));
+
+        assertRange(fd, 0, 5);
+        assertRange(fd, 8, 15);
+        assertRange(fd, 20, 10);
+        assertRange(fd, 30, 100);
+    }
+
+    @Test
+    public void testRangeRead() throws Exception {
+        FileDescriptor fd = createDescriptor();
+        fileStorage.saveFile(fd, CONTENT.getBytes(StandardCharsets.UTF_8));
+
+        assertRange(fd, 0, 5);
+        assertRange(fd, 8, 15);
+        assertRange(fd, 30, 100);
+    }
+
+    private void assertRange(FileDescriptor fd, int offset, int length) throws Exception {
+        String expected = CONTENT.substring(offset, Math.min(CONTENT.length(), offset + length));
+        try (InputStream is = fileStorage.openStream(fd, offset, length)) {
+            assertEquals(expected, IOUtils.toString(is, StandardCharsets.UTF_8));
+        }
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        long transferred = fileStorage.transferTo(fd, offset, length, Channels.newChannel(os));
+        assertEquals(expected.length(), transferred);
+        assertEquals(expected, new String(os.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private FileDescriptor createDescriptor() {
+        FileDescriptor fd = cont.metadata().create(FileDescriptor.class);
+        fd.setName("test.txt");
+        fd.setExtension("txt");
+        fd.setCreateDate(new Date());
+        descriptors.add(fd);
+        return fd;
+    }
+
+    private int countChunks() {
+        File chunksDir = new File(fileStorage.getStorageRoots()[0], FileStorage.CHUNKS_DIR);
+        return chunksDir.exists() ? FileUtils.listFiles(chunksDir, null, true).size() : 0;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app.scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScheduledTaskQueueTest {
+
+    private AtomicLong time = new AtomicLong(10_000);
+
+    private ScheduledTaskQueue queue = new ScheduledTaskQueue(time::get);
+
+    @Test
+    public void testDueEntriesInOrder() throws Exception {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID later = UUID.randomUUID();
+        queue.schedule(second, 9_500);
+        queue.schedule(later, 20_000);
+        queue.schedule(first, 9_000);
+
+        List<ScheduledTaskQueue.Entry> due = queue.awaitDue(0);
+        assertEquals(2, due.size());
+        assertEquals(first, due.get(0).getTaskId());
+        assertEquals(second, due.get(1).getTaskId());
+        assertEquals(1, queue.size());
+
+        assertTrue(queue.awaitDue(0).isEmpty());
+
+        time.set(20_000);
+        due = queue.awaitDue(0);
+        assertEquals(1, due.size());
+        assertEquals(later, due.get(0).getTaskId());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testRescheduleAndRemove() throws Exception {
+        UUID rescheduled = UUID.randomUUID();
+        UUID removed = UUID.randomUUID();
+        queue.schedule(rescheduled, 5_000);
+        queue.schedule(removed, 6_000);
+
+        queue.schedule(rescheduled, 15_000);
+        queue.remove(removed);
+
+        assertEquals(Long.valueOf(15_000), queue.getFireTime(rescheduled));
+        assertNull(queue.getFireTime(removed));
+        assertTrue(queue.awaitDue(0).isEmpty());
+
+        time.set(15_000);
+        List<UUID> due = queue.awaitDue(0).stream()
+                .map(ScheduledTaskQueue.Entry::getTaskId)
+                .collect(Collectors.toList());
+        assertEquals(1, due.size());
+        assertEquals(rescheduled, due.get(0));
+    }
+
+    @Test
+    public void testWaitingThreadIsWokenUpByEarlierTask() throws Exception {
+        ScheduledTaskQueue realTimeQueue = new ScheduledTaskQueue(System::currentTimeMillis);
+        UUID taskId = UUID.randomUUID();
+
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            realTimeQueue.schedule(taskId, System.currentTimeMillis());
+        });
+        thread.start();
+
+        long start = System.currentTimeMillis();
+        List<ScheduledTaskQueue.Entry> due = realTimeQueue.awaitDue(10_000);
+        assertEquals(1, due.size());
+        assertEquals(taskId, due.get(0).getTaskId());
+        assertTrue(System.currentTimeMillis() - start < 5_000);
+        thread.join();
+    }
+}
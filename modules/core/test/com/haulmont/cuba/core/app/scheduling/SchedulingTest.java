@@ -101,6 +101,57 @@ public class SchedulingTest {
         assertEquals(date("2013-03-31 01:59:00"), new Date(currentStart));
     }
 
+    @Test
+    public void testNextStartTime() throws Exception {
+        Scheduling scheduling = new Scheduling() {
+            @Override
+            protected TimeZone getCurrentTimeZone() {
+                return TimeZone.getTimeZone("GMT-0");
+            }
+
+            @Override
+            protected long getSchedulingInterval() {
+                return 1000;
+            }
+        };
+        long now = date("2013-11-13 15:30:02").getTime();
+
+        ScheduledTask cronTask = new ScheduledTask();
+        cronTask.setSchedulingType(SchedulingType.CRON);
+        cronTask.setCron("*/5 * * * * *");
+        cronTask.setTimeFrame(10);
+
+        //the last run is missed but still in the time frame, so the task is started immediately
+        long nextStart = scheduling.calculateNextStartTime(cronTask, date("2013-11-13 15:29:55").getTime(), 0, now);
+        assertEquals(date("2013-11-13 15:30:00"), new Date(nextStart));
+
+        //the last run has been started
+        nextStart = scheduling.calculateNextStartTime(cronTask, date("2013-11-13 15:30:00").getTime(), 0, now);
+        assertEquals(date("2013-11-13 15:30:05"), new Date(nextStart));
+
+        ScheduledTask periodTask = new ScheduledTask();
+        periodTask.setSchedulingType(SchedulingType.PERIOD);
+        periodTask.setPeriod(60);
+
+        assertEquals(now, scheduling.calculateNextStartTime(periodTask, 0, 0, now));
+        assertEquals(now + 30_000, scheduling.calculateNextStartTime(periodTask, now - 30_000, 0, now));
+
+        periodTask.setStartDate(date("2013-11-13 15:00:00"));
+        nextStart = scheduling.calculateNextStartTime(periodTask, date("2013-11-13 15:30:00").getTime(), 0, now);
+        assertEquals(date("2013-11-13 15:31:00"), new Date(nextStart));
+
+        ScheduledTask delayTask = new ScheduledTask();
+        delayTask.setSchedulingType(SchedulingType.FIXED_DELAY);
+        delayTask.setPeriod(10);
+
+        assertEquals(now, scheduling.calculateNextStartTime(delayTask, 0, 0, now));
+        assertEquals(now + 8_000, scheduling.calculateNextStartTime(delayTask, now - 5_000, now - 2_000, now));
+
+        ScheduledTask wrongTask = new ScheduledTask();
+        wrongTask.setSchedulingType(SchedulingType.PERIOD);
+        assertEquals(Long.MAX_VALUE, scheduling.calculateNextStartTime(wrongTask, 0, 0, now));
+    }
+
     public Date date(String s) {
         try {
             return simpleDateFormat.parse(s);
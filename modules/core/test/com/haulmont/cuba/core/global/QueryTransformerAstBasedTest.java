@@ -1445,4 +1445,29 @@ public class QueryTransformerAstBasedTest {
         assertEquals(paths.get(1).entityName, extChild.getName());
         assertEquals(paths.get(2).entityName, subExtChild.getName());
     }
+
+    @Test
+    public void testAddKeysetCondition() throws RecognitionException {
+        DomainModel model = prepareDomainModel();
+
+        QueryTransformerAstBased transformer = new QueryTransformerAstBased(model,
+                "select h from sec$GroupHierarchy h where h.parent = ?1 order by h.group desc, h.createdBy");
+        transformer.addKeysetCondition("key", 2);
+        String res = transformer.getResult();
+        assertTrue(res.startsWith("select h from sec$GroupHierarchy h where (h.parent = ?1) and "), res);
+        assertTrue(res.contains("h.group < :key0"), res);
+        assertTrue(res.contains("h.group = :key0 and h.createdBy > :key1"), res);
+        assertTrue(res.endsWith("order by h.group desc, h.createdBy"), res);
+
+        transformer = new QueryTransformerAstBased(model,
+                "select h from sec$GroupHierarchy h order by h.group asc, h.createdBy");
+        transformer.addKeysetCondition("key", 1);
+        res = transformer.getResult();
+        assertTrue(res.contains("h.group > :key0"), res);
+        assertFalse(res.contains(":key1"), res);
+
+        QueryTransformerAstBased unsorted = new QueryTransformerAstBased(model,
+                "select h from sec$GroupHierarchy h");
+        assertThrows(JpqlSyntaxException.class, () -> unsorted.addKeysetCondition("key", 1));
+    }
 }
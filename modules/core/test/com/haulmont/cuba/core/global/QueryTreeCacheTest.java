@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.global;
+
+import com.haulmont.cuba.core.sys.jpql.DomainModel;
+import com.haulmont.cuba.core.sys.jpql.JpqlSyntaxException;
+import com.haulmont.cuba.core.sys.jpql.QueryTree;
+import com.haulmont.cuba.core.sys.jpql.QueryTreeCache;
+import com.haulmont.cuba.core.sys.jpql.TreeToQuery;
+import com.haulmont.cuba.core.sys.jpql.model.EntityBuilder;
+import com.haulmont.cuba.core.sys.jpql.model.JpqlEntityModel;
+import com.haulmont.cuba.core.sys.jpql.transform.QueryTransformerAstBased;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryTreeCacheTest {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryTreeCacheTest.class);
+
+    private static final List<String> QUERIES = Arrays.asList(
+            "select p from Player p where p.name = :name order by p.nickname",
+            "select p from Player p join p.team t where t.name like :teamName order by p.name desc",
+            "select p from Player p where p.team.id in (select t.id from Team t where t.name = :teamName)",
+            "select t.name, count(p) from Player p join p.team t group by t.name having count(p) > 1"
+    );
+
+    private DomainModel model;
+    private QueryTreeCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        EntityBuilder builder = new EntityBuilder();
+        builder.startNewEntity("Team");
+        builder.addStringAttribute("id");
+        builder.addStringAttribute("name");
+        JpqlEntityModel teamEntity = builder.produce();
+
+        builder.startNewEntity("Player");
+        builder.addStringAttribute("name");
+        builder.addStringAttribute("nickname");
+        builder.addReferenceAttribute("team", "Team");
+        JpqlEntityModel playerEntity = builder.produce();
+
+        model = new DomainModel(playerEntity, teamEntity);
+        cache = new QueryTreeCache(100);
+    }
+
+    @Test
+    public void testCopyProducesSameQuery() {
+        for (String query : QUERIES) {
+            QueryTree tree = new QueryTree(model, query);
+            QueryTree copy = tree.copy();
+            assertNotSame(tree.getAstTree(), copy.getAstTree());
+            assertEquals(toQuery(tree), toQuery(copy));
+            assertEquals(tree.getInvalidIdVarNodes(), copy.getInvalidIdVarNodes());
+        }
+    }
+
+    @Test
+    public void testParsersShareCachedTree() {
+        String query = QUERIES.get(1);
+        QueryParserAstBased parser1 = createParser(query);
+        QueryParserAstBased parser2 = createParser(query);
+
+        assertEquals("Player", parser1.getEntityName());
+        assertEquals("Player", parser2.getEntityName());
+        assertSame(parser1.getTree(), parser2.getTree());
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getStats().hitCount());
+    }
+
+    @Test
+    public void testTransformerDoesNotModifyCachedTree() {
+        String query = QUERIES.get(0);
+
+        QueryTransformerAstBased transformer = createTransformer(query);
+        transformer.addWhere("{E}.nickname = :nickname");
+        transformer.replaceOrderByExpressions(true, "{E}.name");
+        String transformed = transformer.getResult();
+        assertTrue(transformed.contains(":nickname"));
+
+        QueryTransformerAstBased other = createTransformer(query);
+        assertEquals(new QueryTransformerAstBased(model, query).getResult(), other.getResult());
+        assertNotEquals(transformed, other.getResult());
+
+        QueryTransformerAstBased uncached = new QueryTransformerAstBased(model, query);
+        uncached.replaceWithCount();
+        other.replaceWithCount();
+        assertEquals(uncached.getResult(), other.getResult());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testInvalidQueryIsNotCached() {
+        String query = "select p from Unknown p";
+        assertThrows(JpqlSyntaxException.class, () -> createParser(query).getEntityName());
+        assertThrows(JpqlSyntaxException.class, () -> createTransformer(query).getResult());
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Compares throughput of parsing and transforming typical screen queries with and without the cache.
+     */
+    @Test
+    public void benchmarkParseAndTransform() {
+        int iterations = 2000;
+        // warm up
+        runTransformations(null, 200);
+        runTransformations(cache, 200);
+
+        long start = System.nanoTime();
+        runTransformations(null, iterations);
+        long uncachedTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        runTransformations(cache, iterations);
+        long cachedTime = System.nanoTime() - start;
+
+        int operations = iterations * QUERIES.size();
+        log.info("Parse and transform of {} queries: without cache {} ops/sec, with cache {} ops/sec",
+                operations, opsPerSecond(operations, uncachedTime), opsPerSecond(operations, cachedTime));
+    }
+
+    private void runTransformations(QueryTreeCache cache, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            for (String query : QUERIES) {
+                QueryParserAstBased parser = new QueryParserAstBased(model, query);
+                if (cache != null) {
+                    parser.setQueryTreeCache(cache);
+                }
+                parser.getEntityAlias();
+
+                QueryTransformerAstBased transformer = new QueryTransformerAstBased(model, query);
+                if (cache != null) {
+                    transformer.setQueryTreeCache(cache);
+                }
+                transformer.replaceWithCount();
+                assertNotNull(transformer.getResult());
+            }
+        }
+    }
+
+    private QueryParserAstBased createParser(String query) {
+        QueryParserAstBased parser = new QueryParserAstBased(model, query);
+        parser.setQueryTreeCache(cache);
+        return parser;
+    }
+
+    private QueryTransformerAstBased createTransformer(String query) {
+        QueryTransformerAstBased transformer = new QueryTransformerAstBased(model, query);
+        transformer.setQueryTreeCache(cache);
+        return transformer;
+    }
+
+    private static String toQuery(QueryTree tree) {
+        return tree.visit(new TreeToQuery()).getQueryString().trim();
+    }
+
+    private static long opsPerSecond(int operations, long nanos) {
+        return nanos > 0 ? (long) (operations * 1_000_000_000L / nanos) : operations;
+    }
+}
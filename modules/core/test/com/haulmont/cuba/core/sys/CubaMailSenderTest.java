@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import org.junit.jupiter.api.Test;
+
+import javax.mail.*;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CubaMailSenderTest {
+
+    private TestSender sender = new TestSender();
+
+    @Test
+    public void testConnectionIsReused() throws Exception {
+        sender.sendPooled(createMessage("first"), 2);
+        sender.sendPooled(createMessage("second"), 2);
+        sender.sendPooled(createMessage("third"), 2);
+
+        assertEquals(1, sender.transports.size());
+        assertEquals(3, sender.transports.get(0).messages.size());
+        assertTrue(sender.transports.get(0).isConnected());
+    }
+
+    @Test
+    public void testMessageIsSavedBeforeSending() throws Exception {
+        MimeMessage message = createMessage("test");
+        assertNull(message.getMessageID());
+
+        sender.sendPooled(message, 1);
+
+        MimeMessage sent = sender.transports.get(0).messages.get(0);
+        assertSame(message, sent);
+        assertNotNull(sent.getMessageID());
+        assertNotNull(sent.getHeader("MIME-Version"));
+        assertNotNull(sent.getSentDate());
+    }
+
+    @Test
+    public void testExplicitMessageIdIsPreserved() throws Exception {
+        MimeMessage message = createMessage("test");
+        message.setHeader("Message-ID", "<test@example.com>");
+
+        sender.sendPooled(message, 1);
+
+        assertEquals("<test@example.com>", sender.transports.get(0).messages.get(0).getMessageID());
+    }
+
+    @Test
+    public void testPoolIsRecreatedWhenSizeChanges() throws Exception {
+        sender.sendPooled(createMessage("first"), 2);
+        CubaMailSender.TransportPool pool = sender.transportPools.values().iterator().next();
+        assertEquals(2, pool.getMaxConnections());
+
+        sender.sendPooled(createMessage("second"), 3);
+
+        CubaMailSender.TransportPool newPool = sender.transportPools.values().iterator().next();
+        assertNotSame(pool, newPool);
+        assertEquals(3, newPool.getMaxConnections());
+        assertEquals(1, sender.transportPools.size());
+        // the idle connection of the previous pool is closed
+        assertEquals(2, sender.transports.size());
+        assertFalse(sender.transports.get(0).isConnected());
+    }
+
+    @Test
+    public void testFailedConnectionIsClosed() throws Exception {
+        sender.failing = true;
+        assertThrows(MessagingException.class, () -> sender.sendPooled(createMessage("test"), 1));
+        assertFalse(sender.transports.get(0).isConnected());
+
+        sender.failing = false;
+        sender.sendPooled(createMessage("test"), 1);
+        assertEquals(2, sender.transports.size());
+    }
+
+    @Test
+    public void testUpdateSessionClosesConnections() throws Exception {
+        sender.sendPooled(createMessage("test"), 1);
+
+        sender.updateSession();
+
+        assertTrue(sender.transportPools.isEmpty());
+        assertFalse(sender.transports.get(0).isConnected());
+    }
+
+    private MimeMessage createMessage(String subject) throws MessagingException {
+        MimeMessage message = new MimeMessage(sender.getSession());
+        message.setFrom(new InternetAddress("sender@example.com"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress("recipient@example.com"));
+        message.setSubject(subject);
+        message.setText("body");
+        return message;
+    }
+
+    private static class TestSender extends CubaMailSender {
+
+        private final Session session = Session.getInstance(new Properties());
+        private final List<TestTransport> transports = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean failing;
+
+        @Override
+        public String getHost() {
+            return "localhost";
+        }
+
+        @Override
+        public int getPort() {
+            return 25;
+        }
+
+        @Override
+        public synchronized Session getSession() {
+            return session;
+        }
+
+        @Override
+        public synchronized void updateSession() {
+            closePooledTransports();
+        }
+
+        @Override
+        protected Transport connectTransport() {
+            TestTransport transport = new TestTransport(session, this);
+            transports.add(transport);
+            return transport;
+        }
+    }
+
+    private static class TestTransport extends Transport {
+
+        private final TestSender sender;
+        private final List<MimeMessage> messages = new ArrayList<>();
+
+        public TestTransport(Session session, TestSender sender) {
+            super(session, new URLName("smtp", "localhost", 25, null, null, null));
+            this.sender = sender;
+            setConnected(true);
+        }
+
+        @Override
+        public void sendMessage(Message message, Address[] addresses) throws MessagingException {
+            if (sender.failing) {
+                throw new SendFailedException("Test failure");
+            }
+            messages.add((MimeMessage) message);
+        }
+    }
+}
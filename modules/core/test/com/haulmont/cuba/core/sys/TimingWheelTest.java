@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+
+    @Test
+    public void testExpiration() {
+        TimingWheel<String> wheel = new TimingWheel<>(1000, 8, 3, 0);
+        wheel.schedule("a", 5_000);
+        wheel.schedule("b", 30_000);
+        wheel.schedule("c", 300_000);
+        wheel.schedule("d", 10_000_000); // beyond the highest level
+        assertEquals(4, wheel.size());
+
+        assertTrue(wheel.advance(4_999).isEmpty());
+        assertEquals(Collections.singletonList("a"), wheel.advance(5_000));
+        assertTrue(wheel.advance(29_000).isEmpty());
+        assertEquals(Collections.singletonList("b"), wheel.advance(31_000));
+        assertEquals(Collections.singletonList("c"), wheel.advance(400_000));
+        assertTrue(wheel.advance(9_999_000).isEmpty());
+        assertEquals(Collections.singletonList("d"), wheel.advance(10_000_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testRescheduleAndCancel() {
+        TimingWheel<String> wheel = new TimingWheel<>(1000, 8, 2, 0);
+        wheel.schedule("a", 5_000);
+        wheel.schedule("a", 20_000);
+        wheel.schedule("b", 6_000);
+        assertTrue(wheel.cancel("b"));
+        assertFalse(wheel.cancel("b"));
+
+        assertTrue(wheel.advance(10_000).isEmpty());
+        assertEquals(Collections.singletonList("a"), wheel.advance(20_000));
+    }
+
+    @Test
+    public void testPassedDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(1000, 8, 2, 50_000);
+        wheel.schedule("a", 10_000);
+        assertEquals(Collections.singletonList("a"), wheel.advance(50_000));
+    }
+
+    @Test
+    public void testRandomDeadlines() {
+        Random random = new Random(42);
+        TimingWheel<Integer> wheel = new TimingWheel<>(100, 4, 3, 0);
+        Map<Integer, Long> deadlines = new HashMap<>();
+        long now = 0;
+        for (int i = 0; i < 2000; i++) {
+            int item = random.nextInt(100);
+            if (random.nextBoolean()) {
+                long deadline = now + random.nextInt(100_000);
+                wheel.schedule(item, deadline);
+                deadlines.put(item, deadline);
+            } else {
+                now += random.nextInt(2000);
+                List<Integer> expired = wheel.advance(now);
+
+                Set<Integer> expected = new HashSet<>();
+                for (Map.Entry<Integer, Long> entry : deadlines.entrySet()) {
+                    // deadlines are rounded up to the tick
+                    if ((entry.getValue() + 99) / 100 <= now / 100) {
+                        expected.add(entry.getKey());
+                    }
+                }
+                assertEquals(expected, new HashSet<>(expired));
+                deadlines.keySet().removeAll(expected);
+            }
+            assertEquals(deadlines.size(), wheel.size());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.entitycache;
+
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares throughput of {@link StandardQueryCache} and {@link GenerationalQueryCache} under a mixed load of
+ * reads and commits invalidating entity types. Not a part of the regular test run, executed by the
+ * {@code benchmark} task of the core module.
+ * <p>
+ * The measurement follows the JMH throughput mode: each cache is warmed up by several iterations, then
+ * the operations completed by all threads are counted in several measurement iterations of a fixed duration.
+ * The mean and the standard deviation of operations per second are written to the log.
+ */
+public class GenerationalQueryCacheBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(GenerationalQueryCacheBenchmark.class);
+
+    private static final int THREADS = 4;
+    private static final int TYPES_COUNT = 20;
+    private static final int KEYS_COUNT = 200;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_MS = 1000;
+
+    private final QueryKey[] keys = createKeys();
+
+    @Test
+    public void readMostlyLoad() throws Exception {
+        compare("read mostly", 95);
+    }
+
+    @Test
+    public void commitHeavyLoad() throws Exception {
+        compare("commit heavy", 70);
+    }
+
+    private void compare(String name, int readPercent) throws Exception {
+        StandardQueryCache standardCache = new StandardQueryCache() {
+            @Override
+            public long getMaxSize() {
+                return 1000;
+            }
+        };
+        standardCache.init();
+
+        GenerationalQueryCache generationalCache = new GenerationalQueryCache() {
+            @Override
+            public long getMaxSize() {
+                return 1000;
+            }
+        };
+        generationalCache.init();
+
+        double[] standard = measure(standardCache, readPercent);
+        double[] generational = measure(generationalCache, readPercent);
+
+        log.info("Query cache, {} load ({}% reads), {} threads, ops/s: StandardQueryCache {} ± {}, " +
+                        "GenerationalQueryCache {} ± {}",
+                name, readPercent, THREADS,
+                (long) standard[0], (long) standard[1], (long) generational[0], (long) generational[1]);
+
+        assertTrue(standard[0] > 0);
+        assertTrue(generational[0] > 0);
+    }
+
+    /**
+     * @return mean and standard deviation of operations per second in the measurement iterations
+     */
+    private double[] measure(QueryCache cache, int readPercent) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runIteration(cache, readPercent);
+        }
+        double[] results = new double[MEASUREMENT_ITERATIONS];
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            results[i] = runIteration(cache, readPercent) * 1000.0 / ITERATION_MS;
+        }
+
+        double mean = 0;
+        for (double result : results) {
+            mean += result;
+        }
+        mean /= results.length;
+        double variance = 0;
+        for (double result : results) {
+            variance += (result - mean) * (result - mean);
+        }
+        return new double[]{mean, Math.sqrt(variance / (results.length - 1))};
+    }
+
+    private long runIteration(QueryCache cache, int readPercent) throws Exception {
+        LongAdder operations = new LongAdder();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ITERATION_MS);
+                    long count = 0;
+                    while ((count & 0xFF) != 0 || System.nanoTime() < deadline) {
+                        int i = random.nextInt(keys.length);
+                        String type = "test$Entity" + (i % TYPES_COUNT);
+                        if (random.nextInt(100) < readPercent) {
+                            if (cache.get(keys[i]) == null) {
+                                cache.put(keys[i], createResult(type));
+                            }
+                        } else {
+                            // each commit invalidates a couple of types
+                            cache.invalidate(Sets.newHashSet(type, "test$Entity" + random.nextInt(TYPES_COUNT)));
+                        }
+                        count++;
+                    }
+                    operations.add(count);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(ITERATION_MS * 10, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return operations.sum();
+    }
+
+    private static QueryKey[] createKeys() {
+        QueryKey[] keys = new QueryKey[KEYS_COUNT];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new QueryKey("select e from test$Entity" + (i % TYPES_COUNT) + " e where e.id = " + i,
+                    0, 0, true, false, null, null);
+        }
+        return keys;
+    }
+
+    private static QueryResult createResult(String type) {
+        return new QueryResult(Collections.emptyList(), type, Sets.newHashSet(type));
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.entitycache;
+
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GenerationalQueryCacheTest {
+
+    private GenerationalQueryCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        cache = new GenerationalQueryCache() {
+            @Override
+            public long getMaxSize() {
+                return 1000;
+            }
+        };
+        cache.init();
+    }
+
+    @Test
+    public void testInvalidateByType() {
+        QueryKey userQuery = createKey("select u from sec$User u");
+        QueryKey groupQuery = createKey("select g from sec$Group g");
+        QueryKey joinQuery = createKey("select u from sec$User u join u.group g");
+
+        cache.put(userQuery, createResult("sec$User", "sec$User"));
+        cache.put(groupQuery, createResult("sec$Group", "sec$Group"));
+        cache.put(joinQuery, createResult("sec$User", "sec$User", "sec$Group"));
+
+        assertNotNull(cache.get(userQuery));
+        assertNotNull(cache.get(groupQuery));
+        assertNotNull(cache.get(joinQuery));
+
+        cache.invalidate("sec$Group");
+
+        assertNotNull(cache.get(userQuery));
+        assertNull(cache.get(groupQuery));
+        assertNull(cache.get(joinQuery));
+        assertEquals(1, cache.asMap().size());
+
+        cache.put(groupQuery, createResult("sec$Group", "sec$Group"));
+        assertNotNull(cache.get(groupQuery));
+
+        cache.invalidate(Sets.newHashSet("sec$User", "sec$Role"));
+        assertNull(cache.get(userQuery));
+        assertNotNull(cache.get(groupQuery));
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        QueryKey userQuery = createKey("select u from sec$User u");
+        cache.put(userQuery, createResult("sec$User", "sec$User"));
+
+        cache.invalidateAll();
+        assertNull(cache.get(userQuery));
+        assertEquals(0, cache.size());
+
+        cache.put(userQuery, createResult("sec$User", "sec$User"));
+        assertNotNull(cache.get(userQuery));
+    }
+
+    @Test
+    public void testInvalidateByKeyAndId() {
+        QueryKey userQuery = createKey("select u from sec$User u");
+        QueryKey groupQuery = createKey("select g from sec$Group g");
+        cache.put(userQuery, createResult("sec$User", "sec$User"));
+        cache.put(groupQuery, createResult("sec$Group", "sec$Group"));
+
+        assertSame(userQuery, cache.findQueryKeyById(userQuery.getId()));
+
+        cache.invalidate(userQuery);
+        assertNull(cache.get(userQuery));
+
+        assertSame(groupQuery, cache.invalidate(groupQuery.getId()));
+        assertNull(cache.get(groupQuery));
+        assertNull(cache.invalidate(groupQuery.getId()));
+    }
+
+    @Test
+    public void testInvalidationDoesNotTouchEntries() {
+        QueryKey[] keys = new QueryKey[500];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = createKey("select u from sec$User u where u.id = " + i);
+            cache.put(keys[i], createResult("sec$User", "sec$User"));
+        }
+
+        cache.invalidate("sec$User");
+
+        // invalidation only increments the generation, stale entries are dropped when read
+        assertEquals(keys.length, cache.size());
+        assertTrue(cache.asMap().isEmpty());
+
+        assertNull(cache.get(keys[0]));
+        assertEquals(keys.length - 1, cache.size());
+    }
+
+    @Test
+    public void testConcurrentReadsAndInvalidations() throws Exception {
+        int threads = 4;
+        int operationsPerThread = 20_000;
+        int typesCount = 20;
+
+        QueryKey[] keys = new QueryKey[200];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = createKey("select e from test$Entity" + (i % typesCount) + " e where e.id = " + i);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int n = 0; n < operationsPerThread; n++) {
+                        int i = random.nextInt(keys.length);
+                        String type = "test$Entity" + (i % typesCount);
+                        if (random.nextInt(10) < 7) {
+                            if (cache.get(keys[i]) == null) {
+                                cache.put(keys[i], createResult(type, type));
+                            }
+                        } else {
+                            // each commit invalidates a couple of types
+                            cache.invalidate(Sets.newHashSet(type, "test$Entity" + random.nextInt(typesCount)));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < typesCount; i++) {
+            cache.invalidate("test$Entity" + i);
+        }
+        for (QueryKey key : keys) {
+            assertNull(cache.get(key));
+        }
+        assertTrue(cache.asMap().isEmpty());
+
+        cache.put(keys[0], createResult("test$Entity0", "test$Entity0"));
+        assertNotNull(cache.get(keys[0]));
+    }
+
+    private QueryKey createKey(String query) {
+        return new QueryKey(query, 0, 0, true, false, null, null);
+    }
+
+    private QueryResult createResult(String type, String... relatedTypes) {
+        return new QueryResult(Collections.emptyList(), type, Sets.newHashSet(relatedTypes));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.entitycache;
+
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InvalidateQueryCacheMsgCodecTest {
+
+    private QueryCacheManager.InvalidateQueryCacheMsgCodec codec = new QueryCacheManager.InvalidateQueryCacheMsgCodec();
+
+    @Test
+    public void testTypeNames() throws Exception {
+        QueryCacheManager.InvalidateQueryCacheMsg message =
+                new QueryCacheManager.InvalidateQueryCacheMsg(Sets.newHashSet("sec$User", "sec$Group"));
+
+        QueryCacheManager.InvalidateQueryCacheMsg decoded = roundTrip(message);
+
+        assertFalse(decoded.invalidateAll);
+        assertNull(decoded.queryKey);
+        assertEquals(message.typeNames, decoded.typeNames);
+    }
+
+    @Test
+    public void testInvalidateAll() throws Exception {
+        QueryCacheManager.InvalidateQueryCacheMsg decoded = roundTrip(new QueryCacheManager.InvalidateQueryCacheMsg(true));
+
+        assertTrue(decoded.invalidateAll);
+        assertNull(decoded.typeNames);
+    }
+
+    private QueryCacheManager.InvalidateQueryCacheMsg roundTrip(QueryCacheManager.InvalidateQueryCacheMsg message) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        codec.encode(message, new DataOutputStream(bos));
+        return codec.decode(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+    }
+}
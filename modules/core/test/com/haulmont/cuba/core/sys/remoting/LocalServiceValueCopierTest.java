@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.remoting;
+
+import com.haulmont.cuba.core.entity.BaseEntityInternalAccess;
+import com.haulmont.cuba.security.entity.Group;
+import com.haulmont.cuba.security.entity.RoleType;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalServiceValueCopierTest {
+
+    @RegisterExtension
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    @Test
+    public void testImmutableValuesArePassedByReference() {
+        LocalServiceValueCopier copier = new LocalServiceValueCopier();
+
+        String string = new String("value");
+        UUID uuid = UUID.randomUUID();
+        Object[] args = {string, uuid, RoleType.READONLY, null};
+
+        Object[] arguments = copier.copyArguments(args, new boolean[4]);
+
+        assertNotSame(args, arguments);
+        assertSame(string, arguments[0]);
+        assertSame(uuid, arguments[1]);
+        assertSame(RoleType.READONLY, arguments[2]);
+        assertNull(arguments[3]);
+        assertFalse(copier.isSerialized());
+    }
+
+    @Test
+    public void testEntitiesAreCopiedWithSharedReferences() {
+        LocalServiceValueCopier copier = new LocalServiceValueCopier();
+
+        Group group = new Group();
+        group.setName("group");
+        User user = new User();
+        user.setLogin("user");
+        user.setGroup(group);
+        BaseEntityInternalAccess.setDetached(user, true);
+
+        User notCopied = new User();
+        Object[] arguments = copier.copyArguments(new Object[]{user, group, notCopied}, new boolean[]{false, false, true});
+
+        User userCopy = (User) arguments[0];
+        Group groupCopy = (Group) arguments[1];
+        assertNotSame(user, userCopy);
+        assertNotSame(group, groupCopy);
+        assertSame(groupCopy, userCopy.getGroup());
+        assertEquals(user.getId(), userCopy.getId());
+        assertEquals("user", userCopy.getLogin());
+        assertEquals("group", groupCopy.getName());
+        assertTrue(BaseEntityInternalAccess.isDetached(userCopy));
+        assertSame(notCopied, arguments[2]);
+        assertFalse(copier.isSerialized());
+    }
+
+    @Test
+    public void testResultIsCopied() {
+        LocalServiceValueCopier copier = new LocalServiceValueCopier();
+
+        User user = new User();
+        user.setLogin("user");
+        List<User> users = new ArrayList<>();
+        users.add(user);
+        users.add(user);
+
+        @SuppressWarnings("unchecked")
+        List<User> copy = (List<User>) copier.copy(users);
+
+        assertNotSame(users, copy);
+        assertEquals(2, copy.size());
+        assertNotSame(user, copy.get(0));
+        assertSame(copy.get(0), copy.get(1));
+        assertEquals("user", copy.get(0).getLogin());
+        assertFalse(copier.isSerialized());
+    }
+}
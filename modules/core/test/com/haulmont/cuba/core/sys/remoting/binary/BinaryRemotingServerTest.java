@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.remoting.binary;
+
+import com.haulmont.cuba.core.app.ServerConfig;
+import com.haulmont.cuba.core.sys.remoting.HttpServiceExporter;
+import com.haulmont.cuba.core.sys.remoting.binary.BinaryRemotingConnection.PendingCall;
+import com.haulmont.cuba.core.sys.remoting.binary.BinaryRemotingProtocol.Frame;
+import com.haulmont.cuba.core.sys.remoting.discovery.SessionUrlsHolder;
+import com.haulmont.cuba.core.sys.remoting.discovery.StaticServerSelector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryRemotingServerTest {
+
+    private static final String PASSWORD = "secret";
+
+    private BinaryRemotingServer server;
+    private List<BinaryRemotingConnection> connections = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        connections.forEach(BinaryRemotingConnection::close);
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testLargeResultIsStreamedInChunks() throws Exception {
+        List<String> shared = new ArrayList<>(Collections.singletonList("shared"));
+        List<Object> list = new ArrayList<>();
+        list.add(shared);
+        for (int i = 0; i < 1000; i++) {
+            list.add("element " + i);
+        }
+        list.add(shared);
+        startServer(Collections.emptyMap(), invocation -> new RemoteInvocationResult(list));
+
+        PendingCall call = connect().send("test_Service", createInvocation("load"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int chunks = 0;
+        Frame frame;
+        do {
+            frame = call.getFrames().poll(5, TimeUnit.SECONDS);
+            assertNotNull(frame);
+            bytes.write(frame.getPayload());
+            if (frame.getType() == BinaryRemotingProtocol.RESULT_CHUNK) {
+                chunks++;
+                assertEquals(1024, frame.getPayload().length);
+            }
+        } while (frame.getType() == BinaryRemotingProtocol.RESULT_CHUNK);
+
+        assertEquals(BinaryRemotingProtocol.RESULT, frame.getType());
+        assertTrue(chunks > 1);
+
+        RemoteInvocationResult result = (RemoteInvocationResult) BinaryRemotingProtocol.getSerialization()
+                .deserialize(bytes.toByteArray());
+        List<?> value = (List<?>) result.getValue();
+        assertEquals(list, value);
+        assertSame(value.get(0), value.get(value.size() - 1));
+    }
+
+    @Test
+    public void testCorruptedRequestIsAnsweredByError() throws Exception {
+        startServer(Collections.emptyMap(), invocation -> new RemoteInvocationResult("OK"));
+        BinaryRemotingConnection connection = connect();
+
+        PendingCall call = new PendingCall(connection.requestIds.incrementAndGet());
+        connection.calls.put(call.getRequestId(), call);
+        // the service name length exceeds the payload
+        connection.write(call.getRequestId(), BinaryRemotingProtocol.INVOKE, new byte[]{0, 10, 1});
+
+        assertError(call.getFrames().poll(5, TimeUnit.SECONDS), "Failed to execute");
+    }
+
+    @Test
+    public void testUnexpectedExceptionIsAnsweredByError() throws Exception {
+        startServer(Collections.emptyMap(), invocation -> {
+            throw new NullPointerException();
+        });
+
+        PendingCall call = connect().send("test_Service", createInvocation("load"));
+
+        assertError(call.getFrames().poll(5, TimeUnit.SECONDS), "NullPointerException");
+    }
+
+    @Test
+    public void testWaitingRequestsAreLimited() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Map<String, Object> config = new HashMap<>();
+        config.put("getBinaryRemotingThreads", 1);
+        config.put("getBinaryRemotingQueueSize", 1);
+        startServer(config, invocation -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new RemoteInvocationResult("OK");
+        });
+        BinaryRemotingConnection connection = connect();
+
+        PendingCall executing = connection.send("test_Service", createInvocation("load"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        PendingCall waiting = connection.send("test_Service", createInvocation("load"));
+        PendingCall rejected = connection.send("test_Service", createInvocation("load"));
+
+        assertError(rejected.getFrames().poll(5, TimeUnit.SECONDS), "Server is busy");
+
+        release.countDown();
+        assertEquals(BinaryRemotingProtocol.RESULT, executing.getFrames().poll(5, TimeUnit.SECONDS).getType());
+        assertEquals(BinaryRemotingProtocol.RESULT, waiting.getFrames().poll(5, TimeUnit.SECONDS).getType());
+    }
+
+    @Test
+    public void testConnectionsAreLimited() throws Exception {
+        startServer(Collections.singletonMap("getBinaryRemotingMaxConnections", 1),
+                invocation -> new RemoteInvocationResult("OK"));
+
+        connect();
+
+        assertThrows(IOException.class, this::connect);
+        assertEquals(1, server.getConnectionsCount());
+    }
+
+    @Test
+    public void testClientReceivesStreamedResult() throws Exception {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            list.add("element " + i);
+        }
+        startServer(Collections.emptyMap(), invocation -> new RemoteInvocationResult(list));
+
+        BinaryRemotingClient client = new BinaryRemotingClient(server.getLocalPort(), false, PASSWORD, 5000, -1);
+        try {
+            assertEquals(BinaryRemotingClient.DEFAULT_READ_TIMEOUT, client.readTimeout);
+
+            RemoteInvocationResult result = client.invoke(new TestServerSelector(), "test_Service",
+                    createInvocation("load"));
+            assertNotNull(result);
+            assertEquals(list, result.getValue());
+        } finally {
+            client.close();
+        }
+    }
+
+    private void assertError(@Nullable Frame frame, String message) {
+        assertNotNull(frame);
+        assertEquals(BinaryRemotingProtocol.ERROR, frame.getType());
+        RemoteInvocationResult result = (RemoteInvocationResult) BinaryRemotingProtocol.getSerialization()
+                .deserialize(frame.getPayload());
+        assertTrue(result.getException() instanceof RemoteAccessException);
+        assertTrue(result.getException().getMessage().contains(message), result.getException().getMessage());
+    }
+
+    private void startServer(Map<String, Object> config,
+                             Function<RemoteInvocation, RemoteInvocationResult> invoker) throws IOException {
+        HttpServiceExporter exporter = new HttpServiceExporter() {
+            @Override
+            public RemoteInvocationResult invoke(RemoteInvocation invocation) {
+                return invoker.apply(invocation);
+            }
+        };
+
+        server = new BinaryRemotingServer() {
+            @Nullable
+            @Override
+            protected HttpServiceExporter getExporter(String serviceName) {
+                return "test_Service".equals(serviceName) ? exporter : null;
+            }
+        };
+        server.serverConfig = createConfig(config);
+        server.start(0);
+    }
+
+    private BinaryRemotingConnection connect() throws IOException {
+        BinaryRemotingConnection connection = new BinaryRemotingConnection("localhost", server.getLocalPort(),
+                false, PASSWORD, 5000);
+        connections.add(connection);
+        return connection;
+    }
+
+    private ServerConfig createConfig(Map<String, Object> values) {
+        Map<String, Object> config = new HashMap<>();
+        config.put("getTrustedClientPassword", PASSWORD);
+        config.put("getBinaryRemotingThreads", 4);
+        config.put("getBinaryRemotingQueueSize", 100);
+        config.put("getBinaryRemotingMaxConnections", 10);
+        config.put("getBinaryRemotingChunkSize", 1024);
+        config.putAll(values);
+
+        return (ServerConfig) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ServerConfig.class},
+                (proxy, method, args) -> {
+                    if (config.containsKey(method.getName())) {
+                        return config.get(method.getName());
+                    }
+                    Class<?> type = method.getReturnType();
+                    if (type == boolean.class) {
+                        return false;
+                    }
+                    if (type == int.class) {
+                        return 0;
+                    }
+                    if (type == long.class) {
+                        return 0L;
+                    }
+                    return null;
+                });
+    }
+
+    private RemoteInvocation createInvocation(String methodName) {
+        return new RemoteInvocation(methodName, new Class[0], new Object[0]);
+    }
+
+    private class TestServerSelector extends StaticServerSelector {
+
+        TestServerSelector() {
+            setBaseUrl("http://localhost:8080/app-core");
+            setServerSorter(strings -> {});
+            init();
+        }
+
+        @Nullable
+        @Override
+        protected SessionUrlsHolder getSessionUrlsHolder() {
+            return null;
+        }
+    }
+}
@@ -24,8 +24,11 @@ import com.haulmont.cuba.core.Query;
 import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.TypedQuery;
 import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.Configuration;
 import com.haulmont.cuba.core.global.Messages;
 import com.haulmont.cuba.security.app.EntityLogAPI;
+import com.haulmont.cuba.security.app.EntityLogConfig;
+import com.haulmont.cuba.security.app.EntityLogWriter;
 import com.haulmont.cuba.security.entity.*;
 import com.haulmont.cuba.testsupport.TestContainer;
 import org.junit.jupiter.api.AfterEach;
@@ -39,6 +42,7 @@ import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class EntityLogTest {
 
@@ -313,6 +317,55 @@ public class EntityLogTest {
         assertEquals("changed-name@test.com", attr.getOldValue());
     }
 
+    @Test
+    public void testAsync() throws Exception {
+        EntityLogConfig config = AppBeans.get(Configuration.class).getConfig(EntityLogConfig.class);
+        EntityLogWriter writer = AppBeans.get(EntityLogWriter.NAME);
+        config.setAsync(true);
+        try {
+            long writtenBefore = writer.getWrittenCount();
+
+            Transaction tx = cont.persistence().createTransaction();
+            try {
+                EntityManager em = cont.persistence().getEntityManager();
+
+                Group group = em.find(Group.class, UUID.fromString("0fa2b1a5-1d68-4d69-9fbd-dff348347f93"));
+
+                User user = new User();
+                userId = user.getId();
+                user.setGroup(group);
+                user.setLogin("test");
+                user.setName("test-name");
+                user.setEmail("name@test.com");
+                em.persist(user);
+
+                em.flush();
+
+                user.setEmail("changed-name@test.com");
+
+                tx.commit();
+            } finally {
+                tx.end();
+            }
+
+            // waits for the batch being written by the background thread and writes the rest
+            writer.flush();
+            assertTrue(writer.getWrittenCount() > writtenBefore);
+
+            List<EntityLogItem> items = getEntityLogItems();
+            assertEquals(1, items.size());
+
+            EntityLogItem item = items.get(0);
+            assertEquals(EntityLogItem.Type.CREATE, item.getType());
+
+            EntityLogAttr attr = Iterables.find(item.getAttributes(), a -> "email".equals(a.getName()));
+            assertEquals("changed-name@test.com", attr.getValue());
+            assertEquals(0, writer.getQueueDepth());
+        } finally {
+            config.setAsync(false);
+        }
+    }
+
     private List<EntityLogItem> getEntityLogItems() {
         Transaction tx;
         List<EntityLogItem> items;
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.security.app;
+
+import com.haulmont.cuba.security.app.UserSessions.UserSessionInfo;
+import com.haulmont.cuba.security.global.UserSession;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserSessionExpiryIndexTest {
+
+    private UserSessionExpiryIndex index = new UserSessionExpiryIndex(1000);
+
+    @Test
+    public void testPollExpired() {
+        UserSessionInfo old = new UserSessionInfo(new UserSession(), 10_000);
+        UserSessionInfo recent = new UserSessionInfo(new UserSession(), 20_500);
+        index.add(old);
+        index.add(recent);
+
+        assertTrue(index.pollExpired(10_000).isEmpty());
+
+        List<UserSessionInfo> expired = index.pollExpired(20_000);
+        assertEquals(Collections.singletonList(old), expired);
+        assertEquals(1, index.size());
+
+        assertTrue(index.pollExpired(20_500).isEmpty());
+        assertEquals(Collections.singletonList(recent), index.pollExpired(20_501));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testTouchedSessionIsNotExpired() {
+        UserSessionInfo usi = new UserSessionInfo(new UserSession(), 10_000);
+        index.add(usi);
+
+        assertTrue(usi.compareAndSetLastUsedTs(10_000, 30_000));
+        index.touched(usi);
+
+        assertTrue(index.pollExpired(25_000).isEmpty());
+        assertEquals(Collections.singletonList(usi), index.pollExpired(35_000));
+    }
+
+    @Test
+    public void testRemovedSessionIsNotExpired() {
+        UserSessionInfo usi = new UserSessionInfo(new UserSession(), 10_000);
+        index.add(usi);
+        index.remove(usi);
+        index.touched(usi);
+
+        assertTrue(index.pollExpired(50_000).isEmpty());
+        assertEquals(0, index.size());
+    }
+}
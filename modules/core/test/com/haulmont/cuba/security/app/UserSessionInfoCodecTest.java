@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.security.app;
+
+import com.haulmont.cuba.security.app.UserSessions.UserSessionInfo;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.security.global.UserSession;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserSessionInfoCodecTest {
+
+    private TestUserSessions sender = new TestUserSessions();
+    private TestUserSessions receiver = new TestUserSessions();
+
+    private UserSessions.UserSessionInfoCodec senderCodec = sender.new UserSessionInfoCodec();
+    private UserSessions.UserSessionInfoCodec receiverCodec = receiver.new UserSessionInfoCodec();
+
+    @Test
+    public void testNewSessionIsSentInFull() throws Exception {
+        UserSessionInfo usi = new UserSessionInfo(createSession(), 1000);
+
+        byte[] bytes = encode(usi);
+        assertEquals(UserSessions.UserSessionInfoCodec.FULL, bytes[0]);
+
+        UserSessionInfo decoded = decode(bytes);
+        assertNotNull(decoded);
+        assertEquals(usi.getSession().getId(), decoded.getSession().getId());
+        assertEquals("test", decoded.getSession().getUser().getLogin());
+        assertEquals(1000, decoded.getSince());
+        assertEquals(1000, decoded.getLastUsedTs());
+    }
+
+    @Test
+    public void testTouchIsAppliedToKnownSession() throws Exception {
+        UserSessionInfo usi = new UserSessionInfo(createSession(), 1000);
+        receiver.putSessionInfo(usi.getSession().getId(), decode(encode(usi)));
+
+        usi.compareAndSetLastUsedTs(1000, 5000);
+        byte[] bytes = encode(usi);
+        assertEquals(UserSessions.UserSessionInfoCodec.TOUCHED, bytes[0]);
+
+        UserSessionInfo decoded = decode(bytes);
+        assertNotNull(decoded);
+        assertSame(receiver.getSessionInfo(usi.getSession().getId()).getSession(), decoded.getSession());
+        assertEquals(5000, decoded.getLastUsedTs());
+    }
+
+    @Test
+    public void testTouchOfUnknownSessionIsSkipped() throws Exception {
+        UserSessionInfo usi = new UserSessionInfo(createSession(), 1000);
+        encode(usi);
+
+        byte[] bytes = encode(usi);
+        assertEquals(UserSessions.UserSessionInfoCodec.TOUCHED, bytes[0]);
+        assertNull(decode(bytes));
+    }
+
+    @Test
+    public void testChangedSessionIsSentInFull() throws Exception {
+        UserSessionInfo usi = new UserSessionInfo(createSession(), 1000);
+        receiver.putSessionInfo(usi.getSession().getId(), decode(encode(usi)));
+
+        usi.getSession().setAttribute("attr", "value");
+        usi.markContentChanged();
+
+        byte[] bytes = encode(usi);
+        assertEquals(UserSessions.UserSessionInfoCodec.FULL, bytes[0]);
+        assertEquals("value", decode(bytes).getSession().getAttribute("attr"));
+
+        assertEquals(UserSessions.UserSessionInfoCodec.TOUCHED, encode(usi)[0]);
+    }
+
+    @Test
+    public void testSessionIsSentInFullAfterViewChange() throws Exception {
+        UserSessionInfo usi = new UserSessionInfo(createSession(), 1000);
+        encode(usi);
+        assertEquals(UserSessions.UserSessionInfoCodec.TOUCHED, encode(usi)[0]);
+
+        sender.view = "node1,node2";
+
+        assertEquals(UserSessions.UserSessionInfoCodec.FULL, encode(usi)[0]);
+        assertEquals(UserSessions.UserSessionInfoCodec.TOUCHED, encode(usi)[0]);
+    }
+
+    @Test
+    public void testDecodedSessionIsNotResentInFull() throws Exception {
+        UserSessionInfo decoded = decode(encode(new UserSessionInfo(createSession(), 1000)));
+        assertNotNull(decoded);
+
+        assertEquals(UserSessions.UserSessionInfoCodec.TOUCHED, receiverCodecEncode(decoded)[0]);
+    }
+
+    @Test
+    public void testRemoval() throws Exception {
+        UserSessionInfo usi = new UserSessionInfo(createSession(), 1000);
+        receiver.putSessionInfo(usi.getSession().getId(), decode(encode(usi)));
+
+        UserSessionInfo removed = new UserSessionInfo(usi.getSession(), 1000);
+        removed.lastUsedTs = 0;
+
+        byte[] bytes = encode(removed);
+        assertEquals(UserSessions.UserSessionInfoCodec.REMOVED, bytes[0]);
+
+        UserSessionInfo decoded = decode(bytes);
+        assertNotNull(decoded);
+        assertEquals(0, decoded.getLastUsedTs());
+        assertEquals(usi.getSession().getId(), decoded.getSession().getId());
+    }
+
+    private UserSession createSession() {
+        User user = new User();
+        user.setLogin("test");
+        return new UserSession(UUID.randomUUID(), user, Collections.emptyList(), Locale.ENGLISH, false);
+    }
+
+    private byte[] encode(UserSessionInfo usi) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        senderCodec.encode(usi, new DataOutputStream(bos));
+        return bos.toByteArray();
+    }
+
+    private byte[] receiverCodecEncode(UserSessionInfo usi) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        receiverCodec.encode(usi, new DataOutputStream(bos));
+        return bos.toByteArray();
+    }
+
+    private UserSessionInfo decode(byte[] bytes) throws IOException {
+        return receiverCodec.decode(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private static class TestUserSessions extends UserSessions {
+
+        private String view = "node1";
+
+        @Override
+        protected String getClusterView() {
+            return view;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import com.haulmont.bali.db.ArrayHandler;
 import com.haulmont.bali.db.QueryRunner;
 import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.app.events.BulkEntityChangedEvent;
 import com.haulmont.cuba.core.app.events.EntityChangedEvent;
 import com.haulmont.cuba.core.app.events.EntityPersistingEvent;
 import com.haulmont.cuba.core.entity.Entity;
@@ -85,12 +86,15 @@ public class TestEntityChangedEventListener implements
 
     public List<EventInfo> allEvents = new ArrayList<>();
 
+    public List<BulkEntityChangedEvent<Order, UUID>> bulkEntityChangedEvents = new ArrayList<>();
+
     @Inject
     private Persistence persistence;
 
     public void clear() {
         allEvents.clear();
         entityChangedEvents.clear();
+        bulkEntityChangedEvents.clear();
     }
 
     @EventListener
@@ -111,6 +115,12 @@ public class TestEntityChangedEventListener implements
         entityChangedEvents.add(new Info(event, isCommitted(event.getEntityId())));
     }
 
+    @EventListener
+    void beforeCommitBulk(BulkEntityChangedEvent<Order, UUID> event) {
+        allEvents.add(new EventInfo("BulkEntityChangedEvent: beforeCommit", event));
+        bulkEntityChangedEvents.add(event);
+    }
+
     @TransactionalEventListener
     void afterCommit(EntityChangedEvent<Order, UUID> event) {
         allEvents.add(new EventInfo("EntityChangedEvent: afterCommit, " + event.getType(), event));
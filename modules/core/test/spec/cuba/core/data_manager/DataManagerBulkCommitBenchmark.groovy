@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.core.data_manager
+
+import com.haulmont.bali.db.QueryRunner
+import com.haulmont.cuba.core.global.AppBeans
+import com.haulmont.cuba.core.global.CommitContext
+import com.haulmont.cuba.core.global.DataManager
+import com.haulmont.cuba.testmodel.sales_1.Order
+import com.haulmont.cuba.testsupport.TestContainer
+import org.junit.ClassRule
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Measures throughput of regular and bulk commits of new entities. Not a part of the regular test run,
+ * executed by the {@code benchmark} task of the core module. The results are written to the log.
+ */
+class DataManagerBulkCommitBenchmark extends Specification {
+
+    private static final Logger log = LoggerFactory.getLogger(DataManagerBulkCommitBenchmark)
+
+    @Shared @ClassRule
+    public TestContainer cont = TestContainer.Common.INSTANCE
+
+    private DataManager dataManager
+
+    void setup() {
+        dataManager = AppBeans.get(DataManager)
+    }
+
+    void cleanup() {
+        new QueryRunner(cont.persistence().getDataSource()).update("delete from SALES1_ORDER where NUM like 'bench-%'")
+    }
+
+    @Unroll
+    def "throughput of regular and bulk commit of #count entities"() {
+        // warm up
+        dataManager.commit(new CommitContext(createOrders('bench-warmup-', 500)))
+        dataManager.commit(new CommitContext(createOrders('bench-warmup-b-', 500)).setBulk(true))
+
+        when:
+        def regular = new CommitContext(createOrders('bench-regular-', count))
+        regular.discardCommitted = true
+        long regularTime = measure { dataManager.commit(regular) }
+
+        def bulk = new CommitContext(createOrders('bench-bulk-', count)).setBulk(true)
+        bulk.discardCommitted = true
+        long bulkTime = measure { dataManager.commit(bulk) }
+
+        log.info("Inserted {} rows: regular commit {} rows/sec, bulk commit {} rows/sec",
+                count, rowsPerSecond(count, regularTime), rowsPerSecond(count, bulkTime))
+
+        then:
+        countOrders('bench-regular-%') == count
+        countOrders('bench-bulk-%') == count
+
+        where:
+        count << [1_000, 10_000, 50_000]
+    }
+
+    private List<Order> createOrders(String prefix, int count) {
+        (1..count).collect { i ->
+            Order order = cont.metadata().create(Order)
+            order.number = prefix + i
+            order.amount = 1.0
+            order
+        }
+    }
+
+    private int countOrders(String pattern) {
+        def row = new QueryRunner(cont.persistence().getDataSource())
+                .query("select count(*) from SALES1_ORDER where NUM like ?", pattern, { rs -> rs.next(); rs.getInt(1) })
+        return row as int
+    }
+
+    private static long measure(Closure closure) {
+        long start = System.nanoTime()
+        closure.call()
+        return System.nanoTime() - start
+    }
+
+    private static long rowsPerSecond(int count, long nanos) {
+        return (long) (count * 1_000_000_000d / Math.max(nanos, 1))
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.core.data_manager
+
+import com.haulmont.bali.db.QueryRunner
+import com.haulmont.cuba.core.app.events.EntityChangedEvent
+import com.haulmont.cuba.core.global.AppBeans
+import com.haulmont.cuba.core.global.CommitContext
+import com.haulmont.cuba.core.global.DataManager
+import com.haulmont.cuba.testmodel.sales_1.Order
+import com.haulmont.cuba.testmodel.sales_1.TestEntityChangedEventListener
+import com.haulmont.cuba.testsupport.TestContainer
+import org.apache.commons.lang3.exception.ExceptionUtils
+import org.junit.ClassRule
+import spock.lang.Shared
+import spock.lang.Specification
+
+import javax.persistence.OptimisticLockException
+
+class DataManagerBulkCommitTest extends Specification {
+
+    @Shared @ClassRule
+    public TestContainer cont = TestContainer.Common.INSTANCE
+
+    private DataManager dataManager
+    private TestEntityChangedEventListener listener
+
+    void setup() {
+        dataManager = AppBeans.get(DataManager)
+        listener = AppBeans.get(TestEntityChangedEventListener)
+        listener.clear()
+    }
+
+    void cleanup() {
+        listener.clear()
+        new QueryRunner(cont.persistence().getDataSource()).update("delete from SALES1_ORDER where NUM like 'bulk-%'")
+    }
+
+    def "bulk commit saves entities and publishes aggregated events"() {
+        def orders = createOrders('bulk-create-', 120)
+
+        when:
+        def result = dataManager.commit(new CommitContext(orders).setBulk(true))
+
+        then:
+        result.isEmpty() == false
+        countOrders('bulk-create-%') == 120
+
+        listener.entityChangedEvents.isEmpty()
+        listener.bulkEntityChangedEvents.size() == 1
+        listener.bulkEntityChangedEvents[0].entityClass == Order
+        listener.bulkEntityChangedEvents[0].events.size() == 120
+        listener.bulkEntityChangedEvents[0].events.every { it.type == EntityChangedEvent.Type.CREATED }
+    }
+
+    def "bulk commit updates entities without reloading them"() {
+        def orders = createOrders('bulk-update-', 50)
+        dataManager.commit(new CommitContext(orders).setBulk(true))
+        listener.clear()
+
+        def loaded = dataManager.load(Order)
+                .query("select o from sales1\$Order o where o.number like 'bulk-update-%'")
+                .list()
+        loaded.each { it.amount = 10.0 }
+
+        def context = new CommitContext(loaded).setBulk(true)
+        context.discardCommitted = true
+
+        when:
+        def result = dataManager.commit(context)
+
+        then:
+        result.isEmpty()
+        sumAmount('bulk-update-%') == 500
+
+        listener.bulkEntityChangedEvents.size() == 1
+        listener.bulkEntityChangedEvents[0].events.size() == 50
+        listener.bulkEntityChangedEvents[0].events.every {
+            it.type == EntityChangedEvent.Type.UPDATED && it.changes.isChanged('amount')
+        }
+    }
+
+    def "bulk commit of a stale entity fails with optimistic lock exception"() {
+        def orders = createOrders('bulk-stale-', 2)
+        dataManager.commit(new CommitContext(orders).setBulk(true))
+
+        def loaded = dataManager.load(Order)
+                .query("select o from sales1\$Order o where o.number like 'bulk-stale-%'")
+                .list()
+        def stale = dataManager.reload(loaded[0], '_local')
+
+        loaded.each { it.amount = 5.0 }
+        dataManager.commit(new CommitContext(loaded).setBulk(true))
+
+        stale.amount = 7.0
+
+        when:
+        dataManager.commit(new CommitContext(stale).setBulk(true))
+
+        then: "the versioned update affecting no rows is detected when the batch is executed"
+        def e = thrown(Exception)
+        ExceptionUtils.indexOfType(e, OptimisticLockException) >= 0
+        sumAmount('bulk-stale-%') == 10
+    }
+
+    private List<Order> createOrders(String prefix, int count) {
+        (1..count).collect { i ->
+            Order order = cont.metadata().create(Order)
+            order.number = prefix + i
+            order.amount = 1.0
+            order
+        }
+    }
+
+    private int countOrders(String pattern) {
+        def row = new QueryRunner(cont.persistence().getDataSource())
+                .query("select count(*) from SALES1_ORDER where NUM like ?", pattern, { rs -> rs.next(); rs.getInt(1) })
+        return row as int
+    }
+
+    private int sumAmount(String pattern) {
+        def row = new QueryRunner(cont.persistence().getDataSource())
+                .query("select sum(AMOUNT) from SALES1_ORDER where NUM like ?", pattern, { rs -> rs.next(); rs.getInt(1) })
+        return row as int
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.core.data_manager
+
+import com.haulmont.cuba.core.global.AppBeans
+import com.haulmont.cuba.core.global.DataManager
+import com.haulmont.cuba.core.global.LoadContext
+import com.haulmont.cuba.core.global.Sort
+import com.haulmont.cuba.testmodel.sales.Customer
+import com.haulmont.cuba.testsupport.TestContainer
+import org.junit.ClassRule
+import spock.lang.Shared
+import spock.lang.Specification
+
+class DataManagerKeysetPagingTest extends Specification {
+
+    @Shared @ClassRule
+    public TestContainer cont = TestContainer.Common.INSTANCE
+
+    private DataManager dataManager
+    private List<Customer> customers = []
+
+    void setup() {
+        dataManager = AppBeans.get(DataManager)
+
+        for (i in 1..10) {
+            Customer customer = cont.metadata().create(Customer)
+            customer.name = 'keyset-' + String.valueOf(i % 5).padLeft(2, '0')
+            customers.add(customer)
+        }
+        dataManager.commit(customers as Customer[])
+    }
+
+    void cleanup() {
+        cont.deleteRecord(customers as Customer[])
+    }
+
+    def "next page is loaded after the sort key of the last entity"() {
+        def query = "select c from test\$Customer c where c.name like 'keyset-%' order by c.name, c.id"
+        List<Customer> all = dataManager.load(Customer).query(query).list()
+
+        when:
+        List<Customer> firstPage = dataManager.load(Customer).query(query).maxResults(4).list()
+        Customer last = firstPage[-1]
+        List<Customer> secondPage = dataManager.load(Customer).query(query)
+                .afterSortKey(last.name, last.id)
+                .maxResults(4)
+                .list()
+
+        then:
+        firstPage == all.subList(0, 4)
+        secondPage == all.subList(4, 8)
+    }
+
+    def "keyset pagination is applied to the query sort"() {
+        LoadContext<Customer> context = LoadContext.create(Customer)
+                .setQuery(LoadContext.createQuery("select c from test\$Customer c where c.name like 'keyset-%'")
+                        .setSort(Sort.by(Sort.Direction.DESC, 'name')))
+        List<Customer> all = dataManager.loadList(context)
+
+        when:
+        Customer last = all[2]
+        context.getQuery().setAfterSortKey([last.name, last.id])
+        List<Customer> rest = dataManager.loadList(context)
+
+        then:
+        rest == all.subList(3, all.size())
+        dataManager.getCount(context) == all.size()
+    }
+
+    def "offset is used when the sort key cannot be applied"() {
+        LoadContext<Customer> context = LoadContext.create(Customer)
+                .setQuery(LoadContext.createQuery("select c from test\$Customer c where c.name like 'keyset-%'")
+                        .setSort(Sort.by('name')))
+        List<Customer> all = dataManager.loadList(context)
+
+        when: "the key contains null and the first result is set"
+        context.getQuery().setAfterSortKey([null, all[2].id])
+        context.getQuery().setFirstResult(3)
+        List<Customer> byOffset = dataManager.loadList(context)
+
+        then:
+        byOffset == all.subList(3, all.size())
+
+        when: "the key is applied"
+        context.getQuery().setAfterSortKey([all[2].name, all[2].id])
+        context.getQuery().setFirstResult(3)
+        List<Customer> byKey = dataManager.loadList(context)
+
+        then: "the first result is ignored"
+        byKey == all.subList(3, all.size())
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.core.data_manager
+
+import com.haulmont.cuba.core.global.AppBeans
+import com.haulmont.cuba.core.global.ChunkedLoadIterator
+import com.haulmont.cuba.core.global.DataManager
+import com.haulmont.cuba.core.global.LoadContext
+import com.haulmont.cuba.core.global.Sort
+import com.haulmont.cuba.testmodel.sales.Customer
+import com.haulmont.cuba.testmodel.sales_1.Order
+import com.haulmont.cuba.testsupport.TestContainer
+import org.junit.ClassRule
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.util.stream.Collectors
+
+class DataManagerLoadStreamTest extends Specification {
+
+    @Shared @ClassRule
+    public TestContainer cont = TestContainer.Common.INSTANCE
+
+    private DataManager dataManager
+    private List<Customer> customers = []
+
+    void setup() {
+        dataManager = AppBeans.get(DataManager)
+
+        for (i in 1..25) {
+            Customer customer = cont.metadata().create(Customer)
+            customer.name = 'stream-' + String.valueOf(i).padLeft(2, '0')
+            customers.add(customer)
+        }
+        dataManager.commit(customers as Customer[])
+    }
+
+    void cleanup() {
+        cont.deleteRecord(customers as Customer[])
+    }
+
+    def "stream is loaded by keyset chunks"() {
+        def context = LoadContext.create(Customer)
+                .setQuery(LoadContext.createQuery("select c from test\$Customer c where c.name like 'stream-%'"))
+
+        when:
+        List<Customer> loaded = dataManager.loadStream(context, 10).collect(Collectors.toList())
+
+        then:
+        loaded.size() == 25
+        loaded*.id as Set == customers*.id as Set
+    }
+
+    def "stream respects sort and max results"() {
+        when:
+        List<Customer> loaded = dataManager.load(Customer)
+                .query("select c from test\$Customer c where c.name like 'stream-%' order by c.name desc")
+                .maxResults(15)
+                .stream(4)
+                .collect(Collectors.toList())
+
+        then:
+        loaded.size() == 15
+        loaded*.name == customers*.name.sort(false).reverse().take(15)
+    }
+
+    def "sorted stream is loaded by chunks following the sort key"() {
+        List<Order> orders = (1..25).collect { i ->
+            Order order = cont.metadata().create(Order)
+            order.number = 'stream-' + i
+            order
+        }
+        dataManager.commit(orders as Order[])
+
+        def context = LoadContext.create(Order)
+                .setQuery(LoadContext.createQuery("select o from sales1\$Order o where o.number like 'stream-%'")
+                        .setSort(Sort.by('version')))
+        List<List<Object>> sortKeys = []
+        DataManager recordingDataManager = [
+                loadList: { LoadContext ctx ->
+                    sortKeys << ctx.query.afterSortKey?.collect()
+                    dataManager.loadList(ctx)
+                }
+        ] as DataManager
+
+        when:
+        List<Order> loaded = new ChunkedLoadIterator<Order>(recordingDataManager, context, 10).collect()
+
+        then: "each next chunk starts after the version and the id of the last loaded entity"
+        loaded.size() == 25
+        loaded*.id as Set == orders*.id as Set
+        sortKeys.size() == 3
+        sortKeys[0] == null
+        sortKeys[1] == [loaded[9].version, loaded[9].id]
+        sortKeys[2] == [loaded[19].version, loaded[19].id]
+
+        cleanup:
+        cont.deleteRecord(orders as Order[])
+    }
+
+    def "stream can be closed before it is consumed"() {
+        def context = LoadContext.create(Customer)
+                .setQuery(LoadContext.createQuery("select c from test\$Customer c where c.name like 'stream-%'"))
+
+        when:
+        def stream = dataManager.loadStream(context, 10)
+        def first = stream.findFirst()
+        stream.close()
+
+        then:
+        first.isPresent()
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DB-stored app properties changed since a version of the middleware properties snapshot,
+ * see {@link ConfigStorageService#getDbPropertiesChanges(String, long)}.
+ * <p>
+ * If the requested version cannot be used as a base for the changes, e.g. the middleware has reloaded its snapshot,
+ * the object is {@link #isFull() full} and contains all properties.
+ */
+public class ConfigStorageChanges implements Serializable {
+
+    private static final long serialVersionUID = 3187026541289012457L;
+
+    private final String storageId;
+    private final long version;
+    private final boolean full;
+    private final Map<String, String> values;
+    private final Set<String> removed;
+
+    public ConfigStorageChanges(String storageId, long version, boolean full,
+                                Map<String, String> values, Set<String> removed) {
+        this.storageId = storageId;
+        this.version = version;
+        this.full = full;
+        this.values = values;
+        this.removed = removed;
+    }
+
+    /**
+     * @return identifier of the middleware snapshot, should be passed to the next request of changes
+     */
+    public String getStorageId() {
+        return storageId;
+    }
+
+    /**
+     * @return version of the middleware snapshot, should be passed to the next request of changes
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if {@link #getValues()} contains all properties
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    /**
+     * @return all properties if the object is full, otherwise added and changed properties
+     */
+    public Map<String, String> getValues() {
+        return values;
+    }
+
+    /**
+     * @return names of the removed properties
+     */
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Applies the changes to the properties of the previous version.
+     *
+     * @return new unmodifiable map of properties
+     */
+    public Map<String, String> applyTo(Map<String, String> properties) {
+        if (full) {
+            return Collections.unmodifiableMap(new HashMap<>(values));
+        }
+        Map<String, String> result = new HashMap<>(properties);
+        result.putAll(values);
+        result.keySet().removeAll(removed);
+        return Collections.unmodifiableMap(result);
+    }
+}
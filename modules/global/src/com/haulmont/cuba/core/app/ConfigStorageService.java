@@ -38,4 +38,13 @@ public interface ConfigStorageService {
     void setDbProperty(String name, @Nullable String value);
 
     List<AppPropertyEntity> getAppProperties();
+
+    /**
+     * Returns DB-stored properties changed since the given version of the properties snapshot.
+     *
+     * @param storageId    snapshot identifier returned by the previous call or null to get all properties
+     * @param sinceVersion snapshot version returned by the previous call
+     * @return changed properties or all properties if the changes since the version are not available
+     */
+    ConfigStorageChanges getDbPropertiesChanges(@Nullable String storageId, long sinceVersion);
 }
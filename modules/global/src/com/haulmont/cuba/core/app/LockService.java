@@ -20,6 +20,7 @@ import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.global.LockInfo;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -50,6 +51,16 @@ public interface LockService {
     @Nullable
     LockInfo lock(Entity entity);
 
+    /**
+     * Try to lock a collection of entities. Either all entities are locked or none of them.
+     * @param entities entity instances
+     * @return - null in case of successful lock of all entities,<br>
+     * - {@link com.haulmont.cuba.core.global.LockNotSupported} instance in case of locking is not configured for some entity,<br>
+     * - {@link LockInfo} instance of the first found lock in case of some entity is already locked by someone
+     */
+    @Nullable
+    LockInfo lock(Collection<? extends Entity> entities);
+
     /**
      * Unlock an arbitrary object.
      * @param name locking object name
@@ -63,6 +74,12 @@ public interface LockService {
      */
     void unlock(Entity entity);
 
+    /**
+     * Unlock a collection of entities.
+     * @param entities entity instances
+     */
+    void unlock(Collection<? extends Entity> entities);
+
     /**
      * Get locking status for particular object
      * @param name locking object name
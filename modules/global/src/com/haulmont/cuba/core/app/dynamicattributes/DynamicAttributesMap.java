@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app.dynamicattributes;
+
+import com.haulmont.cuba.core.entity.CategoryAttributeValue;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Compact map of dynamic attribute values of an entity, keyed by attribute code.
+ * <p>
+ * Keys and values are kept in two arrays and looked up sequentially. An entity usually has a few dozen dynamic
+ * attributes at most, so this is as fast as a hash map and takes several times less memory when thousands of
+ * entities are loaded with dynamic attributes.
+ */
+public class DynamicAttributesMap extends AbstractMap<String, CategoryAttributeValue> implements Serializable {
+
+    private static final long serialVersionUID = 4120436715470271618L;
+
+    protected String[] keys;
+    protected CategoryAttributeValue[] values;
+    protected int size;
+
+    public DynamicAttributesMap() {
+        this(4);
+    }
+
+    public DynamicAttributesMap(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        keys = new String[capacity];
+        values = new CategoryAttributeValue[capacity];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public CategoryAttributeValue get(Object key) {
+        int i = indexOf(key);
+        return i >= 0 ? values[i] : null;
+    }
+
+    @Override
+    public CategoryAttributeValue put(String key, CategoryAttributeValue value) {
+        Objects.requireNonNull(key, "key is null");
+        int i = indexOf(key);
+        if (i >= 0) {
+            CategoryAttributeValue old = values[i];
+            values[i] = value;
+            return old;
+        }
+        if (size == keys.length) {
+            int capacity = size + Math.max(size >> 1, 1);
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public CategoryAttributeValue remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        CategoryAttributeValue old = values[i];
+        removeAt(i);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<String, CategoryAttributeValue>> entrySet() {
+        return new AbstractSet<Entry<String, CategoryAttributeValue>>() {
+            @Override
+            public Iterator<Entry<String, CategoryAttributeValue>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    protected int indexOf(Object key) {
+        if (key != null) {
+            for (int i = 0; i < size; i++) {
+                if (key.equals(keys[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    protected void removeAt(int i) {
+        int moved = size - i - 1;
+        if (moved > 0) {
+            System.arraycopy(keys, i + 1, keys, i, moved);
+            System.arraycopy(values, i + 1, values, i, moved);
+        }
+        size--;
+        keys[size] = null;
+        values[size] = null;
+    }
+
+    protected class EntryIterator implements Iterator<Entry<String, CategoryAttributeValue>> {
+
+        protected int next;
+        protected int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, CategoryAttributeValue> next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            int index = last;
+            return new SimpleEntry<String, CategoryAttributeValue>(keys[index], values[index]) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public CategoryAttributeValue setValue(CategoryAttributeValue value) {
+                    values[index] = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.global;
+
+import javax.annotation.Nullable;
+
+/**
+ * A single byte range of a file, used to support HTTP {@code Range} requests when downloading files.
+ */
+public class ByteRange {
+
+    protected static final String BYTES_UNIT = "bytes=";
+
+    protected final long offset;
+    protected final long length;
+
+    public ByteRange(long offset, long length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid byte range: offset=" + offset + ", length=" + length);
+        }
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Parses the value of the HTTP {@code Range} header.
+     *
+     * @param header value of the header
+     * @param size   size of the file in bytes
+     * @return range or null if the header is not set, cannot be parsed or contains multiple ranges.
+     * According to RFC 7233 the whole file should be returned in this case.
+     * @throws IllegalArgumentException if the range cannot be satisfied for a file of the given size
+     */
+    @Nullable
+    public static ByteRange parse(@Nullable String header, long size) {
+        if (header == null || !header.startsWith(BYTES_UNIT)) {
+            return null;
+        }
+        String spec = header.substring(BYTES_UNIT.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+        try {
+            if (first.isEmpty()) {
+                // suffix range: last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) {
+                    throw new IllegalArgumentException("Unsatisfiable range " + header);
+                }
+                long length = Math.min(suffix, size);
+                return new ByteRange(size - length, length);
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            if (start < 0 || start >= size) {
+                throw new IllegalArgumentException("Unsatisfiable range " + header);
+            }
+            if (end < start) {
+                return null;
+            }
+            return new ByteRange(start, end - start + 1);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return position of the first byte
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return number of bytes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return position of the last byte
+     */
+    public long getLast() {
+        return length > Long.MAX_VALUE - offset ? Long.MAX_VALUE : offset + length - 1;
+    }
+
+    /**
+     * @return value of the HTTP {@code Range} request header
+     */
+    public String toRangeHeader() {
+        return BYTES_UNIT + offset + "-" + (getLast() == Long.MAX_VALUE ? "" : String.valueOf(getLast()));
+    }
+
+    /**
+     * @param size size of the file in bytes
+     * @return value of the HTTP {@code Content-Range} response header
+     */
+    public String toContentRangeHeader(long size) {
+        return "bytes " + offset + "-" + getLast() + "/" + size;
+    }
+
+    /**
+     * @param size size of the file in bytes
+     * @return value of the HTTP {@code Content-Range} header of the response to an unsatisfiable request
+     */
+    public static String unsatisfiedContentRangeHeader(long size) {
+        return "bytes */" + size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ByteRange that = (ByteRange) o;
+        return offset == that.offset && length == that.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(offset) + Long.hashCode(length);
+    }
+
+    @Override
+    public String toString() {
+        return "ByteRange{offset=" + offset + ", length=" + length + '}';
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.global;
+
+import com.haulmont.bali.util.Preconditions;
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.MetaProperty;
+import com.haulmont.chile.core.model.MetaPropertyPath;
+import com.haulmont.cuba.core.entity.Entity;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Iterator that loads entities defined by a {@link LoadContext} in chunks of a bounded size, so only one chunk
+ * is held in memory at a time. Each chunk is loaded by {@link DataManager#loadList(LoadContext)}, so security
+ * constraints, views and dynamic attributes are applied to it as usual and the returned entities are detached.
+ * <p>
+ * If the query has no sort and the entity has a simple primary key, chunks are selected by keyset pagination:
+ * entities are ordered by the primary key and each next chunk is restricted by the identifier of the last
+ * loaded entity. If the query has a {@link Sort} by mandatory persistent attributes of the entity, each next chunk
+ * is selected by the sort key of the last loaded entity, see {@link LoadContext.Query#setAfterSortKey(List)}. The key
+ * consists of the sorted attributes followed by the primary key, which is appended to the sort by the data store.
+ * The offset is still advanced for such chunks and is used by the data store if the key cannot be applied.
+ * Otherwise the iterator falls back to offset paging.
+ *
+ * @see DataManager#loadStream(LoadContext, int)
+ */
+public class ChunkedLoadIterator<E extends Entity> implements Iterator<E>, AutoCloseable {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    protected static final String LAST_ID_PARAM = "cuba_chunkLastId";
+
+    protected static final Pattern ORDER_BY_PATTERN = Pattern.compile("\\border\\s+by\\b", Pattern.CASE_INSENSITIVE);
+
+    protected final DataManager dataManager;
+    protected final LoadContext<E> context;
+    protected final int chunkSize;
+
+    protected String pkName;
+    protected boolean byIds;
+    protected boolean keyset;
+    protected String keysetQueryString;
+    protected List<String> sortKeyProperties;
+
+    protected Iterator<E> currentChunk = Collections.emptyIterator();
+    protected Object lastId;
+    protected List<Object> lastSortKey;
+    protected int loadedChunks;
+    protected int remaining;
+    protected boolean exhausted;
+
+    public ChunkedLoadIterator(DataManager dataManager, LoadContext<E> context, int chunkSize) {
+        Preconditions.checkNotNullArgument(dataManager, "dataManager is null");
+        Preconditions.checkNotNullArgument(context, "context is null");
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.dataManager = dataManager;
+        this.chunkSize = chunkSize;
+        this.context = initContext(context);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected LoadContext<E> initContext(LoadContext<E> source) {
+        LoadContext<E> copy = (LoadContext<E>) source.copy();
+        if (copy.getId() != null || !copy.getIds().isEmpty()) {
+            // the list of identifiers is already bounded, so it is loaded at once
+            byIds = true;
+            remaining = Integer.MAX_VALUE;
+            return copy;
+        }
+
+        Metadata metadata = AppBeans.get(Metadata.NAME);
+        MetaClass metaClass = metadata.getClassNN(copy.getMetaClass());
+
+        if (copy.getQuery() == null) {
+            copy.setQueryString("select e from " + metaClass.getName() + " e");
+        }
+        LoadContext.Query query = copy.getQuery();
+        remaining = query.getMaxResults() > 0 ? query.getMaxResults() : Integer.MAX_VALUE;
+
+        MetaProperty pkProperty = metadata.getTools().getPrimaryKeyProperty(metaClass);
+        keyset = pkProperty != null
+                && pkProperty.getRange().isDatatype()
+                && query.getSort() == null
+                && StringUtils.isNotBlank(query.getQueryString())
+                && !ORDER_BY_PATTERN.matcher(query.getQueryString()).find();
+        if (keyset) {
+            pkName = pkProperty.getName();
+            QueryTransformer transformer = QueryTransformerFactory.createTransformer(query.getQueryString());
+            transformer.replaceOrderByExpressions(false, "{E}." + pkName);
+            query.setQueryString(transformer.getResult());
+
+            transformer.addWhere("{E}." + pkName + " > :" + LAST_ID_PARAM);
+            keysetQueryString = transformer.getResult();
+        } else if (pkProperty != null && pkProperty.getRange().isDatatype() && query.getSort() != null) {
+            sortKeyProperties = getSortKeyProperties(metaClass, query.getSort(), pkProperty.getName());
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the attributes forming the sort key of the query, or null if the sort cannot be used for keyset
+     * pagination. Each sorted attribute must be rendered by exactly one {@code ORDER BY} expression which is not
+     * null for any row, otherwise the rows with nulls would be skipped.
+     */
+    @Nullable
+    protected List<String> getSortKeyProperties(MetaClass metaClass, Sort sort, String pkName) {
+        MetadataTools metadataTools = AppBeans.get(MetadataTools.NAME);
+        List<String> properties = new ArrayList<>();
+        for (Sort.Order order : sort.getOrders()) {
+            MetaPropertyPath propertyPath = metaClass.getPropertyPath(order.getProperty());
+            if (propertyPath == null
+                    || propertyPath.length() != 1
+                    || !propertyPath.getRange().isDatatype()
+                    || !metadataTools.isPersistent(propertyPath)
+                    || metadataTools.isLob(propertyPath.getMetaProperty())
+                    || !propertyPath.getMetaProperty().isMandatory()) {
+                return null;
+            }
+            properties.add(order.getProperty());
+        }
+        if (!properties.contains(pkName)) {
+            properties.add(pkName);
+        }
+        return properties;
+    }
+
+    /**
+     * Returns the sort key of the given entity, or null if some of its values are not loaded or null.
+     */
+    @Nullable
+    protected List<Object> getSortKey(E entity) {
+        EntityStates entityStates = AppBeans.get(EntityStates.NAME);
+        List<Object> key = new ArrayList<>(sortKeyProperties.size());
+        for (String property : sortKeyProperties) {
+            Object value = entityStates.isLoaded(entity, property) ? entity.getValue(property) : null;
+            if (value == null) {
+                return null;
+            }
+            key.add(value);
+        }
+        return key;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (currentChunk.hasNext()) {
+            return true;
+        }
+        if (exhausted) {
+            return false;
+        }
+        loadNextChunk();
+        return currentChunk.hasNext();
+    }
+
+    @Override
+    public E next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        remaining--;
+        return currentChunk.next();
+    }
+
+    protected void loadNextChunk() {
+        if (remaining <= 0 || byIds && loadedChunks > 0) {
+            exhausted = true;
+            currentChunk = Collections.emptyIterator();
+            return;
+        }
+
+        int size = Math.min(chunkSize, remaining);
+        LoadContext.Query query = context.getQuery();
+        if (byIds) {
+            size = Integer.MAX_VALUE;
+        } else if (keyset) {
+            if (lastId != null) {
+                query.setQueryString(keysetQueryString);
+                query.setParameter(LAST_ID_PARAM, lastId);
+                query.setFirstResult(0);
+            }
+            query.setMaxResults(size);
+        } else {
+            if (loadedChunks > 0) {
+                query.setFirstResult(query.getFirstResult() + query.getMaxResults());
+                if (sortKeyProperties != null) {
+                    query.setAfterSortKey(lastSortKey);
+                }
+            }
+            query.setMaxResults(size);
+        }
+
+        List<E> list = dataManager.loadList(context);
+        loadedChunks++;
+        if (list.size() < size) {
+            exhausted = true;
+        }
+        if (!list.isEmpty() && keyset) {
+            lastId = list.get(list.size() - 1).getId();
+        }
+        if (!list.isEmpty() && sortKeyProperties != null) {
+            lastSortKey = getSortKey(list.get(list.size() - 1));
+        }
+        currentChunk = list.iterator();
+    }
+
+    /**
+     * Stops loading of the next chunks and releases the current one.
+     */
+    @Override
+    public void close() {
+        exhausted = true;
+        currentChunk = Collections.emptyIterator();
+    }
+}
@@ -40,6 +40,7 @@ public class CommitContext implements Serializable {
     protected boolean discardCommitted;
     protected boolean authorizationRequired;
     protected boolean joinTransaction;
+    protected boolean bulk;
     protected ValidationMode validationMode = ValidationMode.DEFAULT;
     protected Map<String, Object> dbHints = new HashMap<>();
     protected List<Class> validationGroups;
@@ -230,6 +231,31 @@ public class CommitContext implements Serializable {
         return this;
     }
 
+    /**
+     * @return true if the bulk commit mode is enabled
+     * @see #setBulk(boolean)
+     */
+    public boolean isBulk() {
+        return bulk;
+    }
+
+    /**
+     * Enables the bulk commit mode intended for saving large numbers of entities, e.g. on import:
+     * <ul>
+     *     <li>Entities are processed grouped by their meta-classes.</li>
+     *     <li>INSERT, UPDATE and DELETE statements are sent to the database in JDBC batches.</li>
+     *     <li>If {@link #isDiscardCommitted()} is true, committed instances are not reloaded.</li>
+     *     <li>{@code EntityChangedEvent}s are published as a single {@code BulkEntityChangedEvent} per entity class
+     *     instead of one event per instance.</li>
+     * </ul>
+     * As statements are executed in batches, a statement that affects no rows (e.g. because of a concurrent
+     * modification of a versioned entity) is reported by an exception on flush, without identifying the instance.
+     */
+    public CommitContext setBulk(boolean bulk) {
+        this.bulk = bulk;
+        return this;
+    }
+
     private View getViewFromRepository(Entity entity, String viewName) {
         Metadata metadata = AppBeans.get(Metadata.NAME);
         return metadata.getViewRepository().getView(metadata.getClass(entity.getClass()), viewName);
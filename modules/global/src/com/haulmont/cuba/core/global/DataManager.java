@@ -27,6 +27,10 @@ import com.haulmont.cuba.core.entity.contracts.Id;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nullable;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Central interface to provide CRUD functionality. Can be used on both middle and client tiers.
@@ -64,6 +68,38 @@ public interface DataManager {
     @CheckReturnValue
     <E extends Entity> List<E> loadList(LoadContext<E> context);
 
+    /**
+     * Loads entity instances as a stream, fetching them from the storage in chunks of
+     * {@link ChunkedLoadIterator#DEFAULT_CHUNK_SIZE} instances.
+     *
+     * @param context   {@link LoadContext} object, defining what and how to load
+     * @return          a stream of detached instances which should be closed if it is not consumed completely
+     * @see #loadStream(LoadContext, int)
+     */
+    @CheckReturnValue
+    default <E extends Entity> Stream<E> loadStream(LoadContext<E> context) {
+        return loadStream(context, ChunkedLoadIterator.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Loads entity instances as a stream. Instances are fetched from the storage lazily in chunks of the given size
+     * while the stream is consumed, so only one chunk is kept in memory. Each chunk is loaded by
+     * {@link #loadList(LoadContext)} with security constraints and the view applied.
+     * <p>If the query is not sorted, the chunks are selected by keyset pagination and the instances are returned
+     * ordered by their primary keys.</p>
+     *
+     * @param context   {@link LoadContext} object, defining what and how to load
+     * @param chunkSize maximum number of instances loaded by a single request
+     * @return          a stream of detached instances which should be closed if it is not consumed completely
+     */
+    @CheckReturnValue
+    default <E extends Entity> Stream<E> loadStream(LoadContext<E> context, int chunkSize) {
+        ChunkedLoadIterator<E> iterator = new ChunkedLoadIterator<>(this, context, chunkSize);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
     /**
      * Returns the number of entity instances for the given query passed in the {@link LoadContext}.
      * @param context   defines the query
@@ -25,6 +25,7 @@ import javax.annotation.CheckReturnValue;
 import javax.persistence.TemporalType;
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class FluentLoader<E extends Entity<K>, K> {
 
@@ -96,6 +97,16 @@ public class FluentLoader<E extends Entity<K>, K> {
         return dataManager.loadList(loadContext);
     }
 
+    /**
+     * Loads all instances as a stream fetching them in chunks of the given size.
+     *
+     * @see DataManager#loadStream(LoadContext, int)
+     */
+    public Stream<E> stream(int chunkSize) {
+        LoadContext<E> loadContext = createLoadContext();
+        return dataManager.loadStream(loadContext, chunkSize);
+    }
+
     /**
      * Loads a single instance and wraps it in Optional.
      */
@@ -444,6 +455,7 @@ public class FluentLoader<E extends Entity<K>, K> {
         private Set<String> noConversionParams = new HashSet<>();
         private int firstResult;
         private int maxResults;
+        private List<Object> afterSortKey;
         private boolean cacheable;
         private Condition condition;
 
@@ -488,6 +500,7 @@ public class FluentLoader<E extends Entity<K>, K> {
             loadContext.getQuery().setCondition(condition);
             loadContext.getQuery().setFirstResult(firstResult);
             loadContext.getQuery().setMaxResults(maxResults);
+            loadContext.getQuery().setAfterSortKey(afterSortKey);
             loadContext.getQuery().setCacheable(cacheable);
 
             return loadContext;
@@ -501,6 +514,16 @@ public class FluentLoader<E extends Entity<K>, K> {
             return loader.dataManager.loadList(loadContext);
         }
 
+        /**
+         * Loads entities as a stream fetching them in chunks of the given size.
+         *
+         * @see DataManager#loadStream(LoadContext, int)
+         */
+        public Stream<E> stream(int chunkSize) {
+            LoadContext<E> loadContext = createLoadContext();
+            return loader.dataManager.loadStream(loadContext, chunkSize);
+        }
+
         /**
          * Loads a single instance and wraps it in Optional.
          */
@@ -663,6 +686,25 @@ public class FluentLoader<E extends Entity<K>, K> {
             return this;
         }
 
+        /**
+         * Sets values of the leading {@code order by} expressions of the last row of the previous page. Only rows
+         * following this key in the query sort order are loaded, so the next page is selected without an offset:
+         * <pre>
+         * List&lt;Customer&gt; nextPage = dataManager.load(Customer.class)
+         *         .query("select c from sample_Customer c order by c.name, c.id")
+         *         .afterSortKey(last.getName(), last.getId())
+         *         .maxResults(50)
+         *         .list();
+         * </pre>
+         * The query sort order must be deterministic, e.g. end with the primary key.
+         *
+         * @see LoadContext.Query#setAfterSortKey(List)
+         */
+        public ByQuery<E, K> afterSortKey(Object... values) {
+            this.afterSortKey = values == null || values.length == 0 ? null : Arrays.asList(values);
+            return this;
+        }
+
         /**
          * Indicates that the query results should be cached.
          * By default, queries are not cached.
@@ -185,6 +185,13 @@ public interface GlobalConfig extends Config {
     @DefaultInt(100)
     int getNumberIdCacheSize();
 
+    /**
+     * @return maximum number of parsed JPQL queries kept by {@code QueryTreeCache}. 0 disables the cache.
+     */
+    @Property("cuba.queryTreeCacheSize")
+    @DefaultInt(1000)
+    int getQueryTreeCacheSize();
+
     @Property("cuba.anonymousSessionId")
     @Factory(factory = UuidTypeFactory.class)
     @Nullable
@@ -359,6 +359,7 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
         private boolean cacheable;
         private Condition condition;
         private Sort sort;
+        private List<Object> afterSortKey;
 
         /**
          * @param queryString JPQL query string. Only named parameters are supported.
@@ -491,6 +492,36 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
             return this;
         }
 
+        /**
+         * @return values of the sort key after which the results start, or null if keyset pagination is not used
+         * @see #setAfterSortKey(List)
+         */
+        @Nullable
+        public List<Object> getAfterSortKey() {
+            return afterSortKey;
+        }
+
+        /**
+         * Enables keyset pagination: the query returns only rows that follow the row with the given sort key
+         * in the query sort order. The sort key contains values of the first {@code ORDER BY} expressions of the
+         * resulting query, usually taken from the last row of the previous page. Unlike {@link #setFirstResult(int)},
+         * the database does not have to skip the preceding rows, so loading of deep pages does not get slower.
+         * <p>
+         * The sort order must be deterministic, i.e. the sort key must be unique, and the key expressions must not
+         * be null for any row, as rows with null values do not satisfy the key condition. If the query has
+         * a {@link Sort} by mandatory attributes, these attributes followed by the primary key form such a key.
+         * <p>
+         * If the key is applied, {@link #getFirstResult()} is ignored. It is used for paging instead of the key
+         * if the key contains null values or the data store cannot apply it.
+         *
+         * @param afterSortKey values of the sort key or null to disable keyset pagination
+         * @return this query instance for chaining
+         */
+        public Query setAfterSortKey(@Nullable List<Object> afterSortKey) {
+            this.afterSortKey = afterSortKey == null ? null : new ArrayList<>(afterSortKey);
+            return this;
+        }
+
         /**
          * Indicates that the query results should be cached.
          * @return the same query instance
@@ -535,6 +566,7 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
             query.cacheable = cacheable;
             query.condition = condition == null ? null : condition.copy();
             query.sort = sort;
+            query.afterSortKey = afterSortKey == null ? null : new ArrayList<>(afterSortKey);
             return query;
         }
 
@@ -548,6 +580,7 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
             if (firstResult != query.firstResult) return false;
             if (maxResults != query.maxResults) return false;
             if (!parameters.equals(query.parameters)) return false;
+            if (!Objects.equals(afterSortKey, query.afterSortKey)) return false;
             return queryString.equals(query.queryString);
         }
 
@@ -557,6 +590,7 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
             result = 31 * result + queryString.hashCode();
             result = 31 * result + firstResult;
             result = 31 * result + maxResults;
+            result = 31 * result + Objects.hashCode(afterSortKey);
             return result;
         }
 
@@ -568,6 +602,7 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
                     ", sort=" + sort +
                     ", firstResult=" + firstResult +
                     ", maxResults=" + maxResults +
+                    (afterSortKey != null ? ", afterSortKey=" + afterSortKey : "") +
                     "}";
             return StringHelper.removeExtraSpaces(stringResult.replace('\n', ' '));
         }
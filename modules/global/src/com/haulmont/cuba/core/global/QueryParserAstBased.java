@@ -30,6 +30,7 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
+import javax.inject.Inject;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -41,6 +42,7 @@ public class QueryParserAstBased implements QueryParser {
     protected DomainModel model;
     protected String query;
     protected QueryTree queryTree;
+    protected QueryTreeCache queryTreeCache;
     protected QueryTreeAnalyzer queryAnalyzer;
 
     protected static class EntityNameAndPath {
@@ -64,10 +66,15 @@ public class QueryParserAstBased implements QueryParser {
         this.query = query;
     }
 
+    @Inject
+    public void setQueryTreeCache(QueryTreeCache queryTreeCache) {
+        this.queryTreeCache = queryTreeCache;
+    }
+
     protected QueryTree getTree() {
         if (queryTree == null) {
             try {
-                queryTree = new QueryTree(model, query);
+                queryTree = queryTreeCache != null ? queryTreeCache.get(model, query) : new QueryTree(model, query);
             } catch (JPA2RecognitionException e) {
                 throw new JpqlSyntaxException(format("Errors found for input JPQL:[%s]\n%s", StringUtils.strip(query), e.getMessage()));
             }
@@ -101,4 +101,19 @@ public interface QueryTransformer {
      * @return {@code true} if at least one statement was replaced, {@code false} otherwise
      */
     default boolean replaceIsNullStatements(String paramName, boolean isNullValue) {return false;}
+
+    /**
+     * Adds 'where' clause restricting results to rows following a sort key in the order defined by the
+     * 'order by' clause (keyset pagination). The key consists of the first {@code keySize} 'order by' expressions,
+     * which are compared with parameters named {@code paramNamePrefix0}, {@code paramNamePrefix1}, etc.
+     * Rows having null values of the key expressions do not satisfy the condition.
+     *
+     * @param paramNamePrefix prefix of the key parameter names
+     * @param keySize         number of the key values
+     * @return true if the condition has been added, false if the transformer does not support keyset conditions
+     * and the results must be paged by the offset
+     */
+    default boolean addKeysetCondition(String paramNamePrefix, int keySize) {
+        return false;
+    }
 }
@@ -19,6 +19,7 @@ package com.haulmont.cuba.core.sys;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
 import com.haulmont.chile.core.datatypes.FormatStrings;
 import com.haulmont.chile.core.datatypes.FormatStringsRegistry;
 import com.haulmont.cuba.core.global.*;
@@ -26,7 +27,6 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringTokenizer;
-import org.apache.commons.text.TextStringBuilder;
 import org.perf4j.StopWatch;
 import org.perf4j.slf4j.Slf4JStopWatch;
 import org.slf4j.Logger;
@@ -56,6 +56,8 @@ public abstract class AbstractMessages implements Messages {
     public static final String BUNDLE_NAME = "messages";
     public static final String EXT = ".properties";
 
+    protected static final String INCLUDE_PROPERTY = "@include";
+
     private static final Logger log = LoggerFactory.getLogger(AbstractMessages.class);
 
     @Inject
@@ -72,10 +74,16 @@ public abstract class AbstractMessages implements Messages {
 
     protected String mainMessagePack;
 
-    protected Map<String, String> strCache = new ConcurrentHashMap<>();
+    protected String lastMainMessagePack;
+
+    // snapshots by trimmed locale and packs, replaced as a whole by clearCache()
+    protected volatile Map<Locale, Map<String, MessagePackSnapshot>> snapshots = new ConcurrentHashMap<>();
+
+    // layers of single packs referred by the snapshots, by trimmed locale and pack with the locale of its files
+    protected volatile Map<Locale, Map<String, MessagePackSnapshot>> layers = new ConcurrentHashMap<>();
 
-    // Using ConcurrentHashMap instead of synchronized Set for better parallelism
-    protected Map<String, String> notFoundCache = new ConcurrentHashMap<>();
+    // messages of pack files by pack with the locale of the files, shared by the layers of all locales
+    protected volatile Map<String, ImmutableMap<String, String>> packMessages = new ConcurrentHashMap<>();
 
     protected Cache<String, Properties> filePropertiesCache = CacheBuilder.newBuilder().build();
     protected Cache<String, Properties> resourcePropertiesCache = CacheBuilder.newBuilder().build();
@@ -84,6 +92,10 @@ public abstract class AbstractMessages implements Messages {
 
     protected abstract Locale getUserLocale();
 
+    /**
+     * Searches a message missing in local packs. Invoked only if {@link #isRemoteSearchEnabled()} returns true,
+     * the result is kept in the pack snapshot until the cache is cleared.
+     */
     @Nullable
     protected abstract String searchRemotely(String pack, String key, Locale locale);
 
@@ -102,7 +114,14 @@ public abstract class AbstractMessages implements Messages {
 
         log.debug("Main message pack: " + mainMessagePack);
 
+        String[] mainPacks = mainMessagePack.split(" ");
+        lastMainMessagePack = mainPacks[mainPacks.length - 1];
+
+        // snapshots of the main message pack are built here for all available locales, other packs on first access
+
         for (Locale locale : globalConfig.getAvailableLocales().values()) {
+            getSnapshot(lastMainMessagePack, messageTools.trimLocale(locale));
+
             String numberDecimalSeparator = getMainMessage("numberDecimalSeparator", locale);
             String numberGroupingSeparator = getMainMessage("numberGroupingSeparator", locale);
             String integerFormat = getMainMessage("integerFormat", locale);
@@ -256,8 +275,9 @@ public abstract class AbstractMessages implements Messages {
         checkNotNullArgument(packs, "Messages pack name is null");
         checkNotNullArgument(key, "Message key is null");
 
-        String compositeKey = packs + "/" + key;
-        String msg = internalGetMessage(mainMessagePack, compositeKey, locale, null, false);
+        locale = messageTools.trimLocale(locale);
+
+        String msg = getSnapshot(mainMessagePack, locale).getOverride(packs, key);
         if (msg != null)
             return msg;
 
@@ -273,10 +293,9 @@ public abstract class AbstractMessages implements Messages {
         if (locale == null)
             locale = getUserLocale();
 
-        String compositeKey = packs + "/" + key;
-        String[] split = mainMessagePack.split(" ");
-        String lastMainMessagePack = split[split.length - 1];
-        String msg = internalGetMessage(lastMainMessagePack, compositeKey, locale, null, false);
+        locale = messageTools.trimLocale(locale);
+
+        String msg = getSnapshot(lastMainMessagePack, locale).getOverride(packs, key);
         if (msg != null)
             return msg;
 
@@ -292,79 +311,142 @@ public abstract class AbstractMessages implements Messages {
         }
     }
 
+    /**
+     * @return number of messages of all loaded pack files
+     */
     @Override
     public int getCacheSize() {
-        return strCache.size();
+        int size = 0;
+        for (ImmutableMap<String, String> messages : packMessages.values()) {
+            size += messages.size();
+        }
+        return size;
     }
 
     @Override
     public void clearCache() {
         filePropertiesCache.invalidateAll();
         resourcePropertiesCache.invalidateAll();
-        strCache.clear();
-        notFoundCache.clear();
+        snapshots = new ConcurrentHashMap<>();
+        layers = new ConcurrentHashMap<>();
+        packMessages = new ConcurrentHashMap<>();
     }
 
     protected String internalGetMessage(String packs, String key, Locale locale, String defaultValue,
                                         boolean searchMainIfNotFound) {
         locale = messageTools.trimLocale(locale);
 
-        String cacheKey = makeCacheKey(packs, key, locale, locale);
-
-        String msg = strCache.get(cacheKey);
+        MessagePackSnapshot snapshot = getSnapshot(packs, locale);
+        String msg = snapshot.getMessage(key);
         if (msg != null)
             return msg;
 
-        String notFound = notFoundCache.get(cacheKey);
-        if (notFound != null)
-            return defaultValue;
-
-        msg = searchMessage(packs, key, locale, locale, new HashSet<>());
-        if (msg != null) {
-            cache(cacheKey, msg);
+        msg = internalSearchRemotely(snapshot, packs, key, locale);
+        if (msg != null)
             return msg;
-        }
 
         if (searchMainIfNotFound) {
-            String tmpCacheKey = makeCacheKey(mainMessagePack, key, locale, locale);
-            msg = searchMessage(tmpCacheKey, key, locale, locale, new HashSet<>());
-            if (msg != null) {
-                cache(cacheKey, msg);
+            msg = getSnapshot(mainMessagePack, locale).getMessage(key);
+            if (msg != null)
                 return msg;
-            }
         }
 
-        notFoundCache.put(cacheKey, key);
         return defaultValue;
     }
 
+    /**
+     * Returns the snapshot of the packs in the given locale, building it on the first access.
+     *
+     * @param packs  space-separated list of packs
+     * @param locale trimmed locale
+     */
+    protected MessagePackSnapshot getSnapshot(String packs, Locale locale) {
+        Map<String, MessagePackSnapshot> localeSnapshots =
+                snapshots.computeIfAbsent(locale, l -> new ConcurrentHashMap<>());
+
+        MessagePackSnapshot snapshot = localeSnapshots.get(packs);
+        if (snapshot == null) {
+            snapshot = buildSnapshot(packs, locale);
+            MessagePackSnapshot existing = localeSnapshots.putIfAbsent(packs, snapshot);
+            if (existing != null)
+                snapshot = existing;
+        }
+        return snapshot;
+    }
+
+    protected MessagePackSnapshot buildSnapshot(String packs, Locale locale) {
+        StopWatch stopWatch = new Slf4JStopWatch("Messages.buildSnapshot");
+        try {
+            List<MessagePackSnapshot> parents = new ArrayList<>();
+            collectLayers(packs, locale, locale, new HashSet<>(), parents);
+
+            log.trace("Built snapshot of '{}' for {}: {} layers", packs, locale, parents.size());
+
+            return new MessagePackSnapshot(ImmutableMap.of(), parents);
+        } finally {
+            stopWatch.stop();
+        }
+    }
+
     @Nullable
-    protected String searchMessage(String packs, String key, Locale locale, Locale truncatedLocale, Set<String> passedPacks) {
+    protected String internalSearchRemotely(MessagePackSnapshot snapshot, String packs, String key, Locale locale) {
+        if (snapshot.isRemotelySearched(key))
+            return snapshot.getRemoteMessage(key);
+
         StringTokenizer tokenizer = new StringTokenizer(packs);
         //noinspection unchecked
         List<String> list = tokenizer.getTokenList();
         Collections.reverse(list);
-        for (String pack : list) {
-            if (!enterPack(pack, locale, truncatedLocale, passedPacks))
-                continue;
 
-            String msg = searchOnePack(pack, key, locale, truncatedLocale, passedPacks);
+        boolean searched = false;
+        String msg = null;
+        for (String pack : list) {
+            if (!isRemoteSearchEnabled())
+                break;
+            searched = true;
+            msg = searchRemotely(pack, key, locale);
             if (msg != null)
-                return msg;
+                break;
+        }
+        if (searched) {
+            snapshot.putRemoteMessage(key, msg);
+        }
+        return msg;
+    }
 
+    /**
+     * @return true if {@link #searchRemotely(String, String, Locale)} can find messages missing in local packs
+     */
+    protected boolean isRemoteSearchEnabled() {
+        return false;
+    }
+
+    /**
+     * Collects layers of the packs in the order of their priority: the last pack of the list goes first, each pack
+     * from the given locale down to the default one.
+     *
+     * @param locale          trimmed locale the snapshot is built for
+     * @param truncatedLocale locale to start from
+     * @param buildingLayers  keys of the layers being built, to break include cycles
+     */
+    protected void collectLayers(String packs, Locale locale, @Nullable Locale truncatedLocale,
+                                 Set<String> buildingLayers, List<MessagePackSnapshot> layers) {
+        StringTokenizer tokenizer = new StringTokenizer(packs);
+        //noinspection unchecked
+        List<String> list = tokenizer.getTokenList();
+        Collections.reverse(list);
+        for (String pack : list) {
             Locale tmpLocale = truncatedLocale;
-            while (tmpLocale != null) {
+            while (true) {
+                MessagePackSnapshot layer = getLayer(pack, locale, tmpLocale, buildingLayers);
+                if (layer != null && !layers.contains(layer)) {
+                    layers.add(layer);
+                }
+                if (tmpLocale == null)
+                    break;
                 tmpLocale = truncateLocale(tmpLocale);
-                msg = searchOnePack(pack, key, locale, tmpLocale, passedPacks);
-                if (msg != null)
-                    return msg;
             }
         }
-        if (log.isTraceEnabled()) {
-            String packName = new TextStringBuilder().appendWithSeparators(list, ",").toString();
-            log.trace("Resource '{}' not found", makeCacheKey(packName, key, locale, locale));
-        }
-        return null;
     }
 
     private Locale truncateLocale(Locale locale) {
@@ -374,124 +456,103 @@ public abstract class AbstractMessages implements Messages {
         return Locale.forLanguageTag(locale.getLanguage());
     }
 
-    protected boolean enterPack(String pack, Locale locale, Locale truncatedLocale, Set<String> passedPacks) {
-        String k = truncatedLocale == null ?
-                pack + "/default" :
-                pack + "/" + (locale == null ? "default" : LocaleResolver.localeToString(locale));
-        return passedPacks.add(k);
-    }
-
-    protected String searchOnePack(String pack, String key, Locale locale, Locale truncatedLocale, Set<String> passedPacks) {
-        String cacheKey = makeCacheKey(pack, key, locale, truncatedLocale);
-
-        String msg = strCache.get(cacheKey);
-        if (msg != null)
-            return msg;
-
-        msg = searchFiles(pack, key, locale, truncatedLocale, passedPacks);
-        if (msg == null) {
-            msg = searchClasspath(pack, key, locale, truncatedLocale, passedPacks);
-        }
-        if (msg == null && locale.equals(truncatedLocale)) {
-            msg = searchRemotely(pack, key, locale);
-            if (msg != null) {
-                cache(cacheKey, msg);
+    /**
+     * Returns the layer of a single pack in a single locale: messages of the pack files, its includes and the
+     * layer of the parent pack. Layers are shared by all snapshots of the locale referring to them.
+     *
+     * @return layer or null if it is being built, i.e. the pack includes itself
+     */
+    @Nullable
+    protected MessagePackSnapshot getLayer(String pack, Locale locale, @Nullable Locale truncatedLocale,
+                                           Set<String> buildingLayers) {
+        Map<String, MessagePackSnapshot> localeLayers = layers.computeIfAbsent(locale, l -> new ConcurrentHashMap<>());
+
+        String layerKey = pack + "/" + getLocaleName(truncatedLocale);
+        MessagePackSnapshot layer = localeLayers.get(layerKey);
+        if (layer == null) {
+            if (!buildingLayers.add(layerKey)) {
+                log.debug("Cyclic include of pack '{}' for {}", pack, getLocaleName(truncatedLocale));
+                return null;
+            }
+            try {
+                layer = buildLayer(pack, locale, truncatedLocale, buildingLayers);
+            } finally {
+                buildingLayers.remove(layerKey);
             }
+            MessagePackSnapshot existing = localeLayers.putIfAbsent(layerKey, layer);
+            if (existing != null)
+                layer = existing;
         }
-        return msg;
-    }
-
-    protected void cache(String key, String msg) {
-        if (!strCache.containsKey(key))
-            strCache.put(key, msg);
+        return layer;
     }
 
-    protected String searchFiles(String pack, String key, Locale locale, Locale truncatedLocale, Set<String> passedPacks) {
-        StopWatch stopWatch = new Slf4JStopWatch("Messages.searchFiles");
-        try {
-            String cacheKey = makeCacheKey(pack, key, locale, truncatedLocale);
+    protected MessagePackSnapshot buildLayer(String pack, Locale locale, @Nullable Locale truncatedLocale,
+                                             Set<String> buildingLayers) {
+        Properties fileProperties = searchFiles(pack, locale, truncatedLocale);
+        Properties resourceProperties = searchClasspath(pack, locale, truncatedLocale);
 
-            String msg = strCache.get(cacheKey);
-            if (msg != null)
-                return msg;
+        List<MessagePackSnapshot> parents = new ArrayList<>();
+        // includes go after the files of the pack to support overriding
+        collectIncludes(fileProperties, locale, truncatedLocale, buildingLayers, parents);
+        collectIncludes(resourceProperties, locale, truncatedLocale, buildingLayers, parents);
 
-            log.trace("searchFiles: {}", cacheKey);
+        int pos = pack.lastIndexOf('.');
+        String parentPack = pos >= 0 ? pack.substring(0, pos) : pack.isEmpty() ? null : "";
+        if (parentPack != null) {
+            MessagePackSnapshot parentLayer = getLayer(parentPack, locale, truncatedLocale, buildingLayers);
+            if (parentLayer != null && !parents.contains(parentLayer)) {
+                parents.add(parentLayer);
+            }
+        }
 
-            String packPath = confDir + "/" + pack.replaceAll("\\.", "/");
-            while (packPath != null && !packPath.equals(confDir)) {
-                Properties properties = loadPropertiesFromFile(packPath, locale, truncatedLocale);
-                if (properties != PROPERTIES_NOT_FOUND) {
-                    msg = getMessageFromProperties(pack, key, locale, truncatedLocale, properties, passedPacks);
-                    if (msg != null)
-                        return msg;
+        return new MessagePackSnapshot(getPackMessages(pack, truncatedLocale, fileProperties, resourceProperties),
+                parents);
+    }
+
+    /**
+     * Returns messages of the pack files, shared by the layers of all locales. Files in the configuration directory
+     * override the ones on the classpath.
+     */
+    protected ImmutableMap<String, String> getPackMessages(String pack, @Nullable Locale truncatedLocale,
+                                                           Properties fileProperties, Properties resourceProperties) {
+        String key = pack + "/" + getLocaleName(truncatedLocale);
+        ImmutableMap<String, String> messages = packMessages.get(key);
+        if (messages == null) {
+            Map<String, String> map = new HashMap<>();
+            for (Properties properties : Arrays.asList(fileProperties, resourceProperties)) {
+                for (String name : properties.stringPropertyNames()) {
+                    if (!INCLUDE_PROPERTY.equals(name)) {
+                        map.putIfAbsent(name, properties.getProperty(name));
+                    }
                 }
-                // not found, keep searching
-                int pos = packPath.lastIndexOf("/");
-                if (pos < 0)
-                    packPath = null;
-                else
-                    packPath = packPath.substring(0, pos);
             }
-            return null;
-        } finally {
-            stopWatch.stop();
+            messages = ImmutableMap.copyOf(map);
+            ImmutableMap<String, String> existing = packMessages.putIfAbsent(key, messages);
+            if (existing != null)
+                messages = existing;
         }
+        return messages;
     }
 
-    protected String searchClasspath(String pack, String key, Locale locale, Locale truncatedLocale, Set<String> passedPacks) {
-        StopWatch stopWatch = new Slf4JStopWatch("Messages.searchClasspath");
-        try {
-            String cacheKey = makeCacheKey(pack, key, locale, truncatedLocale);
+    protected Properties searchFiles(String pack, Locale locale, @Nullable Locale truncatedLocale) {
+        if (pack.isEmpty())
+            return PROPERTIES_NOT_FOUND;
 
-            String msg = strCache.get(cacheKey);
-            if (msg != null)
-                return msg;
+        log.trace("searchFiles: {}/{}", pack, getLocaleName(truncatedLocale));
 
-            log.trace("searchClasspath: {}", cacheKey);
-
-            String packPath = "/" + pack.replaceAll("\\.", "/");
-            while (packPath != null) {
-                Properties properties = loadPropertiesFromResource(packPath, locale, truncatedLocale);
-                if (properties != PROPERTIES_NOT_FOUND) {
-                    msg = getMessageFromProperties(pack, key, locale, truncatedLocale, properties, passedPacks);
-                    if (msg != null)
-                        return msg;
-                }
-                // not found, keep searching
-                int pos = packPath.lastIndexOf("/");
-                if (pos < 0)
-                    packPath = null;
-                else
-                    packPath = packPath.substring(0, pos);
-            }
-            return null;
-        } finally {
-            stopWatch.stop();
-        }
+        return loadPropertiesFromFile(confDir + "/" + pack.replace('.', '/'), locale, truncatedLocale);
     }
 
-    @Nullable
-    protected String getMessageFromProperties(String pack, String key, Locale locale, Locale truncatedLocale,
-                                              Properties properties, Set<String> passedPacks) {
-        String message;
-        message = properties.getProperty(key);
-        if (message != null) {
-            cache(makeCacheKey(pack, key, locale, truncatedLocale), message);
-            if (truncatedLocale == null)
-                cache(makeCacheKey(pack, key, locale, null), message);
-        }
+    protected Properties searchClasspath(String pack, Locale locale, @Nullable Locale truncatedLocale) {
+        log.trace("searchClasspath: {}/{}", pack, getLocaleName(truncatedLocale));
 
-        if (message == null) {
-            // process includes after to support overriding
-            message = searchIncludes(properties, key, locale, truncatedLocale, passedPacks);
-        }
-        return message;
+        String packPath = pack.isEmpty() ? "" : "/" + pack.replace('.', '/');
+        return loadPropertiesFromResource(packPath, locale, truncatedLocale);
     }
 
-    @Nullable
-    protected String searchIncludes(Properties properties, String key, Locale locale, @Nullable Locale truncatedLocale,
-                                    Set<String> passedPacks) {
-        String includesProperty = properties.getProperty("@include");
+    protected void collectIncludes(Properties properties, Locale locale, @Nullable Locale truncatedLocale,
+                                   Set<String> buildingLayers, List<MessagePackSnapshot> layers) {
+        String includesProperty = properties.getProperty(INCLUDE_PROPERTY);
         if (includesProperty != null) {
             // multiple includes separated by comma
             String[] includes = StringUtils.split(includesProperty, " ,");
@@ -500,20 +561,13 @@ public abstract class AbstractMessages implements Messages {
                 for (String includePath : includes) {
                     includePath = StringUtils.trimToNull(includePath);
                     if (includePath != null) {
-                        String message;
-                        if (truncatedLocale == null) {
-                            message = searchMessage(includePath, key, locale, locale, passedPacks);
-                        } else {
-                            message = searchMessage(includePath, key, locale, truncatedLocale, passedPacks);
-                        }
-                        if (message != null) {
-                            return message;
-                        }
+                        // includes of the default files are resolved in the locale of the snapshot
+                        collectLayers(includePath, locale, truncatedLocale == null ? locale : truncatedLocale,
+                                buildingLayers, layers);
                     }
                 }
             }
         }
-        return null;
     }
 
     protected Properties loadPropertiesFromFile(String packPath, Locale locale, Locale truncatedLocale) {
@@ -561,11 +615,8 @@ public abstract class AbstractMessages implements Messages {
         return (locale != null ? "_" +  LocaleResolver.localeToString(locale) : "");
     }
 
-    protected String makeCacheKey(String pack, String key, @Nullable Locale locale, @Nullable Locale truncatedLocale) {
-        if (truncatedLocale == null)
-            return pack + "/default/" + key;
-
-        return pack + "/" + (locale == null ? "default" :  LocaleResolver.localeToString(locale)) + "/" + key;
+    protected String getLocaleName(@Nullable Locale locale) {
+        return locale != null ? LocaleResolver.localeToString(locale) : "default";
     }
 
     protected String getPackName(Class c) {
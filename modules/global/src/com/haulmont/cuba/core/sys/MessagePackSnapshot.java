@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolved messages of a message pack (or a space-separated list of packs) in one locale.
+ * <p>
+ * A snapshot contains only the messages of its own files and refers to the snapshots of its parent packs, includes
+ * and less specific locales, which are looked up in the order of their priority. Snapshots of parent packs and
+ * includes are shared by all packs referring to them, so messages of a file are kept in memory once. Keys found by
+ * {@link #getMessage(String)} are remembered, so a repeated lookup is a single map hit. Missing keys are remembered
+ * up to {@link #MAX_MISSING_KEYS}, as they are not limited by the pack files.
+ * <p>
+ * Snapshots are built by {@link AbstractMessages} on the first access to the pack and are replaced as a whole when
+ * the messages cache is cleared.
+ */
+public class MessagePackSnapshot {
+
+    protected static final String NOT_FOUND = new String("");
+
+    protected static final int MAX_MISSING_KEYS = 1000;
+
+    protected static final char OVERRIDE_SEPARATOR = '/';
+
+    protected final ImmutableMap<String, String> messages;
+
+    protected final ImmutableList<MessagePackSnapshot> parents;
+
+    // messages found through the parents
+    protected final Map<String, String> resolvedMessages = new ConcurrentHashMap<>();
+
+    // keys missing in the snapshot and its parents
+    protected final Cache<String, Boolean> missingKeys =
+            CacheBuilder.newBuilder().maximumSize(MAX_MISSING_KEYS).build();
+
+    // results of the remote search, found or not, the snapshot itself contains only local messages
+    protected final Cache<String, String> remoteMessages =
+            CacheBuilder.newBuilder().maximumSize(MAX_MISSING_KEYS).build();
+
+    // "pack/key" messages of the snapshot and its parents by pack, collected on the first override lookup
+    protected volatile Map<String, ImmutableMap<String, String>> overrides;
+
+    /**
+     * @param messages own messages by key, the map is not copied
+     * @param parents  snapshots to look up the messages missing in the own ones, in the order of their priority
+     */
+    public MessagePackSnapshot(ImmutableMap<String, String> messages, List<MessagePackSnapshot> parents) {
+        this.messages = messages;
+        this.parents = ImmutableList.copyOf(parents);
+    }
+
+    /**
+     * @return message or null if neither the pack nor its parents contain the key
+     */
+    @Nullable
+    public String getMessage(String key) {
+        String message = resolvedMessages.get(key);
+        if (message != null || missingKeys.getIfPresent(key) != null)
+            return message;
+
+        message = findMessage(key);
+        if (message != null) {
+            resolvedMessages.put(key, message);
+        } else {
+            missingKeys.put(key, Boolean.TRUE);
+        }
+        return message;
+    }
+
+    /**
+     * Returns the message defined in this pack for a key of another pack, i.e. the value of
+     * {@code pack + "/" + key} property.
+     *
+     * @param pack name of the overridden pack
+     * @param key  message key
+     * @return message or null if the pack does not override the key
+     */
+    @Nullable
+    public String getOverride(String pack, String key) {
+        Map<String, ImmutableMap<String, String>> packOverrides = overrides;
+        if (packOverrides == null) {
+            Map<String, Map<String, String>> map = new HashMap<>();
+            collectOverrides(map);
+
+            ImmutableMap.Builder<String, ImmutableMap<String, String>> builder = ImmutableMap.builder();
+            for (Map.Entry<String, Map<String, String>> entry : map.entrySet()) {
+                builder.put(entry.getKey(), ImmutableMap.copyOf(entry.getValue()));
+            }
+            packOverrides = builder.build();
+            overrides = packOverrides;
+        }
+
+        ImmutableMap<String, String> messages = packOverrides.get(pack);
+        return messages != null ? messages.get(key) : null;
+    }
+
+    /**
+     * @return number of own messages of the snapshot, messages of the parents are not counted
+     */
+    public int size() {
+        return messages.size();
+    }
+
+    /**
+     * @return list of the snapshots to look up the messages missing in the own ones
+     */
+    public List<MessagePackSnapshot> getParents() {
+        return parents;
+    }
+
+    @Nullable
+    protected String findMessage(String key) {
+        String message = messages.get(key);
+        if (message != null)
+            return message;
+
+        for (MessagePackSnapshot parent : parents) {
+            message = parent.findMessage(key);
+            if (message != null)
+                return message;
+        }
+        return null;
+    }
+
+    /**
+     * Collects "pack/key" messages by pack in the order of lookup, so the message found first wins.
+     */
+    protected void collectOverrides(Map<String, Map<String, String>> map) {
+        for (Map.Entry<String, String> entry : messages.entrySet()) {
+            int pos = entry.getKey().indexOf(OVERRIDE_SEPARATOR);
+            if (pos > 0) {
+                map.computeIfAbsent(entry.getKey().substring(0, pos), p -> new HashMap<>())
+                        .putIfAbsent(entry.getKey().substring(pos + 1), entry.getValue());
+            }
+        }
+        for (MessagePackSnapshot parent : parents) {
+            parent.collectOverrides(map);
+        }
+    }
+
+    /**
+     * @return true if the remote search of the key has already been performed
+     */
+    protected boolean isRemotelySearched(String key) {
+        return remoteMessages.getIfPresent(key) != null;
+    }
+
+    /**
+     * @return result of the remote search of the key or null if the key is not searched or not found
+     */
+    @Nullable
+    protected String getRemoteMessage(String key) {
+        String message = remoteMessages.getIfPresent(key);
+        //noinspection StringEquality
+        return message == NOT_FOUND ? null : message;
+    }
+
+    protected void putRemoteMessage(String key, @Nullable String message) {
+        remoteMessages.put(key, message != null ? message : NOT_FOUND);
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.executors;
+
+import com.google.common.base.Preconditions;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Executor limiting the number of concurrently running tasks before passing them to the delegate executor.
+ * <p>
+ * A task can be submitted with {@link Limit}s restricting the number of running tasks with the same key, e.g. tasks
+ * of the same UI or of the same class. A task exceeding the total or any of its limits waits in the queue and is
+ * started when a task holding the limit finishes. Waiting tasks don't occupy threads of the delegate. If the queue
+ * already contains the maximum number of tasks, the task is rejected with {@link RejectedExecutionException}.
+ * <p>
+ * After {@link #shutdown()} the queued tasks are still started, the delegate is shut down when the queue is empty.
+ * If the delegate rejects a queued task, the task is cancelled if it is a {@link Future}, e.g. created by
+ * {@link #submit(Callable)}, so the callers waiting for it are not blocked forever.
+ */
+public class AdmissionControlExecutor extends AbstractExecutorService {
+
+    /**
+     * Maximum number of running tasks with the same key.
+     */
+    public static final class Limit {
+
+        private final Object key;
+        private final int maxRunning;
+
+        private Limit(Object key, int maxRunning) {
+            this.key = key;
+            this.maxRunning = maxRunning;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        public int getMaxRunning() {
+            return maxRunning;
+        }
+
+        @Override
+        public String toString() {
+            return key + ":" + maxRunning;
+        }
+    }
+
+    protected static class Task {
+
+        protected final Runnable command;
+        protected final List<Limit> limits;
+
+        protected Task(Runnable command, List<Limit> limits) {
+            this.command = command;
+            this.limits = limits;
+        }
+    }
+
+    protected final ExecutorService delegate;
+    protected final int maxRunning;
+    protected final int maxQueued;
+
+    // guarded by this
+    protected int running;
+    protected final Map<Object, Integer> runningByKey = new HashMap<>();
+    protected final Deque<Task> queue = new ArrayDeque<>();
+    protected int starting;
+    protected boolean shutdown;
+
+    /**
+     * @param delegate   executor running the admitted tasks
+     * @param maxRunning maximum number of concurrently running tasks
+     * @param maxQueued  maximum number of tasks waiting for admission
+     */
+    public AdmissionControlExecutor(ExecutorService delegate, int maxRunning, int maxQueued) {
+        Preconditions.checkArgument(maxRunning > 0, "maxRunning must be positive");
+        Preconditions.checkArgument(maxQueued >= 0, "maxQueued must not be negative");
+        this.delegate = delegate;
+        this.maxRunning = maxRunning;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Creates a limit for the given key. Limits with zero or negative {@code maxRunning} are ignored.
+     */
+    public static Limit limit(Object key, int maxRunning) {
+        Preconditions.checkNotNull(key, "key is null");
+        return new Limit(key, maxRunning);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        execute(command, Collections.emptyList());
+    }
+
+    /**
+     * Runs the task when the total number of running tasks and the numbers of running tasks with the keys of
+     * the given limits allow it.
+     *
+     * @throws RejectedExecutionException if the task cannot be started now and the queue is full
+     */
+    public void execute(Runnable command, List<Limit> limits) {
+        Preconditions.checkNotNull(command, "command is null");
+
+        Task task = new Task(command, limits);
+        synchronized (this) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Executor is shut down");
+            }
+            // queued tasks are admitted as soon as possible, so if the task is admissible,
+            // the queued ones are blocked by their own limits and the task doesn't overtake them unfairly
+            if (!isAdmissible(task)) {
+                if (queue.size() >= maxQueued) {
+                    throw new RejectedExecutionException(String.format(
+                            "Too many tasks: %d running, %d waiting", running, queue.size()));
+                }
+                queue.add(task);
+                return;
+            }
+            acquire(task);
+            starting++;
+        }
+        try {
+            start(task);
+        } finally {
+            started();
+        }
+    }
+
+    /**
+     * @return number of running tasks
+     */
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    /**
+     * @return number of tasks waiting for admission
+     */
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    protected boolean isAdmissible(Task task) {
+        if (running >= maxRunning) {
+            return false;
+        }
+        for (Limit limit : task.limits) {
+            if (limit.maxRunning > 0 && runningByKey.getOrDefault(limit.key, 0) >= limit.maxRunning) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected void acquire(Task task) {
+        running++;
+        for (Limit limit : task.limits) {
+            runningByKey.merge(limit.key, 1, Integer::sum);
+        }
+    }
+
+    protected void release(Task task) {
+        running--;
+        for (Limit limit : task.limits) {
+            // remove the key at zero to not hold references to finished UIs and sessions
+            runningByKey.computeIfPresent(limit.key, (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    protected void start(Task task) {
+        try {
+            delegate.execute(() -> {
+                try {
+                    task.command.run();
+                } finally {
+                    finished(task);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                release(task);
+            }
+            throw e;
+        }
+    }
+
+    protected void finished(Task task) {
+        List<Task> admitted = new ArrayList<>();
+        synchronized (this) {
+            release(task);
+            Iterator<Task> iterator = queue.iterator();
+            while (iterator.hasNext() && running < maxRunning) {
+                Task queued = iterator.next();
+                if (isAdmissible(queued)) {
+                    iterator.remove();
+                    acquire(queued);
+                    admitted.add(queued);
+                }
+            }
+            starting += admitted.size();
+        }
+        for (Task next : admitted) {
+            try {
+                start(next);
+            } catch (RejectedExecutionException e) {
+                // the delegate is shut down
+                cancel(next);
+            } finally {
+                started();
+            }
+        }
+    }
+
+    /**
+     * Called when an admitted task has been passed to the delegate. Shuts down the delegate if the executor is
+     * shut down and no more tasks are going to be passed to it.
+     */
+    protected void started() {
+        boolean terminate;
+        synchronized (this) {
+            starting--;
+            terminate = isQueueDrained();
+        }
+        if (terminate) {
+            delegate.shutdown();
+        }
+    }
+
+    protected boolean isQueueDrained() {
+        return shutdown && queue.isEmpty() && starting == 0;
+    }
+
+    protected void cancel(Task task) {
+        if (task.command instanceof Future) {
+            ((Future<?>) task.command).cancel(false);
+        }
+    }
+
+    /**
+     * Rejects new tasks. The queued tasks are started when admitted, the delegate is shut down after that.
+     */
+    @Override
+    public void shutdown() {
+        boolean terminate;
+        synchronized (this) {
+            shutdown = true;
+            terminate = isQueueDrained();
+        }
+        if (terminate) {
+            delegate.shutdown();
+        }
+    }
+
+    /**
+     * Rejects new tasks, removes the queued tasks and shuts down the delegate immediately.
+     *
+     * @return the queued tasks which have not been started, including the futures created by {@code submit}
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> notStarted = new ArrayList<>();
+        synchronized (this) {
+            shutdown = true;
+            for (Task task : queue) {
+                notStarted.add(task.command);
+            }
+            queue.clear();
+        }
+        delegate.shutdownNow();
+        return notStarted;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        synchronized (this) {
+            if (!isQueueDrained()) {
+                return false;
+            }
+        }
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.executors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates executors that start a new virtual thread for each task.
+ * <p>
+ * Virtual threads are created by reflection, so the platform can be compiled and run on JDKs without them. On such
+ * JDKs an unbounded pool of daemon threads reused between tasks is created instead. In both cases the number of
+ * concurrently running tasks is not limited, so the executor should be wrapped by {@link AdmissionControlExecutor}.
+ */
+public final class VirtualThreadExecutors {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadExecutors.class);
+
+    private VirtualThreadExecutors() {
+    }
+
+    /**
+     * @return true if the JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return createVirtualThreadFactory("") != null;
+    }
+
+    /**
+     * Creates an executor starting a virtual thread for each task.
+     *
+     * @param namePrefix prefix of thread names, the names are suffixed with a sequence number
+     */
+    public static ExecutorService newExecutor(String namePrefix) {
+        ThreadFactory factory = createVirtualThreadFactory(namePrefix);
+        if (factory != null) {
+            try {
+                Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                return (ExecutorService) method.invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                log.debug("Unable to create thread per task executor: {}", e.toString());
+            }
+        }
+
+        log.info("Virtual threads are not supported by the JVM, {} tasks will be run in a cached thread pool", namePrefix);
+        return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat(namePrefix + "%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    @Nullable
+    private static ThreadFactory createVirtualThreadFactory(String namePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // JDK without virtual threads or with virtual threads as a disabled preview feature
+            return null;
+        }
+    }
+}
@@ -57,6 +57,43 @@ public class QueryTree {
         new TreeVisitor().visit(tree, idVarSelector);
     }
 
+    protected QueryTree(DomainModel model, String queryString, CommonTree tree) {
+        this.model = model;
+        this.queryString = queryString;
+        this.tree = tree;
+
+        this.idVarSelector = new IdVarSelector(model);
+        new TreeVisitor().visit(tree, idVarSelector);
+    }
+
+    /**
+     * Creates a deep copy of this tree which can be modified independently. Copying is much cheaper than parsing
+     * the query again.
+     */
+    public QueryTree copy() {
+        return new QueryTree(model, queryString, copyTree(tree));
+    }
+
+    protected static CommonTree copyTree(CommonTree node) {
+        CommonTree copy = (CommonTree) node.dupNode();
+        copyChildren(node, copy);
+        return copy;
+    }
+
+    protected static void copyChildren(CommonTree node, CommonTree copy) {
+        if (copy.getChildCount() == 0) {
+            // plain nodes are duplicated without children
+            for (int i = 0; i < node.getChildCount(); i++) {
+                copy.addChild(copyTree((CommonTree) node.getChild(i)));
+            }
+        } else {
+            // custom nodes duplicate their children, but not the children of plain ones
+            for (int i = 0; i < node.getChildCount(); i++) {
+                copyChildren((CommonTree) node.getChild(i), (CommonTree) copy.getChild(i));
+            }
+        }
+    }
+
     public DomainModel getModel() {
         return model;
     }
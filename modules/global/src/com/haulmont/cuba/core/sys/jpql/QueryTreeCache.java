@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.jpql;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.haulmont.cuba.core.global.Configuration;
+import com.haulmont.cuba.core.global.GlobalConfig;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+/**
+ * Bounded cache of parsed JPQL queries shared by {@code QueryParserAstBased} and {@code QueryTransformerAstBased}.
+ * <p>
+ * Cached trees must not be modified. Parsers use them as is, transformers work with a {@link QueryTree#copy()}.
+ * Only queries parsed without errors are cached. A query parsed for another {@link DomainModel} instance is parsed
+ * again and replaces the cached tree, so the cache needs no invalidation when the model is rebuilt.
+ */
+@Component(QueryTreeCache.NAME)
+public class QueryTreeCache {
+
+    public static final String NAME = "cuba_QueryTreeCache";
+
+    protected volatile int maxSize = 1000;
+
+    protected volatile Cache<String, QueryTree> cache;
+
+    public QueryTreeCache() {
+    }
+
+    public QueryTreeCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Inject
+    public void setConfiguration(Configuration configuration) {
+        maxSize = configuration.getConfig(GlobalConfig.class).getQueryTreeCacheSize();
+    }
+
+    /**
+     * Returns the parsed query from the cache or parses it.
+     *
+     * @param model domain model
+     * @param query JPQL query
+     * @return query tree which must not be modified
+     * @throws JPA2RecognitionException if the query cannot be parsed
+     */
+    public QueryTree get(DomainModel model, String query) {
+        Cache<String, QueryTree> cache = getCache();
+        if (cache == null) {
+            return new QueryTree(model, query);
+        }
+        QueryTree tree = cache.getIfPresent(query);
+        if (tree == null || tree.getModel() != model) {
+            tree = new QueryTree(model, query);
+            if (tree.getInvalidIdVarNodes().isEmpty()) {
+                cache.put(query, tree);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * @return number of cached queries
+     */
+    public long size() {
+        Cache<String, QueryTree> cache = this.cache;
+        return cache == null ? 0 : cache.size();
+    }
+
+    /**
+     * @return hit and miss statistics or null if the cache is disabled
+     */
+    @Nullable
+    public CacheStats getStats() {
+        Cache<String, QueryTree> cache = this.cache;
+        return cache == null ? null : cache.stats();
+    }
+
+    @Nullable
+    protected Cache<String, QueryTree> getCache() {
+        if (maxSize <= 0) {
+            return null;
+        }
+        Cache<String, QueryTree> result = cache;
+        if (result == null) {
+            synchronized (this) {
+                result = cache;
+                if (result == null) {
+                    result = CacheBuilder.newBuilder()
+                            .maximumSize(maxSize)
+                            .recordStats()
+                            .build();
+                    cache = result;
+                }
+            }
+        }
+        return result;
+    }
+}
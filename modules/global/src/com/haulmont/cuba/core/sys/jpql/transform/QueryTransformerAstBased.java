@@ -19,15 +19,19 @@ package com.haulmont.cuba.core.sys.jpql.transform;
 
 import com.haulmont.cuba.core.global.QueryTransformer;
 import com.haulmont.cuba.core.sys.jpql.*;
+import com.haulmont.cuba.core.sys.jpql.antlr2.JPA2Lexer;
 import com.haulmont.cuba.core.sys.jpql.tree.*;
 import org.antlr.runtime.RecognitionException;
 import org.antlr.runtime.tree.CommonTree;
+import org.antlr.runtime.tree.Tree;
 import org.antlr.runtime.tree.TreeVisitor;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
+import javax.inject.Inject;
+
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -42,6 +46,7 @@ public class QueryTransformerAstBased implements QueryTransformer {
     protected DomainModel model;
     protected String query;
     protected QueryTree queryTree;
+    protected QueryTreeCache queryTreeCache;
     protected QueryTreeTransformer queryTransformer;
     protected QueryTreeAnalyzer queryAnalyzer;
     protected Set<String> addedParams = new HashSet<>();
@@ -51,6 +56,11 @@ public class QueryTransformerAstBased implements QueryTransformer {
         this.query = query;
     }
 
+    @Inject
+    public void setQueryTreeCache(QueryTreeCache queryTreeCache) {
+        this.queryTreeCache = queryTreeCache;
+    }
+
     protected QueryTreeTransformer getTransformer() {
         if (queryTransformer == null) {
             queryTransformer = new QueryTreeTransformer(getTree());
@@ -68,7 +78,8 @@ public class QueryTransformerAstBased implements QueryTransformer {
     protected QueryTree getTree() {
         if (queryTree == null) {
             try {
-                queryTree = new QueryTree(model, query);
+                // the cached tree is shared, so the transformer modifies its own copy
+                queryTree = queryTreeCache != null ? queryTreeCache.get(model, query).copy() : new QueryTree(model, query);
             } catch (JPA2RecognitionException e) {
                 throw new JpqlSyntaxException(format("Errors found for input JPQL:[%s]\n%s", StringUtils.strip(query), e.getMessage()));
             }
@@ -247,6 +258,52 @@ public class QueryTransformerAstBased implements QueryTransformer {
         return true;
     }
 
+    @Override
+    public boolean addKeysetCondition(String paramNamePrefix, int keySize) {
+        Tree orderBy = getTree().getAstOrderByNode();
+        List<Tree> orderByItems = new ArrayList<>();
+        if (orderBy != null) {
+            for (int i = 0; i < orderBy.getChildCount(); i++) {
+                if (orderBy.getChild(i) instanceof OrderByFieldNode) {
+                    orderByItems.add(orderBy.getChild(i));
+                }
+            }
+        }
+        if (keySize <= 0 || orderByItems.size() < keySize) {
+            throw new JpqlSyntaxException(format("Query must be ordered by at least %d expressions to apply keyset condition:[%s]",
+                    keySize, StringUtils.strip(query)));
+        }
+
+        StringBuilder condition = new StringBuilder("(");
+        StringBuilder equalities = new StringBuilder();
+        for (int i = 0; i < keySize; i++) {
+            Tree item = orderByItems.get(i);
+            boolean desc = false;
+            TreeToQuery treeToQuery = new TreeToQuery();
+            for (int j = 0; j < item.getChildCount(); j++) {
+                Tree child = item.getChild(j);
+                if (child.getType() == JPA2Lexer.DESC) {
+                    desc = true;
+                } else if (child.getType() != JPA2Lexer.ASC && !StringUtils.startsWithIgnoreCase(child.getText(), "NULLS ")) {
+                    new TreeVisitor().visit(child, treeToQuery);
+                }
+            }
+            String expression = treeToQuery.getQueryString().trim();
+            String param = ":" + paramNamePrefix + i;
+
+            if (i > 0) {
+                condition.append(" or ");
+            }
+            condition.append("(").append(equalities)
+                    .append(expression).append(desc ? " < " : " > ").append(param).append(")");
+            equalities.append(expression).append(" = ").append(param).append(" and ");
+        }
+        condition.append(")");
+
+        addWhereAsIs(condition.toString());
+        return true;
+    }
+
     protected CommonTree parseWhereCondition(String whereCondition) {
         try {
             return Parser.parseWhereClause("where " + whereCondition);
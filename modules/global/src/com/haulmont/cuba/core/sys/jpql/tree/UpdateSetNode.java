@@ -20,6 +20,7 @@ import com.haulmont.cuba.core.sys.jpql.ErrorRec;
 import com.haulmont.cuba.core.sys.jpql.QueryBuilder;
 import org.antlr.runtime.Token;
 import org.antlr.runtime.tree.CommonTree;
+import org.antlr.runtime.tree.Tree;
 
 import java.util.List;
 
@@ -35,4 +36,11 @@ public class UpdateSetNode extends BaseCustomNode {
         sb.appendString(" ");
         return this;
     }
+
+    @Override
+    public Tree dupNode() {
+        UpdateSetNode result = new UpdateSetNode(token);
+        dupChildren(result);
+        return result;
+    }
 }
@@ -18,8 +18,11 @@
 package com.haulmont.cuba.core.sys.remoting;
 
 import com.haulmont.cuba.core.global.RemoteException;
+import com.haulmont.cuba.core.sys.remoting.binary.BinaryRemotingClient;
 import com.haulmont.cuba.core.sys.remoting.discovery.ServerSelector;
+import org.aopalliance.intercept.MethodInvocation;
 import org.springframework.remoting.httpinvoker.HttpInvokerProxyFactoryBean;
+import org.springframework.remoting.support.RemoteInvocation;
 import org.springframework.remoting.support.RemoteInvocationResult;
 import org.springframework.remoting.support.RemoteInvocationUtils;
 
@@ -27,7 +30,14 @@ import java.lang.reflect.InvocationTargetException;
 
 public class HttpServiceProxy extends HttpInvokerProxyFactoryBean {
 
+    protected ServerSelector serverSelector;
+
+    protected BinaryRemotingClient binaryRemotingClient;
+
     public HttpServiceProxy(ServerSelector selector) {
+        this.serverSelector = selector;
+        this.binaryRemotingClient = BinaryRemotingClient.getInstance();
+
         setRemoteInvocationFactory(new CubaRemoteInvocationFactory());
 
         ClusteredHttpInvokerRequestExecutor executor = new ClusteredHttpInvokerRequestExecutor(selector);
@@ -35,6 +45,18 @@ public class HttpServiceProxy extends HttpInvokerProxyFactoryBean {
         setHttpInvokerRequestExecutor(executor);
     }
 
+    @Override
+    protected RemoteInvocationResult executeRequest(RemoteInvocation invocation, MethodInvocation originalInvocation)
+            throws Exception {
+        if (binaryRemotingClient != null) {
+            RemoteInvocationResult result = binaryRemotingClient.invoke(serverSelector, getServiceUrl(), invocation);
+            if (result != null) {
+                return result;
+            }
+        }
+        return super.executeRequest(invocation, originalInvocation);
+    }
+
     @Override
     protected Object recreateRemoteInvocationResult(RemoteInvocationResult result) throws Throwable {
         Throwable throwable = result.getException();
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.remoting;
+
+import com.haulmont.cuba.core.sys.serialization.KryoSerialization;
+import com.haulmont.cuba.core.sys.serialization.SerializationSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.*;
+import java.util.*;
+
+/**
+ * INTERNAL.
+ * <p>
+ * Copies arguments and results of middleware services invoked directly by the local service proxies, so the client
+ * and the service do not share mutable objects, as if the invocation were serialized.
+ * <p>
+ * Immutable values are passed by reference. Other values are deep-copied in memory by
+ * {@link KryoSerialization#copy(Object)}, which copies entities with their state and keeps references shared within
+ * the copied graph. Values that cannot be copied in memory, e.g. objects with custom Java serialization, are copied
+ * by serialization, see {@link #isSerialized()}.
+ * <p>
+ * An instance is used for one direction of one invocation.
+ */
+public class LocalServiceValueCopier {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalServiceValueCopier.class);
+
+    protected static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>(Arrays.asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+            Float.class, Double.class, BigDecimal.class, BigInteger.class, UUID.class, Locale.class, Class.class,
+            LocalDate.class, LocalTime.class, LocalDateTime.class, OffsetTime.class, OffsetDateTime.class,
+            ZonedDateTime.class, Instant.class, Duration.class, Period.class, ZoneOffset.class));
+
+    protected boolean serialized;
+
+    /**
+     * @return true if the value can be passed by reference
+     */
+    public static boolean isImmutable(@Nullable Object value) {
+        return value == null
+                || value instanceof Enum
+                || IMMUTABLE_TYPES.contains(value.getClass())
+                || value == Collections.EMPTY_LIST
+                || value == Collections.EMPTY_SET
+                || value == Collections.EMPTY_MAP;
+    }
+
+    /**
+     * Copies the arguments. References shared between the copied arguments are kept.
+     *
+     * @param args        arguments
+     * @param byReference flags of the arguments to pass by reference
+     * @return new array with the copied arguments
+     */
+    public Object[] copyArguments(Object[] args, boolean[] byReference) {
+        Object[] arguments = args.clone();
+
+        int count = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (!byReference[i] && !isImmutable(args[i])) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            Object[] values = new Object[count];
+            for (int i = 0, j = 0; i < args.length; i++) {
+                if (!byReference[i] && !isImmutable(args[i])) {
+                    values[j++] = args[i];
+                }
+            }
+            Object[] copies = (Object[]) copyGraph(values);
+            for (int i = 0, j = 0; i < args.length; i++) {
+                if (!byReference[i] && !isImmutable(args[i])) {
+                    arguments[i] = copies[j++];
+                }
+            }
+        }
+        return arguments;
+    }
+
+    /**
+     * @return copy of the value or the value itself if it is immutable
+     */
+    @Nullable
+    public Object copy(@Nullable Object value) {
+        return isImmutable(value) ? value : copyGraph(value);
+    }
+
+    /**
+     * @return true if a value has been copied by serialization instead of in memory
+     */
+    public boolean isSerialized() {
+        return serialized;
+    }
+
+    protected Object copyGraph(Object value) {
+        try {
+            return SerializationSupport.getKryoSerialization().copy(value);
+        } catch (RuntimeException e) {
+            log.debug("Unable to copy {} in memory, copying it by serialization: {}",
+                    value.getClass().getName(), e.toString());
+            serialized = true;
+            return SerializationSupport.deserialize(SerializationSupport.serialize(value));
+        }
+    }
+}
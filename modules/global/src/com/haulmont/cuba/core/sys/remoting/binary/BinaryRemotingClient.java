@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.remoting.binary;
+
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.remoting.binary.BinaryRemotingConnection.PendingCall;
+import com.haulmont.cuba.core.sys.remoting.binary.BinaryRemotingProtocol.Frame;
+import com.haulmont.cuba.core.sys.remoting.discovery.ServerSelector;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side of the binary remoting transport, see {@link BinaryRemotingProtocol}.
+ * <p>
+ * Enabled in a client block by setting {@code cuba.remotingTransport = binary} and {@code cuba.binaryRemotingPort}
+ * to the port of the middleware {@code BinaryRemotingServer}. If several servers run on one host, the port can be
+ * set as an offset from the port of the server URL, e.g. {@code +1000}. The connection is authenticated by
+ * {@code cuba.trustedClientPassword}, and TLS is used for the servers connected by HTTPS.
+ * <p>
+ * Servers are tried in the order of {@link ServerSelector}, as HTTP invoker does. If the binary port of the selected
+ * server cannot be connected, the invocation is performed by HTTP invoker and the binary connection to this server
+ * is not retried during {@link #RETRY_INTERVAL} milliseconds.
+ * <p>
+ * Results are deserialized by the calling thread while their parts are being received, see
+ * {@link BinaryRemotingProtocol}. If {@code cuba.connectionReadTimeout} is not set, the client waits for each part of
+ * the result at most {@link #DEFAULT_READ_TIMEOUT} milliseconds. Interrupting the calling thread or the timeout
+ * cancels the request on the server.
+ */
+public class BinaryRemotingClient {
+
+    public static final String TRANSPORT_PROP = "cuba.remotingTransport";
+    public static final String PORT_PROP = "cuba.binaryRemotingPort";
+
+    public static final String BINARY_TRANSPORT = "binary";
+
+    protected static final long RETRY_INTERVAL = 60_000;
+
+    public static final int DEFAULT_READ_TIMEOUT = 10 * 60_000;
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryRemotingClient.class);
+
+    private static volatile BinaryRemotingClient instance;
+
+    protected final int port;
+    protected final boolean portOffset;
+    protected final String trustedClientPassword;
+    protected final int connectTimeout;
+    protected final int readTimeout;
+
+    // connections and unavailable servers by the binary address
+    protected final Map<String, BinaryRemotingConnection> connections = new ConcurrentHashMap<>();
+    protected final Map<String, Long> unavailableUntil = new ConcurrentHashMap<>();
+
+    /**
+     * @param port        port of the binary transport
+     * @param portOffset  whether the port is an offset from the port of the server URL
+     * @param readTimeout timeout of receiving a part of the result, {@link #DEFAULT_READ_TIMEOUT} if not positive
+     */
+    public BinaryRemotingClient(int port, boolean portOffset, String trustedClientPassword,
+                                int connectTimeout, int readTimeout) {
+        this.port = port;
+        this.portOffset = portOffset;
+        this.trustedClientPassword = trustedClientPassword;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout > 0 ? readTimeout : DEFAULT_READ_TIMEOUT;
+    }
+
+    /**
+     * @return client shared by all service proxies of the block or null if the binary transport is not enabled
+     */
+    @Nullable
+    public static BinaryRemotingClient getInstance() {
+        if (!BINARY_TRANSPORT.equals(AppContext.getProperty(TRANSPORT_PROP)))
+            return null;
+
+        BinaryRemotingClient result = instance;
+        if (result == null) {
+            synchronized (BinaryRemotingClient.class) {
+                result = instance;
+                if (result == null) {
+                    String portProp = StringUtils.trimToNull(AppContext.getProperty(PORT_PROP));
+                    if (portProp == null) {
+                        log.warn("{} is not set, binary remoting transport is disabled", PORT_PROP);
+                        return null;
+                    }
+                    String password = AppContext.getProperty("cuba.trustedClientPassword");
+                    if (StringUtils.isEmpty(password)) {
+                        log.warn("cuba.trustedClientPassword is not set, binary remoting transport is disabled");
+                        return null;
+                    }
+                    boolean portOffset = portProp.startsWith("+");
+                    String connectTimeoutProp = AppContext.getProperty("cuba.connectionTimeout");
+                    String readTimeoutProp = AppContext.getProperty("cuba.connectionReadTimeout");
+                    result = new BinaryRemotingClient(
+                            Integer.parseInt(portOffset ? portProp.substring(1) : portProp),
+                            portOffset,
+                            password,
+                            connectTimeoutProp == null ? -1 : Integer.parseInt(connectTimeoutProp),
+                            readTimeoutProp == null ? -1 : Integer.parseInt(readTimeoutProp));
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Invokes the service on the server selected by the selector. If the connection is broken after sending the
+     * request, the server is marked as failed and the invocation is repeated on the next server, as HTTP invoker does.
+     *
+     * @return result of the invocation or null if the selected server is not available via the binary transport and
+     * the invocation should be performed by HTTP invoker
+     * @throws IOException if the connection is broken after sending the request and there are no more servers
+     * @throws RemoteAccessException if the calling thread is interrupted while waiting for the result
+     */
+    @Nullable
+    public RemoteInvocationResult invoke(ServerSelector selector, String serviceName, RemoteInvocation invocation)
+            throws IOException {
+        Object context = selector.initContext();
+        String url = selector.getUrl(context);
+        while (url != null) {
+            BinaryRemotingConnection connection = getConnection(url);
+            if (connection == null)
+                return null;
+
+            PendingCall call;
+            try {
+                call = connection.send(serviceName, invocation);
+            } catch (IOException e) {
+                log.info("Sending invocation of {} to {} failed: {}", serviceName, connection.getAddress(), e.toString());
+                return null;
+            }
+
+            try {
+                RemoteInvocationResult result = receive(call);
+                selector.success(context);
+                return result;
+            } catch (InterruptedException e) {
+                connection.cancel(call);
+                Thread.currentThread().interrupt();
+                throw new RemoteAccessException("Invocation of " + serviceName + " is cancelled");
+            } catch (SocketTimeoutException | RuntimeException e) {
+                connection.cancel(call);
+                throw e;
+            } catch (IOException e) {
+                connection.cancel(call);
+                log.info("Invocation of {} on {} failed: {}", serviceName, connection.getAddress(), e.toString());
+
+                selector.fail(context);
+                url = selector.getUrl(context);
+                if (url == null) {
+                    log.info("No more URL available");
+                    throw e;
+                }
+                log.info("Trying to invoke the next available URL: " + url);
+            }
+        }
+        return null;
+    }
+
+    protected RemoteInvocationResult receive(PendingCall call) throws IOException, InterruptedException {
+        ResultInputStream in = new ResultInputStream(call, readTimeout);
+        try {
+            Object result = BinaryRemotingProtocol.getSerialization().deserialize(in);
+            in.skipRemaining();
+            return (RemoteInvocationResult) result;
+        } catch (IOException | RuntimeException e) {
+            // failures of the stream are wrapped by the serialization
+            if (in.errorResult != null)
+                return in.errorResult;
+            if (in.interrupted)
+                throw new InterruptedException();
+            if (in.failure != null)
+                throw in.failure;
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the connection to the binary port of the server. Servers connected by HTTPS are connected by TLS only.
+     *
+     * @param url server URL
+     * @return connection or null if the server is not available via the binary transport
+     */
+    @Nullable
+    protected BinaryRemotingConnection getConnection(String url) {
+        URI uri = URI.create(url);
+        String host = uri.getHost();
+        if (host == null)
+            return null;
+
+        boolean tls = "https".equalsIgnoreCase(uri.getScheme());
+        int binaryPort = port;
+        if (portOffset) {
+            int urlPort = uri.getPort() != -1 ? uri.getPort() : (tls ? 443 : 80);
+            binaryPort = urlPort + port;
+        }
+        String address = (tls ? "tls://" : "tcp://") + host + ":" + binaryPort;
+
+        BinaryRemotingConnection connection = connections.get(address);
+        if (connection != null && !connection.isClosed())
+            return connection;
+
+        Long retryTime = unavailableUntil.get(address);
+        if (retryTime != null && retryTime > System.currentTimeMillis())
+            return null;
+
+        synchronized (this) {
+            connection = connections.get(address);
+            if (connection == null || connection.isClosed()) {
+                try {
+                    connection = new BinaryRemotingConnection(host, binaryPort, tls, trustedClientPassword,
+                            connectTimeout);
+                    connections.put(address, connection);
+                    unavailableUntil.remove(address);
+                } catch (IOException e) {
+                    log.info("Unable to connect to {}, using HTTP invoker: {}", address, e.toString());
+                    unavailableUntil.put(address, System.currentTimeMillis() + RETRY_INTERVAL);
+                    return null;
+                }
+            }
+            return connection;
+        }
+    }
+
+    /**
+     * Closes all connections.
+     */
+    public void close() {
+        for (BinaryRemotingConnection connection : connections.values()) {
+            connection.close();
+        }
+        connections.clear();
+    }
+
+    /**
+     * Stream of the result parts received by a call.
+     */
+    protected static class ResultInputStream extends InputStream {
+
+        protected final PendingCall call;
+        protected final int timeout;
+
+        protected byte[] chunk = new byte[0];
+        protected int position;
+        protected boolean last;
+
+        protected RemoteInvocationResult errorResult;
+        protected IOException failure;
+        protected boolean interrupted;
+
+        protected ResultInputStream(PendingCall call, int timeout) {
+            this.call = call;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk())
+                return -1;
+            return chunk[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!nextChunk())
+                return -1;
+            int count = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        /**
+         * Receives the rest of the result if the deserialization has not requested the last frame.
+         */
+        protected void skipRemaining() throws IOException {
+            position = chunk.length;
+            if (nextChunk()) {
+                failure = new IOException("Result is longer than expected");
+                throw failure;
+            }
+        }
+
+        protected boolean nextChunk() throws IOException {
+            while (position >= chunk.length) {
+                if (last)
+                    return false;
+
+                Frame frame;
+                try {
+                    frame = call.getFrames().poll(timeout, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    throw new InterruptedIOException("Interrupted while receiving the result");
+                }
+                if (frame == null) {
+                    failure = new SocketTimeoutException("Read timed out");
+                    throw failure;
+                }
+
+                switch (frame.getType()) {
+                    case BinaryRemotingProtocol.RESULT_CHUNK:
+                        break;
+                    case BinaryRemotingProtocol.RESULT:
+                        last = true;
+                        break;
+                    case BinaryRemotingProtocol.ERROR:
+                        errorResult = (RemoteInvocationResult) BinaryRemotingProtocol.getSerialization()
+                                .deserialize(frame.getPayload());
+                        throw new IOException("Request has failed on the server");
+                    case BinaryRemotingConnection.CLOSED:
+                        failure = new IOException("Connection is closed");
+                        throw failure;
+                    default:
+                        failure = new IOException("Unexpected frame type: " + frame.getType());
+                        throw failure;
+                }
+                chunk = frame.getPayload();
+                position = 0;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.remoting.binary;
+
+import com.haulmont.cuba.core.sys.remoting.binary.BinaryRemotingProtocol.Frame;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.remoting.support.RemoteInvocation;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent connection to a middleware server shared by all threads of the client.
+ * <p>
+ * The connection is authenticated by the handshake described in {@link BinaryRemotingProtocol} and can use TLS, in
+ * which case the server certificate is verified against the host name by the default JSSE trust store.
+ * <p>
+ * Requests are written by calling threads, responses are read by a dedicated thread and passed to the waiting
+ * {@link PendingCall}s, so any number of requests can be executed over one connection concurrently. A call buffers
+ * at most {@link #MAX_PENDING_FRAMES} frames of a streamed result: if the caller does not keep up, the reader waits,
+ * and the server is slowed down by TCP flow control.
+ */
+public class BinaryRemotingConnection {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryRemotingConnection.class);
+
+    // internal frame type passed to pending calls when the connection is closed
+    protected static final byte CLOSED = 0;
+
+    // read timeout of the handshake if the connect timeout is not set
+    protected static final int HANDSHAKE_TIMEOUT = 10_000;
+
+    public static final int MAX_PENDING_FRAMES = 16;
+
+    /**
+     * Request sent over the connection, receives the response frames.
+     */
+    public static class PendingCall {
+
+        protected final long requestId;
+        protected final BlockingQueue<Frame> frames = new LinkedBlockingQueue<>(MAX_PENDING_FRAMES);
+
+        protected volatile boolean cancelled;
+
+        protected PendingCall(long requestId) {
+            this.requestId = requestId;
+        }
+
+        public long getRequestId() {
+            return requestId;
+        }
+
+        public BlockingQueue<Frame> getFrames() {
+            return frames;
+        }
+    }
+
+    protected final String address;
+    protected final Socket socket;
+    protected final DataInputStream in;
+    protected final DataOutputStream out;
+
+    protected final Map<Long, PendingCall> calls = new ConcurrentHashMap<>();
+    protected final AtomicLong requestIds = new AtomicLong();
+    protected final Object writeLock = new Object();
+
+    protected volatile boolean closed;
+
+    public BinaryRemotingConnection(String host, int port, boolean tls, String trustedClientPassword,
+                                    int connectTimeout) throws IOException {
+        this.address = host + ":" + port;
+
+        socket = tls ? SSLSocketFactory.getDefault().createSocket() : new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            if (socket instanceof SSLSocket) {
+                SSLParameters parameters = ((SSLSocket) socket).getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                ((SSLSocket) socket).setSSLParameters(parameters);
+            }
+            socket.connect(new InetSocketAddress(host, port), Math.max(connectTimeout, 0));
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            socket.setSoTimeout(connectTimeout > 0 ? connectTimeout : HANDSHAKE_TIMEOUT);
+            handshake(trustedClientPassword);
+            socket.setSoTimeout(0);
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(socket);
+            throw e;
+        }
+
+        Thread reader = new Thread(this::readFrames, "BinaryRemotingReader-" + address);
+        reader.setDaemon(true);
+        reader.start();
+
+        log.debug("Connected to {}", address);
+    }
+
+    protected void handshake(String trustedClientPassword) throws IOException {
+        Frame challenge = BinaryRemotingProtocol.readFrame(in, BinaryRemotingProtocol.MAX_HANDSHAKE_PAYLOAD_SIZE);
+        if (challenge.getType() != BinaryRemotingProtocol.CHALLENGE)
+            throw new IOException("Unexpected frame type: " + challenge.getType());
+
+        BinaryRemotingProtocol.writeFrame(out, 0, BinaryRemotingProtocol.HELLO,
+                BinaryRemotingProtocol.createHelloPayload(trustedClientPassword, challenge.getPayload()));
+
+        Frame accepted = BinaryRemotingProtocol.readFrame(in, BinaryRemotingProtocol.MAX_HANDSHAKE_PAYLOAD_SIZE);
+        if (accepted.getType() != BinaryRemotingProtocol.ACCEPTED)
+            throw new IOException("Unexpected frame type: " + accepted.getType());
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Sends the invocation. The response should be received from {@link PendingCall#getFrames()}.
+     */
+    public PendingCall send(String serviceName, RemoteInvocation invocation) throws IOException {
+        byte[] payload = BinaryRemotingProtocol.createInvokePayload(serviceName, invocation);
+
+        PendingCall call = new PendingCall(requestIds.incrementAndGet());
+        calls.put(call.requestId, call);
+        if (closed) {
+            calls.remove(call.requestId);
+            throw new IOException("Connection to " + address + " is closed");
+        }
+        try {
+            write(call.requestId, BinaryRemotingProtocol.INVOKE, payload);
+        } catch (IOException e) {
+            calls.remove(call.requestId);
+            close();
+            throw e;
+        }
+        return call;
+    }
+
+    /**
+     * Asks the server to cancel the request and stops waiting for its response.
+     */
+    public void cancel(PendingCall call) {
+        call.cancelled = true;
+        // releases the reader if it waits for space in the queue
+        call.frames.clear();
+        if (calls.remove(call.requestId) != null && !closed) {
+            try {
+                write(call.requestId, BinaryRemotingProtocol.CANCEL, new byte[0]);
+            } catch (IOException e) {
+                log.debug("Unable to cancel request {} on {}: {}", call.requestId, address, e.toString());
+                close();
+            }
+        }
+    }
+
+    /**
+     * Closes the socket. Calls waiting for responses receive a frame of the {@link #CLOSED} type.
+     */
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        IOUtils.closeQuietly(socket);
+        for (PendingCall call : calls.values()) {
+            // the rest of the result is lost anyway
+            call.frames.clear();
+            call.frames.offer(new Frame(call.requestId, CLOSED, null));
+        }
+        calls.clear();
+        log.debug("Disconnected from {}", address);
+    }
+
+    protected void write(long requestId, byte type, byte[] payload) throws IOException {
+        synchronized (writeLock) {
+            BinaryRemotingProtocol.writeFrame(out, requestId, type, payload);
+        }
+    }
+
+    protected void readFrames() {
+        try {
+            while (!closed) {
+                Frame frame = BinaryRemotingProtocol.readFrame(in);
+                PendingCall call = frame.getType() == BinaryRemotingProtocol.RESULT_CHUNK
+                        ? calls.get(frame.getRequestId())
+                        : calls.remove(frame.getRequestId());
+                // frames of cancelled calls are skipped
+                if (call != null) {
+                    deliver(call, frame);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                log.info("Connection to {} is broken: {}", address, e.toString());
+            }
+        } catch (InterruptedException e) {
+            log.debug("Reader of {} is interrupted", address);
+        } finally {
+            close();
+        }
+    }
+
+    protected void deliver(PendingCall call, Frame frame) throws InterruptedException {
+        while (!call.frames.offer(frame, 100, TimeUnit.MILLISECONDS)) {
+            if (call.cancelled || closed) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.remoting.binary;
+
+import com.haulmont.cuba.core.sys.serialization.Serialization;
+import com.haulmont.cuba.core.sys.serialization.SerializationSupport;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Frames of the binary remoting protocol used by {@link BinaryRemotingClient} and the middleware
+ * {@code BinaryRemotingServer}.
+ * <p>
+ * Each frame consists of the payload length (int), the request id (long), the frame type (byte) and the payload.
+ * <p>
+ * A connection starts with the handshake: the server sends a {@link #CHALLENGE} frame with random bytes, the client
+ * answers by a {@link #HELLO} frame with the HMAC of these bytes keyed by the trusted client password, and the server
+ * confirms it by an {@link #ACCEPTED} frame or closes the connection. Frames received before the handshake is
+ * completed are limited by {@link #MAX_HANDSHAKE_PAYLOAD_SIZE}.
+ * <p>
+ * After the handshake, frames of different requests can be interleaved on one connection. A request is sent as an
+ * {@link #INVOKE} frame. The serialized result is streamed in parts of a bounded size: zero or more
+ * {@link #RESULT_CHUNK} frames followed by the last {@link #RESULT} frame, so neither side has to buffer the whole
+ * serialized result, and the object graph is kept as a whole. If the request fails or the result cannot be
+ * serialized, the server sends an {@link #ERROR} frame instead of the rest of the result.
+ * <p>
+ * Payloads are serialized by the Kryo serialization, see {@link SerializationSupport#getKryoSerialization()}.
+ */
+public final class BinaryRemotingProtocol {
+
+    /**
+     * Client to server: service name and {@code CubaRemoteInvocation}.
+     */
+    public static final byte INVOKE = 1;
+
+    /**
+     * Client to server: cancel the request, no payload.
+     */
+    public static final byte CANCEL = 2;
+
+    /**
+     * Server to client: the last part of the serialized {@code RemoteInvocationResult}.
+     */
+    public static final byte RESULT = 3;
+
+    /**
+     * Server to client: random bytes to authenticate the client.
+     */
+    public static final byte CHALLENGE = 4;
+
+    /**
+     * Client to server: HMAC of the challenge, see {@link #createHelloPayload(String, byte[])}.
+     */
+    public static final byte HELLO = 5;
+
+    /**
+     * Server to client: the client is authenticated, no payload.
+     */
+    public static final byte ACCEPTED = 6;
+
+    /**
+     * Server to client: a part of the serialized {@code RemoteInvocationResult} followed by other parts.
+     */
+    public static final byte RESULT_CHUNK = 7;
+
+    /**
+     * Server to client: serialized {@code RemoteInvocationResult} with an exception, replaces the parts of the
+     * result sent before.
+     */
+    public static final byte ERROR = 8;
+
+    /**
+     * Maximum size of a frame payload, a larger frame means a corrupted stream.
+     */
+    public static final int MAX_PAYLOAD_SIZE = 256 * 1024 * 1024;
+
+    /**
+     * Maximum size of a frame payload received before the handshake is completed.
+     */
+    public static final int MAX_HANDSHAKE_PAYLOAD_SIZE = 1024;
+
+    /**
+     * Default size of a part of a streamed result.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private BinaryRemotingProtocol() {
+    }
+
+    /**
+     * Frame read from a connection.
+     */
+    public static class Frame {
+
+        protected final long requestId;
+        protected final byte type;
+        protected final byte[] payload;
+
+        public Frame(long requestId, byte type, byte[] payload) {
+            this.requestId = requestId;
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public long getRequestId() {
+            return requestId;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    public static Serialization getSerialization() {
+        return SerializationSupport.getKryoSerialization();
+    }
+
+    /**
+     * Reads the next frame. Blocks until the whole frame is received.
+     */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        return readFrame(in, MAX_PAYLOAD_SIZE);
+    }
+
+    /**
+     * Reads the next frame. Blocks until the whole frame is received.
+     *
+     * @param maxPayloadSize maximum size of the payload, a larger frame is rejected before its payload is read
+     */
+    public static Frame readFrame(DataInputStream in, int maxPayloadSize) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxPayloadSize) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        long requestId = in.readLong();
+        byte type = in.readByte();
+        byte[] payload = length == 0 ? EMPTY : new byte[length];
+        in.readFully(payload);
+        return new Frame(requestId, type, payload);
+    }
+
+    /**
+     * Writes the frame and flushes the stream. Callers must not write frames to the same stream concurrently.
+     */
+    public static void writeFrame(DataOutputStream out, long requestId, byte type, byte[] payload) throws IOException {
+        out.writeInt(payload.length);
+        out.writeLong(requestId);
+        out.writeByte(type);
+        out.write(payload);
+        out.flush();
+    }
+
+    public static void writeFrame(DataOutputStream out, long requestId, byte type) throws IOException {
+        writeFrame(out, requestId, type, EMPTY);
+    }
+
+    /**
+     * Creates the payload of the {@link #HELLO} frame: HMAC of the challenge keyed by the trusted client password.
+     */
+    public static byte[] createHelloPayload(String trustedClientPassword, byte[] challenge) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(trustedClientPassword.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+            return mac.doFinal(challenge);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Unable to create handshake payload", e);
+        }
+    }
+
+    /**
+     * @return true if the payload of the {@link #HELLO} frame matches the challenge and the trusted client password
+     */
+    public static boolean checkHelloPayload(byte[] helloPayload, String trustedClientPassword, byte[] challenge) {
+        return MessageDigest.isEqual(helloPayload, createHelloPayload(trustedClientPassword, challenge));
+    }
+
+    /**
+     * Creates the payload of the {@link #INVOKE} frame.
+     */
+    public static byte[] createInvokePayload(String serviceName, Object invocation) {
+        byte[] name = serviceName.getBytes(StandardCharsets.UTF_8);
+        byte[] body = getSerialization().serialize(invocation);
+        byte[] payload = new byte[2 + name.length + body.length];
+        payload[0] = (byte) (name.length >>> 8);
+        payload[1] = (byte) name.length;
+        System.arraycopy(name, 0, payload, 2, name.length);
+        System.arraycopy(body, 0, payload, 2 + name.length, body.length);
+        return payload;
+    }
+
+    /**
+     * @return service name from the payload of the {@link #INVOKE} frame
+     */
+    public static String getServiceName(byte[] invokePayload) {
+        int length = ((invokePayload[0] & 0xFF) << 8) | (invokePayload[1] & 0xFF);
+        return new String(invokePayload, 2, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return deserialized invocation from the payload of the {@link #INVOKE} frame
+     */
+    public static Object getInvocation(byte[] invokePayload) {
+        int length = ((invokePayload[0] & 0xFF) << 8) | (invokePayload[1] & 0xFF);
+        return getSerialization().deserialize(
+                new ByteArrayInputStream(invokePayload, 2 + length, invokePayload.length - 2 - length));
+    }
+}
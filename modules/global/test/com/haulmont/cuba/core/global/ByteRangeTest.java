@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.global;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ByteRangeTest {
+
+    @Test
+    public void testParse() {
+        assertEquals(new ByteRange(0, 100), ByteRange.parse("bytes=0-99", 1000));
+        assertEquals(new ByteRange(900, 100), ByteRange.parse("bytes=900-", 1000));
+        assertEquals(new ByteRange(900, 100), ByteRange.parse("bytes=900-5000", 1000));
+        assertEquals(new ByteRange(950, 50), ByteRange.parse("bytes=-50", 1000));
+        assertEquals(new ByteRange(0, 1000), ByteRange.parse("bytes=-5000", 1000));
+    }
+
+    @Test
+    public void testIgnoredHeaders() {
+        assertNull(ByteRange.parse(null, 1000));
+        assertNull(ByteRange.parse("items=0-10", 1000));
+        assertNull(ByteRange.parse("bytes=0-10,20-30", 1000));
+        assertNull(ByteRange.parse("bytes=abc-", 1000));
+        assertNull(ByteRange.parse("bytes=10-5", 1000));
+    }
+
+    @Test
+    public void testUnsatisfiable() {
+        assertThrows(IllegalArgumentException.class, () -> ByteRange.parse("bytes=1000-", 1000));
+        assertThrows(IllegalArgumentException.class, () -> ByteRange.parse("bytes=-0", 1000));
+        assertThrows(IllegalArgumentException.class, () -> ByteRange.parse("bytes=0-", 0));
+    }
+
+    @Test
+    public void testHeaders() {
+        ByteRange range = new ByteRange(100, 50);
+        assertEquals("bytes=100-149", range.toRangeHeader());
+        assertEquals("bytes 100-149/1000", range.toContentRangeHeader(1000));
+        assertEquals("bytes=100-", new ByteRange(100, Long.MAX_VALUE).toRangeHeader());
+    }
+}
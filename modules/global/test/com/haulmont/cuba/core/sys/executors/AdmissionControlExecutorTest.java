@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControlExecutorTest {
+
+    private AdmissionControlExecutor executor;
+    private CountDownLatch release;
+
+    @BeforeEach
+    public void setUp() {
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTotalLimit() throws Exception {
+        executor = new AdmissionControlExecutor(VirtualThreadExecutors.newExecutor("AdmissionTest-"), 2, 10);
+
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch finished = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            executor.execute(() -> {
+                started.countDown();
+                await(release);
+                finished.countDown();
+            });
+        }
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(2, executor.getRunningCount());
+        assertEquals(1, executor.getQueuedCount());
+
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testKeyLimit() throws Exception {
+        executor = new AdmissionControlExecutor(VirtualThreadExecutors.newExecutor("AdmissionTest-"), 10, 10);
+
+        CountDownLatch started = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            executor.execute(() -> {
+                started.countDown();
+                await(release);
+            }, Collections.singletonList(AdmissionControlExecutor.limit("ui1", 1)));
+        }
+
+        // a task of another key is not blocked by the waiting one
+        CountDownLatch otherStarted = new CountDownLatch(1);
+        executor.execute(otherStarted::countDown,
+                Collections.singletonList(AdmissionControlExecutor.limit("ui2", 1)));
+        assertTrue(otherStarted.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, started.getCount());
+        assertEquals(1, executor.getQueuedCount());
+
+        release.countDown();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRejectWhenQueueIsFull() throws Exception {
+        executor = new AdmissionControlExecutor(VirtualThreadExecutors.newExecutor("AdmissionTest-"), 1, 1);
+
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        executor.execute(() -> {});
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+    }
+
+    @Test
+    public void testSubmit() throws Exception {
+        executor = new AdmissionControlExecutor(VirtualThreadExecutors.newExecutor("AdmissionTest-"), 1, 10);
+
+        Future<String> future = executor.submit(() -> "done");
+        assertEquals("done", future.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdownStartsQueuedTasks() throws Exception {
+        executor = new AdmissionControlExecutor(VirtualThreadExecutors.newExecutor("AdmissionTest-"), 1, 10);
+
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> queued = executor.submit(() -> "done");
+
+        executor.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+        assertFalse(executor.isTerminated());
+
+        release.countDown();
+        assertEquals("done", queued.get(5, TimeUnit.SECONDS));
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(executor.isTerminated());
+    }
+
+    @Test
+    public void testQueuedTaskRejectedByDelegateIsCancelled() throws Exception {
+        ExecutorService delegate = VirtualThreadExecutors.newExecutor("AdmissionTest-");
+        executor = new AdmissionControlExecutor(delegate, 1, 10);
+
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> queued = executor.submit(() -> "done");
+
+        delegate.shutdown();
+        release.countDown();
+
+        assertThrows(CancellationException.class, () -> queued.get(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getRunningCount());
+    }
+
+    @Test
+    public void testShutdownNowReturnsQueuedTasks() throws Exception {
+        executor = new AdmissionControlExecutor(VirtualThreadExecutors.newExecutor("AdmissionTest-"), 1, 10);
+
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> queued = executor.submit(() -> "done");
+
+        List<Runnable> notStarted = executor.shutdownNow();
+        assertEquals(Collections.singletonList(queued), notStarted);
+        assertEquals(0, executor.getQueuedCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.remoting.binary;
+
+import com.haulmont.cuba.core.sys.remoting.binary.BinaryRemotingProtocol.Frame;
+import com.haulmont.cuba.core.sys.remoting.discovery.SessionUrlsHolder;
+import com.haulmont.cuba.core.sys.remoting.discovery.StaticServerSelector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryRemotingClientTest {
+
+    private static final String PASSWORD = "secret";
+
+    private ServerSocket serverSocket;
+    private ExecutorService serverExecutor;
+    private BinaryRemotingClient client;
+    private StaticServerSelector selector;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0);
+        serverExecutor = Executors.newSingleThreadExecutor();
+        client = new BinaryRemotingClient(serverSocket.getLocalPort(), false, PASSWORD, 5000, 5000);
+
+        selector = createSelector("http://localhost:8080/app-core");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        client.close();
+        serverSocket.close();
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testSingleResult() throws Exception {
+        serve((frame, out) -> {
+            assertEquals(BinaryRemotingProtocol.INVOKE, frame.getType());
+            assertEquals("test_Service", BinaryRemotingProtocol.getServiceName(frame.getPayload()));
+
+            RemoteInvocation invocation = (RemoteInvocation) BinaryRemotingProtocol.getInvocation(frame.getPayload());
+            assertEquals("hello", invocation.getMethodName());
+
+            byte[] result = BinaryRemotingProtocol.getSerialization().serialize(
+                    new RemoteInvocationResult("Hello, " + invocation.getArguments()[0]));
+            BinaryRemotingProtocol.writeFrame(out, frame.getRequestId(), BinaryRemotingProtocol.RESULT, result);
+        });
+
+        RemoteInvocationResult result = client.invoke(selector, "test_Service", createInvocation("hello", "world"));
+        assertNotNull(result);
+        assertEquals("Hello, world", result.getValue());
+    }
+
+    @Test
+    public void testChunkedResult() throws Exception {
+        serve((frame, out) -> {
+            List<String> shared = new ArrayList<>(Collections.singletonList("shared"));
+            byte[] result = BinaryRemotingProtocol.getSerialization().serialize(
+                    new RemoteInvocationResult(new ArrayList<>(Arrays.asList(shared, "value", shared))));
+            int chunk = result.length / 3;
+            BinaryRemotingProtocol.writeFrame(out, frame.getRequestId(), BinaryRemotingProtocol.RESULT_CHUNK,
+                    Arrays.copyOfRange(result, 0, chunk));
+            BinaryRemotingProtocol.writeFrame(out, frame.getRequestId(), BinaryRemotingProtocol.RESULT_CHUNK,
+                    Arrays.copyOfRange(result, chunk, chunk * 2));
+            BinaryRemotingProtocol.writeFrame(out, frame.getRequestId(), BinaryRemotingProtocol.RESULT,
+                    Arrays.copyOfRange(result, chunk * 2, result.length));
+        });
+
+        RemoteInvocationResult result = client.invoke(selector, "test_Service", createInvocation("load", "all"));
+        assertNotNull(result);
+        List<?> value = (List<?>) result.getValue();
+        assertEquals(3, value.size());
+        assertEquals("value", value.get(1));
+        assertSame(value.get(0), value.get(2));
+    }
+
+    @Test
+    public void testErrorAfterChunk() throws Exception {
+        serve((frame, out) -> {
+            byte[] result = BinaryRemotingProtocol.getSerialization().serialize(
+                    new RemoteInvocationResult(Collections.nCopies(1000, "value")));
+            BinaryRemotingProtocol.writeFrame(out, frame.getRequestId(), BinaryRemotingProtocol.RESULT_CHUNK,
+                    Arrays.copyOfRange(result, 0, result.length / 2));
+            BinaryRemotingProtocol.writeFrame(out, frame.getRequestId(), BinaryRemotingProtocol.ERROR,
+                    BinaryRemotingProtocol.getSerialization().serialize(
+                            new RemoteInvocationResult(new RemoteAccessException("Failed to write result"))));
+        });
+
+        RemoteInvocationResult result = client.invoke(selector, "test_Service", createInvocation("load", "all"));
+        assertNotNull(result);
+        assertTrue(result.getException() instanceof RemoteAccessException);
+        assertEquals("Failed to write result", result.getException().getMessage());
+    }
+
+    @Test
+    public void testDefaultReadTimeout() {
+        BinaryRemotingClient defaultClient = new BinaryRemotingClient(serverSocket.getLocalPort(), false, PASSWORD,
+                -1, -1);
+        assertEquals(BinaryRemotingClient.DEFAULT_READ_TIMEOUT, defaultClient.readTimeout);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        BlockingQueue<Frame> received = new LinkedBlockingQueue<>();
+        serve((frame, out) -> {
+            received.add(frame);
+        });
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread caller = new Thread(() -> {
+            try {
+                client.invoke(selector, "test_Service", createInvocation("load", "all"));
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        caller.start();
+
+        Frame invoke = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(invoke);
+        assertEquals(BinaryRemotingProtocol.INVOKE, invoke.getType());
+
+        caller.interrupt();
+        caller.join(5000);
+        assertTrue(error.get() instanceof RemoteAccessException);
+
+        Frame cancel = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(cancel);
+        assertEquals(BinaryRemotingProtocol.CANCEL, cancel.getType());
+        assertEquals(invoke.getRequestId(), cancel.getRequestId());
+    }
+
+    @Test
+    public void testFallbackIfNotAvailable() throws Exception {
+        int port = serverSocket.getLocalPort();
+        serverSocket.close();
+
+        BinaryRemotingClient unavailableClient = new BinaryRemotingClient(port, false, PASSWORD, 1000, 1000);
+        assertNull(unavailableClient.invoke(selector, "test_Service", createInvocation("hello", "world")));
+    }
+
+    @Test
+    public void testFallbackIfNotAuthenticated() throws Exception {
+        BlockingQueue<Frame> received = new LinkedBlockingQueue<>();
+        serve("another", (frame, out) -> {
+            received.add(frame);
+        });
+
+        assertNull(client.invoke(selector, "test_Service", createInvocation("hello", "world")));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void testHttpsRequiresTls() throws Exception {
+        BlockingQueue<Frame> received = new LinkedBlockingQueue<>();
+        serve((frame, out) -> {
+            received.add(frame);
+        });
+
+        StaticServerSelector httpsSelector = createSelector("https://localhost:8443/app-core");
+        assertNull(client.invoke(httpsSelector, "test_Service", createInvocation("hello", "world")));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void testPortOffset() throws Exception {
+        serve((frame, out) -> {
+            byte[] result = BinaryRemotingProtocol.getSerialization().serialize(new RemoteInvocationResult("OK"));
+            BinaryRemotingProtocol.writeFrame(out, frame.getRequestId(), BinaryRemotingProtocol.RESULT, result);
+        });
+
+        int port = serverSocket.getLocalPort();
+        BinaryRemotingClient offsetClient = new BinaryRemotingClient(1, true, PASSWORD, 1000, 1000);
+        try {
+            StaticServerSelector portSelector = createSelector("http://localhost:" + (port - 1) + "/app-core");
+            RemoteInvocationResult result = offsetClient.invoke(portSelector, "test_Service",
+                    createInvocation("hello", "world"));
+            assertNotNull(result);
+            assertEquals("OK", result.getValue());
+        } finally {
+            offsetClient.close();
+        }
+    }
+
+    @Test
+    public void testFrameSizeLimit() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryRemotingProtocol.writeFrame(new DataOutputStream(bytes), 1, BinaryRemotingProtocol.HELLO,
+                new byte[BinaryRemotingProtocol.MAX_HANDSHAKE_PAYLOAD_SIZE + 1]);
+
+        assertThrows(IOException.class, () -> BinaryRemotingProtocol.readFrame(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                BinaryRemotingProtocol.MAX_HANDSHAKE_PAYLOAD_SIZE));
+    }
+
+    private StaticServerSelector createSelector(String url) {
+        StaticServerSelector serverSelector = new StaticServerSelector() {
+            @Nullable
+            @Override
+            protected SessionUrlsHolder getSessionUrlsHolder() {
+                return null;
+            }
+        };
+        serverSelector.setBaseUrl(url);
+        serverSelector.setServerSorter(strings -> {});
+        serverSelector.init();
+        return serverSelector;
+    }
+
+    private RemoteInvocation createInvocation(String methodName, String argument) {
+        return new RemoteInvocation(methodName, new Class[]{String.class}, new Object[]{argument});
+    }
+
+    private interface FrameHandler {
+        void handle(Frame frame, DataOutputStream out) throws IOException;
+    }
+
+    private void serve(FrameHandler handler) {
+        serve(PASSWORD, handler);
+    }
+
+    private void serve(String password, FrameHandler handler) {
+        serverExecutor.submit(() -> {
+            try (Socket socket = serverSocket.accept()) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+                byte[] challenge = new byte[32];
+                new Random().nextBytes(challenge);
+                BinaryRemotingProtocol.writeFrame(out, 0, BinaryRemotingProtocol.CHALLENGE, challenge);
+                Frame hello = BinaryRemotingProtocol.readFrame(in, BinaryRemotingProtocol.MAX_HANDSHAKE_PAYLOAD_SIZE);
+                if (!BinaryRemotingProtocol.checkHelloPayload(hello.getPayload(), password, challenge)) {
+                    return null;
+                }
+                BinaryRemotingProtocol.writeFrame(out, 0, BinaryRemotingProtocol.ACCEPTED);
+
+                while (true) {
+                    handler.handle(BinaryRemotingProtocol.readFrame(in), out);
+                }
+            } catch (IOException e) {
+                // connection is closed by the client
+            }
+            return null;
+        });
+    }
+}
@@ -41,6 +41,7 @@ public class AggregationInfo {
     private Function<Object, String> formatter;
     private AggregationStrategy strategy;
     protected boolean editable = false;
+    protected boolean database = false;
 
     public MetaPropertyPath getPropertyPath() {
         return propertyPath;
@@ -84,4 +85,20 @@ public class AggregationInfo {
     public void setEditable(boolean editable) {
         this.editable = editable;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return true if the aggregation should be computed on the database over all entities of the loader query
+     */
+    public boolean isDatabase() {
+        return database;
+    }
+
+    /**
+     * Sets whether the aggregation should be computed on the database over all entities selected by the query
+     * of the container's loader instead of the loaded items. Applies to SUM, AVG, COUNT, MIN and MAX of
+     * persistent attributes, other aggregations are computed in memory.
+     */
+    public void setDatabase(boolean database) {
+        this.database = database;
+    }
+}
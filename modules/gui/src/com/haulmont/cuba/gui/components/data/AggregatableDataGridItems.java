@@ -42,4 +42,34 @@ public interface AggregatableDataGridItems<E extends Entity> extends DataGridIte
      * @return map with aggregation info and aggregation column type
      */
     Map<AggregationInfo, Object> aggregateValues(AggregationInfo[] aggregationInfos, Collection<?> itemIds);
+
+    /**
+     * Perform aggregation and return map with formatted string values.
+     *
+     * @param aggregationInfos aggregation infos
+     * @param itemIds          collection of item ids
+     * @param totalAggregation true if the items are aggregated for the total row of the data grid, which allows
+     *                         computing {@link AggregationInfo#isDatabase()} aggregations over all entities of the
+     *                         loader query
+     * @return map with aggregation info and formatted string values
+     */
+    default Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection<?> itemIds,
+                                                   boolean totalAggregation) {
+        return aggregate(aggregationInfos, itemIds);
+    }
+
+    /**
+     * Perform aggregation and return map with aggregation info and aggregation column type.
+     *
+     * @param aggregationInfos aggregation infos
+     * @param itemIds          collection of item ids
+     * @param totalAggregation true if the items are aggregated for the total row of the data grid, which allows
+     *                         computing {@link AggregationInfo#isDatabase()} aggregations over all entities of the
+     *                         loader query
+     * @return map with aggregation info and aggregation column type
+     */
+    default Map<AggregationInfo, Object> aggregateValues(AggregationInfo[] aggregationInfos, Collection<?> itemIds,
+                                                         boolean totalAggregation) {
+        return aggregateValues(aggregationInfos, itemIds);
+    }
 }
@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.components.data.aggregation;
+
+import com.haulmont.bali.events.Subscription;
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.MetaPropertyPath;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.KeyValueEntity;
+import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.gui.components.AggregationInfo;
+import com.haulmont.cuba.gui.data.aggregation.Aggregation;
+import com.haulmont.cuba.gui.data.aggregation.Aggregations;
+import com.haulmont.cuba.gui.model.CollectionContainer;
+import com.haulmont.cuba.gui.model.CollectionLoader;
+import com.haulmont.cuba.gui.model.DataLoader;
+import com.haulmont.cuba.gui.model.HasLoader;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Computes aggregates of the columns marked by {@link AggregationInfo#isDatabase()} on the database.
+ * <p>
+ * The aggregates are calculated over all entities selected by the query of the container's {@link CollectionLoader}
+ * including its condition, parameters and security constraints, regardless of the paging. All requested aggregates
+ * are computed by a single {@link ValueLoadContext} query:
+ * <pre>
+ *     select sum(a.amount), max(a.date) from sales$Order a where a.id in (select e.id from sales$Order e where ...)
+ * </pre>
+ * The results are cached until the loader loads data again.
+ *
+ * @param <E> type of entities
+ */
+public class DatabaseAggregationLoader<E extends Entity> {
+
+    protected static final String ALIAS = "cubaAgg";
+
+    protected final CollectionContainer<E> container;
+
+    protected CollectionLoader<E> subscribedLoader;
+    protected Subscription postLoadSubscription;
+
+    protected final Map<AggregationInfo, Object> cache = new HashMap<>();
+
+    public DatabaseAggregationLoader(CollectionContainer<E> container) {
+        this.container = container;
+    }
+
+    /**
+     * @return true if the aggregation is marked as database one and can be translated to JPQL: it has no custom
+     * strategy, its property path is persistent and the container is loaded by a collection loader with a query
+     */
+    public boolean isSupported(AggregationInfo info) {
+        return info.isDatabase() && isTranslatable(info);
+    }
+
+    /**
+     * @return true if the aggregation can be translated to JPQL regardless of {@link AggregationInfo#isDatabase()}
+     */
+    public boolean isTranslatable(AggregationInfo info) {
+        if (info.getStrategy() != null
+                || info.getType() == null
+                || info.getType() == AggregationInfo.Type.CUSTOM) {
+            return false;
+        }
+
+        MetaPropertyPath propertyPath = info.getPropertyPath();
+        if (propertyPath == null || !propertyPath.getRange().isDatatype()) {
+            return false;
+        }
+
+        MetadataTools metadataTools = AppBeans.get(MetadataTools.NAME);
+        if (!metadataTools.isPersistent(container.getEntityMetaClass())
+                || !metadataTools.isPersistent(propertyPath)) {
+            return false;
+        }
+
+        Aggregation aggregation = Aggregations.get(propertyPath.getRangeJavaClass());
+        if (aggregation == null || !aggregation.getSupportedAggregationTypes().contains(info.getType())) {
+            return false;
+        }
+
+        CollectionLoader<E> loader = getLoader();
+        return loader != null && loader.getQuery() != null;
+    }
+
+    /**
+     * Computes the supported aggregations on the database for the total row of a table or a data grid. Group rows
+     * and other aggregations are passed to the in-memory aggregation function.
+     *
+     * @param infos               aggregations to compute
+     * @param totalAggregation    true if the aggregations are computed for the total row
+     * @param inMemoryAggregation function computing the given aggregations over the loaded items
+     * @return aggregated values
+     */
+    public Map<AggregationInfo, Object> aggregate(AggregationInfo[] infos, boolean totalAggregation,
+                                                  Function<AggregationInfo[], Map<AggregationInfo, Object>> inMemoryAggregation) {
+        List<AggregationInfo> databaseInfos = new ArrayList<>();
+        List<AggregationInfo> inMemoryInfos = new ArrayList<>();
+        for (AggregationInfo info : infos) {
+            if (totalAggregation && isSupported(info)) {
+                databaseInfos.add(info);
+            } else {
+                inMemoryInfos.add(info);
+            }
+        }
+
+        if (databaseInfos.isEmpty()) {
+            return inMemoryAggregation.apply(infos);
+        }
+
+        Map<AggregationInfo, Object> result = new HashMap<>(aggregate(databaseInfos));
+        if (!inMemoryInfos.isEmpty()) {
+            result.putAll(inMemoryAggregation.apply(inMemoryInfos.toArray(new AggregationInfo[0])));
+        }
+        return result;
+    }
+
+    /**
+     * Returns aggregated values, loading the ones missing in the cache by a single query.
+     *
+     * @param infos aggregations supported by this loader, see {@link #isSupported(AggregationInfo)}
+     * @return values in the same form as the in-memory aggregation returns
+     */
+    public Map<AggregationInfo, Object> aggregate(Collection<AggregationInfo> infos) {
+        CollectionLoader<E> loader = getLoader();
+        if (loader == null) {
+            throw new IllegalStateException("Container is not loaded by a collection loader");
+        }
+        subscribe(loader);
+
+        List<AggregationInfo> missing = new ArrayList<>();
+        for (AggregationInfo info : infos) {
+            if (!cache.containsKey(info)) {
+                missing.add(info);
+            }
+        }
+        if (!missing.isEmpty()) {
+            cache.putAll(loadAggregates(loader, missing));
+        }
+
+        Map<AggregationInfo, Object> result = new HashMap<>();
+        for (AggregationInfo info : infos) {
+            result.put(info, cache.get(info));
+        }
+        return result;
+    }
+
+    /**
+     * Drops the cached values, they will be loaded on the next request.
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    protected CollectionLoader<E> getLoader() {
+        if (container instanceof HasLoader) {
+            DataLoader loader = ((HasLoader) container).getLoader();
+            if (loader instanceof CollectionLoader) {
+                return (CollectionLoader<E>) loader;
+            }
+        }
+        return null;
+    }
+
+    protected void subscribe(CollectionLoader<E> loader) {
+        if (loader == subscribedLoader) {
+            return;
+        }
+        if (postLoadSubscription != null) {
+            postLoadSubscription.remove();
+        }
+        cache.clear();
+        subscribedLoader = loader;
+        postLoadSubscription = loader.addPostLoadListener(event -> clearCache());
+    }
+
+    protected Map<AggregationInfo, Object> loadAggregates(CollectionLoader<E> loader, List<AggregationInfo> infos) {
+        LoadContext.Query loaderQuery = loader.createLoadContext().getQuery();
+        if (loaderQuery == null || loaderQuery.getQueryString() == null) {
+            throw new IllegalStateException("Database aggregation requires the loader query");
+        }
+
+        MetaClass metaClass = container.getEntityMetaClass();
+        MetadataTools metadataTools = AppBeans.get(MetadataTools.NAME);
+        String pkName = metadataTools.getPrimaryKeyName(metaClass);
+
+        // select ids of all entities of the loader query, paging is not set to the value query
+        QueryTransformer transformer = QueryTransformerFactory.createTransformer(loaderQuery.getQueryString());
+        transformer.replaceWithSelectId(pkName);
+        transformer.removeOrderBy();
+
+        StringBuilder select = new StringBuilder();
+        List<String> properties = new ArrayList<>(infos.size());
+        for (int i = 0; i < infos.size(); i++) {
+            AggregationInfo info = infos.get(i);
+            if (i > 0) {
+                select.append(", ");
+            }
+            select.append(getFunction(info.getType()))
+                    .append("(").append(ALIAS).append(".").append(info.getPropertyPath().toPathString()).append(")");
+            properties.add("aggregate" + i);
+        }
+
+        String queryString = "select " + select +
+                " from " + metaClass.getName() + " " + ALIAS +
+                " where " + ALIAS + "." + pkName + " in (" + transformer.getResult() + ")";
+
+        ValueLoadContext.Query query = ValueLoadContext.createQuery(queryString)
+                .setParameters(loaderQuery.getParameters())
+                .setCondition(loaderQuery.getCondition());
+        String[] noConversionParams = loaderQuery.getNoConversionParams();
+        if (noConversionParams != null) {
+            for (String name : noConversionParams) {
+                query.setParameter(name, loaderQuery.getParameters().get(name), false);
+            }
+        }
+
+        ValueLoadContext context = ValueLoadContext.create()
+                .setQuery(query)
+                .setProperties(properties)
+                .setSoftDeletion(loader.isSoftDeletion());
+
+        DataManager dataManager = AppBeans.get(DataManager.NAME);
+        List<KeyValueEntity> rows = dataManager.loadValues(context);
+        KeyValueEntity row = rows.isEmpty() ? null : rows.get(0);
+
+        Map<AggregationInfo, Object> result = new HashMap<>();
+        for (int i = 0; i < infos.size(); i++) {
+            AggregationInfo info = infos.get(i);
+            Object value = row != null ? row.getValue(properties.get(i)) : null;
+            result.put(info, convertValue(info, value));
+        }
+        return result;
+    }
+
+    /**
+     * @return JPQL aggregate function of the given aggregation type
+     */
+    public String getFunction(AggregationInfo.Type type) {
+        switch (type) {
+            case SUM:
+                return "sum";
+            case AVG:
+                return "avg";
+            case COUNT:
+                return "count";
+            case MIN:
+                return "min";
+            case MAX:
+                return "max";
+            default:
+                throw new IllegalArgumentException(String.format("Unsupported aggregation type: %s", type));
+        }
+    }
+
+    /**
+     * Converts a value returned by the database to the result class of the in-memory aggregation, e.g. the sum of
+     * an integer attribute is returned by JPQL as {@code Long} and the average as {@code Double}.
+     */
+    @Nullable
+    public Object convertValue(AggregationInfo info, @Nullable Object value) {
+        if (info.getType() == AggregationInfo.Type.COUNT) {
+            return value == null ? 0 : ((Number) value).intValue();
+        }
+        if (!(value instanceof Number)) {
+            return value;
+        }
+
+        Number number = (Number) value;
+        Class resultClass = Aggregations.get(info.getPropertyPath().getRangeJavaClass()).getResultClass();
+        if (resultClass == Long.class) {
+            return number.longValue();
+        } else if (resultClass == Integer.class) {
+            return number.intValue();
+        } else if (resultClass == Double.class) {
+            return number.doubleValue();
+        } else if (resultClass == BigDecimal.class) {
+            return number instanceof BigDecimal ? number : new BigDecimal(number.toString());
+        }
+        return value;
+    }
+}
@@ -26,6 +26,7 @@ import com.haulmont.cuba.gui.components.AggregationInfo;
 import com.haulmont.cuba.gui.components.data.AggregatableDataGridItems;
 import com.haulmont.cuba.gui.components.data.BindingState;
 import com.haulmont.cuba.gui.components.data.DataGridItems;
+import com.haulmont.cuba.gui.components.data.aggregation.DatabaseAggregationLoader;
 import com.haulmont.cuba.gui.components.data.meta.ContainerDataUnit;
 import com.haulmont.cuba.gui.components.data.meta.EntityDataGridItems;
 import com.haulmont.cuba.gui.data.impl.AggregatableDelegate;
@@ -53,6 +54,7 @@ public class ContainerDataGridItems<E extends Entity>
     protected boolean suppressSorting;
 
     protected AggregatableDelegate aggregatableDelegate;
+    protected DatabaseAggregationLoader<E> databaseAggregationLoader;
 
     protected EventHub events = new EventHub();
 
@@ -62,6 +64,7 @@ public class ContainerDataGridItems<E extends Entity>
         this.container.addCollectionChangeListener(this::containerCollectionChanged);
         this.container.addItemPropertyChangeListener(this::containerItemPropertyChanged);
 
+        this.databaseAggregationLoader = new DatabaseAggregationLoader<>(container);
         this.aggregatableDelegate = createAggregatableDelegate();
     }
 
@@ -232,6 +235,20 @@ public class ContainerDataGridItems<E extends Entity>
         return aggregatableDelegate.aggregateValues(aggregationInfos, itemIds);
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection<?> itemIds,
+                                                  boolean totalAggregation) {
+        return aggregatableDelegate.aggregate(aggregationInfos, itemIds, totalAggregation);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<AggregationInfo, Object> aggregateValues(AggregationInfo[] aggregationInfos, Collection<?> itemIds,
+                                                        boolean totalAggregation) {
+        return aggregatableDelegate.aggregateValues(aggregationInfos, itemIds, totalAggregation);
+    }
+
     protected AggregatableDelegate createAggregatableDelegate() {
         return new AggregatableDelegate() {
             @Override
@@ -243,6 +260,15 @@ public class ContainerDataGridItems<E extends Entity>
             public Object getItemValue(MetaPropertyPath property, Object itemId) {
                 return container.getItem(itemId).getValueEx(property);
             }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            protected Map<AggregationInfo, Object> doValuesAggregation(Collection itemIds,
+                                                                      AggregationInfo[] aggregationInfos,
+                                                                      boolean totalAggregation) {
+                return databaseAggregationLoader.aggregate(aggregationInfos, totalAggregation,
+                        infos -> super.doValuesAggregation(itemIds, infos));
+            }
         };
     }
 }
\ No newline at end of file
@@ -19,6 +19,7 @@ package com.haulmont.cuba.gui.components.data.datagrid;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.gui.components.data.TreeDataGridItems;
+import com.haulmont.cuba.gui.components.data.tree.HierarchyIndex;
 import com.haulmont.cuba.gui.model.CollectionContainer;
 
 import javax.annotation.Nullable;
@@ -31,45 +32,53 @@ public class ContainerTreeDataGridItems<E extends Entity>
     private final String hierarchyProperty;
     private final boolean showOrphans;
 
+    protected final HierarchyIndex<E> hierarchyIndex;
+
     public ContainerTreeDataGridItems(CollectionContainer<E> container, String hierarchyProperty, boolean showOrphans) {
         super(container);
         this.hierarchyProperty = hierarchyProperty;
         this.showOrphans = showOrphans;
+        this.hierarchyIndex = new HierarchyIndex<>(hierarchyProperty, showOrphans,
+                container::getItems, container::getItemIndex);
     }
 
     public ContainerTreeDataGridItems(CollectionContainer<E> container, String hierarchyProperty) {
         this(container, hierarchyProperty, true);
     }
 
+    @Override
+    protected void containerCollectionChanged(CollectionContainer.CollectionChangeEvent<E> e) {
+        hierarchyIndex.collectionChanged(e.getChangeType(), e.getChanges());
+        super.containerCollectionChanged(e);
+    }
+
+    @Override
+    protected void containerItemPropertyChanged(CollectionContainer.ItemPropertyChangeEvent<E> e) {
+        if (hierarchyProperty.equals(e.getProperty())) {
+            hierarchyIndex.parentChanged(e.getItem());
+        }
+        super.containerItemPropertyChanged(e);
+    }
+
     @Override
     public int getChildCount(E parent) {
-        return Math.toIntExact(getChildren(parent).count());
+        if (parent == null) {
+            return hierarchyIndex.getRootItems().size();
+        }
+        return hierarchyIndex.getChildCount(parent.getId());
     }
 
     @Override
     public Stream<E> getChildren(E item) {
         if (item == null) {
-            // root items
-            return container.getItems().stream()
-                    .filter(it -> {
-                        E parentItem = it.getValue(hierarchyProperty);
-                        return parentItem == null || (showOrphans && container.getItemOrNull(parentItem.getId()) == null);
-                    });
-        } else {
-            return container.getItems().stream()
-                    .filter(it -> {
-                        E parentItem = it.getValue(hierarchyProperty);
-                        return parentItem != null && parentItem.equals(item);
-                    });
+            return hierarchyIndex.getRootItems().stream();
         }
+        return hierarchyIndex.getChildren(item.getId()).stream();
     }
 
     @Override
     public boolean hasChildren(E item) {
-        return container.getItems().stream().anyMatch(it -> {
-            E parentItem = it.getValue(hierarchyProperty);
-            return parentItem != null && parentItem.equals(item);
-        });
+        return hierarchyIndex.hasChildren(item.getId());
     }
 
     @Nullable
@@ -26,6 +26,7 @@ import com.haulmont.cuba.gui.components.AggregationInfo;
 import com.haulmont.cuba.gui.components.data.AggregatableTableItems;
 import com.haulmont.cuba.gui.components.data.BindingState;
 import com.haulmont.cuba.gui.components.data.TableItems;
+import com.haulmont.cuba.gui.components.data.aggregation.DatabaseAggregationLoader;
 import com.haulmont.cuba.gui.components.data.meta.ContainerDataUnit;
 import com.haulmont.cuba.gui.components.data.meta.EntityTableItems;
 import com.haulmont.cuba.gui.data.impl.AggregatableDelegate;
@@ -53,6 +54,7 @@ public class ContainerTableItems<E extends Entity> implements EntityTableItems<E
     protected CollectionContainer<E> container;
 
     protected AggregatableDelegate aggregatableDelegate;
+    protected DatabaseAggregationLoader<E> databaseAggregationLoader;
 
     protected boolean suppressSorting;
 
@@ -64,6 +66,7 @@ public class ContainerTableItems<E extends Entity> implements EntityTableItems<E
         this.container.addCollectionChangeListener(this::containerCollectionChanged);
         this.container.addItemPropertyChangeListener(this::containerItemPropertyChanged);
 
+        this.databaseAggregationLoader = new DatabaseAggregationLoader<>(container);
         this.aggregatableDelegate = createAggregatableDelegate();
     }
 
@@ -78,6 +81,15 @@ public class ContainerTableItems<E extends Entity> implements EntityTableItems<E
             public Object getItemValue(MetaPropertyPath property, Object itemId) {
                 return ContainerTableItems.this.getItemValue(itemId, property);
             }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            protected Map<AggregationInfo, Object> doValuesAggregation(Collection itemIds,
+                                                                      AggregationInfo[] aggregationInfos,
+                                                                      boolean totalAggregation) {
+                return databaseAggregationLoader.aggregate(aggregationInfos, totalAggregation,
+                        infos -> super.doValuesAggregation(itemIds, infos));
+            }
         };
     }
 
@@ -294,6 +306,20 @@ public class ContainerTableItems<E extends Entity> implements EntityTableItems<E
         return aggregatableDelegate.aggregateValues(aggregationInfos, itemIds);
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection<?> itemIds,
+                                                  boolean totalAggregation) {
+        return aggregatableDelegate.aggregate(aggregationInfos, itemIds, totalAggregation);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<AggregationInfo, Object> aggregateValues(AggregationInfo[] aggregationInfos, Collection<?> itemIds,
+                                                        boolean totalAggregation) {
+        return aggregatableDelegate.aggregateValues(aggregationInfos, itemIds, totalAggregation);
+    }
+
     @Override
     public void suppressSorting() {
         suppressSorting = true;
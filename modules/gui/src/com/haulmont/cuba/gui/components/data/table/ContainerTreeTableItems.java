@@ -16,9 +16,9 @@
 
 package com.haulmont.cuba.gui.components.data.table;
 
-import com.haulmont.chile.core.model.Instance;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.gui.components.data.TreeTableItems;
+import com.haulmont.cuba.gui.components.data.tree.HierarchyIndex;
 import com.haulmont.cuba.gui.model.CollectionContainer;
 
 import java.util.*;
@@ -30,10 +30,15 @@ public class ContainerTreeTableItems<E extends Entity>
     private final String hierarchyProperty;
     private final boolean showOrphans;
 
+    protected final HierarchyIndex<E> hierarchyIndex;
+
     public ContainerTreeTableItems(CollectionContainer<E> container, String hierarchyProperty, boolean showOrphans) {
         super(container);
         this.hierarchyProperty = hierarchyProperty;
         this.showOrphans = showOrphans;
+        this.hierarchyIndex = hierarchyProperty != null
+                ? new HierarchyIndex<>(hierarchyProperty, showOrphans, container::getItems, container::getItemIndex)
+                : null;
     }
 
     public ContainerTreeTableItems(CollectionContainer<E> container, String hierarchyProperty) {
@@ -46,54 +51,49 @@ public class ContainerTreeTableItems<E extends Entity>
     }
 
     @Override
-    public Collection<?> getRootItemIds() {
-        Collection<?> ids = getItemIds();
+    protected void containerCollectionChanged(CollectionContainer.CollectionChangeEvent<E> e) {
+        if (hierarchyIndex != null) {
+            hierarchyIndex.collectionChanged(e.getChangeType(), e.getChanges());
+        }
+        super.containerCollectionChanged(e);
+    }
 
-        if (hierarchyProperty != null) {
+    @Override
+    protected void containerItemPropertyChanged(CollectionContainer.ItemPropertyChangeEvent<E> e) {
+        if (hierarchyIndex != null && hierarchyProperty.equals(e.getProperty())) {
+            hierarchyIndex.parentChanged(e.getItem());
+        }
+        super.containerItemPropertyChanged(e);
+    }
+
+    @Override
+    public Collection<?> getRootItemIds() {
+        if (hierarchyIndex != null) {
             Set<Object> result = new LinkedHashSet<>();
-            for (Object id : ids) {
-                Entity item = getItemNN(id);
-                Entity parentItem = item.getValue(hierarchyProperty);
-                if (parentItem == null || (showOrphans && container.getItemOrNull(parentItem.getId()) == null))
-                    result.add(item.getId());
+            for (E item : hierarchyIndex.getRootItems()) {
+                result.add(item.getId());
             }
             return result;
         } else {
-            return new LinkedHashSet<>(ids);
+            return new LinkedHashSet<>(getItemIds());
         }
     }
 
     @Override
     public Object getParent(Object itemId) {
-        if (hierarchyProperty != null) {
-            Instance item = getItem(itemId);
-            if (item == null)
-                return null;
-            else {
-                Entity parentItem = item.getValue(hierarchyProperty);
-                return parentItem == null ? null : parentItem.getId();
-            }
+        if (hierarchyIndex != null) {
+            return hierarchyIndex.getParentId(itemId);
         }
         return null;
     }
 
     @Override
     public Collection<?> getChildren(Object itemId) {
-        if (hierarchyProperty != null) {
-            Entity currentItem = getItem(itemId);
-            if (currentItem == null)
-                return Collections.emptyList();
-
+        if (hierarchyIndex != null) {
             List<Object> res = new ArrayList<>();
-
-            Collection ids = getItemIds();
-            for (Object id : ids) {
-                Entity item = getItemNN(id);
-                Entity parentItem = item.getValue(hierarchyProperty);
-                if (parentItem != null && parentItem.getId().equals(itemId))
-                    res.add(item.getId());
+            for (E item : hierarchyIndex.getChildren(itemId)) {
+                res.add(item.getId());
             }
-
             return res;
         }
         return Collections.emptyList();
@@ -101,34 +101,16 @@ public class ContainerTreeTableItems<E extends Entity>
 
     @Override
     public boolean isRoot(Object itemId) {
-        Instance item = getItem(itemId);
-        if (item == null) return false;
-
-        if (hierarchyProperty != null) {
-            Entity parentItem = item.getValue(hierarchyProperty);
-            return (parentItem == null || (showOrphans && container.getItemOrNull(parentItem.getId()) == null));
+        if (hierarchyIndex != null) {
+            return hierarchyIndex.isRoot(itemId);
         } else {
-            return true;
+            return container.containsItem(itemId);
         }
     }
 
     @Override
     public boolean hasChildren(Object itemId) {
-        Entity currentItem = getItem(itemId);
-        if (currentItem == null)
-            return false;
-
-        if (hierarchyProperty != null) {
-            Collection ids = getItemIds();
-            for (Object id : ids) {
-                Entity item = getItemNN(id);
-                Entity parentItem = item.getValue(hierarchyProperty);
-                if (parentItem != null && parentItem.getId().equals(itemId))
-                    return true;
-            }
-        }
-
-        return false;
+        return hierarchyIndex != null && hierarchyIndex.hasChildren(itemId);
     }
 
     @Override
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.components.data.table;
+
+import com.haulmont.chile.core.model.MetaPropertyPath;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.gui.components.AggregationInfo;
+import com.haulmont.cuba.gui.data.GroupInfo;
+import com.haulmont.cuba.gui.data.impl.AggregatableDelegate;
+import com.haulmont.cuba.gui.model.CollectionContainer;
+import com.haulmont.cuba.gui.model.CollectionLoader;
+import org.apache.commons.collections4.map.LinkedMap;
+import org.apache.commons.lang3.ArrayUtils;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Group table items grouping entities on the database: while the table is grouped, {@link CollectionLoader#load()}
+ * loads only the groups with numbers of their entities, and entities of a group are loaded by pages when the table
+ * shows the expanded group. Aggregates of groups and the total aggregates that can be translated to JPQL are computed
+ * on the database as well. Without grouping the loader loads entities as usual.
+ *
+ * @see LazyGroupLoader
+ */
+public class LazyContainerGroupTableItems<E extends Entity<K>, K> extends ContainerGroupTableItems<E, K> {
+
+    protected final LazyGroupLoader<E> lazyLoader;
+
+    protected Map<GroupInfo, Integer> groupCounts = new HashMap<>();
+    protected Map<GroupInfo, List<Object>> groupKeys = new HashMap<>();
+
+    public LazyContainerGroupTableItems(CollectionLoader<E> loader) {
+        super(loader.getContainer());
+        this.lazyLoader = new LazyGroupLoader<>(loader);
+    }
+
+    public LazyGroupLoader<E> getLazyLoader() {
+        return lazyLoader;
+    }
+
+    @Override
+    public void groupBy(Object[] properties) {
+        boolean ungroup = properties != null && ArrayUtils.isEmpty(properties) && lazyLoader.isGrouped();
+
+        super.groupBy(properties);
+
+        if (ungroup && !isGrouping) {
+            groupCounts.clear();
+            groupKeys.clear();
+            lazyLoader.setGroupProperties(Collections.emptyList());
+            // entities of the expanded groups are replaced by the ones of the loader query
+            lazyLoader.getLoader().load();
+        }
+    }
+
+    @Override
+    protected void doGroup() {
+        List<MetaPropertyPath> properties = new ArrayList<>(groupProperties.length);
+        for (Object property : groupProperties) {
+            properties.add((MetaPropertyPath) property);
+        }
+        if (!properties.equals(lazyLoader.getGroupProperties())) {
+            lazyLoader.setGroupProperties(properties);
+            clearContainer();
+        }
+
+        roots = new LinkedList<>();
+        parents = new LinkedHashMap<>();
+        children = new LinkedHashMap<>();
+        groupItems = new HashMap<>();
+        itemGroups = new HashMap<>();
+        groupCounts = new HashMap<>();
+        groupKeys = new HashMap<>();
+
+        Map<List<Object>, GroupInfo> groupsByKey = new HashMap<>();
+        for (int level = 0; level < properties.size(); level++) {
+            for (LazyGroupLoader.Group group : lazyLoader.getGroups(level)) {
+                List<Object> key = group.getValues();
+                GroupInfo parent = level > 0 ? groupsByKey.get(key.subList(0, level)) : null;
+                if (level > 0 && parent == null) {
+                    continue;
+                }
+
+                LinkedMap<MetaPropertyPath, Object> groupValues = new LinkedMap<>();
+                for (int i = 0; i <= level; i++) {
+                    groupValues.put(properties.get(i), key.get(i));
+                }
+                GroupInfo<MetaPropertyPath> groupInfo = new GroupInfo<>(groupValues);
+
+                parents.put(groupInfo, parent);
+                children.put(groupInfo, new ArrayList<>());
+                if (parent == null) {
+                    roots.add(groupInfo);
+                } else {
+                    children.get(parent).add(groupInfo);
+                }
+                groupsByKey.put(key, groupInfo);
+                groupKeys.put(groupInfo, key);
+                groupCounts.put(groupInfo, group.getCount());
+            }
+        }
+
+        // entities of the loaded groups and the ones added to the container by the application
+        for (E item : container.getItems()) {
+            GroupInfo groupInfo = groupsByKey.get(lazyLoader.getGroupKey(item));
+            if (groupInfo != null) {
+                groupItems.computeIfAbsent(groupInfo, k -> new ArrayList<>()).add(item.getId());
+                itemGroups.put(item.getId(), groupInfo);
+            }
+        }
+    }
+
+    protected void clearContainer() {
+        if (!container.getItems().isEmpty()) {
+            container.mute();
+            try {
+                container.getMutableItems().clear();
+            } finally {
+                container.unmute(CollectionContainer.UnmuteEventsMode.SILENT);
+            }
+        }
+    }
+
+    /**
+     * @return true if the group is a group of the last level and its first page of entities has been loaded
+     */
+    public boolean isGroupItemsLoaded(GroupInfo groupId) {
+        List<Object> key = getLeafGroupKey(groupId);
+        return key != null && lazyLoader.isGroupLoaded(key);
+    }
+
+    /**
+     * @return true if not all entities of the group of the last level have been loaded
+     */
+    public boolean hasMoreGroupItems(GroupInfo groupId) {
+        List<Object> key = getLeafGroupKey(groupId);
+        return key != null && lazyLoader.getLoadedCount(key) < groupCounts.getOrDefault(groupId, 0);
+    }
+
+    /**
+     * Loads the first page of entities of the group of the last level if it has not been loaded. The table calls
+     * it for the expanded groups it shows.
+     */
+    public void loadGroupItems(GroupInfo groupId) {
+        List<Object> key = getLeafGroupKey(groupId);
+        if (key != null) {
+            addGroupItems(groupId, lazyLoader.loadGroupItems(key));
+        }
+    }
+
+    /**
+     * Loads the next page of entities of the group of the last level and notifies the table to show them.
+     */
+    public void loadMoreGroupItems(GroupInfo groupId) {
+        List<Object> key = getLeafGroupKey(groupId);
+        if (key != null) {
+            addGroupItems(groupId, lazyLoader.loadMoreGroupItems(key));
+            events.publish(ItemSetChangeEvent.class, new ItemSetChangeEvent<>(this));
+        }
+    }
+
+    protected void addGroupItems(GroupInfo groupId, List<E> added) {
+        for (E item : added) {
+            groupItems.computeIfAbsent(groupId, k -> new ArrayList<>()).add(item.getId());
+            itemGroups.put(item.getId(), groupId);
+        }
+    }
+
+    @Nullable
+    protected List<Object> getLeafGroupKey(GroupInfo groupId) {
+        if (!containsGroup(groupId) || hasChildren(groupId)) {
+            return null;
+        }
+        return groupKeys.get(groupId);
+    }
+
+    /**
+     * Returns ids of the loaded entities of the group, its entities are not loaded by this method.
+     */
+    @Override
+    public Collection<K> getGroupItemIds(GroupInfo groupId) {
+        return new GroupItemIds<>(groupId, super.getGroupItemIds(groupId));
+    }
+
+    /**
+     * @return number of entities of the group on the database
+     */
+    @Override
+    public int getGroupItemsCount(GroupInfo groupId) {
+        if (lazyLoader.isGrouped() && containsGroup(groupId)) {
+            return groupCounts.getOrDefault(groupId, 0);
+        }
+        return super.getGroupItemsCount(groupId);
+    }
+
+    @Override
+    public AggregatableDelegate createAggregatableDelegate() {
+        return new AggregatableDelegate() {
+            @Override
+            public Object getItem(Object itemId) {
+                return LazyContainerGroupTableItems.this.getItem(itemId);
+            }
+
+            @Override
+            public Object getItemValue(MetaPropertyPath property, Object itemId) {
+                return LazyContainerGroupTableItems.this.getItemValue(itemId, property);
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            protected Map<AggregationInfo, Object> doValuesAggregation(Collection itemIds,
+                                                                      AggregationInfo[] aggregationInfos,
+                                                                      boolean totalAggregation) {
+                if (lazyLoader.isGrouped() && (totalAggregation || getGroupKey(itemIds) != null)) {
+                    List<AggregationInfo> databaseInfos = new ArrayList<>();
+                    List<AggregationInfo> inMemoryInfos = new ArrayList<>();
+                    for (AggregationInfo info : aggregationInfos) {
+                        if (databaseAggregationLoader.isTranslatable(info)) {
+                            databaseInfos.add(info);
+                        } else {
+                            inMemoryInfos.add(info);
+                        }
+                    }
+
+                    if (!databaseInfos.isEmpty()) {
+                        Map<AggregationInfo, Object> result = new HashMap<>(
+                                aggregateOnDatabase(itemIds, databaseInfos, totalAggregation));
+                        if (!inMemoryInfos.isEmpty()) {
+                            result.putAll(super.doValuesAggregation(itemIds,
+                                    inMemoryInfos.toArray(new AggregationInfo[0])));
+                        }
+                        return result;
+                    }
+                }
+
+                return databaseAggregationLoader.aggregate(aggregationInfos, totalAggregation,
+                        infos -> super.doValuesAggregation(itemIds, infos));
+            }
+        };
+    }
+
+    /**
+     * Aggregates all entities of the loader query for the total row, otherwise entities of the group whose ids are
+     * returned by {@link #getGroupItemIds(GroupInfo)}.
+     */
+    protected Map<AggregationInfo, Object> aggregateOnDatabase(Collection<?> itemIds, List<AggregationInfo> infos,
+                                                               boolean totalAggregation) {
+        if (totalAggregation) {
+            return databaseAggregationLoader.aggregate(infos);
+        }
+        return lazyLoader.getGroupAggregates(getGroupKey(itemIds), infos);
+    }
+
+    /**
+     * @return key of the group loaded from the database if the ids are returned by
+     * {@link #getGroupItemIds(GroupInfo)}, null otherwise
+     */
+    @Nullable
+    protected List<Object> getGroupKey(Collection<?> itemIds) {
+        if (itemIds instanceof GroupItemIds) {
+            return groupKeys.get(((GroupItemIds) itemIds).getGroupId());
+        }
+        return null;
+    }
+
+    /**
+     * Ids of the loaded entities of a group, keeps the group to aggregate its entities on the database.
+     */
+    protected static class GroupItemIds<K> extends AbstractList<K> {
+
+        protected final GroupInfo groupId;
+        protected final List<K> itemIds;
+
+        public GroupItemIds(GroupInfo groupId, Collection<K> itemIds) {
+            this.groupId = groupId;
+            this.itemIds = new ArrayList<>(itemIds);
+        }
+
+        public GroupInfo getGroupId() {
+            return groupId;
+        }
+
+        @Override
+        public K get(int index) {
+            return itemIds.get(index);
+        }
+
+        @Override
+        public int size() {
+            return itemIds.size();
+        }
+    }
+}
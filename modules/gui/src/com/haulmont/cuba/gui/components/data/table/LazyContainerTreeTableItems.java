@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.haulmont.cuba.gui.components.data.table;
+
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.gui.components.data.tree.LazyHierarchyLoader;
+import com.haulmont.cuba.gui.model.CollectionLoader;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Tree table items loading the hierarchy on demand: {@link CollectionLoader#load()} loads the root entities,
+ * and children of an entity are loaded when the table requests them on expanding the entity.
+ *
+ * @see LazyHierarchyLoader
+ */
+public class LazyContainerTreeTableItems<E extends Entity> extends ContainerTreeTableItems<E> {
+
+    protected final LazyHierarchyLoader<E> lazyLoader;
+
+    public LazyContainerTreeTableItems(CollectionLoader<E> loader, String hierarchyProperty) {
+        super(loader.getContainer(), hierarchyProperty, false);
+        this.lazyLoader = new LazyHierarchyLoader<>(loader, hierarchyProperty);
+    }
+
+    public LazyHierarchyLoader<E> getLazyLoader() {
+        return lazyLoader;
+    }
+
+    @Override
+    public Collection<?> getChildren(Object itemId) {
+        loadChildren(itemId);
+        return super.getChildren(itemId);
+    }
+
+    @Override
+    public boolean hasChildren(Object itemId) {
+        if (!lazyLoader.isChildrenLoaded(itemId)) {
+            Integer count = lazyLoader.getChildCount(itemId);
+            if (count != null && count > 0) {
+                return true;
+            }
+        }
+        return super.hasChildren(itemId);
+    }
+
+    protected void loadChildren(Object parentId) {
+        if (container.getItemOrNull(parentId) == null) {
+            return;
+        }
+        List<E> added = lazyLoader.loadChildren(parentId);
+        if (!added.isEmpty()) {
+            hierarchyIndex.itemsAdded(added);
+        }
+    }
+}
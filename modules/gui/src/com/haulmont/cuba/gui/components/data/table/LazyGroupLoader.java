@@ -0,0 +1,534 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.components.data.table;
+
+import com.google.common.collect.Iterables;
+import com.haulmont.bali.util.Preconditions;
+import com.haulmont.chile.core.datatypes.impl.EnumClass;
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.MetaPropertyPath;
+import com.haulmont.chile.core.model.Range;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.KeyValueEntity;
+import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.gui.components.AggregationInfo;
+import com.haulmont.cuba.gui.components.data.aggregation.DatabaseAggregationLoader;
+import com.haulmont.cuba.gui.model.CollectionContainer;
+import com.haulmont.cuba.gui.model.CollectionLoader;
+import com.haulmont.cuba.gui.model.DataContext;
+import com.haulmont.cuba.gui.model.MergeOptions;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Groups entities of a {@link CollectionLoader} on the database and loads contents of the groups on demand.
+ * <p>
+ * While group properties are set, {@link CollectionLoader#load()} loads no entities. Groups of each level are
+ * selected together with numbers of their entities by a {@code group by} query over the loader query, including its
+ * condition, parameters and security constraints:
+ * <pre>
+ *     select g.account, g.month, count(g) from sales$Entry g where g.id in (select e.id from sales$Entry e where ...)
+ *     group by g.account, g.month order by g.account, g.month
+ * </pre>
+ * Entities of a group are loaded by pages with the loader query restricted by the group values, see
+ * {@link #loadGroupItems(List)} and {@link #loadMoreGroupItems(List)}. Aggregates of groups are requested by
+ * a similar query for all groups of a level at once.
+ * <p>
+ * Group properties must be persistent. Values of reference properties are loaded with the {@link View#MINIMAL} view.
+ * Entities are added to the container with muted events, so the owner must update its groups itself.
+ *
+ * @param <E> type of entities
+ */
+public class LazyGroupLoader<E extends Entity> {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int REFERENCE_BATCH_SIZE = 500;
+
+    protected static final String ALIAS = "cubaGrp";
+    protected static final String VALUE_PARAM_PREFIX = "cuba_lazyGroupValue";
+
+    protected final CollectionLoader<E> loader;
+    protected final Function<LoadContext<E>, List<E>> loadFunction;
+    protected final DatabaseAggregationLoader<E> aggregationLoader;
+
+    protected List<MetaPropertyPath> groupProperties = Collections.emptyList();
+    protected int pageSize = DEFAULT_PAGE_SIZE;
+
+    protected final Map<Integer, List<Group>> groups = new HashMap<>();
+    // numbers of loaded entities by keys of the groups
+    protected final Map<List<Object>, Integer> loadedCounts = new HashMap<>();
+    // aggregated values by levels and keys with reference values replaced by ids
+    protected final Map<Integer, Map<List<Object>, Map<AggregationInfo, Object>>> aggregates = new HashMap<>();
+
+    /**
+     * Installs the load delegate to the loader, so it loads nothing while the group properties are set. If the
+     * loader already has a delegate, the delegate is used to load entities.
+     *
+     * @param loader loader of the container
+     */
+    public LazyGroupLoader(CollectionLoader<E> loader) {
+        Preconditions.checkNotNullArgument(loader, "loader is null");
+
+        this.loader = loader;
+        this.aggregationLoader = new DatabaseAggregationLoader<>(loader.getContainer());
+
+        Function<LoadContext<E>, List<E>> delegate = loader.getLoadDelegate();
+        this.loadFunction = delegate != null ? delegate : context -> getDataManager().loadList(context);
+        loader.setLoadDelegate(this::load);
+    }
+
+    public CollectionLoader<E> getLoader() {
+        return loader;
+    }
+
+    public List<MetaPropertyPath> getGroupProperties() {
+        return groupProperties;
+    }
+
+    /**
+     * Sets properties to group by. Drops the loaded groups if the properties differ from the current ones.
+     *
+     * @param groupProperties persistent properties or an empty list to load entities without grouping
+     */
+    public void setGroupProperties(List<MetaPropertyPath> groupProperties) {
+        Preconditions.checkNotNullArgument(groupProperties, "groupProperties is null");
+
+        if (!this.groupProperties.equals(groupProperties)) {
+            this.groupProperties = new ArrayList<>(groupProperties);
+            reset();
+        }
+    }
+
+    /**
+     * @return true if entities are grouped on the database
+     */
+    public boolean isGrouped() {
+        return !groupProperties.isEmpty();
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @param pageSize maximum number of entities loaded for a group at once
+     */
+    public void setPageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Returns groups of the given level in the order of their values, loading them if needed.
+     *
+     * @param level index of the group property, groups of a level are grouped by all properties up to the level
+     */
+    public List<Group> getGroups(int level) {
+        if (level >= groupProperties.size()) {
+            throw new IllegalArgumentException("No group property for level " + level);
+        }
+
+        return groups.computeIfAbsent(level, this::loadGroups);
+    }
+
+    /**
+     * @return values of the group properties of the entity, in the same form as keys of the groups
+     */
+    public List<Object> getGroupKey(E entity) {
+        List<Object> key = new ArrayList<>(groupProperties.size());
+        for (MetaPropertyPath property : groupProperties) {
+            key.add(normalizeValue(entity.getValueEx(property.toPathString())));
+        }
+        return key;
+    }
+
+    /**
+     * @return true if at least one page of entities of the group has been loaded
+     */
+    public boolean isGroupLoaded(List<Object> key) {
+        return loadedCounts.containsKey(key);
+    }
+
+    /**
+     * @return number of entities of the group loaded to the container
+     */
+    public int getLoadedCount(List<Object> key) {
+        return loadedCounts.getOrDefault(key, 0);
+    }
+
+    /**
+     * Loads the first page of entities of the group and adds them to the container. Does nothing if the group has
+     * already been loaded.
+     *
+     * @param key values of all group properties
+     * @return added entities
+     */
+    public List<E> loadGroupItems(List<Object> key) {
+        if (isGroupLoaded(key)) {
+            return Collections.emptyList();
+        }
+        return loadPage(key, 0);
+    }
+
+    /**
+     * Loads the next page of entities of the group and adds them to the container.
+     *
+     * @param key values of all group properties
+     * @return added entities
+     */
+    public List<E> loadMoreGroupItems(List<Object> key) {
+        return loadPage(key, getLoadedCount(key));
+    }
+
+    /**
+     * Returns aggregated values of the group. The aggregations missing in the cache are loaded for all groups of
+     * the same level by a single query.
+     *
+     * @param key   values of the group properties up to the level of the group
+     * @param infos aggregations that can be translated to JPQL,
+     *              see {@link DatabaseAggregationLoader#isTranslatable(AggregationInfo)}
+     * @return values in the same form as the in-memory aggregation returns
+     */
+    public Map<AggregationInfo, Object> getGroupAggregates(List<Object> key, Collection<AggregationInfo> infos) {
+        int level = key.size() - 1;
+        Map<List<Object>, Map<AggregationInfo, Object>> levelAggregates =
+                aggregates.computeIfAbsent(level, l -> new HashMap<>());
+
+        List<AggregationInfo> missing = new ArrayList<>();
+        Map<AggregationInfo, Object> loaded = levelAggregates.getOrDefault(toIdKey(key), Collections.emptyMap());
+        for (AggregationInfo info : infos) {
+            if (!loaded.containsKey(info)) {
+                missing.add(info);
+            }
+        }
+        if (!missing.isEmpty()) {
+            loadAggregates(level, missing, levelAggregates);
+        }
+
+        Map<AggregationInfo, Object> values = levelAggregates.getOrDefault(toIdKey(key), Collections.emptyMap());
+        Map<AggregationInfo, Object> result = new HashMap<>();
+        for (AggregationInfo info : infos) {
+            result.put(info, values.containsKey(info)
+                    ? values.get(info)
+                    : aggregationLoader.convertValue(info, null));
+        }
+        return result;
+    }
+
+    /**
+     * Drops the loaded groups and aggregates.
+     */
+    public void reset() {
+        groups.clear();
+        loadedCounts.clear();
+        aggregates.clear();
+    }
+
+    protected List<E> load(LoadContext<E> context) {
+        if (isGrouped()) {
+            reset();
+            return Collections.emptyList();
+        }
+        return loadFunction.apply(context);
+    }
+
+    protected List<E> loadPage(List<Object> key, int firstResult) {
+        if (key.size() != groupProperties.size()) {
+            throw new IllegalArgumentException("Entities are loaded for groups of the last level only");
+        }
+
+        LoadContext<E> context = loader.createLoadContext();
+        LoadContext.Query query = context.getQuery();
+        if (query == null || query.getQueryString() == null) {
+            throw new IllegalStateException("Lazy loading of groups requires the loader query");
+        }
+
+        QueryTransformer transformer = QueryTransformerFactory.createTransformer(query.getQueryString());
+        for (int i = 0; i < groupProperties.size(); i++) {
+            MetaPropertyPath property = groupProperties.get(i);
+            Object value = key.get(i);
+            String path = "{E}." + property.toPathString();
+            String param = VALUE_PARAM_PREFIX + i;
+            if (value == null) {
+                transformer.addWhere(path + " is null");
+            } else if (value instanceof Entity) {
+                transformer.addWhere(path + "." + getPrimaryKeyName(property) + " = :" + param);
+                query.setParameter(param, ((Entity) value).getId());
+            } else {
+                transformer.addWhere(path + " = :" + param);
+                query.setParameter(param, value);
+            }
+        }
+        query.setQueryString(transformer.getResult());
+        query.setFirstResult(firstResult);
+        query.setMaxResults(pageSize);
+        query.setAfterSortKey(null);
+
+        List<E> entities = loadFunction.apply(context);
+        loadedCounts.put(key, firstResult + entities.size());
+
+        CollectionContainer<E> container = loader.getContainer();
+        DataContext dataContext = loader.getDataContext();
+        List<E> added = new ArrayList<>();
+        for (E entity : entities) {
+            if (!container.containsItem(entity.getId())) {
+                added.add(dataContext != null
+                        ? dataContext.merge(entity, new MergeOptions().setFresh(true))
+                        : entity);
+            }
+        }
+
+        if (!added.isEmpty()) {
+            container.mute();
+            try {
+                container.getMutableItems().addAll(added);
+            } finally {
+                container.unmute(CollectionContainer.UnmuteEventsMode.SILENT);
+            }
+        }
+        return added;
+    }
+
+    protected List<Group> loadGroups(int level) {
+        List<String> properties = new ArrayList<>();
+        for (int i = 0; i <= level; i++) {
+            properties.add("value" + i);
+        }
+        properties.add("count");
+
+        List<KeyValueEntity> rows = getDataManager().loadValues(
+                createGroupContext(level, Collections.singletonList("count(" + ALIAS + ")"), properties));
+
+        List<Group> result = new ArrayList<>(rows.size());
+        for (KeyValueEntity row : rows) {
+            List<Object> key = new ArrayList<>(level + 1);
+            for (int i = 0; i <= level; i++) {
+                key.add(convertGroupValue(groupProperties.get(i), row.getValue("value" + i)));
+            }
+            Number count = row.getValue("count");
+            result.add(new Group(key, count == null ? 0 : count.intValue()));
+        }
+        resolveReferences(level, result);
+        return result;
+    }
+
+    protected void loadAggregates(int level, List<AggregationInfo> infos,
+                                  Map<List<Object>, Map<AggregationInfo, Object>> levelAggregates) {
+        List<String> properties = new ArrayList<>();
+        for (int i = 0; i <= level; i++) {
+            properties.add("value" + i);
+        }
+        List<String> select = new ArrayList<>(infos.size());
+        for (int i = 0; i < infos.size(); i++) {
+            AggregationInfo info = infos.get(i);
+            select.add(aggregationLoader.getFunction(info.getType())
+                    + "(" + ALIAS + "." + info.getPropertyPath().toPathString() + ")");
+            properties.add("aggregate" + i);
+        }
+
+        List<KeyValueEntity> rows = getDataManager().loadValues(createGroupContext(level, select, properties));
+        for (KeyValueEntity row : rows) {
+            List<Object> key = new ArrayList<>(level + 1);
+            for (int i = 0; i <= level; i++) {
+                key.add(convertGroupValue(groupProperties.get(i), row.getValue("value" + i)));
+            }
+            Map<AggregationInfo, Object> values = levelAggregates.computeIfAbsent(key, k -> new HashMap<>());
+            for (int i = 0; i < infos.size(); i++) {
+                AggregationInfo info = infos.get(i);
+                values.put(info, aggregationLoader.convertValue(info, row.getValue("aggregate" + i)));
+            }
+        }
+    }
+
+    /**
+     * Creates a {@code group by} query by the group properties up to the given level over all entities of the
+     * loader query. Reference properties are selected by ids.
+     */
+    protected ValueLoadContext createGroupContext(int level, List<String> aggregateSelect, List<String> properties) {
+        LoadContext.Query loaderQuery = loader.createLoadContext().getQuery();
+        if (loaderQuery == null || loaderQuery.getQueryString() == null) {
+            throw new IllegalStateException("Lazy loading of groups requires the loader query");
+        }
+
+        MetaClass metaClass = loader.getContainer().getEntityMetaClass();
+        String pkName = getMetadataTools().getPrimaryKeyName(metaClass);
+
+        QueryTransformer transformer = QueryTransformerFactory.createTransformer(loaderQuery.getQueryString());
+        transformer.replaceWithSelectId(pkName);
+        transformer.removeOrderBy();
+
+        StringBuilder joins = new StringBuilder();
+        List<String> keyPaths = new ArrayList<>(level + 1);
+        for (int i = 0; i <= level; i++) {
+            MetaPropertyPath property = groupProperties.get(i);
+            if (property.getRange().isClass()) {
+                String joinAlias = ALIAS + i;
+                joins.append(" left join ").append(ALIAS).append(".").append(property.toPathString())
+                        .append(" ").append(joinAlias);
+                keyPaths.add(joinAlias + "." + getPrimaryKeyName(property));
+            } else {
+                keyPaths.add(ALIAS + "." + property.toPathString());
+            }
+        }
+
+        List<String> select = new ArrayList<>(keyPaths);
+        select.addAll(aggregateSelect);
+        String keys = String.join(", ", keyPaths);
+
+        String queryString = "select " + String.join(", ", select) +
+                " from " + metaClass.getName() + " " + ALIAS + joins +
+                " where " + ALIAS + "." + pkName + " in (" + transformer.getResult() + ")" +
+                " group by " + keys +
+                " order by " + keys;
+
+        ValueLoadContext.Query query = ValueLoadContext.createQuery(queryString)
+                .setParameters(loaderQuery.getParameters())
+                .setCondition(loaderQuery.getCondition());
+        String[] noConversionParams = loaderQuery.getNoConversionParams();
+        if (noConversionParams != null) {
+            for (String name : noConversionParams) {
+                query.setParameter(name, loaderQuery.getParameters().get(name), false);
+            }
+        }
+
+        return ValueLoadContext.create()
+                .setQuery(query)
+                .setProperties(properties)
+                .setSoftDeletion(loader.isSoftDeletion());
+    }
+
+    /**
+     * Replaces ids of referenced entities in the keys of the groups by the entities loaded with the minimal view.
+     */
+    @SuppressWarnings("unchecked")
+    protected void resolveReferences(int level, List<Group> groups) {
+        for (int i = 0; i <= level; i++) {
+            MetaPropertyPath property = groupProperties.get(i);
+            if (!property.getRange().isClass()) {
+                continue;
+            }
+
+            Set<Object> ids = new LinkedHashSet<>();
+            for (Group group : groups) {
+                if (group.values.get(i) != null) {
+                    ids.add(group.values.get(i));
+                }
+            }
+
+            Map<Object, Entity> entities = new HashMap<>();
+            Class<Entity> javaClass = property.getRange().asClass().getJavaClass();
+            for (List<Object> batch : Iterables.partition(ids, REFERENCE_BATCH_SIZE)) {
+                LoadContext<Entity> context = LoadContext.create(javaClass)
+                        .setIds(batch)
+                        .setView(View.MINIMAL);
+                for (Entity entity : getDataManager().loadList(context)) {
+                    entities.put(entity.getId(), entity);
+                }
+            }
+
+            for (Group group : groups) {
+                Object id = group.values.get(i);
+                if (id != null && entities.containsKey(id)) {
+                    group.values.set(i, entities.get(id));
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a value of a group property returned by the database to the value of the entity attribute.
+     */
+    @Nullable
+    protected Object convertGroupValue(MetaPropertyPath property, @Nullable Object value) {
+        Range range = property.getRange();
+        if (value != null && range.isEnum()) {
+            for (Object enumValue : range.asEnumeration().getValues()) {
+                if (enumValue instanceof EnumClass && Objects.equals(((EnumClass) enumValue).getId(), value)) {
+                    return enumValue;
+                }
+            }
+        }
+        return normalizeValue(value);
+    }
+
+    /**
+     * Drops subclasses of {@code Date} returned by JDBC, so the values are equal to the ones of the entities.
+     */
+    @Nullable
+    protected Object normalizeValue(@Nullable Object value) {
+        if (value instanceof Date && value.getClass() != Date.class) {
+            return new Date(((Date) value).getTime());
+        }
+        return value;
+    }
+
+    protected List<Object> toIdKey(List<Object> key) {
+        List<Object> result = new ArrayList<>(key.size());
+        for (Object value : key) {
+            result.add(value instanceof Entity ? ((Entity) value).getId() : value);
+        }
+        return result;
+    }
+
+    protected String getPrimaryKeyName(MetaPropertyPath referenceProperty) {
+        String pkName = getMetadataTools().getPrimaryKeyName(referenceProperty.getRange().asClass());
+        if (pkName == null) {
+            throw new IllegalStateException("Unable to group by reference without primary key: " + referenceProperty);
+        }
+        return pkName;
+    }
+
+    protected MetadataTools getMetadataTools() {
+        return AppBeans.get(MetadataTools.NAME);
+    }
+
+    protected DataManager getDataManager() {
+        return AppBeans.get(DataManager.NAME);
+    }
+
+    /**
+     * Group selected by the {@code group by} query.
+     */
+    public static class Group {
+
+        protected final List<Object> values;
+        protected final int count;
+
+        public Group(List<Object> values, int count) {
+            this.values = values;
+            this.count = count;
+        }
+
+        /**
+         * @return values of the group properties up to the level of the group
+         */
+        public List<Object> getValues() {
+            return values;
+        }
+
+        /**
+         * @return number of entities in the group and its subgroups
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+}
@@ -37,12 +37,16 @@ public class ContainerTreeItems<E extends Entity> implements EntityTreeItems<E>,
     protected final String hierarchyProperty;
     protected final boolean showOrphans;
 
+    protected final HierarchyIndex<E> hierarchyIndex;
+
     protected EventHub events = new EventHub();
 
     public ContainerTreeItems(CollectionContainer<E> container, String hierarchyProperty, boolean showOrphans) {
         this.container = container;
         this.hierarchyProperty = hierarchyProperty;
         this.showOrphans = showOrphans;
+        this.hierarchyIndex = new HierarchyIndex<>(hierarchyProperty, showOrphans,
+                container::getItems, container::getItemIndex);
         this.container.addItemChangeListener(this::containerItemChanged);
         this.container.addCollectionChangeListener(this::containerCollectionChanged);
         this.container.addItemPropertyChangeListener(this::containerItemPropertyChanged);
@@ -56,12 +60,16 @@ public class ContainerTreeItems<E extends Entity> implements EntityTreeItems<E>,
         events.publish(SelectedItemChangeEvent.class, new SelectedItemChangeEvent<>(this, event.getItem()));
     }
 
-    protected void containerCollectionChanged(@SuppressWarnings("unused") CollectionContainer.CollectionChangeEvent<E> e) {
+    protected void containerCollectionChanged(CollectionContainer.CollectionChangeEvent<E> e) {
+        hierarchyIndex.collectionChanged(e.getChangeType(), e.getChanges());
         events.publish(ItemSetChangeEvent.class, new ItemSetChangeEvent<>(this));
     }
 
     @SuppressWarnings("unchecked")
     protected void containerItemPropertyChanged(CollectionContainer.ItemPropertyChangeEvent<E> e) {
+        if (hierarchyProperty.equals(e.getProperty())) {
+            hierarchyIndex.parentChanged(e.getItem());
+        }
         events.publish(ValueChangeEvent.class, new ValueChangeEvent(this,
                 e.getItem(), e.getProperty(), e.getPrevValue(), e.getValue()));
     }
@@ -114,33 +122,23 @@ public class ContainerTreeItems<E extends Entity> implements EntityTreeItems<E>,
 
     @Override
     public int getChildCount(E parent) {
-        return Math.toIntExact(getChildren(parent).count());
+        if (parent == null) {
+            return hierarchyIndex.getRootItems().size();
+        }
+        return hierarchyIndex.getChildCount(parent.getId());
     }
 
     @Override
     public Stream<E> getChildren(E item) {
         if (item == null) {
-            // root items
-            return container.getItems().stream()
-                    .filter(it -> {
-                        E parentItem = it.getValue(hierarchyProperty);
-                        return parentItem == null || (showOrphans && container.getItemOrNull(parentItem.getId()) == null);
-                    });
-        } else {
-            return container.getItems().stream()
-                    .filter(it -> {
-                        E parentItem = it.getValue(hierarchyProperty);
-                        return parentItem != null && parentItem.equals(item);
-                    });
+            return hierarchyIndex.getRootItems().stream();
         }
+        return hierarchyIndex.getChildren(item.getId()).stream();
     }
 
     @Override
     public boolean hasChildren(E item) {
-        return container.getItems().stream().anyMatch(it -> {
-            E parentItem = it.getValue(hierarchyProperty);
-            return parentItem != null && parentItem.equals(item);
-        });
+        return hierarchyIndex.hasChildren(item.getId());
     }
 
     @Nullable
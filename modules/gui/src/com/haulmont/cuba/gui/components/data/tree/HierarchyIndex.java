@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.components.data.tree;
+
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.gui.model.CollectionChangeType;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Index of children by parent id for a collection of entities organized in a hierarchy by a reference property.
+ * <p>
+ * The index is built on the first access and then maintained incrementally by the owner notifying it of added,
+ * removed and replaced items and of changes of the hierarchy property. Children and root items are returned
+ * in the order of the collection. If the number of indexed items differs from the size of the collection,
+ * e.g. the collection has been changed while its events were muted, the index is rebuilt.
+ * <p>
+ * The class is not thread-safe.
+ *
+ * @param <E> type of entities
+ */
+public class HierarchyIndex<E extends Entity> {
+
+    protected final String hierarchyProperty;
+    protected final boolean showOrphans;
+    protected final Supplier<? extends Collection<E>> itemsSupplier;
+    protected final ToIntFunction<Object> positionFunction;
+
+    // item id -> parent id, null for items without parent
+    protected Map<Object, Object> parentIds;
+    // parent id -> children in the collection order
+    protected Map<Object, List<E>> children;
+    protected List<E> rootItems;
+
+    /**
+     * @param hierarchyProperty name of the property referencing the parent entity
+     * @param showOrphans       whether items with parents missing in the collection are considered as roots
+     * @param itemsSupplier     supplier of the collection items in their order
+     * @param positionFunction  function returning the position of an item by its id in the collection,
+     *                          if null, added items are placed after their siblings
+     */
+    public HierarchyIndex(String hierarchyProperty, boolean showOrphans,
+                          Supplier<? extends Collection<E>> itemsSupplier,
+                          @Nullable ToIntFunction<Object> positionFunction) {
+        this.hierarchyProperty = hierarchyProperty;
+        this.showOrphans = showOrphans;
+        this.itemsSupplier = itemsSupplier;
+        this.positionFunction = positionFunction;
+    }
+
+    /**
+     * @return children of the item with the given id in the collection order
+     */
+    public List<E> getChildren(Object parentId) {
+        checkIndex();
+        List<E> list = children.get(parentId);
+        return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+
+    public int getChildCount(Object parentId) {
+        checkIndex();
+        List<E> list = children.get(parentId);
+        return list == null ? 0 : list.size();
+    }
+
+    public boolean hasChildren(Object parentId) {
+        return getChildCount(parentId) > 0;
+    }
+
+    /**
+     * @return items without parent and, if orphans are shown, items with parents missing in the collection
+     */
+    public List<E> getRootItems() {
+        checkIndex();
+        if (rootItems == null) {
+            List<E> result = new ArrayList<>();
+            for (E item : itemsSupplier.get()) {
+                if (isRootParent(parentIds.get(item.getId()))) {
+                    result.add(item);
+                }
+            }
+            rootItems = result;
+        }
+        return Collections.unmodifiableList(rootItems);
+    }
+
+    public boolean isRoot(Object itemId) {
+        checkIndex();
+        return parentIds.containsKey(itemId) && isRootParent(parentIds.get(itemId));
+    }
+
+    /**
+     * @return id of the parent of the item, null if the item has no parent or is not in the collection
+     */
+    @Nullable
+    public Object getParentId(Object itemId) {
+        checkIndex();
+        return parentIds.get(itemId);
+    }
+
+    /**
+     * Drops the index, it will be rebuilt on the next access.
+     */
+    public void invalidate() {
+        parentIds = null;
+        children = null;
+        rootItems = null;
+    }
+
+    /**
+     * Updates the index according to the change of the collection.
+     */
+    public void collectionChanged(CollectionChangeType changeType, Collection<? extends E> changes) {
+        switch (changeType) {
+            case ADD_ITEMS:
+                itemsAdded(changes);
+                break;
+            case REMOVE_ITEMS:
+                itemsRemoved(changes);
+                break;
+            case SET_ITEM:
+                for (E item : changes) {
+                    itemReplaced(item);
+                }
+                break;
+            default:
+                invalidate();
+        }
+    }
+
+    /**
+     * Adds the items which have been added to the collection.
+     */
+    public void itemsAdded(Collection<? extends E> items) {
+        if (parentIds == null)
+            return;
+
+        for (E item : items) {
+            if (parentIds.containsKey(item.getId())) {
+                itemReplaced(item);
+            } else {
+                Object parentId = getParentIdFromItem(item);
+                parentIds.put(item.getId(), parentId);
+                addChild(parentId, item);
+            }
+        }
+        rootItems = null;
+    }
+
+    /**
+     * Removes the items which have been removed from the collection. Their children become orphans.
+     */
+    public void itemsRemoved(Collection<? extends E> items) {
+        if (parentIds == null)
+            return;
+
+        for (E item : items) {
+            if (parentIds.containsKey(item.getId())) {
+                Object parentId = parentIds.remove(item.getId());
+                removeChild(parentId, item.getId());
+            }
+        }
+        rootItems = null;
+    }
+
+    /**
+     * Updates the index after the item instance has been replaced in the collection by another one with the same id.
+     */
+    public void itemReplaced(E item) {
+        if (parentIds == null)
+            return;
+
+        if (!parentIds.containsKey(item.getId())) {
+            itemsAdded(Collections.singletonList(item));
+            return;
+        }
+
+        Object prevParentId = parentIds.get(item.getId());
+        Object parentId = getParentIdFromItem(item);
+        if (Objects.equals(prevParentId, parentId)) {
+            List<E> siblings = children.get(parentId);
+            if (siblings != null) {
+                for (ListIterator<E> iterator = siblings.listIterator(); iterator.hasNext(); ) {
+                    if (iterator.next().getId().equals(item.getId())) {
+                        iterator.set(item);
+                        break;
+                    }
+                }
+            }
+        } else {
+            parentChanged(item);
+        }
+        rootItems = null;
+    }
+
+    /**
+     * Moves the item to its new parent after the hierarchy property of the item has been changed.
+     */
+    public void parentChanged(E item) {
+        if (parentIds == null || !parentIds.containsKey(item.getId()))
+            return;
+
+        Object parentId = getParentIdFromItem(item);
+        Object prevParentId = parentIds.put(item.getId(), parentId);
+        removeChild(prevParentId, item.getId());
+        addChild(parentId, item);
+        rootItems = null;
+    }
+
+    protected void checkIndex() {
+        if (parentIds != null && parentIds.size() == itemsSupplier.get().size())
+            return;
+
+        Collection<E> items = itemsSupplier.get();
+        parentIds = new HashMap<>(items.size() * 4 / 3 + 1);
+        children = new HashMap<>();
+        rootItems = null;
+        for (E item : items) {
+            Object parentId = getParentIdFromItem(item);
+            parentIds.put(item.getId(), parentId);
+            // items are iterated in the collection order, so just append
+            children.computeIfAbsent(parentId, id -> new ArrayList<>()).add(item);
+        }
+    }
+
+    protected boolean isRootParent(@Nullable Object parentId) {
+        return parentId == null || (showOrphans && !parentIds.containsKey(parentId));
+    }
+
+    @Nullable
+    protected Object getParentIdFromItem(E item) {
+        Entity parent = item.getValue(hierarchyProperty);
+        return parent == null ? null : parent.getId();
+    }
+
+    protected void addChild(@Nullable Object parentId, E item) {
+        List<E> siblings = children.computeIfAbsent(parentId, id -> new ArrayList<>());
+        if (positionFunction == null) {
+            siblings.add(item);
+            return;
+        }
+
+        // siblings are ordered by the collection positions, find the insertion point
+        int position = positionFunction.applyAsInt(item.getId());
+        int low = 0;
+        int high = siblings.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (positionFunction.applyAsInt(siblings.get(mid).getId()) < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        siblings.add(low, item);
+    }
+
+    protected void removeChild(@Nullable Object parentId, Object itemId) {
+        List<E> siblings = children.get(parentId);
+        if (siblings == null)
+            return;
+
+        siblings.removeIf(sibling -> sibling.getId().equals(itemId));
+        if (siblings.isEmpty()) {
+            children.remove(parentId);
+        }
+    }
+}
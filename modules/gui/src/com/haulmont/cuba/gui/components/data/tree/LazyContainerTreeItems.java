@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.components.data.tree;
+
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.gui.model.CollectionLoader;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tree items loading the hierarchy on demand: {@link CollectionLoader#load()} loads the root entities, and children
+ * of an entity are loaded when the tree requests them on expanding the entity.
+ *
+ * @see LazyHierarchyLoader
+ */
+public class LazyContainerTreeItems<E extends Entity> extends ContainerTreeItems<E> {
+
+    protected final LazyHierarchyLoader<E> lazyLoader;
+
+    public LazyContainerTreeItems(CollectionLoader<E> loader, String hierarchyProperty) {
+        super(loader.getContainer(), hierarchyProperty, false);
+        this.lazyLoader = new LazyHierarchyLoader<>(loader, hierarchyProperty);
+    }
+
+    public LazyHierarchyLoader<E> getLazyLoader() {
+        return lazyLoader;
+    }
+
+    @Override
+    public int getChildCount(E parent) {
+        if (parent != null) {
+            loadChildren(parent);
+        }
+        return super.getChildCount(parent);
+    }
+
+    @Override
+    public Stream<E> getChildren(E item) {
+        if (item != null) {
+            loadChildren(item);
+        }
+        return super.getChildren(item);
+    }
+
+    @Override
+    public boolean hasChildren(E item) {
+        if (!lazyLoader.isChildrenLoaded(item.getId())) {
+            Integer count = lazyLoader.getChildCount(item.getId());
+            if (count != null && count > 0) {
+                return true;
+            }
+        }
+        return super.hasChildren(item);
+    }
+
+    protected void loadChildren(E parent) {
+        List<E> added = lazyLoader.loadChildren(parent.getId());
+        if (!added.isEmpty()) {
+            hierarchyIndex.itemsAdded(added);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.components.data.tree;
+
+import com.google.common.collect.Iterables;
+import com.haulmont.bali.util.Preconditions;
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.KeyValueEntity;
+import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.gui.model.CollectionContainer;
+import com.haulmont.cuba.gui.model.CollectionLoader;
+import com.haulmont.cuba.gui.model.DataContext;
+import com.haulmont.cuba.gui.model.MergeOptions;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Loads a hierarchy of entities into the container of a {@link CollectionLoader} level by level.
+ * <p>
+ * The loader's query should select entities of all levels, the hierarchy condition is added to it: on
+ * {@link CollectionLoader#load()} only the root entities are loaded, and children of an entity are loaded by
+ * {@link #loadChildren(Object)} with the same query restricted by the parent id. Numbers of children of the loaded
+ * entities are requested by batched {@code group by} queries over the ids selected by the loader query, so a tree
+ * can show expand arrows without loading the next level.
+ * <p>
+ * Children are added to the container with muted events, so the owner must update its index of the hierarchy itself.
+ *
+ * @param <E> type of entities
+ */
+public class LazyHierarchyLoader<E extends Entity> {
+
+    public static final int COUNT_BATCH_SIZE = 500;
+
+    protected static final String PARENT_ID_PARAM = "cuba_lazyTreeParentId";
+    protected static final String PARENT_IDS_PARAM = "cuba_lazyTreeParentIds";
+    protected static final String ALIAS = "cubaTree";
+
+    protected final CollectionLoader<E> loader;
+    protected final String hierarchyProperty;
+    protected final Function<LoadContext<E>, List<E>> loadFunction;
+
+    protected final Set<Object> loadedParents = new HashSet<>();
+    protected final Map<Object, Integer> childCounts = new HashMap<>();
+
+    /**
+     * Installs the load delegate to the loader, so it loads only the root entities. If the loader already has
+     * a delegate, the delegate is used to load all levels.
+     *
+     * @param loader            loader of the container
+     * @param hierarchyProperty name of the property referencing the parent entity
+     */
+    public LazyHierarchyLoader(CollectionLoader<E> loader, String hierarchyProperty) {
+        Preconditions.checkNotNullArgument(loader, "loader is null");
+        Preconditions.checkNotNullArgument(hierarchyProperty, "hierarchyProperty is null");
+
+        this.loader = loader;
+        this.hierarchyProperty = hierarchyProperty;
+
+        Function<LoadContext<E>, List<E>> delegate = loader.getLoadDelegate();
+        this.loadFunction = delegate != null ? delegate : context -> getDataManager().loadList(context);
+        loader.setLoadDelegate(this::loadRoots);
+    }
+
+    public CollectionLoader<E> getLoader() {
+        return loader;
+    }
+
+    /**
+     * @return true if children of the entity with the given id have been loaded to the container
+     */
+    public boolean isChildrenLoaded(Object parentId) {
+        return loadedParents.contains(parentId);
+    }
+
+    /**
+     * @return number of children of the entity in the database, or null if it is unknown
+     */
+    @Nullable
+    public Integer getChildCount(Object parentId) {
+        return childCounts.get(parentId);
+    }
+
+    /**
+     * Loads children of the entity with the given id and adds them to the container. Does nothing if the children
+     * have already been loaded.
+     *
+     * @return added entities
+     */
+    public List<E> loadChildren(Object parentId) {
+        if (!loadedParents.add(parentId)) {
+            return Collections.emptyList();
+        }
+
+        LoadContext<E> context = loader.createLoadContext();
+        LoadContext.Query query = context.getQuery();
+        // paging restricts the root level only
+        query.setFirstResult(0);
+        query.setMaxResults(0);
+        query.setAfterSortKey(null);
+        addWhere(query, "{E}." + hierarchyProperty + ".id = :" + PARENT_ID_PARAM);
+        query.setParameter(PARENT_ID_PARAM, parentId);
+
+        CollectionContainer<E> container = loader.getContainer();
+        DataContext dataContext = loader.getDataContext();
+        List<E> added = new ArrayList<>();
+        for (E entity : loadFunction.apply(context)) {
+            // an entity could be added to the container before its parent was expanded
+            if (!container.containsItem(entity.getId())) {
+                added.add(dataContext != null
+                        ? dataContext.merge(entity, new MergeOptions().setFresh(true))
+                        : entity);
+            }
+        }
+
+        if (!added.isEmpty()) {
+            container.mute();
+            try {
+                container.getMutableItems().addAll(added);
+            } finally {
+                container.unmute(CollectionContainer.UnmuteEventsMode.SILENT);
+            }
+        }
+        childCounts.remove(parentId);
+        loadChildCounts(added);
+        return added;
+    }
+
+    protected List<E> loadRoots(LoadContext<E> context) {
+        loadedParents.clear();
+        childCounts.clear();
+
+        addWhere(context.getQuery(), "{E}." + hierarchyProperty + " is null");
+        List<E> roots = loadFunction.apply(context);
+        loadChildCounts(roots);
+        return roots;
+    }
+
+    protected void addWhere(LoadContext.Query query, String where) {
+        if (query.getQueryString() == null) {
+            throw new IllegalStateException("Lazy loading of a hierarchy requires the loader query");
+        }
+        QueryTransformer transformer = QueryTransformerFactory.createTransformer(query.getQueryString());
+        transformer.addWhere(where);
+        query.setQueryString(transformer.getResult());
+    }
+
+    /**
+     * Requests numbers of children of the given entities by queries of up to {@link #COUNT_BATCH_SIZE} ids.
+     */
+    protected void loadChildCounts(Collection<E> parents) {
+        List<Object> ids = new ArrayList<>(parents.size());
+        for (E parent : parents) {
+            if (!childCounts.containsKey(parent.getId())) {
+                ids.add(parent.getId());
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        for (List<Object> batch : Iterables.partition(ids, COUNT_BATCH_SIZE)) {
+            ValueLoadContext context = ValueLoadContext.create()
+                    .setQuery(createCountQuery(batch))
+                    .addProperty("parentId")
+                    .addProperty("count")
+                    .setSoftDeletion(loader.isSoftDeletion());
+
+            for (Object id : batch) {
+                childCounts.put(id, 0);
+            }
+            for (KeyValueEntity row : getDataManager().loadValues(context)) {
+                Number count = row.getValue("count");
+                childCounts.put(row.getValue("parentId"), count.intValue());
+            }
+        }
+    }
+
+    /**
+     * Creates a {@code group by} query counting children of the given parents over the ids selected by the loader
+     * query, so the counts respect its conditions and parameters.
+     */
+    protected ValueLoadContext.Query createCountQuery(List<Object> parentIds) {
+        LoadContext.Query loaderQuery = loader.createLoadContext().getQuery();
+        if (loaderQuery == null || loaderQuery.getQueryString() == null) {
+            throw new IllegalStateException("Lazy loading of a hierarchy requires the loader query");
+        }
+
+        MetaClass metaClass = loader.getContainer().getEntityMetaClass();
+        String pkName = getMetadataTools().getPrimaryKeyName(metaClass);
+
+        QueryTransformer transformer = QueryTransformerFactory.createTransformer(loaderQuery.getQueryString());
+        transformer.replaceWithSelectId(pkName);
+        transformer.removeOrderBy();
+
+        String parentIdPath = ALIAS + "." + hierarchyProperty + ".id";
+        String queryString = "select " + parentIdPath + ", count(" + ALIAS + ")" +
+                " from " + metaClass.getName() + " " + ALIAS +
+                " where " + ALIAS + "." + pkName + " in (" + transformer.getResult() + ")" +
+                " and " + parentIdPath + " in :" + PARENT_IDS_PARAM +
+                " group by " + parentIdPath;
+
+        ValueLoadContext.Query query = ValueLoadContext.createQuery(queryString)
+                .setParameters(loaderQuery.getParameters())
+                .setCondition(loaderQuery.getCondition())
+                .setParameter(PARENT_IDS_PARAM, parentIds);
+        String[] noConversionParams = loaderQuery.getNoConversionParams();
+        if (noConversionParams != null) {
+            for (String name : noConversionParams) {
+                query.setParameter(name, loaderQuery.getParameters().get(name), false);
+            }
+        }
+        return query;
+    }
+
+    protected DataManager getDataManager() {
+        return AppBeans.get(DataManager.NAME);
+    }
+
+    protected MetadataTools getMetadataTools() {
+        return AppBeans.get(MetadataTools.NAME);
+    }
+}
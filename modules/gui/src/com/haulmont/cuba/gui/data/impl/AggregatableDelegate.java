@@ -32,17 +32,32 @@ import java.util.stream.Collectors;
 
 public abstract class AggregatableDelegate<K> {
     public Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection<K> itemIds) {
+        return aggregate(aggregationInfos, itemIds, false);
+    }
+
+    /**
+     * @param totalAggregation true if the items are aggregated for the total row, false for a group row
+     */
+    public Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection<K> itemIds,
+                                                  boolean totalAggregation) {
         if (aggregationInfos == null || aggregationInfos.length == 0) {
             throw new NullPointerException("Aggregation must be executed at least by one field");
         }
 
-        return doAggregation(itemIds, aggregationInfos);
+        return doAggregation(itemIds, aggregationInfos, totalAggregation);
     }
 
     protected Map<AggregationInfo, String> doAggregation(Collection<K> itemIds, AggregationInfo[] aggregationInfos) {
+        return doAggregation(itemIds, aggregationInfos, false);
+    }
+
+    protected Map<AggregationInfo, String> doAggregation(Collection<K> itemIds, AggregationInfo[] aggregationInfos,
+                                                         boolean totalAggregation) {
+        Map<AggregationInfo, Object> values = doValuesAggregation(itemIds, aggregationInfos, totalAggregation);
+
         Map<AggregationInfo, String> aggregationResults = new HashMap<>();
         for (AggregationInfo aggregationInfo : aggregationInfos) {
-            final Object value = doPropertyAggregation(aggregationInfo, itemIds);
+            final Object value = values.get(aggregationInfo);
 
             String formattedValue;
             if (aggregationInfo.getFormatter() != null) {
@@ -88,10 +103,35 @@ public abstract class AggregatableDelegate<K> {
     }
 
     public Map<AggregationInfo, Object> aggregateValues(AggregationInfo[] aggregationInfos, Collection<K> itemIds) {
+        return aggregateValues(aggregationInfos, itemIds, false);
+    }
+
+    /**
+     * @param totalAggregation true if the items are aggregated for the total row, false for a group row
+     */
+    public Map<AggregationInfo, Object> aggregateValues(AggregationInfo[] aggregationInfos, Collection<K> itemIds,
+                                                        boolean totalAggregation) {
         if (aggregationInfos == null || aggregationInfos.length == 0) {
             throw new NullPointerException("Aggregation must be executed at least by one field");
         }
 
+        return doValuesAggregation(itemIds, aggregationInfos, totalAggregation);
+    }
+
+    /**
+     * Computes values of all aggregations, can be overridden to compute some of them at once, e.g. the total row
+     * aggregations on the database.
+     */
+    protected Map<AggregationInfo, Object> doValuesAggregation(Collection<K> itemIds,
+                                                               AggregationInfo[] aggregationInfos,
+                                                               boolean totalAggregation) {
+        return doValuesAggregation(itemIds, aggregationInfos);
+    }
+
+    /**
+     * Computes values of all aggregations over the given items.
+     */
+    protected Map<AggregationInfo, Object> doValuesAggregation(Collection<K> itemIds, AggregationInfo[] aggregationInfos) {
         Map<AggregationInfo, Object> aggregationResults = new HashMap<>();
 
         for (AggregationInfo aggregationInfo : aggregationInfos) {
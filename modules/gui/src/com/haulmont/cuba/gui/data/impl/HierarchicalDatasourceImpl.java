@@ -19,6 +19,7 @@ package com.haulmont.cuba.gui.data.impl;
 
 import com.haulmont.chile.core.model.Instance;
 import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.gui.components.data.tree.HierarchyIndex;
 import com.haulmont.cuba.gui.data.HierarchicalDatasource;
 
 import java.util.*;
@@ -29,6 +30,12 @@ public class HierarchicalDatasourceImpl<T extends Entity<K>, K>
 
     protected String hierarchyPropertyName;
 
+    protected HierarchyIndex<T> hierarchyIndex;
+
+    public HierarchicalDatasourceImpl() {
+        listener = new HierarchyItemListener();
+    }
+
     @Override
     public String getHierarchyPropertyName() {
         return hierarchyPropertyName;
@@ -37,25 +44,40 @@ public class HierarchicalDatasourceImpl<T extends Entity<K>, K>
     @Override
     public void setHierarchyPropertyName(String hierarchyPropertyName) {
         this.hierarchyPropertyName = hierarchyPropertyName;
+        this.hierarchyIndex = null;
+    }
+
+    /**
+     * @return index of children by parent, or null if the hierarchy property is not set
+     */
+    @SuppressWarnings("unchecked")
+    protected HierarchyIndex<T> getHierarchyIndex() {
+        if (hierarchyIndex == null && hierarchyPropertyName != null) {
+            hierarchyIndex = new HierarchyIndex<>(hierarchyPropertyName, true, () -> (Collection<T>) data.values(), null);
+        }
+        return hierarchyIndex;
+    }
+
+    @Override
+    protected void fireCollectionChanged(Operation operation, List<T> items) {
+        // the data can be changed in many ways, the index is rebuilt on the next access
+        if (hierarchyIndex != null) {
+            hierarchyIndex.invalidate();
+        }
+        super.fireCollectionChanged(operation, items);
     }
 
     @Override
     public Collection<K> getChildren(K itemId) {
-        if (hierarchyPropertyName != null) {
-            final Entity currentItem = getItem(itemId);
-            if (currentItem == null)
+        HierarchyIndex<T> index = getHierarchyIndex();
+        if (index != null) {
+            if (getItem(itemId) == null)
                 return Collections.emptyList();
 
             List<K> res = new ArrayList<>();
-
-            Collection<K> ids = getItemIds();
-            for (K id : ids) {
-                Entity<K> item = getItemNN(id);
-                Entity<K> parentItem = item.getValue(hierarchyPropertyName);
-                if (parentItem != null && parentItem.getId().equals(itemId))
-                    res.add(item.getId());
+            for (T item : index.getChildren(itemId)) {
+                res.add(item.getId());
             }
-
             return res;
         }
         return Collections.emptyList();
@@ -77,19 +99,15 @@ public class HierarchicalDatasourceImpl<T extends Entity<K>, K>
 
     @Override
     public Collection<K> getRootItemIds() {
-        Collection<K> ids = getItemIds();
-
-        if (hierarchyPropertyName != null) {
+        HierarchyIndex<T> index = getHierarchyIndex();
+        if (index != null) {
             Set<K> result = new LinkedHashSet<>();
-            for (K id : ids) {
-                Entity<K> item = getItemNN(id);
-                Entity<K> parentItem = item.getValue(hierarchyPropertyName);
-                if (parentItem == null || !containsItem(parentItem.getId()))
-                    result.add(item.getId());
+            for (T item : index.getRootItems()) {
+                result.add(item.getId());
             }
             return result;
         } else {
-            return new LinkedHashSet<>(ids);
+            return new LinkedHashSet<>(getItemIds());
         }
     }
 
@@ -98,9 +116,9 @@ public class HierarchicalDatasourceImpl<T extends Entity<K>, K>
         Instance item = getItem(itemId);
         if (item == null) return false;
 
-        if (hierarchyPropertyName != null) {
-            Entity<K> parentItem = item.getValue(hierarchyPropertyName);
-            return (parentItem == null || !containsItem(parentItem.getId()));
+        HierarchyIndex<T> index = getHierarchyIndex();
+        if (index != null) {
+            return index.isRoot(itemId);
         } else {
             return true;
         }
@@ -108,20 +126,21 @@ public class HierarchicalDatasourceImpl<T extends Entity<K>, K>
 
     @Override
     public boolean hasChildren(K itemId) {
-        final Entity currentItem = getItem(itemId);
-        if (currentItem == null)
+        if (getItem(itemId) == null)
             return false;
 
-        if (hierarchyPropertyName != null) {
-            Collection<K> ids = getItemIds();
-            for (K id : ids) {
-                Entity item = getItemNN(id);
-                Entity parentItem = item.getValue(hierarchyPropertyName);
-                if (parentItem != null && parentItem.getId().equals(itemId))
-                    return true;
+        HierarchyIndex<T> index = getHierarchyIndex();
+        return index != null && index.hasChildren(itemId);
+    }
+
+    protected class HierarchyItemListener extends ItemListener {
+        @SuppressWarnings("unchecked")
+        @Override
+        public void propertyChanged(Instance.PropertyChangeEvent e) {
+            if (hierarchyIndex != null && e.getProperty().equals(hierarchyPropertyName)) {
+                hierarchyIndex.parentChanged((T) e.getItem());
             }
+            super.propertyChanged(e);
         }
-
-        return false;
     }
-}
\ No newline at end of file
+}
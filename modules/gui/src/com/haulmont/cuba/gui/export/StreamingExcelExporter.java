@@ -0,0 +1,500 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.export;
+
+import com.haulmont.chile.core.model.MetaPropertyPath;
+import com.haulmont.chile.core.model.utils.InstanceUtils;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.ChunkedLoadIterator;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.LoadContext;
+import com.haulmont.cuba.gui.ComponentsHelper;
+import com.haulmont.cuba.gui.backgroundwork.BackgroundWorkProgressWindow;
+import com.haulmont.cuba.gui.components.Component;
+import com.haulmont.cuba.gui.components.DataGrid;
+import com.haulmont.cuba.gui.components.Table;
+import com.haulmont.cuba.gui.components.data.meta.ContainerDataUnit;
+import com.haulmont.cuba.gui.executors.BackgroundTask;
+import com.haulmont.cuba.gui.executors.TaskLifeCycle;
+import com.haulmont.cuba.gui.model.CollectionContainer;
+import com.haulmont.cuba.gui.model.CollectionLoader;
+import com.haulmont.cuba.gui.model.DataLoader;
+import com.haulmont.cuba.gui.model.HasLoader;
+import com.haulmont.cuba.gui.screen.Screen;
+import com.haulmont.cuba.gui.screen.UiControllerUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.dom4j.Element;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.haulmont.bali.util.Preconditions.checkNotNullArgument;
+
+/**
+ * Exports all entities selected by the {@link CollectionLoader} of a {@link Table} or {@link DataGrid} instead of
+ * the rows loaded to the component.
+ * <p>
+ * Entities are loaded by {@link DataManager#loadStream(LoadContext, int)} page by page with the loader query,
+ * condition, parameters, sort and view, and written to a temporary file: XLSX is written by {@link SXSSFWorkbook}
+ * keeping only a window of rows in memory, CSV is written directly. The export runs as a {@link BackgroundTask}
+ * publishing the number of written rows, and the result is shown by {@link ExportDisplay} with
+ * {@link TempFileDataProvider}, which keeps the file until the UI is detached. A cancelled or interrupted export
+ * stops before the next row and deletes the file.
+ * <p>
+ * Columns without a property path are exported only if they provide a value without UI, e.g. by
+ * {@link Table.Printable}. Grouping, hierarchy and aggregation are not exported. A load delegate of the loader
+ * is not used.
+ * <br>An instance of the exporter should not be used for several exports at the same time.
+ */
+public class StreamingExcelExporter extends ExcelExporter {
+
+    public static final int DEFAULT_ROW_ACCESS_WINDOW_SIZE = 100;
+
+    public enum Format {
+        XLSX,
+        CSV
+    }
+
+    protected static class ExportColumn {
+
+        protected final String caption;
+        protected final MetaPropertyPath propertyPath;
+        protected final Function<Entity, Object> valueProvider;
+
+        protected ExportColumn(String caption, @Nullable MetaPropertyPath propertyPath,
+                               Function<Entity, Object> valueProvider) {
+            this.caption = caption;
+            this.propertyPath = propertyPath;
+            this.valueProvider = valueProvider;
+        }
+    }
+
+    protected final Format format;
+
+    protected int pageSize = ChunkedLoadIterator.DEFAULT_CHUNK_SIZE;
+    protected int rowAccessWindowSize = DEFAULT_ROW_ACCESS_WINDOW_SIZE;
+    protected long timeoutSeconds = TimeUnit.HOURS.toSeconds(1);
+    protected char csvSeparator = ',';
+
+    public StreamingExcelExporter() {
+        this(Format.XLSX);
+    }
+
+    public StreamingExcelExporter(Format format) {
+        super(ExcelExportFormat.XLSX);
+        checkNotNullArgument(format, "format is null");
+        this.format = format;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Sets the maximum number of entities loaded by a single request, {@link ChunkedLoadIterator#DEFAULT_CHUNK_SIZE}
+     * by default.
+     */
+    public void setPageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        this.pageSize = pageSize;
+    }
+
+    public int getRowAccessWindowSize() {
+        return rowAccessWindowSize;
+    }
+
+    /**
+     * Sets the number of XLSX rows kept in memory before they are flushed to disk, see {@link SXSSFWorkbook}.
+     */
+    public void setRowAccessWindowSize(int rowAccessWindowSize) {
+        if (rowAccessWindowSize <= 0) {
+            throw new IllegalArgumentException("rowAccessWindowSize must be positive");
+        }
+        this.rowAccessWindowSize = rowAccessWindowSize;
+    }
+
+    public long getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    /**
+     * Sets the timeout of the export task, one hour by default.
+     */
+    public void setTimeoutSeconds(long timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    public char getCsvSeparator() {
+        return csvSeparator;
+    }
+
+    public void setCsvSeparator(char csvSeparator) {
+        this.csvSeparator = csvSeparator;
+    }
+
+    /**
+     * Exports all entities of the table loader showing the progress in a modal window which allows cancelling.
+     *
+     * @param table    table bound to a collection container with a loader
+     * @param columns  exported columns
+     * @param display  export display
+     * @param fileName name of the file without extension, if null the entity caption is used
+     */
+    public void exportTableData(Table<Entity> table, List<Table.Column> columns, ExportDisplay display,
+                                @Nullable String fileName) {
+        BackgroundTask<Integer, ExportDataProvider> task = createTableExportTask(table, columns, display, fileName);
+        showProgress(task, getLoader(table.getItems()));
+    }
+
+    /**
+     * Exports all entities of the data grid loader showing the progress in a modal window which allows cancelling.
+     *
+     * @param dataGrid data grid bound to a collection container with a loader
+     * @param columns  exported columns
+     * @param display  export display
+     * @param fileName name of the file without extension, if null the entity caption is used
+     */
+    public void exportDataGridData(DataGrid<Entity> dataGrid, List<DataGrid.Column> columns, ExportDisplay display,
+                                   @Nullable String fileName) {
+        BackgroundTask<Integer, ExportDataProvider> task =
+                createDataGridExportTask(dataGrid, columns, display, fileName);
+        showProgress(task, getLoader(dataGrid.getItems()));
+    }
+
+    /**
+     * Creates a task exporting all entities of the table loader, the task can be executed by
+     * {@link com.haulmont.cuba.gui.executors.BackgroundWorker}. The task publishes the number of written rows
+     * and shows the result by the display when done.
+     */
+    public BackgroundTask<Integer, ExportDataProvider> createTableExportTask(Table<Entity> table,
+                                                                             List<Table.Column> columns,
+                                                                             ExportDisplay display,
+                                                                             @Nullable String fileName) {
+        checkNotNullArgument(display, "ExportDisplay is null");
+
+        CollectionLoader<Entity> loader = getLoader(table.getItems());
+        List<ExportColumn> exportColumns = columns.stream()
+                .map(column -> createExportColumn(table, column))
+                .collect(Collectors.toList());
+
+        return createExportTask(getScreen(table), createLoadContext(loader), exportColumns, display,
+                fileName != null ? fileName : getDefaultFileName(loader));
+    }
+
+    /**
+     * Creates a task exporting all entities of the data grid loader, the task can be executed by
+     * {@link com.haulmont.cuba.gui.executors.BackgroundWorker}. The task publishes the number of written rows
+     * and shows the result by the display when done.
+     */
+    public BackgroundTask<Integer, ExportDataProvider> createDataGridExportTask(DataGrid<Entity> dataGrid,
+                                                                                List<DataGrid.Column> columns,
+                                                                                ExportDisplay display,
+                                                                                @Nullable String fileName) {
+        checkNotNullArgument(display, "ExportDisplay is null");
+
+        CollectionLoader<Entity> loader = getLoader(dataGrid.getItems());
+        List<ExportColumn> exportColumns = columns.stream()
+                .map(this::createExportColumn)
+                .collect(Collectors.toList());
+
+        return createExportTask(getScreen(dataGrid), createLoadContext(loader), exportColumns, display,
+                fileName != null ? fileName : getDefaultFileName(loader));
+    }
+
+    protected BackgroundTask<Integer, ExportDataProvider> createExportTask(Screen screen, LoadContext<Entity> context,
+                                                                         List<ExportColumn> columns,
+                                                                         ExportDisplay display, String fileName) {
+        return new BackgroundTask<Integer, ExportDataProvider>(timeoutSeconds, screen) {
+            @Override
+            public ExportDataProvider run(TaskLifeCycle<Integer> taskLifeCycle) throws Exception {
+                File file = TempFileDataProvider.createTempFile();
+                boolean written = false;
+                try {
+                    if (format == Format.CSV) {
+                        writeCsv(file, context, columns, taskLifeCycle);
+                    } else {
+                        writeXlsx(file, context, columns, taskLifeCycle);
+                    }
+                    written = true;
+                } finally {
+                    if (!written) {
+                        FileUtils.deleteQuietly(file);
+                    }
+                }
+                return new TempFileDataProvider(file);
+            }
+
+            @Override
+            public void done(ExportDataProvider result) {
+                ExportFormat exportFormat = getExportFormat();
+                try {
+                    display.show(result, fileName + "." + exportFormat.getFileExt(), exportFormat);
+                } catch (RuntimeException e) {
+                    ((TempFileDataProvider) result).delete();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    protected void showProgress(BackgroundTask<Integer, ExportDataProvider> task, CollectionLoader<Entity> loader) {
+        DataManager dataManager = AppBeans.get(DataManager.NAME);
+        long total = dataManager.getCount(createLoadContext(loader));
+
+        String title = messages.getMessage(StreamingExcelExporter.class, "excelExporter.exportProgress");
+        BackgroundWorkProgressWindow.show(task, title, null, Math.max(total, 1), true);
+    }
+
+    protected void writeXlsx(File file, LoadContext<Entity> context, List<ExportColumn> columns,
+                             TaskLifeCycle<Integer> taskLifeCycle) throws IOException, InterruptedException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(rowAccessWindowSize);
+        try {
+            isRowNumberExceeded = false;
+            wb = workbook;
+            sheet = wb.createSheet("Export");
+            createFonts();
+            createFormats();
+            createAutoColumnSizers(columns.size());
+
+            int r = 0;
+            Row headerRow = sheet.createRow(r);
+            for (int c = 0; c < columns.size(); c++) {
+                String caption = columns.get(c).caption;
+
+                RichTextString richTextString = excelExportHelper.createRichTextString(caption);
+                richTextString.applyFont(boldFont);
+                headerRow.createCell(c).setCellValue(richTextString);
+
+                ExcelAutoColumnSizer sizer = new ExcelAutoColumnSizer();
+                sizer.notifyCellValue(caption, boldFont);
+                sizers[c] = sizer;
+            }
+
+            DataManager dataManager = AppBeans.get(DataManager.NAME);
+            try (Stream<Entity> stream = dataManager.loadStream(context, pageSize)) {
+                for (Iterator<Entity> iterator = stream.iterator(); iterator.hasNext(); ) {
+                    if (r + 1 >= excelOptions.getMaxRowCount()) {
+                        isRowNumberExceeded = true;
+                        break;
+                    }
+
+                    checkCancelled(taskLifeCycle);
+
+                    Entity item = iterator.next();
+                    Row row = sheet.createRow(++r);
+                    for (int c = 0; c < columns.size(); c++) {
+                        ExportColumn column = columns.get(c);
+                        formatValueCell(row.createCell(c), column.valueProvider.apply(item), column.propertyPath,
+                                c, r, 0, null);
+                    }
+
+                    if (r % pageSize == 0) {
+                        taskLifeCycle.publish(r);
+                    }
+                }
+            }
+            taskLifeCycle.publish(r);
+
+            for (int c = 0; c < columns.size(); c++) {
+                sheet.setColumnWidth(c, sizers[c].getWidth() * excelOptions.getColWidthMagic());
+            }
+
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                workbook.write(out);
+            }
+        } finally {
+            // removes rows flushed to temporary files
+            workbook.dispose();
+        }
+    }
+
+    protected void writeCsv(File file, LoadContext<Entity> context, List<ExportColumn> columns,
+                            TaskLifeCycle<Integer> taskLifeCycle) throws IOException, InterruptedException {
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            // byte order mark lets Excel detect the encoding
+            writer.write('\uFEFF');
+
+            for (int c = 0; c < columns.size(); c++) {
+                if (c > 0) {
+                    writer.write(csvSeparator);
+                }
+                writer.write(escapeCsvValue(columns.get(c).caption));
+            }
+            writer.write("\r\n");
+
+            int r = 0;
+            DataManager dataManager = AppBeans.get(DataManager.NAME);
+            try (Stream<Entity> stream = dataManager.loadStream(context, pageSize)) {
+                for (Iterator<Entity> iterator = stream.iterator(); iterator.hasNext(); ) {
+                    checkCancelled(taskLifeCycle);
+
+                    Entity item = iterator.next();
+                    for (int c = 0; c < columns.size(); c++) {
+                        if (c > 0) {
+                            writer.write(csvSeparator);
+                        }
+                        ExportColumn column = columns.get(c);
+                        writer.write(escapeCsvValue(formatCsvValue(column.valueProvider.apply(item),
+                                column.propertyPath)));
+                    }
+                    writer.write("\r\n");
+
+                    if (++r % pageSize == 0) {
+                        taskLifeCycle.publish(r);
+                    }
+                }
+            }
+            taskLifeCycle.publish(r);
+        }
+    }
+
+    /**
+     * Stops the export if the task is cancelled or its thread is interrupted.
+     */
+    protected void checkCancelled(TaskLifeCycle<Integer> taskLifeCycle) throws InterruptedException {
+        if (taskLifeCycle.isCancelled() || taskLifeCycle.isInterrupted() || Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("Export is cancelled");
+        }
+    }
+
+    protected String formatCsvValue(@Nullable Object value, @Nullable MetaPropertyPath propertyPath) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? trueStr : falseStr;
+        }
+        if (propertyPath != null && !(value instanceof String) && !(value instanceof Entity)) {
+            return metadataTools.format(value, propertyPath.getMetaProperty());
+        }
+        return metadataTools.format(value);
+    }
+
+    protected String escapeCsvValue(@Nullable String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(csvSeparator) >= 0 || StringUtils.containsAny(value, '"', '\n', '\r')) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+
+    protected ExportFormat getExportFormat() {
+        return format == Format.CSV ? ExportFormat.CSV : ExportFormat.XLSX;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected ExportColumn createExportColumn(Table<Entity> table, Table.Column column) {
+        MetaPropertyPath propertyPath = column.getId() instanceof MetaPropertyPath
+                ? (MetaPropertyPath) column.getId()
+                : null;
+
+        Function<Entity, Object> valueProvider;
+        Table.Printable printable = table.getPrintable(column);
+        if (printable != null) {
+            valueProvider = printable::getValue;
+        } else if (propertyPath != null) {
+            Element xmlDescriptor = column.getXmlDescriptor();
+            String captionProperty = xmlDescriptor != null ? xmlDescriptor.attributeValue("captionProperty") : null;
+            Function<Object, String> formatter = column.getFormatter();
+            valueProvider = item -> {
+                Object value = StringUtils.isNotEmpty(captionProperty)
+                        ? InstanceUtils.getValueEx(item, captionProperty)
+                        : InstanceUtils.getValueEx(item, propertyPath.getPath());
+                return formatter != null ? formatter.apply(value) : value;
+            };
+        } else if (column.getValueProvider() != null) {
+            valueProvider = column.getValueProvider();
+        } else {
+            valueProvider = item -> null;
+        }
+        return new ExportColumn(column.getCaption(), propertyPath, valueProvider);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected ExportColumn createExportColumn(DataGrid.Column column) {
+        MetaPropertyPath propertyPath = column.getPropertyPath();
+
+        Function<Entity, Object> valueProvider;
+        if (propertyPath != null) {
+            Function<Object, Object> formatter = column.getFormatter();
+            valueProvider = item -> {
+                Object value = InstanceUtils.getValueEx(item, propertyPath.getPath());
+                return formatter != null ? formatter.apply(value) : value;
+            };
+        } else {
+            // generated columns require UI
+            valueProvider = item -> null;
+        }
+        return new ExportColumn(column.getCaption(), propertyPath, valueProvider);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected CollectionLoader<Entity> getLoader(@Nullable Object items) {
+        if (items instanceof ContainerDataUnit) {
+            CollectionContainer container = ((ContainerDataUnit) items).getContainer();
+            if (container instanceof HasLoader) {
+                DataLoader loader = ((HasLoader) container).getLoader();
+                if (loader instanceof CollectionLoader) {
+                    return (CollectionLoader<Entity>) loader;
+                }
+            }
+        }
+        throw new IllegalStateException("Exported component must be bound to a container loaded by CollectionLoader");
+    }
+
+    /**
+     * Creates a context loading all entities of the loader regardless of its paging.
+     */
+    protected LoadContext<Entity> createLoadContext(CollectionLoader<Entity> loader) {
+        LoadContext<Entity> context = loader.createLoadContext();
+        LoadContext.Query query = context.getQuery();
+        if (query != null) {
+            query.setFirstResult(0);
+            query.setMaxResults(0);
+            query.setAfterSortKey(null);
+        }
+        return context;
+    }
+
+    protected String getDefaultFileName(CollectionLoader<Entity> loader) {
+        return messages.getTools().getEntityCaption(loader.getContainer().getEntityMetaClass());
+    }
+
+    protected Screen getScreen(Component.BelongToFrame component) {
+        return UiControllerUtils.getScreen(ComponentsHelper.getWindowNN(component).getFrameOwner());
+    }
+}
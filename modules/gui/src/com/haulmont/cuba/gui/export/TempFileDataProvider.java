@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.export;
+
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.Configuration;
+import com.haulmont.cuba.core.global.GlobalConfig;
+import com.haulmont.cuba.core.global.UuidProvider;
+import org.apache.commons.io.FileUtils;
+
+import java.io.*;
+
+import static com.haulmont.bali.util.Preconditions.checkNotNullArgument;
+
+/**
+ * Data provider for a file in the temporary directory of the client, see {@link GlobalConfig#getTempDir()}.
+ * <p>
+ * The data is read from the file, so it is not held in memory, and can be provided any number of times, e.g. if
+ * the download is repeated. The file is deleted by {@link #delete()}, which is called by the web client when the UI
+ * showing the file is detached. Files left after a crash are removed by the cleanup of the temporary directory,
+ * see {@link com.haulmont.cuba.gui.upload.FileUploadingMBean#clearTempDirectory()}.
+ */
+public class TempFileDataProvider implements ExportDataProvider {
+
+    protected File file;
+
+    public TempFileDataProvider(File file) {
+        checkNotNullArgument(file, "file is null");
+
+        this.file = file;
+    }
+
+    /**
+     * @return new empty file with a unique name in the temporary directory
+     */
+    public static File createTempFile() {
+        GlobalConfig config = AppBeans.get(Configuration.class).getConfig(GlobalConfig.class);
+        File file = new File(config.getTempDir(), UuidProvider.createUuid().toString());
+        try {
+            if (!file.createNewFile()) {
+                throw new IOException("File already exists");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to create temp file " + file.getAbsolutePath(), e);
+        }
+        return file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public InputStream provide() {
+        try {
+            return new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException("Unable to read temp file " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Deletes the file. The data cannot be provided after that.
+     */
+    public void delete() {
+        FileUtils.deleteQuietly(file);
+    }
+}
@@ -23,6 +23,7 @@ import com.haulmont.cuba.core.global.View;
 import com.haulmont.cuba.gui.screen.InstallSubject;
 import com.haulmont.cuba.gui.screen.Subscribe;
 
+import javax.annotation.Nullable;
 import java.util.EventObject;
 import java.util.List;
 import java.util.function.Consumer;
@@ -50,6 +51,26 @@ public interface CollectionLoader<E extends Entity> extends BaseCollectionLoader
      */
     LoadContext<E> createLoadContext();
 
+    /**
+     * Returns values of the sort key of the entity preceding the first loaded one, or null if the loader
+     * uses offset paging.
+     *
+     * @see #setAfterSortKey(List)
+     */
+    @Nullable
+    List<Object> getAfterSortKey();
+
+    /**
+     * Sets values of the sort key of the entity preceding {@link #getFirstResult()}. If set, the next load
+     * selects the page by keyset pagination instead of the offset, see {@link LoadContext.Query#setAfterSortKey(List)}.
+     * The first result is still passed to the load context, so the page is selected by the offset if the key
+     * cannot be applied.
+     * <p>
+     * The key is reset when the query, condition, parameters, sort or first result of the loader are changed,
+     * so it must be set after them.
+     */
+    void setAfterSortKey(@Nullable List<Object> afterSortKey);
+
     /**
      * Returns true if the entity's dynamic attributes are loaded.
      */
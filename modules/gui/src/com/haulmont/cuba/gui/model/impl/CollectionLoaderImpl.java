@@ -49,6 +49,7 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
     protected View view;
     protected String viewName;
     protected Sort sort;
+    protected List<Object> afterSortKey;
     protected Function<LoadContext<E>, List<E>> delegate;
     protected LoadContext.Query lastQuery;
     protected List<LoadContext.Query> prevQueries;
@@ -137,6 +138,8 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
 
         query.setCacheable(cacheable);
 
+        if (afterSortKey != null)
+            query.setAfterSortKey(afterSortKey);
         if (firstResult > 0)
             query.setFirstResult(firstResult);
         if (maxResults < Integer.MAX_VALUE)
@@ -200,6 +203,7 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
     @Override
     public void setQuery(String query) {
         this.query = query;
+        this.afterSortKey = null;
     }
 
     @Override
@@ -210,6 +214,7 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
     @Override
     public void setCondition(Condition condition) {
         this.condition = condition;
+        this.afterSortKey = null;
     }
 
     @Override
@@ -220,6 +225,7 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
     @Override
     public void setParameters(Map<String, Object> parameters) {
         this.parameters.clear();
+        this.afterSortKey = null;
         for (Map.Entry<String, Object> entry : parameters.entrySet()) {
             setParameter(entry.getKey(), entry.getValue());
         }
@@ -233,11 +239,13 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
     @Override
     public void setParameter(String name, Object value) {
         parameters.put(name, value);
+        afterSortKey = null;
     }
 
     @Override
     public void removeParameter(String name) {
         parameters.remove(name);
+        afterSortKey = null;
     }
 
     @Override
@@ -248,6 +256,18 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
     @Override
     public void setFirstResult(int firstResult) {
         this.firstResult = firstResult;
+        this.afterSortKey = null;
+    }
+
+    @Nullable
+    @Override
+    public List<Object> getAfterSortKey() {
+        return afterSortKey;
+    }
+
+    @Override
+    public void setAfterSortKey(@Nullable List<Object> afterSortKey) {
+        this.afterSortKey = afterSortKey == null ? null : new ArrayList<>(afterSortKey);
     }
 
     @Override
@@ -314,6 +334,7 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
 
     @Override
     public void setSort(Sort sort) {
+        this.afterSortKey = null;
         if (sort == null || sort.getOrders().isEmpty()) {
             this.sort = null;
         } else {
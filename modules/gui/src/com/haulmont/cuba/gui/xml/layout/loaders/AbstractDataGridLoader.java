@@ -922,6 +922,7 @@ public abstract class AbstractDataGridLoader<T extends DataGrid> extends Actions
             aggregation.setPropertyPath(column.getPropertyPath());
 
             loadAggregationType(aggregation, aggregationElement);
+            loadAggregationDatabase(aggregation, aggregationElement);
 
             loadValueDescription(column, aggregationElement);
 
@@ -944,6 +945,13 @@ public abstract class AbstractDataGridLoader<T extends DataGrid> extends Actions
         }
     }
 
+    protected void loadAggregationDatabase(AggregationInfo aggregation, Element aggregationElement) {
+        String aggregationDatabase = aggregationElement.attributeValue("database");
+        if (StringUtils.isNotEmpty(aggregationDatabase)) {
+            aggregation.setDatabase(Boolean.parseBoolean(aggregationDatabase));
+        }
+    }
+
     protected void loadValueDescription(DataGrid.Column column, Element aggregationElement) {
         String valueDescription = aggregationElement.attributeValue("valueDescription");
         if (StringUtils.isNotEmpty(valueDescription)) {
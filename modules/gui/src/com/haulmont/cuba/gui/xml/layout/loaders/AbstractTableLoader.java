@@ -697,6 +697,11 @@ public abstract class AbstractTableLoader<T extends Table> extends ActionsHolder
                 aggregation.setEditable(Boolean.valueOf(aggregationEditable));
             }
 
+            String aggregationDatabase = aggregationElement.attributeValue("database");
+            if (StringUtils.isNotEmpty(aggregationDatabase)) {
+                aggregation.setDatabase(Boolean.parseBoolean(aggregationDatabase));
+            }
+
             String valueDescription = aggregationElement.attributeValue("valueDescription");
             if (StringUtils.isNotEmpty(valueDescription)) {
                 column.setValueDescription(loadResourceString(valueDescription));
@@ -39,6 +39,11 @@ import java.util.UUID;
  * <p>
  * Bean of the web block that creates a proxy object to invoke middleware services directly
  * using {@link LocalServiceInvoker}.
+ * <p>
+ * If the service implements the service interface loaded by the portal block, i.e. the classes are shared between
+ * the portal block and middleware, the service is invoked without serializing the invocation. Immutable values and
+ * parameters annotated with {@link BypassSerialization} are passed by reference, other arguments and the result
+ * are copied in memory by {@link LocalServiceValueCopier} to keep the call semantics.
  */
 public class LocalServiceProxy extends RemoteAccessor implements FactoryBean<Object>, InitializingBean {
 
@@ -55,7 +60,7 @@ public class LocalServiceProxy extends RemoteAccessor implements FactoryBean<Obj
         serviceProxy = Proxy.newProxyInstance(
                 getBeanClassLoader(),
                 new Class[]{getServiceInterface()},
-                new LocalServiceInvocationHandler(serviceName)
+                new LocalServiceInvocationHandler(serviceName, getServiceInterface())
         );
     }
 
@@ -88,9 +93,11 @@ public class LocalServiceProxy extends RemoteAccessor implements FactoryBean<Obj
     private static class LocalServiceInvocationHandler implements InvocationHandler {
 
         private String serviceName;
+        private Class<?> serviceInterface;
 
-        public LocalServiceInvocationHandler(String serviceName) {
+        public LocalServiceInvocationHandler(String serviceName, Class<?> serviceInterface) {
             this.serviceName = serviceName;
+            this.serviceInterface = serviceInterface;
         }
 
         @Override
@@ -105,13 +112,12 @@ public class LocalServiceProxy extends RemoteAccessor implements FactoryBean<Obj
                 throw new RuntimeException(String.format(
                         "Unable to connect to middleware. Service %s is not registered in LocalServiceDirectory", entryName));
 
-            Parameter[] parameters = method.getParameters();
-            Class<?>[] parameterTypes = method.getParameterTypes();
-            String[] parameterTypeNames = new String[parameterTypes.length];
-            for (int i = 0; i < parameterTypes.length; i++) {
-                parameterTypeNames[i] = parameterTypes[i].getName();
+            if (invoker.isDirectInvocationSupported(serviceInterface)) {
+                return invokeDirect(invoker, method, args);
             }
 
+            Parameter[] parameters = method.getParameters();
+
             byte[][] argumentsData;
             Object[] notSerializableArguments;
             if (args == null) {
@@ -134,6 +140,64 @@ public class LocalServiceProxy extends RemoteAccessor implements FactoryBean<Obj
                 }
             }
 
+            LocalServiceInvocation invocation = createInvocation(method, argumentsData, notSerializableArguments);
+
+            LocalServiceInvocationResult result = invoker.invoke(invocation);
+            AppContext.setSecurityContext(AppContext.getSecurityContext());// to reset application name in LogMDC for the current thread
+
+            // don't use SerializationUtils.deserialize() here to avoid ClassNotFoundException
+            if (result.getException() != null) {
+                throw unwrapException((Throwable) SerializationSupport.deserialize(result.getException()));
+            } else {
+                Object data;
+                if (result.getNotSerializableData() == null) {
+                    data = SerializationSupport.deserialize(result.getData());
+                } else {
+                    data = result.getNotSerializableData();
+                }
+                return data;
+            }
+        }
+
+        private Object invokeDirect(LocalServiceInvoker invoker, Method method, Object[] args) throws Throwable {
+            byte[][] argumentsData = null;
+            Object[] arguments = null;
+            if (args != null) {
+                Parameter[] parameters = method.getParameters();
+                boolean[] byReference = new boolean[args.length];
+                for (int i = 0; i < args.length; i++) {
+                    byReference[i] = canBypassSerialization(parameters[i]);
+                }
+                argumentsData = new byte[args.length][];
+                arguments = new LocalServiceValueCopier().copyArguments(args, byReference);
+            }
+
+            LocalServiceInvocation invocation = createInvocation(method, argumentsData, arguments);
+            // the result is copied here if needed
+            invocation.setResultBypassSerialization(true);
+
+            LocalServiceInvocationResult result = invoker.invokeDirect(invocation, method);
+            AppContext.setSecurityContext(AppContext.getSecurityContext());// to reset application name in LogMDC for the current thread
+
+            LocalServiceValueCopier resultCopier = new LocalServiceValueCopier();
+            if (result.getException() != null) {
+                throw unwrapException((Throwable) SerializationSupport.deserialize(result.getException()));
+            } else if (result.getNotSerializableException() != null) {
+                throw unwrapException((Throwable) resultCopier.copy(result.getNotSerializableException()));
+            } else {
+                Object data = result.getNotSerializableData();
+                return canMethodResultBypassSerialization(method) ? data : resultCopier.copy(data);
+            }
+        }
+
+        private LocalServiceInvocation createInvocation(Method method, byte[][] argumentsData,
+                                                        Object[] notSerializableArguments) {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            String[] parameterTypeNames = new String[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameterTypeNames[i] = parameterTypes[i].getName();
+            }
+
             SecurityContext securityContext = AppContext.getSecurityContext();
             UUID sessionId = securityContext == null ? null : securityContext.getSessionId();
 
@@ -151,28 +215,16 @@ public class LocalServiceProxy extends RemoteAccessor implements FactoryBean<Obj
                 }
             }
             invocation.setResultBypassSerialization(canMethodResultBypassSerialization(method));
+            return invocation;
+        }
 
-            LocalServiceInvocationResult result = invoker.invoke(invocation);
-            AppContext.setSecurityContext(AppContext.getSecurityContext());// to reset application name in LogMDC for the current thread
-
-            // don't use SerializationUtils.deserialize() here to avoid ClassNotFoundException
-            if (result.getException() != null) {
-                Throwable t = (Throwable) SerializationSupport.deserialize(result.getException());
-                if (t instanceof RemoteException) {
-                    Exception exception = ((RemoteException) t).getFirstCauseException();
-                    if (exception != null) // This is a checked exception declared in a service method
-                        throw exception;
-                }
-                throw t;
-            } else {
-                Object data;
-                if (result.getNotSerializableData() == null) {
-                    data = SerializationSupport.deserialize(result.getData());
-                } else {
-                    data = result.getNotSerializableData();
-                }
-                return data;
+        private Throwable unwrapException(Throwable t) {
+            if (t instanceof RemoteException) {
+                Exception exception = ((RemoteException) t).getFirstCauseException();
+                if (exception != null) // This is a checked exception declared in a service method
+                    return exception;
             }
+            return t;
         }
 
         private boolean canBypassSerialization(Parameter parameter) {
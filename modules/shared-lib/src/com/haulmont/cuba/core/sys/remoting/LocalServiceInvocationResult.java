@@ -27,6 +27,7 @@ public class LocalServiceInvocationResult {
     private byte[] data;
     private Object notSerializableData;
     private byte[] exception;
+    private Throwable notSerializableException;
 
     public byte[] getData() {
         return data;
@@ -51,4 +52,12 @@ public class LocalServiceInvocationResult {
     public void setException(byte[] exception) {
         this.exception = exception;
     }
-}
\ No newline at end of file
+
+    public Throwable getNotSerializableException() {
+        return notSerializableException;
+    }
+
+    public void setNotSerializableException(Throwable notSerializableException) {
+        this.notSerializableException = notSerializableException;
+    }
+}
@@ -17,6 +17,8 @@
 
 package com.haulmont.cuba.core.sys.remoting;
 
+import java.lang.reflect.Method;
+
 /**
  * INTERNAL.
  * <p>
@@ -27,4 +29,31 @@ package com.haulmont.cuba.core.sys.remoting;
 public interface LocalServiceInvoker {
 
     LocalServiceInvocationResult invoke(LocalServiceInvocation invocation);
-}
\ No newline at end of file
+
+    /**
+     * @param serviceInterface service interface loaded by the client
+     * @return true if the service implements exactly this interface, i.e. the client and middleware share
+     * the class loader of the service classes and {@link #invokeDirect(LocalServiceInvocation, Method)} can be used
+     */
+    default boolean isDirectInvocationSupported(Class<?> serviceInterface) {
+        return false;
+    }
+
+    /**
+     * Invokes the service method without serialization. The arguments are taken from
+     * {@link LocalServiceInvocation#getNotSerializableArguments()} and passed to the service as is, the invocation
+     * must contain {@link LocalServiceInvocation#getArgumentsData()} of the same length with null elements.
+     * The result of the service method is returned in {@link LocalServiceInvocationResult#getNotSerializableData()}
+     * if the invocation allows the result to bypass serialization.
+     * <p>
+     * By default, the invocation is performed by {@link #invoke(LocalServiceInvocation)}.
+     *
+     * @param invocation invocation with the security context and request scoped properties
+     * @param method     method of the service interface
+     * @return result of the invocation, an exception thrown by the service can be returned in
+     * {@link LocalServiceInvocationResult#getNotSerializableException()}
+     */
+    default LocalServiceInvocationResult invokeDirect(LocalServiceInvocation invocation, Method method) {
+        return invoke(invocation);
+    }
+}
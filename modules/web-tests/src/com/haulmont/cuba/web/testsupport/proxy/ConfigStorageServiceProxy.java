@@ -16,6 +16,7 @@
 
 package com.haulmont.cuba.web.testsupport.proxy;
 
+import com.haulmont.cuba.core.app.ConfigStorageChanges;
 import com.haulmont.cuba.core.app.ConfigStorageService;
 import com.haulmont.cuba.core.config.AppPropertyEntity;
 
@@ -44,4 +45,9 @@ public class ConfigStorageServiceProxy implements ConfigStorageService {
     public List<AppPropertyEntity> getAppProperties() {
         return Collections.emptyList();
     }
+
+    @Override
+    public ConfigStorageChanges getDbPropertiesChanges(String storageId, long sinceVersion) {
+        return new ConfigStorageChanges("", 0, true, Collections.emptyMap(), Collections.emptySet());
+    }
 }
\ No newline at end of file
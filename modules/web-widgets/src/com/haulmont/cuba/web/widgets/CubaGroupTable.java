@@ -774,6 +774,11 @@ public class CubaGroupTable extends CubaTable implements GroupTableContainer {
         public Object getGroupId() {
             return groupId;
         }
+
+        @Override
+        public boolean isTotalAggregation() {
+            return false;
+        }
     }
 
     public static class GroupAggregationInputValueChangeContext extends AggregationInputValueChangeContext {
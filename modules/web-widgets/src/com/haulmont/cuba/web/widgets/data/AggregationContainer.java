@@ -64,5 +64,12 @@ public interface AggregationContainer extends Container {
         public Collection getItemIds() {
             return itemIds;
         }
+
+        /**
+         * @return true if the items are aggregated for the total row, false for a group row
+         */
+        public boolean isTotalAggregation() {
+            return true;
+        }
     }
 }
\ No newline at end of file
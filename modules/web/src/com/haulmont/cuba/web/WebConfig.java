@@ -210,7 +210,8 @@ public interface WebConfig extends Config {
     String getResourcesRoot();
 
     /**
-     * @return minimum number of background task threads.
+     * @return number of background task threads started in advance. Threads are started on demand up to
+     * {@link #getMaxActiveBackgroundTasksCount()} and stopped after 10 minutes of idleness.
      */
     @Property("cuba.backgroundWorker.minBackgroundThreadsCount")
     @DefaultInteger(4)
@@ -227,6 +228,39 @@ public interface WebConfig extends Config {
     @DefaultInt(60)
     int getClientBackgroundTasksLatencySeconds();
 
+    /**
+     * @return whether background tasks are run in virtual threads instead of the thread pool. Each task gets its own
+     * thread, {@link #getMaxActiveBackgroundTasksCount()} limits the number of concurrently running tasks.
+     * If the JVM doesn't support virtual threads, an unbounded pool of platform threads is used.
+     */
+    @Property("cuba.backgroundWorker.virtualThreads")
+    @DefaultBoolean(false)
+    boolean getBackgroundWorkerVirtualThreads();
+
+    /**
+     * @return maximum number of concurrently running background tasks of one UI, 0 means not limited.
+     * Other tasks of the UI wait until the running ones finish.
+     */
+    @Property("cuba.backgroundWorker.maxActiveTasksPerUi")
+    @DefaultInt(0)
+    int getMaxActiveBackgroundTasksPerUi();
+
+    /**
+     * @return maximum number of concurrently running background tasks of one class, 0 means not limited.
+     * Other tasks of the class wait until the running ones finish.
+     */
+    @Property("cuba.backgroundWorker.maxActiveTasksPerClass")
+    @DefaultInt(0)
+    int getMaxActiveBackgroundTasksPerClass();
+
+    /**
+     * @return maximum number of background tasks waiting for start, 0 means not limited.
+     * Starting a task when the limit is reached throws {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    @Property("cuba.backgroundWorker.maxQueuedTasksCount")
+    @DefaultInt(0)
+    int getMaxQueuedBackgroundTasksCount();
+
     /**
      * @return an action to force login.
      * <br> An action is represented by the last part of URL.
@@ -19,6 +19,7 @@ package com.haulmont.cuba.web.controllers;
 import com.haulmont.bali.util.URLEncodeUtils;
 import com.haulmont.cuba.core.app.DataService;
 import com.haulmont.cuba.core.entity.FileDescriptor;
+import com.haulmont.cuba.core.global.ByteRange;
 import com.haulmont.cuba.core.global.FileLoader;
 import com.haulmont.cuba.core.global.FileStorageException;
 import com.haulmont.cuba.core.global.FileTypesHelper;
@@ -102,6 +103,15 @@ public class FileDownloadController {
             response.setHeader("Content-Disposition", (attach ? "attachment" : "inline")
                     + "; filename=" + fileName);
 
+            if (fd.getSize() != null) {
+                response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+                String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+                if (rangeHeader != null) {
+                    downloadRangeFromMiddlewareAndWriteResponse(fd, rangeHeader, response);
+                    return null;
+                }
+            }
+
             downloadFromMiddlewareAndWriteResponse(fd, response);
         } finally {
             AppContext.setSecurityContext(null);
@@ -120,6 +130,36 @@ public class FileDownloadController {
         }
     }
 
+    protected void downloadRangeFromMiddlewareAndWriteResponse(FileDescriptor fd, String rangeHeader,
+                                                               HttpServletResponse response) throws IOException {
+        long size = fd.getSize();
+        ByteRange range;
+        try {
+            range = ByteRange.parse(rangeHeader, size);
+        } catch (IllegalArgumentException e) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, ByteRange.unsatisfiedContentRangeHeader(size));
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        if (range == null) {
+            downloadFromMiddlewareAndWriteResponse(fd, response);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader(HttpHeaders.CONTENT_RANGE, range.toContentRangeHeader(size));
+        response.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(range.getLength()));
+
+        ServletOutputStream os = response.getOutputStream();
+        try (InputStream is = fileLoader.openStream(fd, range.getOffset(), range.getLength())) {
+            IOUtils.copyLarge(is, os);
+            os.flush();
+        } catch (FileStorageException e) {
+            log.error("Unable to load file from middleware", e);
+            error(response);
+        }
+    }
+
     protected UserSession getSession(HttpServletRequest request, HttpServletResponse response) throws IOException {
         UUID sessionId;
         try {
@@ -117,10 +117,15 @@ public class WebExportDisplay implements ExportDisplay {
             }
         }
 
-        CubaFileDownloader fileDownloader = AppUI.getCurrent().getFileDownloader();
+        AppUI ui = AppUI.getCurrent();
+        CubaFileDownloader fileDownloader = ui.getFileDownloader();
         fileDownloader.setFileNotFoundExceptionListener(this::handleFileNotFoundException);
 
         StreamResource resource = new StreamResource(dataProvider::provide, resourceName);
+        if (dataProvider instanceof TempFileDataProvider) {
+            // the file can be downloaded again while the UI is open
+            ui.addDetachListener(event -> ((TempFileDataProvider) dataProvider).delete());
+        }
 
         if (exportFormat != null && StringUtils.isNotEmpty(exportFormat.getContentType())) {
             resource.setMIMEType(exportFormat.getContentType());
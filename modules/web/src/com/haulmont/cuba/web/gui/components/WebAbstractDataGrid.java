@@ -3197,7 +3197,8 @@ public abstract class WebAbstractDataGrid<C extends Grid<E> & CubaEnhancedGrid<E
         List<AggregationInfo> aggregationInfos = getAggregationInfos();
         Map<AggregationInfo, String> aggregationInfoMap = ((AggregatableDataGridItems) getItems()).aggregate(
                 aggregationInfos.toArray(new AggregationInfo[0]),
-                getItems().getItems().map(Entity::getId).collect(Collectors.toList())
+                getItems().getItems().map(Entity::getId).collect(Collectors.toList()),
+                true
         );
 
         return convertAggregationKeyMapToColumnIdKeyMap(aggregationInfoMap);
@@ -3213,7 +3214,8 @@ public abstract class WebAbstractDataGrid<C extends Grid<E> & CubaEnhancedGrid<E
         List<AggregationInfo> aggregationInfos = getAggregationInfos();
         Map<AggregationInfo, Object> aggregationInfoMap = ((AggregatableDataGridItems) getItems()).aggregateValues(
                 aggregationInfos.toArray(new AggregationInfo[0]),
-                getItems().getItems().map(Entity::getId).collect(Collectors.toList())
+                getItems().getItems().map(Entity::getId).collect(Collectors.toList()),
+                true
         );
 
         return convertAggregationKeyMapToColumnIdKeyMap(aggregationInfoMap);
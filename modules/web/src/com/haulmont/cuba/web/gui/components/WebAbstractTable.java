@@ -2793,7 +2793,8 @@ public abstract class WebAbstractTable<T extends com.vaadin.v7.ui.Table & CubaEn
 
         Map<AggregationInfo, Object> results = ((AggregatableTableItems<E>) getItems()).aggregateValues(
                 aggregationInfos.toArray(new AggregationInfo[0]),
-                context.getItemIds()
+                context.getItemIds(),
+                context.isTotalAggregation()
         );
 
         return convertAggregationKeyMapToColumnIdKeyMap(container, results);
@@ -2809,7 +2810,8 @@ public abstract class WebAbstractTable<T extends com.vaadin.v7.ui.Table & CubaEn
 
         Map<AggregationInfo, String> results = ((AggregatableTableItems<E>) getItems()).aggregate(
                 aggregationInfos.toArray(new AggregationInfo[0]),
-                context.getItemIds()
+                context.getItemIds(),
+                context.isTotalAggregation()
         );
 
         Map<Object, Object> resultsByColumns = convertAggregationKeyMapToColumnIdKeyMap(container, results);
@@ -17,6 +17,11 @@
 package com.haulmont.cuba.web.gui.components;
 
 import com.haulmont.bali.events.Subscription;
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.MetaProperty;
+import com.haulmont.chile.core.model.MetaPropertyPath;
+import com.haulmont.cuba.client.ClientConfig;
+import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.entity.KeyValueEntity;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.gui.components.*;
@@ -43,6 +48,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Consumer;
@@ -65,6 +71,10 @@ public class WebRowsCount extends WebAbstractComponent<CubaRowsCount> implements
 
     @Inject
     protected DataManager dataManager;
+    @Inject
+    protected MetadataTools metadataTools;
+    @Inject
+    protected Configuration configuration;
 
     protected boolean refreshing;
     protected State state;
@@ -592,8 +602,79 @@ public class WebRowsCount extends WebAbstractComponent<CubaRowsCount> implements
 
         @Override
         public void setFirstResult(int startPosition) {
-            if (loader != null)
+            if (loader != null) {
+                List<Object> afterSortKey = getNextPageSortKey(startPosition);
                 loader.setFirstResult(startPosition);
+                if (afterSortKey != null) {
+                    ((CollectionLoader) loader).setAfterSortKey(afterSortKey);
+                }
+            }
+        }
+
+        /**
+         * Returns the sort key of the last loaded entity if the page starting at the given position immediately
+         * follows the loaded one and can be selected by keyset pagination.
+         */
+        @Nullable
+        protected List<Object> getNextPageSortKey(int startPosition) {
+            if (!(loader instanceof CollectionLoader)
+                    || loader.getSort() == null
+                    || !configuration.getConfig(ClientConfig.class).getKeysetPagingEnabled()) {
+                return null;
+            }
+            List<?> items = container.getItems();
+            if (items.isEmpty()
+                    || items.size() != loader.getMaxResults()
+                    || startPosition != loader.getFirstResult() + items.size()) {
+                return null;
+            }
+
+            Entity lastItem = (Entity) items.get(items.size() - 1);
+            MetaClass metaClass = container.getEntityMetaClass();
+            String pkName = metadataTools.getPrimaryKeyName(metaClass);
+            if (pkName == null || metadataTools.hasCompositePrimaryKey(metaClass)) {
+                return null;
+            }
+
+            List<Object> key = new ArrayList<>();
+            boolean uniqueKey = false;
+            for (Sort.Order order : loader.getSort().getOrders()) {
+                MetaPropertyPath propertyPath = metaClass.getPropertyPath(order.getProperty());
+                // each sort property must be rendered by exactly one order by expression
+                // which is not null for any row, otherwise rows with nulls would be skipped
+                if (propertyPath == null
+                        || !propertyPath.getRange().isDatatype()
+                        || !metadataTools.isPersistent(propertyPath)
+                        || metadataTools.isLob(propertyPath.getMetaProperty())
+                        || !isMandatory(propertyPath)) {
+                    return null;
+                }
+                Object value = lastItem.getValueEx(propertyPath);
+                if (value == null) {
+                    return null;
+                }
+                key.add(value);
+                if (pkName.equals(order.getProperty())) {
+                    uniqueKey = true;
+                }
+            }
+            if (!uniqueKey) {
+                Object id = lastItem.getValue(pkName);
+                if (id == null) {
+                    return null;
+                }
+                key.add(id);
+            }
+            return key;
+        }
+
+        protected boolean isMandatory(MetaPropertyPath propertyPath) {
+            for (MetaProperty property : propertyPath.getMetaProperties()) {
+                if (!property.isMandatory()) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         @Override
@@ -23,6 +23,8 @@ import com.haulmont.cuba.core.global.Events;
 import com.haulmont.cuba.core.global.UserSessionSource;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.SecurityContext;
+import com.haulmont.cuba.core.sys.executors.AdmissionControlExecutor;
+import com.haulmont.cuba.core.sys.executors.VirtualThreadExecutors;
 import com.haulmont.cuba.gui.event.BackgroundTaskUnhandledExceptionEvent;
 import com.haulmont.cuba.gui.executors.*;
 import com.haulmont.cuba.gui.executors.impl.TaskExecutor;
@@ -40,6 +42,7 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Nonnull;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -88,15 +91,63 @@ public class WebBackgroundWorker implements BackgroundWorker {
         }
 
         WebConfig webConfig = configuration.getConfig(WebConfig.class);
-        this.executorService = new ThreadPoolExecutor(
-                webConfig.getMinBackgroundThreadsCount(),
+        ExecutorService delegate;
+        if (webConfig.getBackgroundWorkerVirtualThreads()) {
+            delegate = VirtualThreadExecutors.newExecutor(THREAD_NAME_PREFIX);
+        } else {
+            // the admission control limits the number of tasks passed to the pool, so the pool must be able to run
+            // all of them at once: with core size less than max size the pool would queue the tasks above the core
+            // size instead of starting new threads. The queue only holds a task admitted by a finishing task until
+            // the thread of the finishing task returns to the pool.
+            int maxThreads = webConfig.getMaxActiveBackgroundTasksCount();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    maxThreads,
+                    maxThreads,
+                    10L, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat(THREAD_NAME_PREFIX + "%d")
+                            .build()
+            );
+            pool.allowCoreThreadTimeOut(true);
+            for (int i = Math.min(webConfig.getMinBackgroundThreadsCount(), maxThreads); i > 0; i--) {
+                pool.prestartCoreThread();
+            }
+            delegate = pool;
+        }
+
+        int maxQueued = webConfig.getMaxQueuedBackgroundTasksCount();
+        this.executorService = new AdmissionControlExecutor(delegate,
                 webConfig.getMaxActiveBackgroundTasksCount(),
-                10L, TimeUnit.MINUTES,
-                new LinkedBlockingQueue<>(),
-                new ThreadFactoryBuilder()
-                        .setNameFormat(THREAD_NAME_PREFIX + "%d")
-                        .build()
-        );
+                maxQueued > 0 ? maxQueued : Integer.MAX_VALUE);
+    }
+
+    /**
+     * Passes the task to the executor applying the per UI and per task class limits.
+     *
+     * @throws RejectedExecutionException if too many tasks are waiting for start
+     */
+    protected void executeTask(Runnable command, AppUI ui, BackgroundTask<?, ?> task) {
+        if (executorService instanceof AdmissionControlExecutor) {
+            ((AdmissionControlExecutor) executorService).execute(command, getLimits(ui, task));
+        } else {
+            executorService.execute(command);
+        }
+    }
+
+    protected List<AdmissionControlExecutor.Limit> getLimits(AppUI ui, BackgroundTask<?, ?> task) {
+        WebConfig webConfig = configuration.getConfig(WebConfig.class);
+
+        List<AdmissionControlExecutor.Limit> limits = new ArrayList<>(2);
+        int maxPerUi = webConfig.getMaxActiveBackgroundTasksPerUi();
+        if (maxPerUi > 0) {
+            limits.add(AdmissionControlExecutor.limit(ui, maxPerUi));
+        }
+        int maxPerClass = webConfig.getMaxActiveBackgroundTasksPerClass();
+        if (maxPerClass > 0) {
+            limits.add(AdmissionControlExecutor.limit(task.getClass(), maxPerClass));
+        }
+        return limits;
     }
 
     @PreDestroy
@@ -372,9 +423,17 @@ public class WebBackgroundWorker implements BackgroundWorker {
         @Override
         public final void startExecution() {
             // Start thread
-            executorService.execute(() ->
-                    future.run()
-            );
+            try {
+                executeTask(() ->
+                        future.run(), ui, runnableTask
+                );
+            } catch (RejectedExecutionException e) {
+                log.debug("Task is rejected. User: {}", userLogin);
+
+                isClosed = true;
+                unregister();
+                throw e;
+            }
         }
 
         @Override
@@ -18,6 +18,7 @@
 package com.haulmont.cuba.web.jmx;
 
 import com.haulmont.cuba.web.app.WebStatisticsAccumulator;
+import com.haulmont.cuba.web.sys.remoting.LocalServiceProxy;
 
 import org.springframework.stereotype.Component;
 import javax.inject.Inject;
@@ -82,4 +83,14 @@ public class StatisticsCounter implements StatisticsCounterMBean {
     public double getAvgThreadCount() {
         return accumulator.getAvgThreadCount();
     }
+
+    @Override
+    public long getLocalServiceDirectInvocationsCount() {
+        return LocalServiceProxy.getDirectInvocationsCount();
+    }
+
+    @Override
+    public long getLocalServiceSerializedInvocationsCount() {
+        return LocalServiceProxy.getSerializedInvocationsCount();
+    }
 }
\ No newline at end of file
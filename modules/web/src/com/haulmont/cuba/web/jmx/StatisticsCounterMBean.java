@@ -44,4 +44,8 @@ public interface StatisticsCounterMBean {
     double getAvgProcessCpuLoad();
 
     double getAvgThreadCount();
+
+    long getLocalServiceDirectInvocationsCount();
+
+    long getLocalServiceSerializedInvocationsCount();
 }
\ No newline at end of file
@@ -34,6 +34,8 @@ import java.lang.reflect.Parameter;
 import java.lang.reflect.Proxy;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -41,9 +43,18 @@ import java.util.stream.Collectors;
  * <p>
  * Bean of the web block that creates a proxy object to invoke middleware services directly
  * using {@link LocalServiceInvoker}.
+ * <p>
+ * If the service implements the service interface loaded by the web block, i.e. the classes are shared between
+ * the web block and middleware, the service is invoked without serializing the invocation. Immutable values and
+ * parameters annotated with {@link BypassSerialization} are passed by reference, other arguments and the result
+ * are copied in memory by {@link LocalServiceValueCopier} to keep the call semantics. Set
+ * {@code cuba.localServiceInvocationByReference = true} to pass all arguments and results by reference.
  */
 public class LocalServiceProxy extends RemoteAccessor implements FactoryBean<Object>, InitializingBean {
 
+    private static final AtomicLong directInvocationsCount = new AtomicLong();
+    private static final AtomicLong serializedInvocationsCount = new AtomicLong();
+
     private Object serviceProxy;
     private String serviceName;
 
@@ -57,7 +68,7 @@ public class LocalServiceProxy extends RemoteAccessor implements FactoryBean<Obj
         serviceProxy = Proxy.newProxyInstance(
                 getBeanClassLoader(),
                 new Class[]{getServiceInterface()},
-                new LocalServiceInvocationHandler(serviceName)
+                new LocalServiceInvocationHandler(serviceName, getServiceInterface())
         );
     }
 
@@ -87,12 +98,54 @@ public class LocalServiceProxy extends RemoteAccessor implements FactoryBean<Obj
             this.serviceName = "/" + serviceName;
     }
 
+    /**
+     * @return number of service invocations performed without serialization, i.e. all arguments and the result are
+     * passed by reference or copied in memory
+     */
+    public static long getDirectInvocationsCount() {
+        return directInvocationsCount.get();
+    }
+
+    /**
+     * @return number of service invocations performed with serialization of arguments or results, including direct
+     * invocations with values that could not be copied in memory
+     */
+    public static long getSerializedInvocationsCount() {
+        return serializedInvocationsCount.get();
+    }
+
+    private static class MethodInfo {
+        private final String[] parameterTypeNames;
+        private final boolean[] parametersBypassSerialization;
+        private final boolean resultBypassSerialization;
+
+        private MethodInfo(Method method) {
+            Parameter[] parameters = method.getParameters();
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            parameterTypeNames = new String[parameterTypes.length];
+            parametersBypassSerialization = new boolean[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameterTypeNames[i] = parameterTypes[i].getName();
+                parametersBypassSerialization[i] = parameters[i].getAnnotation(BypassSerialization.class) != null;
+            }
+            resultBypassSerialization = method.getAnnotation(BypassSerialization.class) != null;
+        }
+    }
+
     private static class LocalServiceInvocationHandler implements InvocationHandler {
 
         private String serviceName;
+        private Class<?> serviceInterface;
 
-        public LocalServiceInvocationHandler(String serviceName) {
+        private final Map<Method, MethodInfo> methodInfos = new ConcurrentHashMap<>();
+
+        // the invoker is replaced if middleware is redeployed
+        private volatile LocalServiceInvoker checkedInvoker;
+        private volatile boolean directInvocationSupported;
+
+        public LocalServiceInvocationHandler(String serviceName, Class<?> serviceInterface) {
             this.serviceName = serviceName;
+            this.serviceInterface = serviceInterface;
         }
 
         @Override
@@ -109,12 +162,12 @@ public class LocalServiceProxy extends RemoteAccessor implements FactoryBean<Obj
                 throw exception;
             }
 
-            Parameter[] parameters = method.getParameters();
-            Class<?>[] parameterTypes = method.getParameterTypes();
-            String[] parameterTypeNames = new String[parameterTypes.length];
-            for (int i = 0; i < parameterTypes.length; i++) {
-                parameterTypeNames[i] = parameterTypes[i].getName();
+            MethodInfo methodInfo = methodInfos.computeIfAbsent(method, MethodInfo::new);
+
+            if (isDirectInvocationSupported(invoker)) {
+                return invokeDirect(invoker, method, methodInfo, args);
             }
+            serializedInvocationsCount.incrementAndGet();
 
             byte[][] argumentsData;
             Object[] notSerializableArguments;
@@ -125,9 +178,8 @@ public class LocalServiceProxy extends RemoteAccessor implements FactoryBean<Obj
                 argumentsData = new byte[args.length][];
                 notSerializableArguments = new Object[args.length];
                 for (int i = 0; i < args.length; i++) {
-                    Parameter parameter = parameters[i];
                     Object arg = args[i];
-                    if (canBypassSerialization(parameter)) {
+                    if (methodInfo.parametersBypassSerialization[i]) {
                         notSerializableArguments[i] = args[i];
                         argumentsData[i] = null;
                     } else if (arg != null) {
@@ -138,36 +190,14 @@ public class LocalServiceProxy extends RemoteAccessor implements FactoryBean<Obj
                 }
             }
 
-            SecurityContext securityContext = AppContext.getSecurityContext();
-            UUID sessionId = securityContext == null ? null : securityContext.getSessionId();
-
-            LocalServiceInvocation invocation = new LocalServiceInvocation(
-                    method.getName(), parameterTypeNames, argumentsData, notSerializableArguments, sessionId);
-
-            if (securityContext != null) {
-                UserSession session = securityContext.getSession();
-
-                if (session instanceof ClientBasedSession && ((ClientBasedSession) session).hasRequestScopedInfo()) {
-                    invocation.setLocale(session.getLocale() != null ? session.getLocale().toLanguageTag() : null);
-                    invocation.setTimeZone(session.getTimeZone());
-                    invocation.setAddress(session.getAddress());
-                    invocation.setClientInfo(session.getClientInfo());
-                }
-            }
-            invocation.setResultBypassSerialization(canMethodResultBypassSerialization(method));
+            LocalServiceInvocation invocation = createInvocation(method, methodInfo, argumentsData, notSerializableArguments);
 
             LocalServiceInvocationResult result = invoker.invoke(invocation);
             AppContext.setSecurityContext(AppContext.getSecurityContext()); // to reset application name in LogMDC for the current thread
 
             // don't use SerializationUtils.deserialize() here to avoid ClassNotFoundException
             if (result.getException() != null) {
-                Throwable t = (Throwable) SerializationSupport.deserialize(result.getException());
-                if (t instanceof RemoteException) {
-                    Exception exception = ((RemoteException) t).getFirstCauseException();
-                    if (exception != null) // This is a checked exception declared in a service method
-                        throw exception;
-                }
-                throw t;
+                throw unwrapException((Throwable) SerializationSupport.deserialize(result.getException()));
             } else {
                 Object data;
                 if (result.getNotSerializableData() == null) {
@@ -179,6 +209,85 @@ public class LocalServiceProxy extends RemoteAccessor implements FactoryBean<Obj
             }
         }
 
+        private Object invokeDirect(LocalServiceInvoker invoker, Method method, MethodInfo methodInfo, Object[] args)
+                throws Throwable {
+            boolean byReference = Boolean.parseBoolean(AppContext.getProperty("cuba.localServiceInvocationByReference"));
+
+            LocalServiceValueCopier argumentsCopier = new LocalServiceValueCopier();
+            byte[][] argumentsData = null;
+            Object[] arguments = null;
+            if (args != null) {
+                argumentsData = new byte[args.length][];
+                arguments = byReference ? args : argumentsCopier.copyArguments(args, methodInfo.parametersBypassSerialization);
+            }
+
+            LocalServiceInvocation invocation = createInvocation(method, methodInfo, argumentsData, arguments);
+            // the result is copied here if needed
+            invocation.setResultBypassSerialization(true);
+
+            LocalServiceInvocationResult result = invoker.invokeDirect(invocation, method);
+            AppContext.setSecurityContext(AppContext.getSecurityContext()); // to reset application name in LogMDC for the current thread
+
+            LocalServiceValueCopier resultCopier = new LocalServiceValueCopier();
+            boolean serialized = result.getException() != null;
+            try {
+                if (result.getException() != null) {
+                    throw unwrapException((Throwable) SerializationSupport.deserialize(result.getException()));
+                } else if (result.getNotSerializableException() != null) {
+                    Throwable t = result.getNotSerializableException();
+                    throw unwrapException(byReference ? t : (Throwable) resultCopier.copy(t));
+                } else {
+                    Object data = result.getNotSerializableData();
+                    return byReference || methodInfo.resultBypassSerialization ? data : resultCopier.copy(data);
+                }
+            } finally {
+                if (serialized || argumentsCopier.isSerialized() || resultCopier.isSerialized()) {
+                    serializedInvocationsCount.incrementAndGet();
+                } else {
+                    directInvocationsCount.incrementAndGet();
+                }
+            }
+        }
+
+        private Throwable unwrapException(Throwable t) {
+            if (t instanceof RemoteException) {
+                Exception exception = ((RemoteException) t).getFirstCauseException();
+                if (exception != null) // This is a checked exception declared in a service method
+                    return exception;
+            }
+            return t;
+        }
+
+        private boolean isDirectInvocationSupported(LocalServiceInvoker invoker) {
+            if (invoker != checkedInvoker) {
+                directInvocationSupported = invoker.isDirectInvocationSupported(serviceInterface);
+                checkedInvoker = invoker;
+            }
+            return directInvocationSupported;
+        }
+
+        private LocalServiceInvocation createInvocation(Method method, MethodInfo methodInfo,
+                                                        byte[][] argumentsData, Object[] notSerializableArguments) {
+            SecurityContext securityContext = AppContext.getSecurityContext();
+            UUID sessionId = securityContext == null ? null : securityContext.getSessionId();
+
+            LocalServiceInvocation invocation = new LocalServiceInvocation(
+                    method.getName(), methodInfo.parameterTypeNames, argumentsData, notSerializableArguments, sessionId);
+
+            if (securityContext != null) {
+                UserSession session = securityContext.getSession();
+
+                if (session instanceof ClientBasedSession && ((ClientBasedSession) session).hasRequestScopedInfo()) {
+                    invocation.setLocale(session.getLocale() != null ? session.getLocale().toLanguageTag() : null);
+                    invocation.setTimeZone(session.getTimeZone());
+                    invocation.setAddress(session.getAddress());
+                    invocation.setClientInfo(session.getClientInfo());
+                }
+            }
+            invocation.setResultBypassSerialization(methodInfo.resultBypassSerialization);
+            return invocation;
+        }
+
         private LocalServiceAccessException createServiceAccessException(String middlewareContextName, String entryName) {
             Map<String, CoreBlockStatusDirectory.StatusInfo> registeredBlocks = CoreBlockStatusDirectory.getBlocks();
             CoreBlockStatusDirectory.StatusInfo mwStatus = registeredBlocks.get(middlewareContextName);
@@ -212,13 +321,5 @@ public class LocalServiceProxy extends RemoteAccessor implements FactoryBean<Obj
                         + "or 'core' application missing from 'webapps' folder (in case of fast deployment).");
             }
         }
-
-        private boolean canBypassSerialization(Parameter parameter) {
-            return parameter.getAnnotation(BypassSerialization.class) != null;
-        }
-
-        private boolean canMethodResultBypassSerialization(Method method) {
-            return method.getAnnotation(BypassSerialization.class) != null;
-        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.web.components.grouptable
+
+import com.haulmont.cuba.core.app.DataService
+import com.haulmont.cuba.core.entity.KeyValueEntity
+import com.haulmont.cuba.core.entity.ScheduledTask
+import com.haulmont.cuba.core.global.LoadContext
+import com.haulmont.cuba.core.global.ValueLoadContext
+import com.haulmont.cuba.gui.components.AggregationInfo
+import com.haulmont.cuba.gui.components.data.table.LazyContainerGroupTableItems
+import com.haulmont.cuba.gui.model.CollectionContainer
+import com.haulmont.cuba.gui.model.CollectionLoader
+import com.haulmont.cuba.web.testsupport.proxy.TestServiceProxy
+import spec.cuba.web.WebSpec
+
+class LazyContainerGroupTableItemsTest extends WebSpec {
+
+    private List<ScheduledTask> tasks
+    private List<LoadContext> loadContexts = []
+    private List<ValueLoadContext> valueContexts = []
+
+    @Override
+    void setup() {
+        tasks = [createTask('a', 10), createTask('a', 20), createTask('a', 30), createTask('b', 5)]
+
+        TestServiceProxy.mock(DataService, Mock(DataService) {
+            loadList(_) >> { LoadContext context ->
+                loadContexts << context
+                def beanName = context.query.parameters['cuba_lazyGroupValue0']
+                def filtered = tasks.findAll { it.beanName == beanName }
+                def first = context.query.firstResult
+                filtered.subList(Math.min(first, filtered.size()),
+                        Math.min(first + context.query.maxResults, filtered.size()))
+            }
+            loadValues(_) >> { ValueLoadContext context ->
+                valueContexts << context
+                def counts = context.query.queryString.contains('count(cubaGrp)')
+                tasks.groupBy { it.beanName }.collect { name, group ->
+                    def row = new KeyValueEntity()
+                    row.setValue('value0', name)
+                    if (counts) {
+                        row.setValue('count', group.size() as Long)
+                    } else {
+                        row.setValue('aggregate0', group.sum { it.period } as Long)
+                    }
+                    row
+                }
+            }
+        })
+    }
+
+    @Override
+    void cleanup() {
+        TestServiceProxy.clear()
+    }
+
+    def "groups are loaded on the database and their entities on request"() {
+        CollectionContainer<ScheduledTask> container = dataComponents.createCollectionContainer(ScheduledTask)
+        CollectionLoader<ScheduledTask> loader = dataComponents.createCollectionLoader()
+        loader.setContainer(container)
+        loader.setQuery('select e from sys$ScheduledTask e')
+
+        def tableItems = new LazyContainerGroupTableItems<ScheduledTask, UUID>(loader)
+        tableItems.lazyLoader.setPageSize(2)
+        def beanName = metadata.getClassNN(ScheduledTask).getPropertyPath('beanName')
+
+        when: "the items are grouped"
+
+        tableItems.groupBy([beanName] as Object[])
+
+        then: "groups with counts are selected by a group by query, entities are not loaded"
+
+        container.items.isEmpty()
+        loadContexts.isEmpty()
+        valueContexts.size() == 1
+        valueContexts[0].query.queryString.contains('group by cubaGrp.beanName')
+        tableItems.rootGroups().collect { it.value } == ['a', 'b']
+        tableItems.getGroupItemsCount(tableItems.rootGroups()[0]) == 3
+        tableItems.getGroupItemIds(tableItems.rootGroups()[0]).isEmpty()
+
+        when: "entities of a group are requested"
+
+        def group = tableItems.rootGroups()[0]
+        tableItems.loadGroupItems(group)
+
+        then: "the first page is loaded by the loader query restricted by the group value"
+
+        loadContexts.size() == 1
+        loadContexts[0].query.queryString.contains('beanName = :cuba_lazyGroupValue0')
+        tableItems.getGroupItemIds(group) == [tasks[0].id, tasks[1].id]
+        tableItems.hasMoreGroupItems(group)
+
+        when: "the next page is requested"
+
+        tableItems.loadMoreGroupItems(group)
+
+        then: "the rest of the group is loaded"
+
+        loadContexts.size() == 2
+        tableItems.getGroupItemIds(group).size() == 3
+        !tableItems.hasMoreGroupItems(group)
+
+        when: "a group is aggregated"
+
+        def periodSum = new AggregationInfo()
+        periodSum.setPropertyPath(metadata.getClassNN(ScheduledTask).getPropertyPath('period'))
+        periodSum.setType(AggregationInfo.Type.SUM)
+        AggregationInfo[] infos = [periodSum]
+
+        def values = tableItems.aggregateValues(infos, tableItems.getGroupItemIds(tableItems.rootGroups()[1]))
+
+        then: "aggregates of all groups of the level are loaded by one query"
+
+        valueContexts.size() == 2
+        valueContexts[1].query.queryString.contains('sum(cubaGrp.period)')
+        values[periodSum] == 5L
+        tableItems.aggregateValues(infos, tableItems.getGroupItemIds(group))[periodSum] == 60L
+        valueContexts.size() == 2
+    }
+
+    private ScheduledTask createTask(String beanName, Integer period) {
+        def task = metadata.create(ScheduledTask)
+        task.setBeanName(beanName)
+        task.setPeriod(period)
+        task
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.web.components.table
+
+import com.haulmont.cuba.core.app.DataService
+import com.haulmont.cuba.core.entity.KeyValueEntity
+import com.haulmont.cuba.core.entity.ScheduledTask
+import com.haulmont.cuba.core.global.LoadContext
+import com.haulmont.cuba.core.global.ValueLoadContext
+import com.haulmont.cuba.gui.components.AggregationInfo
+import com.haulmont.cuba.gui.components.data.table.ContainerTableItems
+import com.haulmont.cuba.gui.model.CollectionContainer
+import com.haulmont.cuba.gui.model.CollectionLoader
+import com.haulmont.cuba.web.testsupport.proxy.TestServiceProxy
+import spec.cuba.web.WebSpec
+
+class DatabaseAggregationTest extends WebSpec {
+
+    private List<ScheduledTask> tasks
+    private List<ValueLoadContext> valueContexts = []
+
+    @Override
+    void setup() {
+        tasks = [createTask(10, 5), createTask(20, 7)]
+
+        TestServiceProxy.mock(DataService, Mock(DataService) {
+            loadList(_) >> { LoadContext context -> tasks }
+            loadValues(_) >> { ValueLoadContext context ->
+                valueContexts << context
+                def row = new KeyValueEntity()
+                row.setValue('aggregate0', 100)
+                [row]
+            }
+        })
+    }
+
+    @Override
+    void cleanup() {
+        TestServiceProxy.clear()
+    }
+
+    def "database aggregation is loaded once per loader load"() {
+        CollectionContainer<ScheduledTask> container = dataComponents.createCollectionContainer(ScheduledTask)
+        CollectionLoader<ScheduledTask> loader = dataComponents.createCollectionLoader()
+        loader.setContainer(container)
+        loader.setQuery('select e from sys$ScheduledTask e')
+        loader.setMaxResults(2)
+        loader.load()
+
+        def tableItems = new ContainerTableItems<ScheduledTask>(container)
+
+        def periodSum = createAggregation('period', AggregationInfo.Type.SUM, true)
+        def timeoutMax = createAggregation('timeout', AggregationInfo.Type.MAX, false)
+        AggregationInfo[] infos = [periodSum, timeoutMax]
+
+        when: "the total row is aggregated"
+
+        def values = tableItems.aggregateValues(infos, tableItems.getItemIds(), true)
+
+        then: "database aggregation is computed by the loader query, other ones over the loaded items"
+
+        valueContexts.size() == 1
+        valueContexts[0].query.queryString.contains('sum(cubaAgg.period)')
+        !valueContexts[0].query.queryString.contains('max(')
+        valueContexts[0].query.maxResults == 0
+        values[periodSum] == 100L
+        values[timeoutMax] == 7L
+
+        when: "the total row is aggregated again"
+
+        values = tableItems.aggregateValues(infos, tableItems.getItemIds(), true)
+
+        then: "the cached value is used"
+
+        valueContexts.size() == 1
+        values[periodSum] == 100L
+
+        when: "a group row is aggregated"
+
+        values = tableItems.aggregateValues(infos, [tasks[0].id], false)
+
+        then: "all aggregations are computed in memory"
+
+        valueContexts.size() == 1
+        values[periodSum] == 10L
+
+        when: "a group row containing all loaded items is aggregated"
+
+        values = tableItems.aggregateValues(infos, tableItems.getItemIds(), false)
+
+        then: "all aggregations are computed in memory"
+
+        valueContexts.size() == 1
+        values[periodSum] == 30L
+
+        when: "the loader reloads data"
+
+        loader.load()
+        tableItems.aggregateValues(infos, tableItems.getItemIds(), true)
+
+        then: "the aggregation is loaded again"
+
+        valueContexts.size() == 2
+    }
+
+    private AggregationInfo createAggregation(String property, AggregationInfo.Type type, boolean database) {
+        def info = new AggregationInfo()
+        info.setPropertyPath(metadata.getClassNN(ScheduledTask).getPropertyPath(property))
+        info.setType(type)
+        info.setDatabase(database)
+        info
+    }
+
+    private ScheduledTask createTask(Integer period, Integer timeout) {
+        def task = metadata.create(ScheduledTask)
+        task.setPeriod(period)
+        task.setTimeout(timeout)
+        task
+    }
+}
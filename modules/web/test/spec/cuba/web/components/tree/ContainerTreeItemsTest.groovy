@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.web.components.tree
+
+import com.haulmont.cuba.gui.components.data.tree.ContainerTreeItems
+import com.haulmont.cuba.gui.model.CollectionContainer
+import com.haulmont.cuba.security.entity.Group
+import spec.cuba.web.WebSpec
+
+import java.util.stream.Collectors
+
+class ContainerTreeItemsTest extends WebSpec {
+
+    private CollectionContainer<Group> container
+    private Group root, child1, child2, grandChild
+
+    @Override
+    void setup() {
+        container = dataComponents.createCollectionContainer(Group)
+
+        root = createGroup('root', null)
+        child1 = createGroup('child1', root)
+        child2 = createGroup('child2', root)
+        grandChild = createGroup('grandChild', child1)
+
+        container.setItems([root, child1, child2, grandChild])
+    }
+
+    def "children are returned in the container order"() {
+        def treeItems = new ContainerTreeItems<Group>(container, 'parent')
+
+        expect:
+
+        children(treeItems, null) == [root]
+        children(treeItems, root) == [child1, child2]
+        children(treeItems, child1) == [grandChild]
+        treeItems.getChildCount(root) == 2
+        treeItems.hasChildren(child1)
+        !treeItems.hasChildren(child2)
+    }
+
+    def "index follows changes of the container"() {
+        def treeItems = new ContainerTreeItems<Group>(container, 'parent')
+        treeItems.getChildren(null)
+
+        when: "an item is added"
+
+        def child3 = createGroup('child3', root)
+        container.getMutableItems().add(1, child3)
+
+        then:
+
+        children(treeItems, root) == [child3, child1, child2]
+
+        when: "the parent of an item is changed"
+
+        grandChild.setParent(child2)
+
+        then:
+
+        !treeItems.hasChildren(child1)
+        children(treeItems, child2) == [grandChild]
+
+        when: "an item having children is removed"
+
+        container.getMutableItems().remove(child2)
+
+        then: "its children become roots"
+
+        children(treeItems, root) == [child3, child1]
+        children(treeItems, null) == [root, grandChild]
+
+        when: "the items are replaced"
+
+        container.setItems([child1, grandChild])
+
+        then:
+
+        children(treeItems, null) == [child1, grandChild]
+    }
+
+    def "orphans are hidden"() {
+        container.setItems([child1, grandChild])
+        def treeItems = new ContainerTreeItems<Group>(container, 'parent', false)
+
+        expect:
+
+        children(treeItems, null) == []
+        children(treeItems, child1) == [grandChild]
+    }
+
+    private Group createGroup(String name, Group parent) {
+        def group = metadata.create(Group)
+        group.setName(name)
+        group.setParent(parent)
+        group
+    }
+
+    private static List<Group> children(ContainerTreeItems<Group> treeItems, Group parent) {
+        treeItems.getChildren(parent).collect(Collectors.toList())
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.web.components.tree
+
+import com.haulmont.cuba.gui.components.data.tree.HierarchyIndex
+import com.haulmont.cuba.gui.model.CollectionChangeType
+import com.haulmont.cuba.security.entity.Group
+import spec.cuba.web.WebSpec
+
+/**
+ * Checks that the index scans the collection only when it is built, so lookups don't depend on the number of items.
+ */
+class HierarchyIndexTest extends WebSpec {
+
+    private CountingList groups
+    private List<UUID> ids
+    private HierarchyIndex<Group> index
+
+    @Override
+    void setup() {
+        groups = new CountingList()
+        for (int i = 0; i < 1000; i++) {
+            def group = metadata.create(Group)
+            group.setName("group$i")
+            group.setParent(i == 0 ? null : groups[(i - 1).intdiv(10)])
+            groups << group
+        }
+        ids = groups.collect { it.id }
+        groups.iterations = 0
+        index = new HierarchyIndex<Group>('parent', true, { groups }, null)
+    }
+
+    def "collection is scanned once for any number of lookups"() {
+        when:
+
+        ids.each { index.getChildren(it) }
+        ids.each { index.getChildCount(it) }
+        ids.each { index.isRoot(it) }
+
+        then:
+
+        groups.iterations == 1
+        index.getChildCount(groups[0].id) == 10
+        index.getChildren(groups[1].id) == groups[11..20]
+        !index.hasChildren(groups[999].id)
+    }
+
+    def "root items are collected once until the collection changes"() {
+        when:
+
+        10.times { index.getRootItems() }
+
+        then: "one scan to build the index and one to collect the roots"
+
+        groups.iterations == 2
+        index.getRootItems() == [groups[0]]
+    }
+
+    def "incremental changes don't scan the collection"() {
+        index.getChildren(groups[0].id)
+
+        when:
+
+        def added = metadata.create(Group)
+        added.setParent(groups[0])
+        groups << added
+        index.collectionChanged(CollectionChangeType.ADD_ITEMS, [added])
+
+        groups[5].setParent(groups[1])
+        index.parentChanged(groups[5])
+
+        def removed = groups[999]
+        groups.remove(removed)
+        index.collectionChanged(CollectionChangeType.REMOVE_ITEMS, [removed])
+
+        then:
+
+        groups.iterations == 1
+        index.getChildCount(groups[0].id) == 10
+        index.getChildren(groups[0].id).contains(added)
+        !index.getChildren(groups[0].id).contains(groups[5])
+        index.getParentId(groups[5].id) == groups[1].id
+        index.getParentId(removed.id) == null
+    }
+
+    def "refresh rebuilds the index"() {
+        index.getChildren(groups[0].id)
+
+        when:
+
+        index.collectionChanged(CollectionChangeType.REFRESH, [])
+        index.getChildren(groups[0].id)
+        index.getChildren(groups[1].id)
+
+        then:
+
+        groups.iterations == 2
+    }
+
+    static class CountingList extends ArrayList<Group> {
+
+        int iterations
+
+        @Override
+        Iterator<Group> iterator() {
+            iterations++
+            super.iterator()
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.web.components.tree
+
+import com.haulmont.cuba.core.app.DataService
+import com.haulmont.cuba.core.entity.KeyValueEntity
+import com.haulmont.cuba.core.global.LoadContext
+import com.haulmont.cuba.core.global.ValueLoadContext
+import com.haulmont.cuba.gui.components.data.tree.LazyContainerTreeItems
+import com.haulmont.cuba.gui.model.CollectionContainer
+import com.haulmont.cuba.gui.model.CollectionLoader
+import com.haulmont.cuba.security.entity.Group
+import com.haulmont.cuba.web.testsupport.proxy.TestServiceProxy
+import spec.cuba.web.WebSpec
+
+import java.util.stream.Collectors
+
+class LazyContainerTreeItemsTest extends WebSpec {
+
+    private Group root, child1, child2, grandChild
+
+    private List<LoadContext> loadContexts = []
+    private List<ValueLoadContext> countContexts = []
+
+    @Override
+    void setup() {
+        root = createGroup('root', null)
+        child1 = createGroup('child1', root)
+        child2 = createGroup('child2', root)
+        grandChild = createGroup('grandChild', child1)
+        def all = [root, child1, child2, grandChild]
+
+        TestServiceProxy.mock(DataService, Mock(DataService) {
+            loadList(_) >> { LoadContext context ->
+                loadContexts << context
+                def parentId = context.query.parameters['cuba_lazyTreeParentId']
+                all.findAll { it.parent?.id == parentId }
+            }
+            loadValues(_) >> { ValueLoadContext context ->
+                countContexts << context
+                Collection ids = context.query.parameters['cuba_lazyTreeParentIds']
+                ids.collect { id ->
+                    def row = new KeyValueEntity()
+                    row.setValue('parentId', id)
+                    row.setValue('count', all.count { it.parent?.id == id } as Long)
+                    row
+                }.findAll { it.getValue('count') > 0 }
+            }
+        })
+    }
+
+    @Override
+    void cleanup() {
+        TestServiceProxy.clear()
+    }
+
+    def "children are loaded on request"() {
+        CollectionContainer<Group> container = dataComponents.createCollectionContainer(Group)
+        CollectionLoader<Group> loader = dataComponents.createCollectionLoader()
+        loader.setContainer(container)
+        loader.setQuery('select e from sec$Group e where e.name <> :excluded')
+        loader.setParameter('excluded', 'archive')
+
+        def treeItems = new LazyContainerTreeItems<Group>(loader, 'parent')
+
+        when: "the loader loads the data"
+
+        loader.load()
+
+        then: "only roots are loaded together with their child counts"
+
+        container.items == [root]
+        loadContexts.size() == 1
+        loadContexts[0].query.queryString.contains('parent is null')
+        countContexts.size() == 1
+        treeItems.hasChildren(root)
+
+        and: "children are counted among the entities selected by the loader query"
+
+        countContexts[0].query.queryString.contains('in (select e.id from sec$Group e')
+        countContexts[0].query.queryString.contains(':excluded')
+        countContexts[0].query.parameters['excluded'] == 'archive'
+
+        when: "children of the root are requested"
+
+        def children = treeItems.getChildren(root).collect(Collectors.toList())
+
+        then: "they are loaded by the parent id in one query, and their child counts in another one"
+
+        children == [child1, child2]
+        container.items.size() == 3
+        loadContexts.size() == 2
+        countContexts.size() == 2
+        treeItems.hasChildren(child1)
+        !treeItems.hasChildren(child2)
+
+        when: "children are requested again"
+
+        treeItems.getChildCount(root)
+
+        then: "they are not reloaded"
+
+        loadContexts.size() == 2
+    }
+
+    private Group createGroup(String name, Group parent) {
+        def group = metadata.create(Group)
+        group.setName(name)
+        group.setParent(parent)
+        group
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.web.components.tree
+
+import com.haulmont.cuba.gui.components.Tree
+import com.haulmont.cuba.gui.components.data.tree.ContainerTreeItems
+import com.haulmont.cuba.security.entity.Group
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import spec.cuba.web.WebSpec
+import spock.lang.Unroll
+
+/**
+ * Measures binding and full expansion of a tree built on a collection container of 1k, 10k and 100k nodes.
+ * Each node has up to 10 children, so the hierarchy is several levels deep. Not a part of the regular test run,
+ * executed by the {@code benchmark} task of the web module. The results are written to the log.
+ */
+class TreeRenderingBenchmark extends WebSpec {
+
+    private static final Logger log = LoggerFactory.getLogger(TreeRenderingBenchmark)
+
+    private static final int WARMUP_ITERATIONS = 3
+    private static final int MEASUREMENT_ITERATIONS = 5
+
+    @Unroll
+    def "rendering of a tree of #count nodes"() {
+        def groups = createGroups(count)
+        WARMUP_ITERATIONS.times { render(groups) }
+
+        when:
+        List<Long> times = (1..MEASUREMENT_ITERATIONS).collect { measure { render(groups) } }
+
+        long best = times.min()
+        long mean = (long) (times.sum() / times.size())
+        log.info("Tree of {} nodes is bound and expanded in {} ms (best), {} ms (mean), {} ns per node",
+                count, best.intdiv(1_000_000), mean.intdiv(1_000_000), best.intdiv(count))
+
+        then:
+        render(groups).getItems().getChildCount(groups[0]) == 10
+
+        where:
+        count << [1_000, 10_000, 100_000]
+    }
+
+    private Tree<Group> render(List<Group> groups) {
+        def container = dataComponents.createCollectionContainer(Group)
+        container.setItems(groups)
+
+        Tree<Group> tree = uiComponents.create(Tree)
+        tree.setItems(new ContainerTreeItems<Group>(container, 'parent'))
+        tree.expandTree()
+        tree
+    }
+
+    private List<Group> createGroups(int count) {
+        List<Group> groups = []
+        for (int i = 0; i < count; i++) {
+            def group = metadata.create(Group)
+            group.setName("group$i")
+            group.setParent(i == 0 ? null : groups[(i - 1).intdiv(10)])
+            groups << group
+        }
+        groups
+    }
+
+    private static long measure(Closure closure) {
+        long start = System.nanoTime()
+        closure.call()
+        return System.nanoTime() - start
+    }
+}
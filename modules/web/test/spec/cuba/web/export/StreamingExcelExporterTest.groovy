@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2008-2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.web.export
+
+import com.haulmont.cuba.core.app.DataService
+import com.haulmont.cuba.core.entity.Entity
+import com.haulmont.cuba.core.entity.ScheduledTask
+import com.haulmont.cuba.core.global.Configuration
+import com.haulmont.cuba.core.global.GlobalConfig
+import com.haulmont.cuba.core.global.LoadContext
+import com.haulmont.cuba.gui.executors.BackgroundTask
+import com.haulmont.cuba.gui.executors.TaskLifeCycle
+import com.haulmont.cuba.gui.export.*
+import com.haulmont.cuba.gui.model.CollectionContainer
+import com.haulmont.cuba.gui.model.CollectionLoader
+import com.haulmont.cuba.web.testsupport.proxy.TestServiceProxy
+import org.apache.poi.xssf.usermodel.XSSFWorkbook
+import spec.cuba.web.WebSpec
+
+import java.nio.charset.StandardCharsets
+import java.util.function.Function
+
+class StreamingExcelExporterTest extends WebSpec {
+
+    private List<ScheduledTask> tasks
+    private List<LoadContext> loadContexts = []
+    private List<List> shown = []
+
+    private File tempDir
+    private List<String> tempFiles
+
+    private ExportDisplay display
+
+    @Override
+    void setup() {
+        tasks = [createTask('a', 10), createTask('b', 20), createTask('c, d', 30), createTask('e', 40),
+                 createTask('f', 50)].sort { it.id }
+
+        TestServiceProxy.mock(DataService, Mock(DataService) {
+            loadList(_) >> { LoadContext context ->
+                loadContexts << context
+                def lastId = context.query.parameters['cuba_chunkLastId']
+                tasks.findAll { lastId == null || it.id > lastId }.take(context.query.maxResults)
+            }
+        })
+
+        display = Stub(ExportDisplay) {
+            show(_, _, _) >> { ExportDataProvider provider, String name, ExportFormat format ->
+                shown << [provider, name, format]
+            }
+        }
+
+        tempDir = new File(cont.getBean(Configuration).getConfig(GlobalConfig).tempDir)
+        tempDir.mkdirs()
+        tempFiles = tempDir.list() as List
+    }
+
+    @Override
+    void cleanup() {
+        TestServiceProxy.clear()
+        newTempFiles().each { new File(tempDir, it).delete() }
+    }
+
+    def "all entities of a multi-page loader are exported to XLSX"() {
+        def exporter = new StreamingExcelExporter()
+        exporter.setPageSize(2)
+        def lifeCycle = new TestLifeCycle()
+
+        when:
+
+        def provider = runExport(exporter, lifeCycle)
+
+        then: "entities are loaded page by page and the progress is published"
+
+        loadContexts.size() == 3
+        lifeCycle.published == [2, 4, 5]
+        shown.size() == 1
+        shown[0][1] == 'tasks.xlsx'
+        shown[0][2] == ExportFormat.XLSX
+        !exporter.isXlsMaxRowNumberExceeded()
+
+        when: "the file is downloaded"
+
+        def sheet = provider.provide().withCloseable { new XSSFWorkbook(it) }.getSheetAt(0)
+
+        then: "it contains the header and all entities"
+
+        sheet.lastRowNum == 5
+        sheet.getRow(0).getCell(0).stringCellValue == 'Bean'
+        (1..5).collect { sheet.getRow(it).getCell(0).stringCellValue } == tasks.collect { it.beanName }
+        (1..5).collect { sheet.getRow(it).getCell(1).numericCellValue as Integer } == tasks.collect { it.period }
+
+        and: "the file is kept for repeated downloads"
+
+        provider.file.exists()
+
+        when: "the provider is deleted when the UI is detached"
+
+        provider.delete()
+
+        then:
+
+        !provider.file.exists()
+        newTempFiles().isEmpty()
+    }
+
+    def "all entities of a multi-page loader are exported to CSV"() {
+        def exporter = new StreamingExcelExporter(StreamingExcelExporter.Format.CSV)
+        exporter.setPageSize(2)
+
+        when:
+
+        def provider = runExport(exporter, new TestLifeCycle())
+        def csv = provider.provide().withCloseable { new String(it.bytes, StandardCharsets.UTF_8) }
+
+        then:
+
+        loadContexts.size() == 3
+        shown[0][1] == 'tasks.csv'
+        shown[0][2] == ExportFormat.CSV
+        csv == '\uFEFFBean,Period\r\n' + tasks.collect {
+            (it.beanName.contains(',') ? '"' + it.beanName + '"' : it.beanName) + ',' + it.period + '\r\n'
+        }.join('')
+    }
+
+    def "XLSX export stops at the row limit"() {
+        def exporter = new StreamingExcelExporter()
+        exporter.setPageSize(2)
+        exporter.excelOptions = new ExcelOptions(3, ExportFormat.XLSX, '.xlsx', exporter.excelOptions.colWidthMagic)
+
+        when:
+
+        def provider = runExport(exporter, new TestLifeCycle())
+        def sheet = provider.provide().withCloseable { new XSSFWorkbook(it) }.getSheetAt(0)
+
+        then: "only the rows fitting the limit are loaded and written"
+
+        exporter.isXlsMaxRowNumberExceeded()
+        sheet.lastRowNum == 2
+        loadContexts.size() == 2
+    }
+
+    def "cancelled export deletes the temp file"() {
+        def exporter = new StreamingExcelExporter(format)
+        exporter.setPageSize(2)
+        def lifeCycle = new TestLifeCycle(cancelled: true)
+
+        when:
+
+        runExport(exporter, lifeCycle)
+
+        then:
+
+        thrown(InterruptedException)
+        loadContexts.size() == 1
+        shown.isEmpty()
+        newTempFiles().isEmpty()
+
+        where:
+
+        format << [StreamingExcelExporter.Format.XLSX, StreamingExcelExporter.Format.CSV]
+    }
+
+    def "export stops at the next row when the task is cancelled"() {
+        def exporter = new StreamingExcelExporter(format)
+        exporter.setPageSize(2)
+        def lifeCycle = new TestLifeCycle(rowsBeforeCancel: 3)
+
+        when:
+
+        runExport(exporter, lifeCycle)
+
+        then:
+
+        thrown(InterruptedException)
+        loadContexts.size() == 2
+        lifeCycle.published == [2]
+        shown.isEmpty()
+        newTempFiles().isEmpty()
+
+        where:
+
+        format << [StreamingExcelExporter.Format.XLSX, StreamingExcelExporter.Format.CSV]
+    }
+
+    def "temp file can be downloaded again after a failed download"() {
+        def exporter = new StreamingExcelExporter(StreamingExcelExporter.Format.CSV)
+        def provider = runExport(exporter, new TestLifeCycle())
+
+        when: "the download is interrupted after the first bytes"
+
+        def stream = provider.provide()
+        stream.read()
+        stream.close()
+
+        then: "the file is provided again"
+
+        provider.file.exists()
+        provider.provide().withCloseable { new String(it.bytes, StandardCharsets.UTF_8) }.startsWith('\uFEFFBean,Period')
+    }
+
+    def "temp file is deleted if the display fails"() {
+        def exporter = new StreamingExcelExporter()
+        display = Stub(ExportDisplay) {
+            show(_, _, _) >> { throw new IllegalStateException('No UI') }
+        }
+
+        when:
+
+        runExport(exporter, new TestLifeCycle())
+
+        then:
+
+        thrown(IllegalStateException)
+        newTempFiles().isEmpty()
+    }
+
+    private TempFileDataProvider runExport(StreamingExcelExporter exporter, TaskLifeCycle<Integer> lifeCycle) {
+        CollectionContainer<ScheduledTask> container = dataComponents.createCollectionContainer(ScheduledTask)
+        CollectionLoader<ScheduledTask> loader = dataComponents.createCollectionLoader()
+        loader.setContainer(container)
+        loader.setQuery('select e from sys$ScheduledTask e')
+        loader.setMaxResults(2)
+
+        def propertyPaths = metadata.getClassNN(ScheduledTask).with {
+            [getPropertyPath('beanName'), getPropertyPath('period')]
+        }
+        def columns = [
+                new StreamingExcelExporter.ExportColumn('Bean', propertyPaths[0],
+                        { Entity e -> e.getValue('beanName') } as Function),
+                new StreamingExcelExporter.ExportColumn('Period', propertyPaths[1],
+                        { Entity e -> e.getValue('period') } as Function)
+        ]
+
+        BackgroundTask<Integer, ExportDataProvider> task = exporter.createExportTask(null,
+                exporter.createLoadContext(loader), columns, display, 'tasks')
+        def result = task.run(lifeCycle)
+        task.done(result)
+        (TempFileDataProvider) result
+    }
+
+    private List<String> newTempFiles() {
+        (tempDir.list() as List) - tempFiles
+    }
+
+    private ScheduledTask createTask(String beanName, Integer period) {
+        def task = metadata.create(ScheduledTask)
+        task.setBeanName(beanName)
+        task.setPeriod(period)
+        task
+    }
+
+    static class TestLifeCycle implements TaskLifeCycle<Integer> {
+
+        List<Integer> published = []
+        boolean cancelled
+        int rowsBeforeCancel = -1
+
+        @Override
+        void publish(Integer... changes) throws InterruptedException {
+            if (cancelled) {
+                throw new InterruptedException()
+            }
+            published.addAll(changes)
+        }
+
+        @Override
+        boolean isInterrupted() {
+            cancelled
+        }
+
+        @Override
+        boolean isCancelled() {
+            if (rowsBeforeCancel == 0) {
+                return true
+            }
+            rowsBeforeCancel--
+            cancelled
+        }
+
+        @Override
+        Map<String, Object> getParams() {
+            [:]
+        }
+    }
+}